@@ -0,0 +1,48 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Benchmark stand-in for {@code EditTransaction}, which collects the changes of a command in the
+ * same window as the transaction and applies them to the document as a single replacement.
+ * <p>
+ * The transaction itself edits an {@code Editable}, which needs the Android runtime, so the
+ * document here is a plain {@link MarkdownBuffer}. Costs of the {@code Editable} side, such as
+ * updating spans, notifying text watchers and updating the line index, are not measured.
+ */
+public final class TransactionBuffer extends WindowedBuffer {
+    private final MarkdownBuffer text;
+
+    public TransactionBuffer(@NonNull MarkdownBuffer text) {
+        super(text);
+        this.text = text;
+        setSelection(text.getSelectionStart(), text.getSelectionEnd());
+    }
+
+    /**
+     * Applies the collected changes and the selection to the document.
+     */
+    public void commit() {
+        CharSequence window = getWindow();
+        if (window != null) {
+            text.replace(getWindowStart(), getWindowEnd(), window);
+            clearWindow();
+        }
+        text.setSelection(getSelectionStart(), getSelectionEnd());
+    }
+
+    @Override
+    int getOriginalLineStart(int offset) {
+        return text.getLineStart(offset);
+    }
+
+    @Override
+    int getOriginalLineEnd(int offset) {
+        return text.getLineEnd(offset);
+    }
+
+    @Override
+    boolean isOriginalInsideFence(int offset) {
+        return text.isInsideFence(offset);
+    }
+}
@@ -0,0 +1,151 @@
+package me.thanel.markdownedit.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import me.thanel.markdownedit.MarkdownBuffer;
+import me.thanel.markdownedit.MarkdownCommands;
+import me.thanel.markdownedit.TransactionBuffer;
+
+/**
+ * Measures every {@link MarkdownCommands} command on synthetic documents of various sizes, with
+ * the cursor or selection placed at the start or end of the document.
+ * <p>
+ * Commands are run either directly on the document or through a {@link TransactionBuffer}, which
+ * collects the changes the same way as the transactions used by the library. Every invocation
+ * reverts the changes of the command, so the measured time includes the revert, whose cost is
+ * proportional to the size of the changes.
+ * <p>
+ * Run with {@code ./gradlew :benchmark:jmh}, results are written as JSON to
+ * {@code benchmark/build/reports/jmh/results.json}.
+ */
+@State(Scope.Thread)
+public class CommandBenchmark {
+    public enum Position {
+        START, MIDDLE, END
+    }
+
+    public enum Buffer {
+        DIRECT, TRANSACTION
+    }
+
+    /** Document size in characters, 1 KB for a typical note and 1 MB for a large document. */
+    @Param({"1024", "1048576"})
+    public int documentSize;
+
+    @Param({"START", "END"})
+    public Position position;
+
+    /** Number of selected lines, where 0 means that only the cursor is placed. */
+    @Param({"0", "100"})
+    public int selectedLines;
+
+    @Param({"DIRECT", "TRANSACTION"})
+    public Buffer bufferType;
+
+    private RevertibleBuffer buffer;
+    private int selectionStart;
+    private int selectionEnd;
+
+    @Setup(Level.Trial)
+    public void createDocument() {
+        buffer = new RevertibleBuffer(MarkdownCorpus.generate(documentSize, documentSize));
+
+        int length = buffer.length();
+        int offset;
+        switch (position) {
+            case START:
+                offset = 0;
+                break;
+            case MIDDLE:
+                offset = length / 2;
+                break;
+            default:
+                offset = length;
+                break;
+        }
+
+        if (selectedLines == 0) {
+            selectionStart = offset;
+            selectionEnd = offset;
+        } else if (position == Position.END) {
+            selectionEnd = length;
+            selectionStart = moveByLines(buffer, length, -selectedLines);
+        } else {
+            selectionStart = buffer.getLineStart(offset);
+            selectionEnd = moveByLines(buffer, selectionStart, selectedLines);
+        }
+        buffer.reset(selectionStart, selectionEnd);
+    }
+
+    @Benchmark
+    public RevertibleBuffer addBold() {
+        MarkdownBuffer edited = beginEdit();
+        MarkdownCommands.addBold(edited);
+        return finishEdit(edited);
+    }
+
+    @Benchmark
+    public RevertibleBuffer addList() {
+        MarkdownBuffer edited = beginEdit();
+        MarkdownCommands.addList(edited, MarkdownCommands.LIST_TYPE_NUMBERS);
+        return finishEdit(edited);
+    }
+
+    @Benchmark
+    public RevertibleBuffer addHeader() {
+        MarkdownBuffer edited = beginEdit();
+        MarkdownCommands.addHeader(edited, 2);
+        return finishEdit(edited);
+    }
+
+    @Benchmark
+    public RevertibleBuffer addCode() {
+        MarkdownBuffer edited = beginEdit();
+        MarkdownCommands.addCode(edited);
+        return finishEdit(edited);
+    }
+
+    @Benchmark
+    public RevertibleBuffer addQuote() {
+        MarkdownBuffer edited = beginEdit();
+        MarkdownCommands.addQuote(edited);
+        return finishEdit(edited);
+    }
+
+    @Benchmark
+    public RevertibleBuffer addDivider() {
+        MarkdownBuffer edited = beginEdit();
+        MarkdownCommands.addDivider(edited);
+        return finishEdit(edited);
+    }
+
+    private MarkdownBuffer beginEdit() {
+        return bufferType == Buffer.TRANSACTION ? new TransactionBuffer(buffer) : buffer;
+    }
+
+    private RevertibleBuffer finishEdit(MarkdownBuffer edited) {
+        if (edited instanceof TransactionBuffer) {
+            ((TransactionBuffer) edited).commit();
+        }
+        buffer.revert();
+        return buffer;
+    }
+
+    private static int moveByLines(RevertibleBuffer buffer, int offset, int lines) {
+        if (lines > 0) {
+            for (int i = 0; i < lines && offset < buffer.length(); i++) {
+                offset = buffer.getLineEnd(offset) + 1;
+            }
+            return Math.min(offset, buffer.length());
+        }
+        for (int i = 0; i < -lines && offset > 0; i++) {
+            offset = buffer.getLineStart(offset - 1);
+        }
+        return offset;
+    }
+}
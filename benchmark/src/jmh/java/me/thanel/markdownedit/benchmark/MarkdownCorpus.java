@@ -0,0 +1,93 @@
+package me.thanel.markdownedit.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic Markdown documents resembling notes written with MarkdownEdit.
+ */
+public class MarkdownCorpus {
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "markdown", "edit", "note", "list", "quote",
+            "header", "code", "bold", "italic", "link", "image", "task", "done", "todo", "text"
+    };
+
+    private MarkdownCorpus() { /* cannot be instantiated */ }
+
+    /**
+     * Generates a document of the specified size. The same seed always produces the same
+     * document.
+     *
+     * @param size The length of the document in characters.
+     * @param seed The seed of the random generator.
+     * @return The generated document.
+     */
+    public static String generate(int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder(size + 128);
+        while (builder.length() < size) {
+            switch (random.nextInt(10)) {
+                case 0:
+                    builder.append("## ");
+                    appendSentence(builder, random, 4);
+                    builder.append("\n\n");
+                    break;
+                case 1:
+                case 2:
+                    int items = 2 + random.nextInt(5);
+                    for (int i = 1; i <= items; i++) {
+                        builder.append(random.nextBoolean() ? "- " : i + ". ");
+                        appendSentence(builder, random, 6);
+                        builder.append('\n');
+                    }
+                    builder.append('\n');
+                    break;
+                case 3:
+                    builder.append("> ");
+                    appendSentence(builder, random, 10);
+                    builder.append("\n\n");
+                    break;
+                case 4:
+                    builder.append("```\n");
+                    for (int i = random.nextInt(4); i >= 0; i--) {
+                        appendSentence(builder, random, 5);
+                        builder.append('\n');
+                    }
+                    builder.append("```\n\n");
+                    break;
+                default:
+                    for (int i = random.nextInt(3); i >= 0; i--) {
+                        appendSentence(builder, random, 12);
+                        builder.append('\n');
+                    }
+                    builder.append('\n');
+                    break;
+            }
+        }
+        builder.setLength(size);
+        return builder.toString();
+    }
+
+    private static void appendSentence(StringBuilder builder, Random random, int maxWords) {
+        int words = 1 + random.nextInt(maxWords);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            switch (random.nextInt(12)) {
+                case 0:
+                    builder.append("**").append(word).append("**");
+                    break;
+                case 1:
+                    builder.append('_').append(word).append('_');
+                    break;
+                case 2:
+                    builder.append('`').append(word).append('`');
+                    break;
+                default:
+                    builder.append(word);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package me.thanel.markdownedit.benchmark;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+import me.thanel.markdownedit.MarkdownBuffer;
+import me.thanel.markdownedit.StringMarkdownBuffer;
+
+/**
+ * {@link MarkdownBuffer} which records its edits so that the text can be restored after each
+ * benchmark invocation, at a cost proportional to the size of the edits rather than the size of
+ * the document.
+ */
+class RevertibleBuffer implements MarkdownBuffer {
+    private final StringMarkdownBuffer buffer;
+    private int[] editStarts = new int[8];
+    private int[] editLengths = new int[8];
+    private CharSequence[] removedTexts = new CharSequence[8];
+    private int editCount;
+    private int initialSelectionStart;
+    private int initialSelectionEnd;
+
+    RevertibleBuffer(String text) {
+        buffer = new StringMarkdownBuffer(text);
+    }
+
+    /**
+     * Selects the specified range and marks the current state as the one to which {@link
+     * #revert()} returns.
+     */
+    void reset(int selectionStart, int selectionEnd) {
+        editCount = 0;
+        initialSelectionStart = selectionStart;
+        initialSelectionEnd = selectionEnd;
+        buffer.setSelection(selectionStart, selectionEnd);
+    }
+
+    void revert() {
+        for (int i = editCount - 1; i >= 0; i--) {
+            buffer.replace(editStarts[i], editStarts[i] + editLengths[i], removedTexts[i]);
+            removedTexts[i] = null;
+        }
+        reset(initialSelectionStart, initialSelectionEnd);
+    }
+
+    @Override
+    public void replace(int start, int end, @NonNull CharSequence replacement) {
+        if (editCount == editStarts.length) {
+            editStarts = Arrays.copyOf(editStarts, editCount * 2);
+            editLengths = Arrays.copyOf(editLengths, editCount * 2);
+            removedTexts = Arrays.copyOf(removedTexts, editCount * 2);
+        }
+        editStarts[editCount] = start;
+        editLengths[editCount] = replacement.length();
+        removedTexts[editCount] = buffer.subSequence(start, end);
+        editCount++;
+        buffer.replace(start, end, replacement);
+    }
+
+    @Override
+    public int getSelectionStart() {
+        return buffer.getSelectionStart();
+    }
+
+    @Override
+    public int getSelectionEnd() {
+        return buffer.getSelectionEnd();
+    }
+
+    @Override
+    public void setSelection(int position) {
+        buffer.setSelection(position);
+    }
+
+    @Override
+    public void setSelection(int start, int end) {
+        buffer.setSelection(start, end);
+    }
+
+    @Override
+    public int getLineStart(int offset) {
+        return buffer.getLineStart(offset);
+    }
+
+    @Override
+    public int getLineEnd(int offset) {
+        return buffer.getLineEnd(offset);
+    }
+
+    @Override
+    public boolean isInsideFence(int offset) {
+        return buffer.isInsideFence(offset);
+    }
+
+    @Override
+    public int length() {
+        return buffer.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return buffer.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return buffer.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
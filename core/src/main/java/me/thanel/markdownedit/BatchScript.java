@@ -0,0 +1,420 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sequence of {@link MarkdownCommands} applied to a {@link MarkdownBuffer}, such as the steps of
+ * a migration run over many files by the batch formatter of the "formatter" module.
+ * <p>
+ * Scripts are parsed from text with one step per line. Empty lines and lines starting with "#" are
+ * ignored. Selection steps choose the text on which the following commands operate:
+ * <pre>
+ * select all              Selects the whole text.
+ * select start            Moves the cursor to the start of the text.
+ * select end              Moves the cursor to the end of the text.
+ * select line N           Selects line N, counted from 1.
+ * select lines N M        Selects lines N to M, inclusive.
+ * </pre>
+ * Command steps run the command of the same name on the selection:
+ * <pre>
+ * bold, italic, strikethrough, code, quote, divider
+ * header LEVEL
+ * list bullets|numbers|tasks
+ * table ROWS COLUMNS
+ * format-table
+ * replace QUERY REPLACEMENT
+ * </pre>
+ * Unlike the commands, which remove the markup they would add when it is already present, the
+ * steps only ensure the markup: bold, italic, strikethrough and code steps are skipped when the
+ * selection is already surrounded with their tag, and code steps also inside of fenced code.
+ * Quote and list steps are skipped when all of the selected lines already have their tags, and
+ * header steps when the line is already a header of the same level. Running a script of these
+ * steps again therefore leaves the text unchanged. Divider and table steps always insert new
+ * markup.
+ * <p>
+ * Arguments are separated by spaces and can be quoted with double quotes, in which "\"" and
+ * "\\" stand for a quote and a backslash. When a selected line doesn't exist in the text, the
+ * commands following the selection are skipped until the next selection step.
+ */
+public final class BatchScript {
+    private static final int STEP_SELECT_ALL = 0;
+    private static final int STEP_SELECT_START = 1;
+    private static final int STEP_SELECT_END = 2;
+    private static final int STEP_SELECT_LINES = 3;
+    private static final int STEP_BOLD = 4;
+    private static final int STEP_ITALIC = 5;
+    private static final int STEP_STRIKE_THROUGH = 6;
+    private static final int STEP_CODE = 7;
+    private static final int STEP_QUOTE = 8;
+    private static final int STEP_DIVIDER = 9;
+    private static final int STEP_HEADER = 10;
+    private static final int STEP_LIST = 11;
+    private static final int STEP_TABLE = 12;
+    private static final int STEP_FORMAT_TABLE = 13;
+    private static final int STEP_REPLACE = 14;
+
+    private final int[] types;
+    private final int[] firstArguments;
+    private final int[] secondArguments;
+    // Queries and replacements of replace steps, indexed by their first argument.
+    private final String[] strings;
+
+    private BatchScript(int[] types, int[] firstArguments, int[] secondArguments,
+            String[] strings) {
+        this.types = types;
+        this.firstArguments = firstArguments;
+        this.secondArguments = secondArguments;
+        this.strings = strings;
+    }
+
+    /**
+     * Parses the script from its text representation.
+     *
+     * @param script The text of the script.
+     * @return The parsed script.
+     * @throws IllegalArgumentException If a step of the script is invalid.
+     */
+    @NonNull
+    public static BatchScript parse(@NonNull CharSequence script) {
+        int[] types = new int[8];
+        int[] firstArguments = new int[8];
+        int[] secondArguments = new int[8];
+        List<String> strings = new ArrayList<>();
+        int count = 0;
+        List<String> arguments = new ArrayList<>();
+        int lineNumber = 0;
+        int lineStart = 0;
+        while (lineStart <= script.length()) {
+            int lineEnd = lineStart;
+            while (lineEnd < script.length() && script.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            lineNumber++;
+            tokenize(script, lineStart, lineEnd, arguments, lineNumber);
+            lineStart = lineEnd + 1;
+            if (arguments.isEmpty() || arguments.get(0).startsWith("#")) {
+                continue;
+            }
+
+            if (count == types.length) {
+                types = Arrays.copyOf(types, count * 2);
+                firstArguments = Arrays.copyOf(firstArguments, count * 2);
+                secondArguments = Arrays.copyOf(secondArguments, count * 2);
+            }
+            int type;
+            int first = 0;
+            int second = 0;
+            String name = arguments.get(0);
+            switch (name) {
+                case "select":
+                    requireArguments(arguments, 2, 4, lineNumber);
+                    String target = arguments.get(1);
+                    if (target.equals("all") || target.equals("start") ||
+                            target.equals("end")) {
+                        requireArguments(arguments, 2, 2, lineNumber);
+                        type = target.equals("all") ? STEP_SELECT_ALL :
+                                target.equals("start") ? STEP_SELECT_START : STEP_SELECT_END;
+                    } else if (target.equals("line") || target.equals("lines")) {
+                        requireArguments(arguments, 3, target.equals("line") ? 3 : 4,
+                                lineNumber);
+                        type = STEP_SELECT_LINES;
+                        first = parseNumber(arguments.get(2), 1, lineNumber);
+                        second = arguments.size() == 4 ?
+                                parseNumber(arguments.get(3), first, lineNumber) : first;
+                    } else {
+                        throw invalidStep("Unknown selection \"" + target + "\"", lineNumber);
+                    }
+                    break;
+                case "header":
+                    requireArguments(arguments, 2, 2, lineNumber);
+                    type = STEP_HEADER;
+                    first = parseNumber(arguments.get(1), 1, lineNumber);
+                    if (first > 6) {
+                        throw invalidStep("Heading level must be at most 6", lineNumber);
+                    }
+                    break;
+                case "list":
+                    requireArguments(arguments, 2, 2, lineNumber);
+                    type = STEP_LIST;
+                    first = parseListType(arguments.get(1), lineNumber);
+                    second = getItemType(first);
+                    break;
+                case "table":
+                    requireArguments(arguments, 3, 3, lineNumber);
+                    type = STEP_TABLE;
+                    first = parseNumber(arguments.get(1), 1, lineNumber);
+                    second = parseNumber(arguments.get(2), 1, lineNumber);
+                    break;
+                case "replace":
+                    requireArguments(arguments, 3, 3, lineNumber);
+                    if (arguments.get(1).isEmpty()) {
+                        throw invalidStep("Query can't be empty", lineNumber);
+                    }
+                    type = STEP_REPLACE;
+                    first = strings.size();
+                    strings.add(arguments.get(1));
+                    strings.add(arguments.get(2));
+                    break;
+                default:
+                    requireArguments(arguments, 1, 1, lineNumber);
+                    type = parseCommand(name, lineNumber);
+                    break;
+            }
+            types[count] = type;
+            firstArguments[count] = first;
+            secondArguments[count] = second;
+            count++;
+        }
+        return new BatchScript(Arrays.copyOf(types, count), Arrays.copyOf(firstArguments, count),
+                Arrays.copyOf(secondArguments, count), strings.toArray(new String[0]));
+    }
+
+    /**
+     * @return The number of steps of the script.
+     */
+    public int getStepCount() {
+        return types.length;
+    }
+
+    /**
+     * Runs the steps of the script on the text. The cursor is at the start of the text before the
+     * first step.
+     *
+     * @param text The {@link MarkdownBuffer} text to which to apply the script.
+     */
+    public void apply(@NonNull MarkdownBuffer text) {
+        text.setSelection(0);
+        boolean hasSelection = true;
+        for (int i = 0; i < types.length; i++) {
+            int type = types[i];
+            int first = firstArguments[i];
+            int second = secondArguments[i];
+            if (type <= STEP_SELECT_LINES) {
+                hasSelection = select(text, type, first, second);
+                continue;
+            }
+            if (!hasSelection) {
+                continue;
+            }
+
+            switch (type) {
+                case STEP_BOLD:
+                    if (!MarkdownCommands.hasSurroundingTag(text, "**")) {
+                        MarkdownCommands.addBold(text);
+                    }
+                    break;
+                case STEP_ITALIC:
+                    if (!MarkdownCommands.hasSurroundingTag(text, "_")) {
+                        MarkdownCommands.addItalic(text);
+                    }
+                    break;
+                case STEP_STRIKE_THROUGH:
+                    if (!MarkdownCommands.hasSurroundingTag(text, "~~")) {
+                        MarkdownCommands.addStrikeThrough(text);
+                    }
+                    break;
+                case STEP_CODE:
+                    // The code command removes the fence lines of selected fenced code.
+                    if (!MarkdownCommands.hasSurroundingTag(text, "`") &&
+                            !text.isInsideFence(text.getSelectionStart()) &&
+                            !text.isInsideFence(text.getSelectionEnd())) {
+                        MarkdownCommands.addCode(text);
+                    }
+                    break;
+                case STEP_QUOTE:
+                    if (!MarkdownCommands.hasLineTags(text, MarkdownLines.BLOCK_QUOTE)) {
+                        MarkdownCommands.addQuote(text);
+                    }
+                    break;
+                case STEP_DIVIDER:
+                    MarkdownCommands.addDivider(text);
+                    break;
+                case STEP_HEADER:
+                    if (!MarkdownCommands.hasHeader(text, first)) {
+                        MarkdownCommands.addHeader(text, first);
+                    }
+                    break;
+                case STEP_LIST:
+                    if (!MarkdownCommands.hasLineTags(text, second)) {
+                        MarkdownCommands.addList(text, first);
+                    }
+                    break;
+                case STEP_TABLE:
+                    MarkdownCommands.addTable(text, first, second);
+                    break;
+                case STEP_FORMAT_TABLE:
+                    MarkdownCommands.formatTable(text);
+                    break;
+                case STEP_REPLACE:
+                    MarkdownSearch.replaceAll(text, strings[first], strings[first + 1], 0);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown step type: " + type);
+            }
+        }
+    }
+
+    /**
+     * Changes the selection of the text.
+     *
+     * @return Whether the selected lines exist in the text.
+     */
+    private static boolean select(MarkdownBuffer text, int type, int firstLine, int lastLine) {
+        switch (type) {
+            case STEP_SELECT_ALL:
+                text.setSelection(0, text.length());
+                return true;
+            case STEP_SELECT_START:
+                text.setSelection(0);
+                return true;
+            case STEP_SELECT_END:
+                text.setSelection(text.length());
+                return true;
+            default:
+                int start = findLine(text, firstLine);
+                if (start == -1) {
+                    return false;
+                }
+                int lastStart = start;
+                for (int line = firstLine; line < lastLine; line++) {
+                    int end = text.getLineEnd(lastStart);
+                    if (end == text.length()) {
+                        return false;
+                    }
+                    lastStart = end + 1;
+                }
+                text.setSelection(start, text.getLineEnd(lastStart));
+                return true;
+        }
+    }
+
+    /**
+     * @return The start of the line with the specified number, counted from 1, or -1 if the text
+     * has fewer lines.
+     */
+    private static int findLine(MarkdownBuffer text, int lineNumber) {
+        int start = 0;
+        for (int line = 1; line < lineNumber; line++) {
+            int end = text.getLineEnd(start);
+            if (end == text.length()) {
+                return -1;
+            }
+            start = end + 1;
+        }
+        return start;
+    }
+
+    /**
+     * Splits the line into arguments separated by spaces, which can be quoted.
+     */
+    private static void tokenize(CharSequence script, int start, int end, List<String> arguments,
+            int lineNumber) {
+        arguments.clear();
+        StringBuilder argument = new StringBuilder();
+        int i = start;
+        while (i < end) {
+            char c = script.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\r') {
+                i++;
+                continue;
+            }
+
+            argument.setLength(0);
+            if (c == '"') {
+                i++;
+                while (i < end && script.charAt(i) != '"') {
+                    if (script.charAt(i) == '\\' && i + 1 < end) {
+                        i++;
+                    }
+                    argument.append(script.charAt(i++));
+                }
+                if (i == end) {
+                    throw invalidStep("Unterminated quote", lineNumber);
+                }
+                i++;
+            } else {
+                while (i < end && " \t\r".indexOf(script.charAt(i)) == -1) {
+                    argument.append(script.charAt(i++));
+                }
+            }
+            arguments.add(argument.toString());
+        }
+    }
+
+    private static void requireArguments(List<String> arguments, int min, int max,
+            int lineNumber) {
+        if (arguments.size() < min || arguments.size() > max) {
+            throw invalidStep("Invalid number of arguments for \"" + arguments.get(0) + "\"",
+                    lineNumber);
+        }
+    }
+
+    private static int parseNumber(String argument, int min, int lineNumber) {
+        int number;
+        try {
+            number = Integer.parseInt(argument);
+        } catch (NumberFormatException e) {
+            throw invalidStep("Invalid number \"" + argument + "\"", lineNumber);
+        }
+        if (number < min) {
+            throw invalidStep("Number must be at least " + min, lineNumber);
+        }
+        return number;
+    }
+
+    private static int parseListType(String argument, int lineNumber) {
+        switch (argument) {
+            case "bullets":
+                return MarkdownCommands.LIST_TYPE_BULLETS;
+            case "numbers":
+                return MarkdownCommands.LIST_TYPE_NUMBERS;
+            case "tasks":
+                return MarkdownCommands.LIST_TYPE_TASKS;
+            default:
+                throw invalidStep("Unknown list type \"" + argument + "\"", lineNumber);
+        }
+    }
+
+    /**
+     * @return The block type of the items of the list type.
+     */
+    private static int getItemType(int listType) {
+        switch (listType) {
+            case MarkdownCommands.LIST_TYPE_NUMBERS:
+                return MarkdownLines.BLOCK_NUMBERED_ITEM;
+            case MarkdownCommands.LIST_TYPE_TASKS:
+                return MarkdownLines.BLOCK_TASK_ITEM;
+            default:
+                return MarkdownLines.BLOCK_BULLET_ITEM;
+        }
+    }
+
+    private static int parseCommand(String name, int lineNumber) {
+        switch (name) {
+            case "bold":
+                return STEP_BOLD;
+            case "italic":
+                return STEP_ITALIC;
+            case "strikethrough":
+                return STEP_STRIKE_THROUGH;
+            case "code":
+                return STEP_CODE;
+            case "quote":
+                return STEP_QUOTE;
+            case "divider":
+                return STEP_DIVIDER;
+            case "format-table":
+                return STEP_FORMAT_TABLE;
+            default:
+                throw invalidStep("Unknown command \"" + name + "\"", lineNumber);
+        }
+    }
+
+    private static IllegalArgumentException invalidStep(String message, int lineNumber) {
+        return new IllegalArgumentException("script: " + message + " on line " + lineNumber + ".");
+    }
+}
@@ -0,0 +1,443 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the changes made to a document, used to save it without rewriting the
+ * whole file after every change.
+ * <p>
+ * The document is stored as a UTF-8 snapshot file next to a journal file with the same name and
+ * the {@code .journal} suffix. Every change is appended to the journal as a record of the
+ * replaced range and the inserted text, so the amount of data written is proportional to the
+ * changes and not to the size of the document. Every record is written to the journal as soon as
+ * it's recorded, so it survives the process being killed. To survive a crash of the system the
+ * records also have to be stored on the disk with {@link #sync()}, which should be called shortly
+ * after the changes stop, for example when the host is paused.
+ * <p>
+ * After a crash the document is recovered by loading the snapshot and applying the journal to it
+ * with {@link #replay(MarkdownBuffer)}. A record which was only partially written is detected by
+ * its checksum and discarded. When the journal grows larger than the snapshot, {@link
+ * #needsCompaction()} returns {@code true} and {@link #compact(CharSequence)} should be called to
+ * write a new snapshot and empty the journal. This keeps the total amount of data written at most
+ * a few times the amount of changes.
+ * <p>
+ * Changes can be recorded while a compaction runs on another thread. Changes recorded after the
+ * text of the new snapshot was copied are carried over to its journal, first through a temporary
+ * journal file so that they aren't lost if the compaction is interrupted.
+ */
+public final class EditJournal implements Closeable {
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x4D444A31;
+    // Magic number, snapshot length and snapshot checksum.
+    private static final int HEADER_LENGTH = 4 + 8 + 8;
+    // Start and end of the replaced range and length of the inserted text, followed by the text
+    // and the checksum of the record.
+    private static final int RECORD_HEADER_LENGTH = 3 * 4;
+    private static final int RECORD_CHECKSUM_LENGTH = 8;
+
+    private static final int INITIAL_RECORD_CAPACITY = 4 * 1024;
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+    private static final int IO_BUFFER_LENGTH = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File snapshotFile;
+    private final RandomAccessFile journalFile;
+    private final FileChannel journal;
+    private final CRC32 checksum = new CRC32();
+    private ByteBuffer record = ByteBuffer.allocate(INITIAL_RECORD_CAPACITY);
+    private long snapshotLength;
+    // Length of the valid part of the journal.
+    private long journalLength;
+
+    /**
+     * Opens the journal of the specified snapshot file. Records of a journal left by a previous
+     * session are kept if it belongs to the current snapshot, and should be applied with {@link
+     * #replay(MarkdownBuffer)} to the text of the snapshot before new changes are recorded.
+     *
+     * @param snapshotFile The UTF-8 file containing the document. It doesn't need to exist.
+     * @throws IOException If the journal can't be opened.
+     */
+    public EditJournal(@NonNull File snapshotFile) throws IOException {
+        this.snapshotFile = snapshotFile;
+        journalFile = new RandomAccessFile(getJournalFile(snapshotFile), "rw");
+        journal = journalFile.getChannel();
+        try {
+            openJournal();
+        } catch (IOException e) {
+            journalFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the file in which the changes of the specified snapshot are recorded.
+     *
+     * @param snapshotFile The UTF-8 file containing the document.
+     * @return The journal file.
+     */
+    @NonNull
+    public static File getJournalFile(@NonNull File snapshotFile) {
+        return new File(snapshotFile.getPath() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Applies the recorded changes to the specified buffer, which should contain the text of the
+     * snapshot.
+     *
+     * @param buffer The buffer to which to apply the changes.
+     * @return The number of applied changes.
+     * @throws IOException If the journal can't be read.
+     */
+    public synchronized int replay(@NonNull MarkdownBuffer buffer) throws IOException {
+        int count = 0;
+        long position = HEADER_LENGTH;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        while (position < journalLength) {
+            readFully(journal, recordHeader, position);
+            int start = recordHeader.getInt(0);
+            int end = recordHeader.getInt(4);
+            int length = recordHeader.getInt(8);
+            ByteBuffer text = ByteBuffer.allocate(length * 2);
+            readFully(journal, text, position + RECORD_HEADER_LENGTH);
+            char[] chars = new char[length];
+            text.asCharBuffer().get(chars);
+            buffer.replace(start, end, new String(chars));
+            position += getRecordLength(length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Records a change of the text, writing it to the journal right away.
+     *
+     * @param start The start of the replaced range.
+     * @param end The end of the replaced range.
+     * @param replacement The text inserted in place of the range.
+     * @throws IOException If writing the change fails.
+     */
+    public void record(int start, int end, @NonNull CharSequence replacement) throws IOException {
+        record(start, end, replacement, 0, replacement.length());
+    }
+
+    /**
+     * Records a change of the text, writing it to the journal right away.
+     *
+     * @param start The start of the replaced range.
+     * @param end The end of the replaced range.
+     * @param source The text containing the inserted text.
+     * @param sourceStart The start of the inserted text in the source.
+     * @param sourceEnd The end of the inserted text in the source.
+     * @throws IOException If writing the change fails.
+     */
+    public synchronized void record(int start, int end, @NonNull CharSequence source,
+            int sourceStart, int sourceEnd) throws IOException {
+        int length = sourceEnd - sourceStart;
+        int recordLength = (int) getRecordLength(length);
+        if (record.capacity() < recordLength) {
+            record = ByteBuffer.allocate(Math.max(recordLength, record.capacity() * 2));
+        }
+
+        record.clear();
+        record.putInt(start).putInt(end).putInt(length);
+        for (int i = sourceStart; i < sourceEnd; i++) {
+            record.putChar(source.charAt(i));
+        }
+        checksum.reset();
+        checksum.update(record.array(), 0, record.position());
+        record.putLong(checksum.getValue());
+        record.flip();
+        writeFully(journal, record, journalLength);
+        journalLength += recordLength;
+    }
+
+    /**
+     * Waits until the recorded changes are stored on the disk. Can be called from any thread.
+     *
+     * @throws IOException If syncing fails.
+     */
+    public void sync() throws IOException {
+        journal.force(false);
+    }
+
+    /**
+     * @return The length of the journal, which marks the changes recorded so far for {@link
+     * #compact(CharSequence, long)}.
+     */
+    public synchronized long getLength() {
+        return journalLength;
+    }
+
+    /**
+     * @return Whether the journal grew large enough that it should be compacted into a new
+     * snapshot with {@link #compact(CharSequence)}.
+     */
+    public synchronized boolean needsCompaction() {
+        long length = journalLength - HEADER_LENGTH;
+        return length >= Math.max(MIN_COMPACTION_BYTES, snapshotLength);
+    }
+
+    /**
+     * Replaces the snapshot with the specified text and empties the journal. The new snapshot is
+     * written to a temporary file which then replaces the old one, so a crash during compaction
+     * leaves either the old snapshot with its journal or the new one.
+     *
+     * @param text The current text of the document, including all recorded changes.
+     * @throws IOException If writing the snapshot fails.
+     */
+    public void compact(@NonNull CharSequence text) throws IOException {
+        compact(text, getLength());
+    }
+
+    /**
+     * Replaces the snapshot with the specified copy of the text, keeping the changes recorded
+     * after the copy was taken. The snapshot is written without blocking {@link #record}, so this
+     * can be called on a background thread while changes are still being recorded. Only one
+     * compaction can run at a time.
+     *
+     * @param text The copy of the text of the document.
+     * @param length The length of the journal returned by {@link #getLength()} when the copy was
+     *               taken.
+     * @throws IOException If writing the snapshot fails.
+     */
+    public void compact(@NonNull CharSequence text, long length) throws IOException {
+        File temporaryFile = new File(snapshotFile.getPath() + TEMPORARY_SUFFIX);
+        long[] lengthAndChecksum = writeSnapshot(text, temporaryFile);
+        synchronized (this) {
+            if (length < HEADER_LENGTH || length > journalLength) {
+                temporaryFile.delete();
+                throw new IllegalArgumentException("Invalid journal length: " + length);
+            }
+
+            ByteBuffer carried = null;
+            File temporaryJournalFile = getTemporaryJournalFile(snapshotFile);
+            if (length < journalLength) {
+                // The changes recorded meanwhile are stored next to the new snapshot first, as
+                // the journal still belongs to the old one until the snapshot is replaced.
+                carried = ByteBuffer.allocate((int) (journalLength - length));
+                readFully(journal, carried, length);
+                RandomAccessFile output = new RandomAccessFile(temporaryJournalFile, "rw");
+                try {
+                    writeJournal(output.getChannel(), lengthAndChecksum, carried);
+                } finally {
+                    output.close();
+                }
+            }
+            if (!temporaryFile.renameTo(snapshotFile)) {
+                temporaryFile.delete();
+                temporaryJournalFile.delete();
+                throw new IOException("Can't replace snapshot " + snapshotFile + ".");
+            }
+
+            // The journal of the old snapshot is discarded even if this isn't reached, as its
+            // header doesn't match the new snapshot.
+            resetJournal(lengthAndChecksum, carried);
+            if (carried != null) {
+                temporaryJournalFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Syncs the recorded changes and closes the journal.
+     *
+     * @throws IOException If syncing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            journalFile.close();
+        }
+    }
+
+    private static File getTemporaryJournalFile(File snapshotFile) {
+        return new File(snapshotFile.getPath() + JOURNAL_SUFFIX + TEMPORARY_SUFFIX);
+    }
+
+    private void openJournal() throws IOException {
+        long[] lengthAndChecksum = readSnapshotChecksum();
+        File temporaryJournalFile = getTemporaryJournalFile(snapshotFile);
+        if (temporaryJournalFile.exists()) {
+            restoreTemporaryJournal(temporaryJournalFile, lengthAndChecksum);
+        }
+        if (!matchesSnapshot(journal, lengthAndChecksum)) {
+            resetJournal(lengthAndChecksum, null);
+            return;
+        }
+
+        snapshotLength = lengthAndChecksum[0];
+        journalLength = findValidLength();
+        journal.truncate(journalLength);
+    }
+
+    /**
+     * Restores the journal from the temporary journal left by a compaction which was interrupted
+     * after replacing the snapshot, and deletes the temporary journal.
+     */
+    private void restoreTemporaryJournal(File file, long[] lengthAndChecksum)
+            throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            if (matchesSnapshot(channel, lengthAndChecksum)) {
+                ByteBuffer records = ByteBuffer.allocate((int) (channel.size() - HEADER_LENGTH));
+                readFully(channel, records, HEADER_LENGTH);
+                writeJournal(journal, lengthAndChecksum, records);
+            }
+        } finally {
+            input.close();
+        }
+        file.delete();
+    }
+
+    private static boolean matchesSnapshot(FileChannel channel, long[] lengthAndChecksum)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        return channel.size() >= HEADER_LENGTH && channel.read(header, 0) == HEADER_LENGTH &&
+                header.getInt(0) == MAGIC && header.getLong(4) == lengthAndChecksum[0] &&
+                header.getLong(12) == lengthAndChecksum[1];
+    }
+
+    private void resetJournal(long[] lengthAndChecksum, ByteBuffer records) throws IOException {
+        writeJournal(journal, lengthAndChecksum, records);
+        snapshotLength = lengthAndChecksum[0];
+        journalLength = HEADER_LENGTH + (records != null ? records.limit() : 0);
+    }
+
+    /**
+     * Replaces the content of the journal with the header of the snapshot followed by the
+     * records, and syncs it.
+     */
+    private static void writeJournal(FileChannel channel, long[] lengthAndChecksum,
+            ByteBuffer records) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putLong(lengthAndChecksum[0]).putLong(lengthAndChecksum[1]).flip();
+        channel.truncate(0);
+        writeFully(channel, header, 0);
+        if (records != null) {
+            records.rewind();
+            writeFully(channel, records, HEADER_LENGTH);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * @return The length of the journal up to the first incomplete or corrupted record.
+     */
+    private long findValidLength() throws IOException {
+        long size = journal.size();
+        long position = HEADER_LENGTH;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        while (position + RECORD_HEADER_LENGTH <= size) {
+            readFully(journal, recordHeader, position);
+            int length = recordHeader.getInt(8);
+            long recordLength = getRecordLength(length);
+            if (length < 0 || position + recordLength > size) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate((int) recordLength);
+            readFully(journal, record, position);
+            checksum.reset();
+            checksum.update(record.array(), 0, (int) recordLength - RECORD_CHECKSUM_LENGTH);
+            if (record.getLong((int) recordLength - RECORD_CHECKSUM_LENGTH) !=
+                    checksum.getValue()) {
+                break;
+            }
+            position += recordLength;
+        }
+        return position;
+    }
+
+    private long[] readSnapshotChecksum() throws IOException {
+        CRC32 snapshotChecksum = new CRC32();
+        long length = 0;
+        if (snapshotFile.exists()) {
+            RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_LENGTH);
+                int read;
+                while ((read = channel.read(buffer)) >= 0) {
+                    snapshotChecksum.update(buffer.array(), 0, read);
+                    length += read;
+                    buffer.clear();
+                }
+            } finally {
+                file.close();
+            }
+        }
+        return new long[]{length, snapshotChecksum.getValue()};
+    }
+
+    private static long[] writeSnapshot(CharSequence text, File file) throws IOException {
+        CharsetEncoder encoder = UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CRC32 snapshotChecksum = new CRC32();
+        long length = 0;
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = output.getChannel();
+            channel.truncate(0);
+            CharBuffer input = CharBuffer.wrap(text);
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_LENGTH);
+            boolean flushed = false;
+            while (!flushed) {
+                CoderResult result = encoder.encode(input, buffer, true);
+                if (result.isUnderflow()) {
+                    flushed = encoder.flush(buffer).isUnderflow();
+                }
+                buffer.flip();
+                snapshotChecksum.update(buffer.array(), 0, buffer.limit());
+                length += buffer.limit();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+            channel.force(true);
+        } finally {
+            output.close();
+        }
+        return new long[]{length, snapshotChecksum.getValue()};
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal.");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static long getRecordLength(int textLength) {
+        return RECORD_HEADER_LENGTH + textLength * 2L + RECORD_CHECKSUM_LENGTH;
+    }
+}
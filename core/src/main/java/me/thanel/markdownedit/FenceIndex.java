@@ -0,0 +1,127 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Index of the "```" fence lines of a text, used to tell whether an offset is located inside of a
+ * fenced code block.
+ * <p>
+ * Only the boundaries of the fence lines are stored, in a sorted array, and fences are paired by
+ * their position in it, so a change which opens or closes a code block doesn't require examining
+ * the rest of the text. Queries are binary searches and updates examine only the changed lines.
+ */
+public final class FenceIndex {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] fenceStarts = new int[INITIAL_CAPACITY];
+    private int[] fenceEnds = new int[INITIAL_CAPACITY];
+    private int fenceCount;
+
+    /**
+     * Creates an index of the fences in the specified text.
+     *
+     * @param text The text to index.
+     */
+    public FenceIndex(@NonNull CharSequence text) {
+        scanLines(text, 0, text.length(), 0);
+    }
+
+    /**
+     * Returns whether the specified offset is located inside of a fenced code block, including
+     * the fence lines themselves. A fence without a closing fence continues to the end of the
+     * text.
+     *
+     * @param offset The character offset.
+     * @return {@code true} if the offset is part of fenced code.
+     */
+    public boolean isInsideFence(int offset) {
+        int index = findLastStartAtOrBefore(offset);
+        if (index < 0) {
+            return false;
+        }
+        // Even fences open a block, odd fences close the block opened by the preceding one.
+        return index % 2 == 0 || offset <= fenceEnds[index];
+    }
+
+    /**
+     * Updates the index after a range of the text was replaced.
+     *
+     * @param text   The text after the change.
+     * @param start  The start of the replaced range.
+     * @param oldEnd The end of the replaced range before the change.
+     * @param newEnd The end of the replacement after the change.
+     */
+    public void onReplace(@NonNull CharSequence text, int start, int oldEnd, int newEnd) {
+        int lineStart = start;
+        while (lineStart > 0 && text.charAt(lineStart - 1) != '\n') {
+            lineStart--;
+        }
+        int lineEnd = newEnd;
+        while (lineEnd < text.length() && text.charAt(lineEnd) != '\n') {
+            lineEnd++;
+        }
+
+        // Fences on the changed lines are removed and found again, following ones are shifted.
+        int removeStart = findLastStartAtOrBefore(lineStart - 1) + 1;
+        int removeEnd = findLastStartAtOrBefore(oldEnd) + 1;
+        int delta = newEnd - oldEnd;
+        System.arraycopy(fenceStarts, removeEnd, fenceStarts, removeStart, fenceCount - removeEnd);
+        System.arraycopy(fenceEnds, removeEnd, fenceEnds, removeStart, fenceCount - removeEnd);
+        fenceCount -= removeEnd - removeStart;
+        for (int i = removeStart; i < fenceCount; i++) {
+            fenceStarts[i] += delta;
+            fenceEnds[i] += delta;
+        }
+
+        scanLines(text, lineStart, lineEnd, removeStart);
+    }
+
+    /**
+     * Adds fences found on lines starting from start, inclusive, to end, inclusive, to the index
+     * at the specified position.
+     */
+    private void scanLines(CharSequence text, int start, int end, int index) {
+        int lineStart = start;
+        while (lineStart <= end) {
+            int lineEnd = lineStart;
+            while (lineEnd < text.length() && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (MarkdownLines.isFence(text, lineStart, lineEnd)) {
+                insert(index++, lineStart, lineEnd);
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private void insert(int index, int start, int end) {
+        if (fenceCount == fenceStarts.length) {
+            fenceStarts = Arrays.copyOf(fenceStarts, fenceCount * 2);
+            fenceEnds = Arrays.copyOf(fenceEnds, fenceCount * 2);
+        }
+        System.arraycopy(fenceStarts, index, fenceStarts, index + 1, fenceCount - index);
+        System.arraycopy(fenceEnds, index, fenceEnds, index + 1, fenceCount - index);
+        fenceStarts[index] = start;
+        fenceEnds[index] = end;
+        fenceCount++;
+    }
+
+    /**
+     * @return The index of the last fence which starts at or before the specified offset, or -1.
+     */
+    private int findLastStartAtOrBefore(int offset) {
+        int low = 0;
+        int high = fenceCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (fenceStarts[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+}
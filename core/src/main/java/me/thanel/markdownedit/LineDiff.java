@@ -0,0 +1,485 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Line-based difference between two versions of a text, as a list of hunks which replace ranges
+ * of lines of the old text with lines of the new text.
+ * <p>
+ * Lines are compared as integer tokens: every line is hashed once and lines with equal contents
+ * share a token, so the diff itself never compares characters. The hunks are found with the
+ * linear space variant of Myers' algorithm after stripping the common prefix and suffix, so the
+ * memory used is proportional to the number of lines and the time to the number of lines
+ * multiplied by the number of changed lines. For texts which differ almost completely the
+ * search is cut short and the result might not be the smallest possible diff.
+ * <p>
+ * Each line includes its line feed, so applying the hunks with {@link #applyTo(MarkdownBuffer)}
+ * turns the old text into exactly the new text. To apply them to an {@code Editable} as a
+ * single change, apply them through an {@code EditTransaction}.
+ */
+public final class LineDiff {
+    // Minimum number of steps of the search for a middle snake before it is cut short.
+    private static final int MIN_COST_LIMIT = 256;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final CharSequence newText;
+    private final int[] oldLineStarts;
+    private final int[] newLineStarts;
+    private final int oldLineCount;
+    private final int newLineCount;
+    private final int[] oldTokens;
+    private final int[] newTokens;
+    private final boolean[] oldChanged;
+    private final boolean[] newChanged;
+    private int[] forwardReach;
+    private int[] backwardReach;
+    private int diagonalOffset;
+    private int costLimit;
+
+    private int[] hunkOldLines = new int[INITIAL_CAPACITY];
+    private int[] hunkNewLines = new int[INITIAL_CAPACITY];
+    private int[] hunkOldLineCounts = new int[INITIAL_CAPACITY];
+    private int[] hunkNewLineCounts = new int[INITIAL_CAPACITY];
+    private int hunkCount;
+
+    private LineDiff(CharSequence oldText, CharSequence newText) {
+        this.newText = newText;
+        oldLineStarts = findLineStarts(oldText);
+        newLineStarts = findLineStarts(newText);
+        oldLineCount = oldLineStarts.length - 1;
+        newLineCount = newLineStarts.length - 1;
+        oldTokens = new int[oldLineCount];
+        newTokens = new int[newLineCount];
+        oldChanged = new boolean[oldLineCount];
+        newChanged = new boolean[newLineCount];
+
+        LineTokens tokens = new LineTokens(oldLineCount + newLineCount);
+        for (int i = 0; i < oldLineCount; i++) {
+            oldTokens[i] = tokens.get(oldText, oldLineStarts[i], oldLineStarts[i + 1]);
+        }
+        for (int i = 0; i < newLineCount; i++) {
+            newTokens[i] = tokens.get(newText, newLineStarts[i], newLineStarts[i + 1]);
+        }
+    }
+
+    /**
+     * Computes the difference between the specified texts. The new text must not change while
+     * the diff is in use, as hunks refer to it.
+     *
+     * @param oldText The old version of the text.
+     * @param newText The new version of the text.
+     * @return The diff turning the old text into the new text.
+     */
+    @NonNull
+    public static LineDiff compute(@NonNull CharSequence oldText, @NonNull CharSequence newText) {
+        LineDiff diff = new LineDiff(oldText, newText);
+        diff.compareLines();
+        diff.collectHunks();
+        return diff;
+    }
+
+    /**
+     * @return The number of hunks. Identical texts have no hunks.
+     */
+    public int getHunkCount() {
+        return hunkCount;
+    }
+
+    /**
+     * @param hunk The index of the hunk.
+     * @return The first line of the old text replaced by the hunk, counted from 0.
+     */
+    public int getOldLine(int hunk) {
+        return hunkOldLines[hunk];
+    }
+
+    /**
+     * @param hunk The index of the hunk.
+     * @return The number of lines of the old text replaced by the hunk.
+     */
+    public int getOldLineCount(int hunk) {
+        return hunkOldLineCounts[hunk];
+    }
+
+    /**
+     * @param hunk The index of the hunk.
+     * @return The first line of the new text inserted by the hunk, counted from 0.
+     */
+    public int getNewLine(int hunk) {
+        return hunkNewLines[hunk];
+    }
+
+    /**
+     * @param hunk The index of the hunk.
+     * @return The number of lines of the new text inserted by the hunk.
+     */
+    public int getNewLineCount(int hunk) {
+        return hunkNewLineCounts[hunk];
+    }
+
+    /**
+     * @param hunk The index of the hunk.
+     * @return The offset in the old text at which the replaced range starts.
+     */
+    public int getOldStart(int hunk) {
+        return oldLineStarts[hunkOldLines[hunk]];
+    }
+
+    /**
+     * @param hunk The index of the hunk.
+     * @return The offset in the old text at which the replaced range ends.
+     */
+    public int getOldEnd(int hunk) {
+        return oldLineStarts[hunkOldLines[hunk] + hunkOldLineCounts[hunk]];
+    }
+
+    /**
+     * @param hunk The index of the hunk.
+     * @return The offset in the new text at which the inserted range starts.
+     */
+    public int getNewStart(int hunk) {
+        return newLineStarts[hunkNewLines[hunk]];
+    }
+
+    /**
+     * @param hunk The index of the hunk.
+     * @return The offset in the new text at which the inserted range ends.
+     */
+    public int getNewEnd(int hunk) {
+        return newLineStarts[hunkNewLines[hunk] + hunkNewLineCounts[hunk]];
+    }
+
+    /**
+     * Applies the hunks to the specified buffer containing the old text, starting from the last
+     * one so that the offsets of the remaining hunks stay valid.
+     *
+     * @param buffer The buffer containing the old text.
+     */
+    public void applyTo(@NonNull MarkdownBuffer buffer) {
+        for (int i = hunkCount - 1; i >= 0; i--) {
+            buffer.replace(getOldStart(i), getOldEnd(i),
+                    newText.subSequence(getNewStart(i), getNewEnd(i)));
+        }
+    }
+
+    /**
+     * @return Offsets of the starts of the lines of the text, followed by the length of the text.
+     */
+    private static int[] findLineStarts(CharSequence text) {
+        int length = text.length();
+        int[] starts = new int[INITIAL_CAPACITY];
+        int count = 1;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                if (count + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        // Text ending with a line feed ends with an empty line.
+        if (count + 1 > starts.length) {
+            starts = Arrays.copyOf(starts, count + 1);
+        }
+        starts[count++] = length;
+        return Arrays.copyOf(starts, count);
+    }
+
+    private void compareLines() {
+        int diagonals = oldLineCount + newLineCount + 3;
+        forwardReach = new int[diagonals];
+        backwardReach = new int[diagonals];
+        diagonalOffset = newLineCount + 1;
+        // The limit grows with the square root of the number of diagonals.
+        int limit = 1;
+        for (int i = diagonals; i != 0; i >>= 2) {
+            limit <<= 1;
+        }
+        costLimit = Math.max(MIN_COST_LIMIT, limit);
+
+        compareLines(0, oldLineCount, 0, newLineCount);
+        forwardReach = null;
+        backwardReach = null;
+    }
+
+    /**
+     * Marks the lines which differ between the specified ranges of the old and new lines.
+     */
+    private void compareLines(int oldStart, int oldEnd, int newStart, int newEnd) {
+        while (true) {
+            while (oldStart < oldEnd && newStart < newEnd &&
+                    oldTokens[oldStart] == newTokens[newStart]) {
+                oldStart++;
+                newStart++;
+            }
+            while (oldStart < oldEnd && newStart < newEnd &&
+                    oldTokens[oldEnd - 1] == newTokens[newEnd - 1]) {
+                oldEnd--;
+                newEnd--;
+            }
+
+            if (oldStart == oldEnd || newStart == newEnd) {
+                Arrays.fill(oldChanged, oldStart, oldEnd, true);
+                Arrays.fill(newChanged, newStart, newEnd, true);
+                return;
+            }
+
+            long middle = findMiddle(oldStart, oldEnd, newStart, newEnd);
+            int oldMiddle = (int) (middle >> 32);
+            int newMiddle = (int) middle;
+            if ((oldMiddle == oldStart && newMiddle == newStart) ||
+                    (oldMiddle == oldEnd && newMiddle == newEnd)) {
+                // The search was cut short without making progress.
+                Arrays.fill(oldChanged, oldStart, oldEnd, true);
+                Arrays.fill(newChanged, newStart, newEnd, true);
+                return;
+            }
+
+            // Recurse into the smaller half and iterate over the larger one.
+            if (oldMiddle - oldStart + newMiddle - newStart <
+                    oldEnd - oldMiddle + newEnd - newMiddle) {
+                compareLines(oldStart, oldMiddle, newStart, newMiddle);
+                oldStart = oldMiddle;
+                newStart = newMiddle;
+            } else {
+                compareLines(oldMiddle, oldEnd, newMiddle, newEnd);
+                oldEnd = oldMiddle;
+                newEnd = newMiddle;
+            }
+        }
+    }
+
+    /**
+     * Finds a point of the shortest edit path between the specified ranges by searching from
+     * both ends at once until the searches meet.
+     *
+     * @return The old line of the point in the high 32 bits and the new line in the low 32 bits.
+     */
+    private long findMiddle(int oldStart, int oldEnd, int newStart, int newEnd) {
+        int[] forward = forwardReach;
+        int[] backward = backwardReach;
+        int offset = diagonalOffset;
+        int minDiagonal = oldStart - newEnd;
+        int maxDiagonal = oldEnd - newStart;
+        int forwardMiddle = oldStart - newStart;
+        int backwardMiddle = oldEnd - newEnd;
+        int forwardMin = forwardMiddle;
+        int forwardMax = forwardMiddle;
+        int backwardMin = backwardMiddle;
+        int backwardMax = backwardMiddle;
+        boolean odd = ((forwardMiddle - backwardMiddle) & 1) != 0;
+
+        // Reach arrays store the furthest old line reached on each diagonal (old - new line).
+        forward[offset + forwardMiddle] = oldStart;
+        backward[offset + backwardMiddle] = oldEnd;
+
+        for (int cost = 1; ; cost++) {
+            if (forwardMin > minDiagonal) {
+                forward[offset + --forwardMin - 1] = -1;
+            } else {
+                forwardMin++;
+            }
+            if (forwardMax < maxDiagonal) {
+                forward[offset + ++forwardMax + 1] = -1;
+            } else {
+                forwardMax--;
+            }
+            for (int d = forwardMax; d >= forwardMin; d -= 2) {
+                int low = forward[offset + d - 1];
+                int high = forward[offset + d + 1];
+                int x = low >= high ? low + 1 : high;
+                int y = x - d;
+                while (x < oldEnd && y < newEnd && oldTokens[x] == newTokens[y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + d] = x;
+                if (odd && backwardMin <= d && d <= backwardMax &&
+                        backward[offset + d] <= x) {
+                    return (long) x << 32 | y;
+                }
+            }
+
+            if (backwardMin > minDiagonal) {
+                backward[offset + --backwardMin - 1] = Integer.MAX_VALUE;
+            } else {
+                backwardMin++;
+            }
+            if (backwardMax < maxDiagonal) {
+                backward[offset + ++backwardMax + 1] = Integer.MAX_VALUE;
+            } else {
+                backwardMax--;
+            }
+            for (int d = backwardMax; d >= backwardMin; d -= 2) {
+                int low = backward[offset + d - 1];
+                int high = backward[offset + d + 1];
+                int x = low < high ? low : high - 1;
+                int y = x - d;
+                while (x > oldStart && y > newStart && oldTokens[x - 1] == newTokens[y - 1]) {
+                    x--;
+                    y--;
+                }
+                backward[offset + d] = x;
+                if (!odd && forwardMin <= d && d <= forwardMax && x <= forward[offset + d]) {
+                    return (long) x << 32 | y;
+                }
+            }
+
+            if (cost >= costLimit) {
+                return findBestReach(oldStart, oldEnd, newStart, newEnd, forwardMin, forwardMax,
+                        backwardMin, backwardMax);
+            }
+        }
+    }
+
+    /**
+     * Picks the point furthest from its end of the range out of the points reached by the
+     * forward and backward searches.
+     */
+    private long findBestReach(int oldStart, int oldEnd, int newStart, int newEnd,
+            int forwardMin, int forwardMax, int backwardMin, int backwardMax) {
+        int offset = diagonalOffset;
+        int forwardBestSum = -1;
+        int forwardBestX = oldStart;
+        for (int d = forwardMax; d >= forwardMin; d -= 2) {
+            int x = Math.min(forwardReach[offset + d], oldEnd);
+            int y = x - d;
+            if (y > newEnd) {
+                x = newEnd + d;
+                y = newEnd;
+            }
+            if (x + y > forwardBestSum) {
+                forwardBestSum = x + y;
+                forwardBestX = x;
+            }
+        }
+
+        int backwardBestSum = Integer.MAX_VALUE;
+        int backwardBestX = oldEnd;
+        for (int d = backwardMax; d >= backwardMin; d -= 2) {
+            int x = Math.max(oldStart, backwardReach[offset + d]);
+            int y = x - d;
+            if (y < newStart) {
+                x = newStart + d;
+                y = newStart;
+            }
+            if (x + y < backwardBestSum) {
+                backwardBestSum = x + y;
+                backwardBestX = x;
+            }
+        }
+
+        if (oldEnd + newEnd - backwardBestSum < forwardBestSum - oldStart - newStart) {
+            return (long) forwardBestX << 32 | (forwardBestSum - forwardBestX);
+        }
+        return (long) backwardBestX << 32 | (backwardBestSum - backwardBestX);
+    }
+
+    private void collectHunks() {
+        int oldLine = 0;
+        int newLine = 0;
+        while (oldLine < oldLineCount || newLine < newLineCount) {
+            if (oldLine < oldLineCount && newLine < newLineCount && !oldChanged[oldLine] &&
+                    !newChanged[newLine]) {
+                oldLine++;
+                newLine++;
+                continue;
+            }
+
+            int oldStart = oldLine;
+            int newStart = newLine;
+            while (oldLine < oldLineCount && oldChanged[oldLine]) {
+                oldLine++;
+            }
+            while (newLine < newLineCount && newChanged[newLine]) {
+                newLine++;
+            }
+            addHunk(oldStart, oldLine - oldStart, newStart, newLine - newStart);
+        }
+    }
+
+    private void addHunk(int oldLine, int oldCount, int newLine, int newCount) {
+        if (hunkCount == hunkOldLines.length) {
+            int capacity = hunkCount * 2;
+            hunkOldLines = Arrays.copyOf(hunkOldLines, capacity);
+            hunkNewLines = Arrays.copyOf(hunkNewLines, capacity);
+            hunkOldLineCounts = Arrays.copyOf(hunkOldLineCounts, capacity);
+            hunkNewLineCounts = Arrays.copyOf(hunkNewLineCounts, capacity);
+        }
+        hunkOldLines[hunkCount] = oldLine;
+        hunkOldLineCounts[hunkCount] = oldCount;
+        hunkNewLines[hunkCount] = newLine;
+        hunkNewLineCounts[hunkCount] = newCount;
+        hunkCount++;
+    }
+
+    /**
+     * Hash table assigning the same token to lines with equal contents.
+     */
+    private static final class LineTokens {
+        private final int[] table;
+        private final int mask;
+        private CharSequence[] texts;
+        private int[] starts;
+        private int[] ends;
+        private int[] hashes;
+        private int count;
+
+        LineTokens(int lineCount) {
+            int capacity = Integer.highestOneBit(Math.max(lineCount, 1)) << 2;
+            table = new int[capacity];
+            Arrays.fill(table, -1);
+            mask = capacity - 1;
+            texts = new CharSequence[INITIAL_CAPACITY];
+            starts = new int[INITIAL_CAPACITY];
+            ends = new int[INITIAL_CAPACITY];
+            hashes = new int[INITIAL_CAPACITY];
+        }
+
+        int get(CharSequence text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (table[slot] != -1) {
+                int token = table[slot];
+                if (hashes[token] == hash && equal(token, text, start, end)) {
+                    return token;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (count == texts.length) {
+                int capacity = count * 2;
+                texts = Arrays.copyOf(texts, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+            }
+            texts[count] = text;
+            starts[count] = start;
+            ends[count] = end;
+            hashes[count] = hash;
+            table[slot] = count;
+            return count++;
+        }
+
+        private boolean equal(int token, CharSequence text, int start, int end) {
+            int tokenStart = starts[token];
+            if (ends[token] - tokenStart != end - start) {
+                return false;
+            }
+            CharSequence tokenText = texts[token];
+            for (int i = start; i < end; i++) {
+                if (tokenText.charAt(tokenStart + i - start) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
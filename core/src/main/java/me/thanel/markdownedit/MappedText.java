@@ -0,0 +1,215 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only UTF-8 text of a memory-mapped file, decoded lazily in chunks.
+ * <p>
+ * Opening the text makes a single pass over the mapped bytes to find the character offsets of
+ * its chunks, without decoding them. Characters are decoded only when a chunk is read, and only
+ * a few recently read chunks are kept on the heap, so the memory used doesn't depend on the size
+ * of the file.
+ */
+final class MappedText implements CharSequence {
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CACHED_CHUNKS = 8;
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+    private final ByteBuffer bytes;
+    // Byte and character offsets at which chunks start, with the total sizes as the last entries.
+    private final int[] chunkByteStarts;
+    private final int[] chunkCharStarts;
+    private final int chunkCount;
+    private final Map<Integer, char[]> decodedChunks =
+            new LinkedHashMap<Integer, char[]>(MAX_CACHED_CHUNKS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+                    return size() > MAX_CACHED_CHUNKS;
+                }
+            };
+
+    MappedText(@NonNull ByteBuffer bytes, int chunkSize) {
+        this.bytes = bytes;
+        int size = bytes.limit();
+        int maxChunkCount = size / chunkSize + 1;
+        int[] byteStarts = new int[maxChunkCount + 1];
+        int[] charStarts = new int[maxChunkCount + 1];
+
+        int count = 0;
+        int chars = 0;
+        int position = 0;
+        while (position < size) {
+            byteStarts[count] = position;
+            charStarts[count] = chars;
+            count++;
+            int chunkEnd = Math.min(position + chunkSize, size);
+            // Chunks must not split the bytes of a character.
+            while (chunkEnd < size && isContinuationByte(bytes.get(chunkEnd))) {
+                chunkEnd++;
+            }
+            for (int i = position; i < chunkEnd; i++) {
+                byte value = bytes.get(i);
+                if (!isContinuationByte(value)) {
+                    chars += (value & 0xF8) == 0xF0 ? 2 : 1;
+                }
+            }
+            position = chunkEnd;
+        }
+        byteStarts[count] = size;
+        charStarts[count] = chars;
+        chunkCount = count;
+        chunkByteStarts = Arrays.copyOf(byteStarts, count + 1);
+        chunkCharStarts = Arrays.copyOf(charStarts, count + 1);
+    }
+
+    /**
+     * Maps the specified UTF-8 file to memory. The file must not be modified while the text is in
+     * use.
+     *
+     * @param file The file to map.
+     * @return The text of the file.
+     * @throws IOException If the file can't be read or is larger than 2 GiB.
+     */
+    @NonNull
+    static MappedText open(@NonNull File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + file + " is too large to be mapped.");
+            }
+            // The mapping stays valid after the channel is closed.
+            return new MappedText(channel.map(FileChannel.MapMode.READ_ONLY, 0, size),
+                    DEFAULT_CHUNK_SIZE);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Override
+    public int length() {
+        return chunkCharStarts[chunkCount];
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("charAt: " + index + " is out of bounds.");
+        }
+        int chunk = findChunk(index);
+        return getChunk(chunk)[index - chunkCharStarts[chunk]];
+    }
+
+    /**
+     * Copies the specified range of the characters to the destination array.
+     */
+    void getChars(int start, int end, @NonNull char[] dest, int destOffset) {
+        while (start < end) {
+            int chunk = findChunk(start);
+            int chunkStart = chunkCharStarts[chunk];
+            int count = Math.min(end, chunkCharStarts[chunk + 1]) - start;
+            System.arraycopy(getChunk(chunk), start - chunkStart, dest, destOffset, count);
+            start += count;
+            destOffset += count;
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "subSequence (" + start + " ... " + end + ") has invalid range.");
+        }
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    private int findChunk(int index) {
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunkCharStarts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private char[] getChunk(int chunk) {
+        char[] chars = decodedChunks.get(chunk);
+        if (chars == null) {
+            chars = decode(chunk);
+            decodedChunks.put(chunk, chars);
+        }
+        return chars;
+    }
+
+    /**
+     * Decodes the chunk, producing exactly the number of characters counted for it. Malformed
+     * sequences are decoded as replacement characters.
+     */
+    private char[] decode(int chunk) {
+        char[] chars = new char[chunkCharStarts[chunk + 1] - chunkCharStarts[chunk]];
+        int end = chunkByteStarts[chunk + 1];
+        int position = chunkByteStarts[chunk];
+        int charIndex = 0;
+        while (position < end) {
+            int lead = bytes.get(position++) & 0xFF;
+            if (isContinuationByte((byte) lead)) {
+                // Continuation bytes without a lead byte are not counted as characters.
+                continue;
+            }
+            int continuationCount = 0;
+            int codePoint = 0;
+            while (position < end && isContinuationByte(bytes.get(position))) {
+                codePoint = codePoint << 6 | bytes.get(position) & 0x3F;
+                continuationCount++;
+                position++;
+            }
+
+            if (lead < 0x80 && continuationCount == 0) {
+                chars[charIndex++] = (char) lead;
+            } else if ((lead & 0xE0) == 0xC0 && continuationCount == 1) {
+                chars[charIndex++] = (char) ((lead & 0x1F) << 6 | codePoint);
+            } else if ((lead & 0xF0) == 0xE0 && continuationCount == 2) {
+                chars[charIndex++] = (char) ((lead & 0x0F) << 12 | codePoint);
+            } else if ((lead & 0xF8) == 0xF0) {
+                codePoint |= (lead & 0x07) << 18;
+                if (continuationCount == 3 && Character.isSupplementaryCodePoint(codePoint)) {
+                    chars[charIndex++] = Character.highSurrogate(codePoint);
+                    chars[charIndex++] = Character.lowSurrogate(codePoint);
+                } else {
+                    chars[charIndex++] = REPLACEMENT_CHARACTER;
+                    chars[charIndex++] = REPLACEMENT_CHARACTER;
+                }
+            } else {
+                chars[charIndex++] = REPLACEMENT_CHARACTER;
+            }
+        }
+        return chars;
+    }
+
+    private static boolean isContinuationByte(byte value) {
+        return (value & 0xC0) == 0x80;
+    }
+}
@@ -0,0 +1,70 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Text with a selection, on which {@link MarkdownCommands} operate.
+ * <p>
+ * Implementations adapt the text storage of the platform, such as Android's {@code Editable}, so
+ * that the same formatting logic can run on any JVM.
+ */
+public interface MarkdownBuffer extends CharSequence {
+    /**
+     * Replaces the specified range of the text with the replacement text.
+     *
+     * @param start       The start of the range to replace, inclusive.
+     * @param end         The end of the range to replace, exclusive.
+     * @param replacement The text to insert.
+     */
+    void replace(int start, int end, @NonNull CharSequence replacement);
+
+    /**
+     * @return The selection start, or cursor position if nothing is selected.
+     */
+    int getSelectionStart();
+
+    /**
+     * @return The selection end, or cursor position if nothing is selected.
+     */
+    int getSelectionEnd();
+
+    /**
+     * Moves the cursor to the specified position.
+     *
+     * @param position The new cursor position.
+     */
+    void setSelection(int position);
+
+    /**
+     * Selects the specified range of the text. If start is equal to end this moves the cursor.
+     *
+     * @param start The selection start.
+     * @param end   The selection end.
+     */
+    void setSelection(int start, int end);
+
+    /**
+     * Returns the start of the line at which the specified offset is located.
+     *
+     * @param offset The character offset.
+     * @return The offset of the first character of the line.
+     */
+    int getLineStart(int offset);
+
+    /**
+     * Returns the end of the line at which the specified offset is located.
+     *
+     * @param offset The character offset.
+     * @return The offset just after the last character of the line, excluding the line feed.
+     */
+    int getLineEnd(int offset);
+
+    /**
+     * Returns whether the specified offset is located inside of a fenced code block, including
+     * its fence lines, where Markdown markup is not interpreted.
+     *
+     * @param offset The character offset.
+     * @return {@code true} if the offset is part of fenced code.
+     */
+    boolean isInsideFence(int offset);
+}
@@ -0,0 +1,1040 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Markdown formatting commands operating on a {@link MarkdownBuffer}.
+ * <p>
+ * This is the platform independent engine behind {@code MarkdownEdit}, which can be used to format
+ * text outside of Android views, for example with a {@link StringMarkdownBuffer}.
+ * <p>
+ * Commands leave the text unchanged when the selection starts or ends inside of fenced code, as
+ * determined by {@link MarkdownBuffer#isInsideFence(int)}, where the markup would corrupt the
+ * code. The code command instead removes the fence lines, turning the code back to text.
+ * <p>
+ * Inline commands also have overloads formatting several ranges of the text, for example all
+ * matches of a search, which are applied to the text as a single replacement.
+ */
+public class MarkdownCommands {
+    public static final int LIST_TYPE_BULLETS = 0;
+    public static final int LIST_TYPE_NUMBERS = 1;
+    public static final int LIST_TYPE_TASKS = 2;
+
+    private static final int RANGE_COMMAND_SURROUND = 0;
+    private static final int RANGE_COMMAND_LINK = 1;
+    private static final int RANGE_COMMAND_IMAGE = 2;
+    private static final int RANGE_COMMAND_CODE = 3;
+
+    private static final String[] INLINE_TAGS = {"**", "_", "~~", "`"};
+
+    private MarkdownCommands() { /* cannot be instantiated */ }
+
+    /**
+     * Surrounds the selected text with Markdown bold tag "**text**", or if no text is selected
+     * inserts empty bold tag at the current cursor position.
+     *
+     * @param text The {@link MarkdownBuffer} text to which to add Markdown bold tag.
+     */
+    public static void addBold(@NonNull MarkdownBuffer text) {
+        surroundSelectionWith(text, "**");
+    }
+
+    /**
+     * Surrounds the selected text with Markdown italic tag "_text_", or if no text is selected
+     * inserts empty italic tag at the current cursor position.
+     *
+     * @param text The {@link MarkdownBuffer} text to which to add Markdown italic tag.
+     */
+    public static void addItalic(@NonNull MarkdownBuffer text) {
+        surroundSelectionWith(text, "_");
+    }
+
+    /**
+     * Surrounds the selected text with Markdown strike-through tag "~~text~~", or if no text is
+     * selected inserts empty strike-through tag at the current cursor position.
+     *
+     * @param text The {@link MarkdownBuffer} text to which to add Markdown strike-through tag.
+     */
+    public static void addStrikeThrough(@NonNull MarkdownBuffer text) {
+        surroundSelectionWith(text, "~~");
+    }
+
+    /**
+     * Turns the selected text to Markdown image tag "![title](url)" treating selection as a title.
+     * <p>
+     * If no text is selected the cursor will be positioned inside of the title tag, otherwise the
+     * url marker will be selected and previously selected text will be inserted as a image title.
+     *
+     * @param text The {@link MarkdownBuffer} text to which to add Markdown image tag.
+     */
+    public static void addImage(@NonNull MarkdownBuffer text) {
+        addLink(text, true);
+    }
+
+    /**
+     * Turns the selected text to Markdown link tag "[title](url)" treating selection as a title.
+     * <p>
+     * If no text is selected the cursor will be positioned inside of the title tag, otherwise the
+     * url marker will be selected and previously selected text will be inserted as a link title.
+     *
+     * @param text The {@link MarkdownBuffer} text to which to add Markdown link tag.
+     */
+    public static void addLink(@NonNull MarkdownBuffer text) {
+        addLink(text, false);
+    }
+
+    /**
+     * Surrounds the selected text with the specified tag, or if no text is selected surrounds the
+     * word at the cursor position.
+     * <p>
+     * If the text is already surrounded with the tag, either inside or just outside of the
+     * selection, the tag is removed instead.
+     *
+     * @param text         The {@link MarkdownBuffer} text to which to add the tag.
+     * @param surroundText The tag to insert before and after the selection.
+     */
+    public static void surroundSelectionWith(@NonNull MarkdownBuffer text,
+            @NonNull String surroundText) {
+        if (isSelectionInsideFence(text) || removeSurroundingTag(text, surroundText)) {
+            return;
+        }
+        if (!hasSelection(text)) {
+            selectWordAroundCursor(text);
+        }
+        CharSequence selectedText = getSelectedText(text);
+        int selectionStart = text.getSelectionStart();
+
+        selectedText = selectedText.toString().trim();
+
+        int charactersToGoBack = 0;
+        if (selectedText.length() == 0) {
+            charactersToGoBack = surroundText.length();
+        }
+
+        StringBuilder result = new StringBuilder();
+        result.append(surroundText).append(selectedText).append(surroundText);
+
+        replaceSelectedText(text, result);
+        text.setSelection(selectionStart + result.length() - charactersToGoBack);
+    }
+
+    /**
+     * Surrounds each of the specified ranges with Markdown bold tag "**text**". Empty ranges
+     * surround the word at their position.
+     *
+     * @param text   The {@link MarkdownBuffer} text to which to add Markdown bold tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     * @see #surroundSelectionWith(MarkdownBuffer, int[], String)
+     */
+    public static void addBold(@NonNull MarkdownBuffer text, @NonNull int[] ranges) {
+        surroundSelectionWith(text, ranges, "**");
+    }
+
+    /**
+     * Surrounds each of the specified ranges with Markdown italic tag "_text_". Empty ranges
+     * surround the word at their position.
+     *
+     * @param text   The {@link MarkdownBuffer} text to which to add Markdown italic tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     * @see #surroundSelectionWith(MarkdownBuffer, int[], String)
+     */
+    public static void addItalic(@NonNull MarkdownBuffer text, @NonNull int[] ranges) {
+        surroundSelectionWith(text, ranges, "_");
+    }
+
+    /**
+     * Surrounds each of the specified ranges with Markdown strike-through tag "~~text~~". Empty
+     * ranges surround the word at their position.
+     *
+     * @param text   The {@link MarkdownBuffer} text to which to add Markdown strike-through tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     * @see #surroundSelectionWith(MarkdownBuffer, int[], String)
+     */
+    public static void addStrikeThrough(@NonNull MarkdownBuffer text, @NonNull int[] ranges) {
+        surroundSelectionWith(text, ranges, "~~");
+    }
+
+    /**
+     * Turns each of the specified ranges to Markdown image tag "![title](url)" treating the range
+     * as a title.
+     *
+     * @param text   The {@link MarkdownBuffer} text to which to add Markdown image tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     * @see #surroundSelectionWith(MarkdownBuffer, int[], String)
+     */
+    public static void addImage(@NonNull MarkdownBuffer text, @NonNull int[] ranges) {
+        formatRanges(text, ranges, RANGE_COMMAND_IMAGE, null);
+    }
+
+    /**
+     * Turns each of the specified ranges to Markdown link tag "[title](url)" treating the range
+     * as a title.
+     *
+     * @param text   The {@link MarkdownBuffer} text to which to add Markdown link tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     * @see #surroundSelectionWith(MarkdownBuffer, int[], String)
+     */
+    public static void addLink(@NonNull MarkdownBuffer text, @NonNull int[] ranges) {
+        formatRanges(text, ranges, RANGE_COMMAND_LINK, null);
+    }
+
+    /**
+     * Formats each of the specified ranges as Markdown code, in the same way as {@link
+     * #addCode(MarkdownBuffer)} formats the selection.
+     *
+     * @param text   The {@link MarkdownBuffer} text to which to add markdown code.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     * @see #surroundSelectionWith(MarkdownBuffer, int[], String)
+     */
+    public static void addCode(@NonNull MarkdownBuffer text, @NonNull int[] ranges) {
+        formatRanges(text, ranges, RANGE_COMMAND_CODE, null);
+    }
+
+    /**
+     * Surrounds each of the specified ranges with the specified tag, in the same way as {@link
+     * #surroundSelectionWith(MarkdownBuffer, String)} surrounds the selection.
+     * <p>
+     * Every range is formatted as if it was the only one and the changes of all ranges are then
+     * applied to the text as a single replacement. The changes made for a range must not overlap
+     * the changes made for the previous ranges.
+     *
+     * @param text         The {@link MarkdownBuffer} text to which to add the tags.
+     * @param ranges       The ranges to format, as pairs of start and end sorted by their
+     *                     position. The ranges are replaced with the resulting selection of each
+     *                     range.
+     * @param surroundText The tag to insert before and after each range.
+     * @throws IllegalArgumentException If the ranges are not sorted or the changes of the ranges
+     *                                  overlap.
+     */
+    public static void surroundSelectionWith(@NonNull MarkdownBuffer text, @NonNull int[] ranges,
+            @NonNull String surroundText) {
+        formatRanges(text, ranges, RANGE_COMMAND_SURROUND, surroundText);
+    }
+
+    private static void formatRanges(@NonNull MarkdownBuffer text, @NonNull int[] ranges,
+            int command, String surroundText) {
+        if (ranges.length % 2 != 0) {
+            throw new IllegalArgumentException("ranges: Ranges must be pairs of start and end.");
+        }
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > ranges[i + 1] || ranges[i + 1] > text.length() ||
+                    i > 0 && ranges[i] < ranges[i - 1]) {
+                throw new IllegalArgumentException("ranges: Range " + (i / 2) +
+                        " is invalid or not sorted.");
+            }
+        }
+
+        RangeBatch batch = new RangeBatch(text);
+        for (int i = 0; i < ranges.length; i += 2) {
+            batch.beginRange(ranges[i], ranges[i + 1]);
+            switch (command) {
+                case RANGE_COMMAND_SURROUND:
+                    surroundSelectionWith(batch, surroundText);
+                    break;
+                case RANGE_COMMAND_LINK:
+                    addLink(batch, false);
+                    break;
+                case RANGE_COMMAND_IMAGE:
+                    addLink(batch, true);
+                    break;
+                case RANGE_COMMAND_CODE:
+                    addCode(batch);
+                    break;
+            }
+            batch.endRange();
+        }
+        batch.apply(ranges);
+    }
+
+    private static void addLink(@NonNull MarkdownBuffer text, boolean isImageLink) {
+        if (isSelectionInsideFence(text)) {
+            return;
+        }
+        if (!hasSelection(text)) {
+            selectWordAroundCursor(text);
+        }
+        String selectedText = getSelectedText(text).toString().trim();
+
+        int selectionStart = text.getSelectionStart();
+
+        String imageMarker = isImageLink ? "!" : "";
+        String result = imageMarker + "[" + selectedText + "](url)";
+        replaceSelectedText(text, result);
+
+        if (selectedText.length() == 0) {
+            text.setSelection(selectionStart + (isImageLink ? 2 : 1));
+        } else {
+            selectionStart = selectionStart + result.length() - 4;
+            text.setSelection(selectionStart, selectionStart + 3);
+        }
+    }
+
+    /**
+     * Inserts a Markdown divider at the cursor position.
+     * <p>
+     * If text is selected it'll be removed and divider will be added at its position instead.
+     *
+     * @param text The {@link MarkdownBuffer} text to which to add Markdown divider.
+     */
+    public static void addDivider(@NonNull MarkdownBuffer text) {
+        if (isSelectionInsideFence(text)) {
+            return;
+        }
+        int selectionStart = text.getSelectionStart();
+
+        StringBuilder stringBuilder = new StringBuilder();
+        if (selectionStart > 0) {
+            stringBuilder.append("\n");
+        }
+        stringBuilder.append("___\n");
+
+        replaceSelectedText(text, stringBuilder);
+        updateCursorPosition(text, true);
+    }
+
+    /**
+     * Turns the selected tag to Markdown header tag "# text" with the specified heading level.
+     * <p>
+     * If no text is selected then the whole line at which the cursor is currently positioned will
+     * be changed to Markdown header tag instead. If the line is already a header its level is
+     * replaced with the specified one, or the header tag is removed if the levels are equal.
+     *
+     * @param text  The {@link MarkdownBuffer} text to which to add Markdown header tag.
+     * @param level The heading level. Must be in range from 1, inclusive, to 6, inclusive.
+     */
+    public static void addHeader(@NonNull MarkdownBuffer text,
+            @IntRange(from = 1, to = 6) int level) {
+        if (level < 1 || level > 6) {
+            throw new IllegalArgumentException(
+                    "level: Heading level must be in range from 1, inclusive, to 6, inclusive.");
+        }
+        if (isSelectionInsideFence(text)) {
+            return;
+        }
+
+        int lineStart = text.getLineStart(
+                Math.min(text.getSelectionStart(), text.getSelectionEnd()));
+        int currentLevel = getHeaderLevel(text, lineStart);
+        if (currentLevel > 0) {
+            if (currentLevel == level) {
+                int markupEnd = lineStart + currentLevel;
+                if (markupEnd < text.length() && text.charAt(markupEnd) == ' ') {
+                    markupEnd++;
+                }
+                text.replace(lineStart, markupEnd, "");
+            } else {
+                StringBuilder tag = new StringBuilder(level);
+                for (int i = 0; i < level; i++) {
+                    tag.append('#');
+                }
+                text.replace(lineStart, lineStart + currentLevel, tag);
+            }
+            return;
+        }
+
+        if (!hasSelection(text)) {
+            moveSelectionStartToStartOfLine(text);
+            moveSelectionEndToEndOfLine(text);
+        }
+
+        CharSequence selectedText = getSelectedText(text);
+
+        StringBuilder result = new StringBuilder();
+        int selectionStart = text.getSelectionStart();
+        if (selectionStart > 0 && text.charAt(selectionStart - 1) != '\n') {
+            result.append("\n");
+        }
+        for (int i = 0; i < level; i++) {
+            result.append("#");
+        }
+        result.append(" ").append(selectedText);
+        int selectionEnd = text.getSelectionEnd();
+        if (selectionEnd < text.length() && text.charAt(selectionEnd) != '\n') {
+            result.append("\n");
+        }
+
+        replaceSelectedText(text, result);
+
+        selectionEnd = text.getSelectionEnd();
+        if (selectionEnd < text.length() && text.charAt(selectionEnd - 1) != '\n') {
+            text.setSelection(selectionEnd + 1);
+        }
+    }
+
+    /**
+     * Inserts a markdown list to the specified text at the currently selected position.
+     * <p>
+     * If all of the selected lines are already items of a list of the specified type their list
+     * tags are removed instead.
+     *
+     * @param text     The {@link MarkdownBuffer} text to which to add markdown list.
+     * @param listType The type of the list.
+     */
+    public static void addList(@NonNull MarkdownBuffer text, @ListType int listType) {
+        String tag;
+        int itemType;
+        switch (listType) {
+            case LIST_TYPE_NUMBERS:
+                tag = null;
+                itemType = MarkdownLines.BLOCK_NUMBERED_ITEM;
+                break;
+            case LIST_TYPE_TASKS:
+                tag = "- [ ] ";
+                itemType = MarkdownLines.BLOCK_TASK_ITEM;
+                break;
+            case LIST_TYPE_BULLETS:
+                tag = "- ";
+                itemType = MarkdownLines.BLOCK_BULLET_ITEM;
+                break;
+            default:
+                throw new IllegalArgumentException("listType: Unknown list type.");
+        }
+        if (isSelectionInsideFence(text) || removeLineTags(text, itemType)) {
+            return;
+        }
+
+        if (!hasSelection(text)) {
+            moveSelectionStartToStartOfLine(text);
+            moveSelectionEndToEndOfLine(text);
+        }
+
+        int selectionStart = Math.min(text.getSelectionStart(), text.getSelectionEnd());
+        int selectionEnd = Math.max(text.getSelectionStart(), text.getSelectionEnd());
+
+        // Trailing line feeds of the selection are dropped from the list.
+        int contentEnd = selectionEnd;
+        while (contentEnd > selectionStart && text.charAt(contentEnd - 1) == '\n') {
+            contentEnd--;
+        }
+
+        int lineCount = 1;
+        for (int i = selectionStart; i < contentEnd; i++) {
+            if (text.charAt(i) == '\n') {
+                lineCount++;
+            }
+        }
+        int maxTagLength = tag != null ? tag.length() : String.valueOf(lineCount).length() + 2;
+        StringBuilder stringBuilder = new StringBuilder(
+                contentEnd - selectionStart + lineCount * maxTagLength + 4);
+
+        requireEmptyLineAbove(text, stringBuilder, selectionStart);
+        int listStart = stringBuilder.length();
+
+        int number = 1;
+        int lineStart = selectionStart;
+        while (lineStart < contentEnd) {
+            int lineEnd = lineStart;
+            while (lineEnd < contentEnd && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+
+            if (lineEnd == lineStart && stringBuilder.length() != listStart) {
+                stringBuilder.append('\n');
+            } else {
+                if (stringBuilder.length() > listStart) {
+                    stringBuilder.append('\n');
+                }
+                if (!startsWithTag(text, lineStart, lineEnd, tag, number)) {
+                    appendTag(stringBuilder, tag, number);
+                }
+                stringBuilder.append(text, lineStart, lineEnd);
+                number++;
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        if (stringBuilder.length() == listStart) {
+            appendTag(stringBuilder, tag, number);
+        }
+
+        requireEmptyLineBelow(text, stringBuilder, selectionEnd);
+
+        text.replace(selectionStart, selectionEnd, stringBuilder);
+        text.setSelection(selectionStart + stringBuilder.length());
+        updateCursorPosition(text, selectionEnd > selectionStart);
+    }
+
+    /**
+     * Inserts a markdown code block to the specified text at the currently selected position.
+     * <p>
+     * If the text is already surrounded with the inline code tag "`" the tag is removed instead.
+     * If the selection is located inside of a fenced code block, including its fence lines, the
+     * fence lines are removed instead.
+     *
+     * @param text The {@link MarkdownBuffer} text to which to add markdown code block.
+     */
+    public static void addCode(@NonNull MarkdownBuffer text) {
+        if (removeFence(text) || isSelectionInsideFence(text) ||
+                removeSurroundingTag(text, "`")) {
+            return;
+        }
+        if (!hasSelection(text)) {
+            selectWordAroundCursor(text);
+        }
+
+        CharSequence selectedText = getSelectedText(text);
+        int selectionStart = text.getSelectionStart();
+        String string = selectedText.toString();
+        boolean isCodeBlock = string.contains("\n");
+
+        StringBuilder stringBuilder = new StringBuilder();
+        if (isCodeBlock) {
+            requireEmptyLineAbove(text, stringBuilder, selectionStart);
+            stringBuilder.append("```\n").append(selectedText).append("\n```");
+            requireEmptyLineBelow(text, stringBuilder, text.getSelectionEnd());
+        } else {
+            stringBuilder.append("`").append(string.trim()).append("`");
+        }
+
+        replaceSelectedText(text, stringBuilder);
+        if (isCodeBlock) {
+            updateCursorPosition(text, true);
+        } else {
+            int charactersToGoBack = 0;
+            if (selectedText.length() == 0) {
+                charactersToGoBack = 1;
+            }
+
+            text.setSelection(text.getSelectionEnd() - charactersToGoBack);
+        }
+    }
+
+    /**
+     * Inserts a markdown quote block to the specified text at the currently selected position.
+     * <p>
+     * If all of the selected lines are already quoted the quote tags are removed instead.
+     *
+     * @param text The {@link MarkdownBuffer} text to which to add quote block.
+     */
+    public static void addQuote(@NonNull MarkdownBuffer text) {
+        if (isSelectionInsideFence(text) || removeLineTags(text, MarkdownLines.BLOCK_QUOTE)) {
+            return;
+        }
+        if (!hasSelection(text)) {
+            moveSelectionStartToStartOfLine(text);
+            moveSelectionEndToEndOfLine(text);
+        }
+        addQuote(text, getSelectedText(text).toString().trim());
+    }
+
+    /**
+     * Inserts a markdown quote block to the specified text at the currently selected position.
+     * <p>
+     * Inside of fenced code the quote text is inserted as it is, without the quote markup.
+     *
+     * @param text  The {@link MarkdownBuffer} text to which to add quote block.
+     * @param quote The text to insert as a quote.
+     */
+    public static void addQuote(@NonNull MarkdownBuffer text, @NonNull CharSequence quote) {
+        if (isSelectionInsideFence(text)) {
+            // Inside of code the quote can only be inserted as plain text.
+            replaceSelectedText(text, quote);
+            return;
+        }
+        int selectionStart = text.getSelectionStart();
+
+        StringBuilder stringBuilder = new StringBuilder();
+        requireEmptyLineAbove(text, stringBuilder, selectionStart);
+
+        stringBuilder.append("> ");
+        if (quote.length() > 0) {
+            stringBuilder.append(quote.toString().replace("\n", "\n> "));
+        }
+
+        requireEmptyLineBelow(text, stringBuilder, text.getSelectionEnd());
+
+        replaceSelectedText(text, stringBuilder);
+        updateCursorPosition(text, quote.length() > 0);
+    }
+
+    /**
+     * Inserts an empty markdown table to the specified text at the currently selected position and
+     * moves the cursor to its first header cell.
+     * <p>
+     * If text is selected it'll be removed and the table will be added at its position instead.
+     *
+     * @param text    The {@link MarkdownBuffer} text to which to add markdown table.
+     * @param rows    The number of rows, including the header row. Must be at least 1.
+     * @param columns The number of columns. Must be at least 1.
+     */
+    public static void addTable(@NonNull MarkdownBuffer text, int rows, int columns) {
+        if (rows < 1 || columns < 1) {
+            throw new IllegalArgumentException(
+                    "rows: " + rows + ", columns: " + columns + ": Must be at least 1.");
+        }
+        if (isSelectionInsideFence(text)) {
+            return;
+        }
+        int selectionStart = text.getSelectionStart();
+
+        StringBuilder stringBuilder = new StringBuilder();
+        requireEmptyLineAbove(text, stringBuilder, selectionStart);
+        int firstCell = stringBuilder.length() + 2;
+        int[] columnWidths = new int[columns];
+        Arrays.fill(columnWidths, MarkdownTables.MIN_COLUMN_WIDTH);
+        int[] noCells = new int[0];
+        for (int row = 0; row <= rows; row++) {
+            if (row > 0) {
+                stringBuilder.append('\n');
+            }
+            MarkdownTables.appendRow(stringBuilder, text, noCells, columnWidths, row == 1);
+        }
+        requireEmptyLineBelow(text, stringBuilder, text.getSelectionEnd());
+
+        replaceSelectedText(text, stringBuilder);
+        text.setSelection(Math.min(selectionStart, text.getSelectionEnd()) + firstCell);
+    }
+
+    /**
+     * Aligns the cells of the markdown table at the cursor position, padding them with spaces so
+     * that the pipes of all rows line up. The cursor stays in its cell.
+     * <p>
+     * Only tables whose rows start with "|" and whose second row is the delimiter row are
+     * formatted.
+     *
+     * @param text The {@link MarkdownBuffer} text containing the table.
+     * @return Whether there was a table to format.
+     */
+    public static boolean formatTable(@NonNull MarkdownBuffer text) {
+        int selectionStart = text.getSelectionStart();
+        return !text.isInsideFence(selectionStart) &&
+                MarkdownTables.formatTable(text, selectionStart, false) != null;
+    }
+
+    /**
+     * Appends list tag to the builder. Ordered list tags are specified by a null tag and number.
+     */
+    private static void appendTag(StringBuilder stringBuilder, String tag, int number) {
+        if (tag != null) {
+            stringBuilder.append(tag);
+        } else {
+            stringBuilder.append(number).append(". ");
+        }
+    }
+
+    /**
+     * Checks whether the line, with surrounding whitespace trimmed, starts with the list tag.
+     * Ordered list tags are specified by a null tag and number.
+     */
+    private static boolean startsWithTag(CharSequence text, int start, int end, String tag,
+            int number) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (tag != null) {
+            if (end - start < tag.length()) {
+                return false;
+            }
+            for (int i = 0; i < tag.length(); i++) {
+                if (text.charAt(start + i) != tag.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int divisor = 1;
+        while (divisor <= number / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            if (start >= end || text.charAt(start++) != '0' + number / divisor % 10) {
+                return false;
+            }
+        }
+        return end - start >= 2 && text.charAt(start) == '.' && text.charAt(start + 1) == ' ';
+    }
+
+    private static void requireEmptyLineAbove(@NonNull MarkdownBuffer text,
+            StringBuilder stringBuilder, int position) {
+        if (position <= 0) {
+            return;
+        }
+
+        if (text.charAt(position - 1) != '\n') {
+            stringBuilder.insert(0, "\n\n");
+        } else if (position > 1 && text.charAt(position - 2) != '\n') {
+            stringBuilder.insert(0, "\n");
+        }
+    }
+
+    private static void requireEmptyLineBelow(@NonNull MarkdownBuffer text,
+            StringBuilder stringBuilder, int position) {
+        if (position > text.length() - 1) {
+            return;
+        }
+
+        if (text.charAt(position) != '\n') {
+            stringBuilder.append("\n\n");
+        } else if (position < text.length() - 2 && text.charAt(position + 1) != '\n') {
+            stringBuilder.append("\n");
+        }
+    }
+
+    private static void moveSelectionStartToStartOfLine(@NonNull MarkdownBuffer text) {
+        int selectionStart = text.getLineStart(text.getSelectionStart());
+        text.setSelection(selectionStart, text.getSelectionEnd());
+    }
+
+    private static void moveSelectionEndToEndOfLine(@NonNull MarkdownBuffer text) {
+        int selectionEnd = text.getLineEnd(text.getSelectionEnd());
+        text.setSelection(text.getSelectionStart(), selectionEnd);
+    }
+
+    private static void updateCursorPosition(@NonNull MarkdownBuffer text, boolean goToNewLine) {
+        int selectionEnd = text.getSelectionEnd();
+        if (selectionEnd > text.length()) {
+            return;
+        }
+
+        while (selectionEnd > 0 && text.charAt(selectionEnd - 1) == '\n') {
+            selectionEnd -= 1;
+        }
+        if (goToNewLine && selectionEnd < text.length()) {
+            selectionEnd += 1;
+        }
+        text.setSelection(selectionEnd);
+    }
+
+    private static void selectWordAroundCursor(@NonNull MarkdownBuffer text) {
+        int selectionStart = text.getSelectionStart();
+        int selectionEnd = text.getSelectionEnd();
+        if (selectionStart != selectionEnd) {
+            return;
+        }
+
+        while (selectionStart > 0 && !Character.isWhitespace(text.charAt(selectionStart - 1))) {
+            selectionStart -= 1;
+        }
+        while (selectionEnd < text.length() &&
+                !Character.isWhitespace(text.charAt(selectionEnd))) {
+            selectionEnd += 1;
+        }
+
+        text.setSelection(selectionStart, selectionEnd);
+    }
+
+    private static CharSequence getSelectedText(@NonNull MarkdownBuffer text) {
+        int selectionStart = text.getSelectionStart();
+        int selectionEnd = text.getSelectionEnd();
+
+        int min = Math.max(0, Math.min(selectionStart, selectionEnd));
+        int max = Math.max(0, Math.max(selectionStart, selectionEnd));
+
+        return text.subSequence(min, max);
+    }
+
+    private static void replaceSelectedText(@NonNull MarkdownBuffer text,
+            @NonNull CharSequence replacementText) {
+        int selectionStart = text.getSelectionStart();
+        int selectionEnd = text.getSelectionEnd();
+
+        int min = Math.max(0, Math.min(selectionStart, selectionEnd));
+        int max = Math.max(0, Math.max(selectionStart, selectionEnd));
+
+        text.replace(min, max, replacementText);
+        text.setSelection(min + replacementText.length());
+    }
+
+    /**
+     * @return Whether the selected text, or the word at the cursor position if no text is
+     * selected, is surrounded with the tag, possibly nested in other inline tags.
+     */
+    static boolean hasSurroundingTag(@NonNull MarkdownBuffer text, @NonNull String tag) {
+        return findSurroundingTag(text, tag, false);
+    }
+
+    private static boolean removeSurroundingTag(@NonNull MarkdownBuffer text, String tag) {
+        return findSurroundingTag(text, tag, true);
+    }
+
+    /**
+     * Looks for the tag surrounding the selected text, or the word at the cursor position if no
+     * text is selected. The tag is looked for at both ends of the selection, inside and outside
+     * of it, and the rest of the text is not examined.
+     *
+     * @param remove Whether to remove the found tag.
+     * @return Whether the tag was found.
+     */
+    private static boolean findSurroundingTag(@NonNull MarkdownBuffer text, String tag,
+            boolean remove) {
+        int selectionStart = text.getSelectionStart();
+        int selectionEnd = text.getSelectionEnd();
+        boolean hasSelection = selectionStart != selectionEnd;
+        int start = Math.min(selectionStart, selectionEnd);
+        int end = Math.max(selectionStart, selectionEnd);
+        if (hasSelection) {
+            while (start < end && Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+        } else {
+            while (start > 0 && !Character.isWhitespace(text.charAt(start - 1))) {
+                start--;
+            }
+            while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+                end++;
+            }
+        }
+
+        int tagLength = tag.length();
+        if (!remove) {
+            // Tags nested in other tags, such as "**" in "_**text**_", are found by skipping the
+            // outer tags.
+            String outerTag;
+            while ((end - start < 2 * tagLength || !isTagAt(text, start, tag) ||
+                    !isTagAt(text, end - tagLength, tag)) &&
+                    (outerTag = findInlineTag(text, start, end)) != null) {
+                start += outerTag.length();
+                end -= outerTag.length();
+            }
+        }
+        int contentStart;
+        int contentEnd;
+        if (end - start >= 2 * tagLength && isTagAt(text, start, tag) &&
+                isTagAt(text, end - tagLength, tag)) {
+            if (!remove) {
+                return true;
+            }
+            text.replace(end - tagLength, end, "");
+            text.replace(start, start + tagLength, "");
+            contentStart = start;
+            contentEnd = end - 2 * tagLength;
+        } else if (start >= tagLength && end + tagLength <= text.length() &&
+                isTagAt(text, start - tagLength, tag) && isTagAt(text, end, tag)) {
+            if (!remove) {
+                return true;
+            }
+            text.replace(end, end + tagLength, "");
+            text.replace(start - tagLength, start, "");
+            contentStart = start - tagLength;
+            contentEnd = end - tagLength;
+        } else {
+            return false;
+        }
+
+        if (hasSelection) {
+            text.setSelection(contentStart, contentEnd);
+        } else {
+            text.setSelection(contentEnd);
+        }
+        return true;
+    }
+
+    /**
+     * @return The inline tag surrounding the range from the inside, or null if there is none.
+     */
+    private static String findInlineTag(@NonNull CharSequence text, int start, int end) {
+        for (String tag : INLINE_TAGS) {
+            if (end - start >= 2 * tag.length() && isTagAt(text, start, tag) &&
+                    isTagAt(text, end - tag.length(), tag)) {
+                return tag;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the fence lines of the fenced code block containing the selection, leaving its
+     * content selected.
+     *
+     * @return Whether the fence lines were removed.
+     */
+    private static boolean removeFence(@NonNull MarkdownBuffer text) {
+        int selectionStart = Math.min(text.getSelectionStart(), text.getSelectionEnd());
+        int selectionEnd = Math.max(text.getSelectionStart(), text.getSelectionEnd());
+        int firstLineStart = text.getLineStart(selectionStart);
+        if (!text.isInsideFence(firstLineStart)) {
+            return false;
+        }
+
+        // Fence lines alternate between opening and closing ones from the start of the fenced
+        // lines, which may contain several adjacent blocks.
+        int regionStart = firstLineStart;
+        while (regionStart > 0 && text.isInsideFence(regionStart - 1)) {
+            regionStart = text.getLineStart(regionStart - 1);
+        }
+        int openStart = -1;
+        for (int lineStart = regionStart; lineStart <= firstLineStart; ) {
+            int lineEnd = text.getLineEnd(lineStart);
+            if (MarkdownLines.isFence(text, lineStart, lineEnd)) {
+                openStart = openStart == -1 ? lineStart : -1;
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (openStart == -1) {
+            // The selection starts on a closing fence line.
+            return false;
+        }
+
+        int openEnd = text.getLineEnd(openStart);
+        int closeStart = openEnd + 1;
+        while (closeStart <= text.length()) {
+            int lineEnd = text.getLineEnd(closeStart);
+            if (MarkdownLines.isFence(text, closeStart, lineEnd)) {
+                break;
+            }
+            closeStart = lineEnd + 1;
+        }
+        if (closeStart > text.length() || selectionEnd > text.getLineEnd(closeStart)) {
+            // Unclosed fences and selections extending past the closing fence are left as is.
+            return false;
+        }
+
+        int closeEnd = text.getLineEnd(closeStart);
+        int contentLength;
+        if (closeStart == openEnd + 1) {
+            text.replace(openStart, closeEnd, "");
+            contentLength = 0;
+        } else {
+            text.replace(closeStart - 1, closeEnd, "");
+            text.replace(openStart, openEnd + 1, "");
+            contentLength = closeStart - 1 - (openEnd + 1);
+        }
+        if (selectionStart != selectionEnd) {
+            text.setSelection(openStart, openStart + contentLength);
+        } else {
+            int cursor = selectionStart - (openEnd + 1 - openStart);
+            text.setSelection(Math.max(openStart, Math.min(cursor, openStart + contentLength)));
+        }
+        return true;
+    }
+
+    /**
+     * Removes block tags of the specified type from the lines touched by the selection, if all of
+     * the non-empty lines have them.
+     *
+     * @return Whether the tags were removed.
+     */
+    private static boolean removeLineTags(@NonNull MarkdownBuffer text, int blockType) {
+        if (!hasLineTags(text, blockType)) {
+            return false;
+        }
+        int selectionStart = Math.min(text.getSelectionStart(), text.getSelectionEnd());
+        int selectionEnd = Math.max(text.getSelectionStart(), text.getSelectionEnd());
+        int start = text.getLineStart(selectionStart);
+        int end = text.getLineEnd(selectionEnd);
+
+        StringBuilder stringBuilder = new StringBuilder(end - start);
+        int firstTagLength = -1;
+        for (int lineStart = start; lineStart <= end; ) {
+            int lineEnd = text.getLineEnd(lineStart);
+            int tagLength = lineEnd > lineStart ?
+                    MarkdownLines.getMarkupLength(text, lineStart, lineEnd, blockType) : 0;
+            if (firstTagLength == -1) {
+                firstTagLength = tagLength;
+            }
+            if (lineStart > start) {
+                stringBuilder.append('\n');
+            }
+            stringBuilder.append(text, lineStart + tagLength, lineEnd);
+            lineStart = lineEnd + 1;
+        }
+
+        text.replace(start, end, stringBuilder);
+        if (selectionStart != selectionEnd) {
+            text.setSelection(start, start + stringBuilder.length());
+        } else {
+            text.setSelection(start + Math.max(0, selectionStart - start - firstTagLength));
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether all of the non-empty lines touched by the selection have block tags of the
+     * specified type, and there is at least one such line.
+     */
+    static boolean hasLineTags(@NonNull MarkdownBuffer text, int blockType) {
+        int start = text.getLineStart(Math.min(text.getSelectionStart(), text.getSelectionEnd()));
+        int end = text.getLineEnd(Math.max(text.getSelectionStart(), text.getSelectionEnd()));
+        boolean hasTags = false;
+        for (int lineStart = start; lineStart <= end; ) {
+            int lineEnd = text.getLineEnd(lineStart);
+            if (lineEnd > lineStart) {
+                if (MarkdownLines.classifyLine(text, lineStart, lineEnd) != blockType) {
+                    return false;
+                }
+                hasTags = true;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return hasTags;
+    }
+
+    /**
+     * @return Whether the line at the start of the selection is a header of the specified level.
+     */
+    static boolean hasHeader(@NonNull MarkdownBuffer text, int level) {
+        int lineStart = text.getLineStart(
+                Math.min(text.getSelectionStart(), text.getSelectionEnd()));
+        return getHeaderLevel(text, lineStart) == level;
+    }
+
+    /**
+     * @return The level of the header at the specified line start, or 0 if it is not a header.
+     */
+    private static int getHeaderLevel(@NonNull MarkdownBuffer text, int lineStart) {
+        int level = 0;
+        while (level <= 6 && lineStart + level < text.length() &&
+                text.charAt(lineStart + level) == '#') {
+            level++;
+        }
+        int markupEnd = lineStart + level;
+        if (level == 0 || level > 6 || markupEnd < text.length() &&
+                text.charAt(markupEnd) != ' ' && text.charAt(markupEnd) != '\n') {
+            return 0;
+        }
+        return level;
+    }
+
+    /**
+     * @return Whether the tag is located at the offset. Underscores surrounded by letters or
+     * digits, as in "snake_case", are not tags.
+     */
+    private static boolean isTagAt(@NonNull CharSequence text, int offset, String tag) {
+        return regionMatches(text, offset, tag) &&
+                (tag.charAt(0) != '_' || !MarkdownLines.isInsideWord(text, offset));
+    }
+
+    private static boolean regionMatches(@NonNull CharSequence text, int start, String tag) {
+        for (int i = 0; i < tag.length(); i++) {
+            if (text.charAt(start + i) != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the selection starts or ends inside of fenced code, where Markdown markup
+     * would become a part of the code.
+     */
+    private static boolean isSelectionInsideFence(@NonNull MarkdownBuffer text) {
+        return text.isInsideFence(text.getSelectionStart()) ||
+                text.isInsideFence(text.getSelectionEnd());
+    }
+
+    private static boolean hasSelection(@NonNull MarkdownBuffer text) {
+        return text.getSelectionStart() != text.getSelectionEnd();
+    }
+
+    @IntDef({LIST_TYPE_BULLETS, LIST_TYPE_NUMBERS, LIST_TYPE_TASKS})
+    public @interface ListType {
+    }
+}
@@ -0,0 +1,166 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Classification of single lines of Markdown text into the blocks produced by {@link
+ * MarkdownCommands}. Lines are inspected in place without copying any part of the text.
+ */
+final class MarkdownLines {
+    static final int BLOCK_EMPTY = 0;
+    static final int BLOCK_PARAGRAPH = 1;
+    static final int BLOCK_HEADER = 2;
+    static final int BLOCK_BULLET_ITEM = 3;
+    static final int BLOCK_NUMBERED_ITEM = 4;
+    static final int BLOCK_TASK_ITEM = 5;
+    static final int BLOCK_QUOTE = 6;
+    static final int BLOCK_DIVIDER = 7;
+    static final int BLOCK_FENCE = 8;
+    static final int BLOCK_CODE = 9;
+
+    private MarkdownLines() { /* cannot be instantiated */ }
+
+    /**
+     * Classifies a single line of text which is not located inside of a fenced code block.
+     *
+     * @param text  The text containing the line.
+     * @param start The start of the line.
+     * @param end   The end of the line, excluding the line feed.
+     * @return The block type of the line.
+     */
+    static int classifyLine(@NonNull CharSequence text, int start, int end) {
+        if (isBlank(text, start, end)) {
+            return BLOCK_EMPTY;
+        }
+        if (isFence(text, start, end)) {
+            return BLOCK_FENCE;
+        }
+        if (isDivider(text, start, end)) {
+            return BLOCK_DIVIDER;
+        }
+
+        char first = text.charAt(start);
+        if (first == '#') {
+            int level = 1;
+            while (start + level < end && text.charAt(start + level) == '#') {
+                level++;
+            }
+            if (level <= 6 && (start + level == end || text.charAt(start + level) == ' ')) {
+                return BLOCK_HEADER;
+            }
+            return BLOCK_PARAGRAPH;
+        }
+        if (first == '>') {
+            return BLOCK_QUOTE;
+        }
+        if ((first == '-' || first == '*' || first == '+') &&
+                start + 1 < end && text.charAt(start + 1) == ' ') {
+            if (isTaskMarker(text, start + 2, end)) {
+                return BLOCK_TASK_ITEM;
+            }
+            return BLOCK_BULLET_ITEM;
+        }
+        if (first >= '0' && first <= '9') {
+            int position = start + 1;
+            while (position < end && text.charAt(position) >= '0' &&
+                    text.charAt(position) <= '9') {
+                position++;
+            }
+            if (position + 1 < end && text.charAt(position) == '.' &&
+                    text.charAt(position + 1) == ' ') {
+                return BLOCK_NUMBERED_ITEM;
+            }
+        }
+        return BLOCK_PARAGRAPH;
+    }
+
+    /**
+     * Returns the length of block markup at the start of a line of the specified type.
+     *
+     * @param text  The text containing the line.
+     * @param start The start of the line.
+     * @param end   The end of the line, excluding the line feed.
+     * @param type  The block type of the line.
+     * @return The number of markup characters at the start of the line.
+     */
+    static int getMarkupLength(@NonNull CharSequence text, int start, int end, int type) {
+        int position = start;
+        switch (type) {
+            case BLOCK_HEADER:
+                while (position < end && text.charAt(position) == '#') {
+                    position++;
+                }
+                break;
+            case BLOCK_QUOTE:
+                position++;
+                break;
+            case BLOCK_BULLET_ITEM:
+                position += 2;
+                break;
+            case BLOCK_TASK_ITEM:
+                position += 5;
+                break;
+            case BLOCK_NUMBERED_ITEM:
+                while (text.charAt(position) != '.') {
+                    position++;
+                }
+                position++;
+                break;
+            default:
+                return 0;
+        }
+        if (position < end && text.charAt(position) == ' ') {
+            position++;
+        }
+        return position - start;
+    }
+
+    private static boolean isTaskMarker(CharSequence text, int start, int end) {
+        if (start + 2 >= end || text.charAt(start) != '[' || text.charAt(start + 2) != ']') {
+            return false;
+        }
+        char mark = text.charAt(start + 1);
+        return mark == ' ' || mark == 'x' || mark == 'X';
+    }
+
+    /**
+     * @return Whether the character at the offset is surrounded by letters or digits, as the
+     * underscores in "snake_case", in which case it is not inline markup.
+     */
+    static boolean isInsideWord(CharSequence text, int offset) {
+        return offset > 0 && offset + 1 < text.length() &&
+                Character.isLetterOrDigit(text.charAt(offset - 1)) &&
+                Character.isLetterOrDigit(text.charAt(offset + 1));
+    }
+
+    static boolean isFence(CharSequence text, int start, int end) {
+        return end - start >= 3 && text.charAt(start) == '`' && text.charAt(start + 1) == '`' &&
+                text.charAt(start + 2) == '`';
+    }
+
+    private static boolean isDivider(CharSequence text, int start, int end) {
+        char marker = text.charAt(start);
+        if (marker != '_' && marker != '-' && marker != '*') {
+            return false;
+        }
+        int markerCount = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == marker) {
+                markerCount++;
+            } else if (c != ' ') {
+                return false;
+            }
+        }
+        return markerCount >= 3;
+    }
+
+    private static boolean isBlank(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,547 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Renders Markdown produced by {@link MarkdownCommands} as HTML.
+ * <p>
+ * The text is split into blocks such as paragraphs, headers, lists, quotes and fenced code, which
+ * are rendered one by one and written to an {@link Appendable}, so the output is never collected
+ * into a single string. The HTML of every block is cached under a hash of the block's source text.
+ * When the same renderer is used for consecutive versions of a document only the blocks which
+ * changed since the previous call are rendered again, and the remaining ones are copied from the
+ * cache. Blocks which are not found in the most recently rendered document are removed from the
+ * cache.
+ * <p>
+ * Instances are not thread safe.
+ */
+public final class MarkdownRenderer {
+    private final HashMap<Long, CachedBlock> cache = new HashMap<>();
+    private final StringBuilder blockHtml = new StringBuilder();
+    private int generation;
+
+    @VisibleForTesting
+    int lastRenderedBlockCount;
+
+    /**
+     * Renders the specified Markdown text as HTML.
+     *
+     * @param markdown The Markdown text to render.
+     * @param out      The {@link Appendable} to which to write the HTML.
+     * @throws IOException If writing to the output fails.
+     */
+    public void render(@NonNull CharSequence markdown, @NonNull Appendable out)
+            throws IOException {
+        generation++;
+        lastRenderedBlockCount = 0;
+
+        int length = markdown.length();
+        int start = 0;
+        while (start <= length) {
+            int end = lineEnd(markdown, start);
+            int type = MarkdownLines.classifyLine(markdown, start, end);
+            if (type == MarkdownLines.BLOCK_EMPTY) {
+                start = end + 1;
+                continue;
+            }
+
+            int blockEnd = findBlockEnd(markdown, start, end, type);
+            writeBlock(markdown, start, blockEnd, type, out);
+            start = blockEnd + 1;
+        }
+
+        Iterator<CachedBlock> iterator = cache.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().generation != generation) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Renders the specified Markdown text as HTML.
+     *
+     * @param markdown The Markdown text to render.
+     * @return The HTML.
+     */
+    @NonNull
+    public String render(@NonNull CharSequence markdown) {
+        StringBuilder out = new StringBuilder(markdown.length() + markdown.length() / 4);
+        try {
+            render(markdown, out);
+        } catch (IOException e) {
+            // StringBuilder doesn't throw.
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Removes all rendered blocks from the cache.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    private void writeBlock(CharSequence markdown, int start, int end, int type, Appendable out)
+            throws IOException {
+        long hash = hash(markdown, start, end);
+        CachedBlock block = cache.get(hash);
+        if (block == null || !block.matches(markdown, start, end)) {
+            blockHtml.setLength(0);
+            renderBlock(markdown, start, end, type, blockHtml);
+            block = new CachedBlock(markdown.subSequence(start, end).toString(),
+                    blockHtml.toString());
+            cache.put(hash, block);
+            lastRenderedBlockCount++;
+        }
+        block.generation = generation;
+        out.append(block.html);
+    }
+
+    /**
+     * Returns the end of the block which starts with the specified line, excluding the line feed
+     * of its last line.
+     */
+    private static int findBlockEnd(CharSequence markdown, int start, int end, int type) {
+        int length = markdown.length();
+        switch (type) {
+            case MarkdownLines.BLOCK_HEADER:
+            case MarkdownLines.BLOCK_DIVIDER:
+                return end;
+            case MarkdownLines.BLOCK_FENCE:
+                while (end < length) {
+                    int lineStart = end + 1;
+                    end = lineEnd(markdown, lineStart);
+                    if (MarkdownLines.isFence(markdown, lineStart, end)) {
+                        break;
+                    }
+                }
+                return end;
+        }
+
+        while (end < length) {
+            int lineStart = end + 1;
+            int lineEnd = lineEnd(markdown, lineStart);
+            if (!continuesBlock(type, MarkdownLines.classifyLine(markdown, lineStart, lineEnd))) {
+                break;
+            }
+            end = lineEnd;
+        }
+        return end;
+    }
+
+    private static boolean continuesBlock(int blockType, int lineType) {
+        switch (blockType) {
+            case MarkdownLines.BLOCK_PARAGRAPH:
+                return lineType == MarkdownLines.BLOCK_PARAGRAPH;
+            case MarkdownLines.BLOCK_QUOTE:
+                return lineType == MarkdownLines.BLOCK_QUOTE;
+            case MarkdownLines.BLOCK_NUMBERED_ITEM:
+                return lineType == MarkdownLines.BLOCK_NUMBERED_ITEM ||
+                        lineType == MarkdownLines.BLOCK_PARAGRAPH;
+            case MarkdownLines.BLOCK_BULLET_ITEM:
+            case MarkdownLines.BLOCK_TASK_ITEM:
+                return lineType == MarkdownLines.BLOCK_BULLET_ITEM ||
+                        lineType == MarkdownLines.BLOCK_TASK_ITEM ||
+                        lineType == MarkdownLines.BLOCK_PARAGRAPH;
+            default:
+                return false;
+        }
+    }
+
+    private static void renderBlock(CharSequence markdown, int start, int end, int type,
+            StringBuilder out) {
+        switch (type) {
+            case MarkdownLines.BLOCK_HEADER:
+                int level = 0;
+                while (start + level < end && markdown.charAt(start + level) == '#') {
+                    level++;
+                }
+                int contentStart = start +
+                        MarkdownLines.getMarkupLength(markdown, start, end, type);
+                out.append("<h").append(level).append('>');
+                renderInline(markdown, contentStart, end, out);
+                out.append("</h").append(level).append(">\n");
+                break;
+            case MarkdownLines.BLOCK_DIVIDER:
+                out.append("<hr>\n");
+                break;
+            case MarkdownLines.BLOCK_FENCE:
+                renderFence(markdown, start, end, out);
+                break;
+            case MarkdownLines.BLOCK_QUOTE:
+                out.append("<blockquote>\n<p>");
+                renderLines(markdown, start, end, out);
+                out.append("</p>\n</blockquote>\n");
+                break;
+            case MarkdownLines.BLOCK_NUMBERED_ITEM:
+                long number = 0;
+                for (int i = start; markdown.charAt(i) != '.'; i++) {
+                    number = number * 10 + markdown.charAt(i) - '0';
+                }
+                out.append(number == 1 ? "<ol>\n" : "<ol start=\"" + number + "\">\n");
+                renderItems(markdown, start, end, out);
+                out.append("</ol>\n");
+                break;
+            case MarkdownLines.BLOCK_BULLET_ITEM:
+            case MarkdownLines.BLOCK_TASK_ITEM:
+                out.append("<ul>\n");
+                renderItems(markdown, start, end, out);
+                out.append("</ul>\n");
+                break;
+            default:
+                out.append("<p>");
+                renderLines(markdown, start, end, out);
+                out.append("</p>\n");
+                break;
+        }
+    }
+
+    private static void renderFence(CharSequence markdown, int start, int end, StringBuilder out) {
+        int firstLineEnd = lineEnd(markdown, start);
+        int languageStart = start + 3;
+        while (languageStart < firstLineEnd && markdown.charAt(languageStart) == '`') {
+            languageStart++;
+        }
+        out.append("<pre><code");
+        if (languageStart < firstLineEnd) {
+            out.append(" class=\"language-");
+            escape(markdown, languageStart, firstLineEnd, out);
+            out.append('"');
+        }
+        out.append('>');
+
+        int codeEnd = end;
+        int lastLineStart = lineStart(markdown, end);
+        if (lastLineStart > start && MarkdownLines.isFence(markdown, lastLineStart, end)) {
+            codeEnd = lastLineStart;
+        }
+        if (firstLineEnd < codeEnd) {
+            escape(markdown, firstLineEnd + 1, codeEnd, out);
+        }
+        out.append("</code></pre>\n");
+    }
+
+    /**
+     * Renders the content of consecutive lines, which are joined with line feeds, skipping the
+     * block markup at their starts.
+     */
+    private static void renderLines(CharSequence markdown, int start, int end, StringBuilder out) {
+        int lineStart = start;
+        while (true) {
+            int lineEnd = lineEnd(markdown, lineStart);
+            int type = MarkdownLines.classifyLine(markdown, lineStart, lineEnd);
+            int contentStart = lineStart +
+                    MarkdownLines.getMarkupLength(markdown, lineStart, lineEnd, type);
+            renderInline(markdown, contentStart, lineEnd, out);
+            if (lineEnd >= end) {
+                return;
+            }
+            out.append('\n');
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Renders list items. Paragraph lines which follow an item are rendered as its continuation.
+     */
+    private static void renderItems(CharSequence markdown, int start, int end, StringBuilder out) {
+        int lineStart = start;
+        while (true) {
+            int lineEnd = lineEnd(markdown, lineStart);
+            int type = MarkdownLines.classifyLine(markdown, lineStart, lineEnd);
+            int contentStart = lineStart +
+                    MarkdownLines.getMarkupLength(markdown, lineStart, lineEnd, type);
+            if (type == MarkdownLines.BLOCK_PARAGRAPH) {
+                out.append('\n');
+            } else {
+                if (lineStart > start) {
+                    out.append("</li>\n");
+                }
+                out.append("<li>");
+                if (type == MarkdownLines.BLOCK_TASK_ITEM) {
+                    char mark = markdown.charAt(lineStart + 3);
+                    out.append(mark == ' ' ? "<input type=\"checkbox\" disabled> " :
+                            "<input type=\"checkbox\" disabled checked> ");
+                }
+            }
+            renderInline(markdown, contentStart, lineEnd, out);
+            if (lineEnd >= end) {
+                out.append("</li>\n");
+                return;
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private static void renderInline(CharSequence markdown, int start, int end,
+            StringBuilder out) {
+        DelimiterSearch search = new DelimiterSearch(markdown, end);
+        int position = start;
+        int textStart = start;
+        while (position < end) {
+            char c = markdown.charAt(position);
+            int next = -1;
+            if (c == '`') {
+                int close = search.indexOf(DelimiterSearch.CODE, position + 1);
+                if (close != -1) {
+                    escape(markdown, textStart, position, out);
+                    out.append("<code>");
+                    escape(markdown, position + 1, close, out);
+                    out.append("</code>");
+                    next = close + 1;
+                }
+            } else if (c == '_' && !MarkdownLines.isInsideWord(markdown, position)) {
+                next = renderPair(markdown, search, position, DelimiterSearch.UNDERSCORE, "em",
+                        textStart, out);
+            } else if (c == '*' && position + 1 < end && markdown.charAt(position + 1) == '*') {
+                next = renderPair(markdown, search, position, DelimiterSearch.ASTERISKS,
+                        "strong", textStart, out);
+            } else if (c == '~' && position + 1 < end && markdown.charAt(position + 1) == '~') {
+                next = renderPair(markdown, search, position, DelimiterSearch.TILDES, "del",
+                        textStart, out);
+            } else if (c == '[' || (c == '!' && position + 1 < end &&
+                    markdown.charAt(position + 1) == '[')) {
+                next = renderLink(markdown, search, position, textStart, out);
+            }
+
+            if (next == -1) {
+                position++;
+            } else {
+                position = next;
+                textStart = next;
+            }
+        }
+        escape(markdown, textStart, end, out);
+    }
+
+    /**
+     * Renders text surrounded with the specified delimiter, together with the text preceding it.
+     *
+     * @return The offset after the closing delimiter, or -1 if the delimiter is not closed.
+     */
+    private static int renderPair(CharSequence markdown, DelimiterSearch search, int open,
+            int delimiter, String element, int textStart, StringBuilder out) {
+        int contentStart = open + DelimiterSearch.DELIMITERS[delimiter].length();
+        int close = search.indexOf(delimiter, contentStart);
+        if (close == -1 || close == contentStart) {
+            return -1;
+        }
+        escape(markdown, textStart, open, out);
+        out.append('<').append(element).append('>');
+        renderInline(markdown, contentStart, close, out);
+        out.append("</").append(element).append('>');
+        return close + DelimiterSearch.DELIMITERS[delimiter].length();
+    }
+
+    /**
+     * Renders a link "[text](url)" or an image "![text](url)", together with the text preceding
+     * it.
+     *
+     * @return The offset after the link, or -1 if there is no link at the specified offset.
+     */
+    private static int renderLink(CharSequence markdown, DelimiterSearch search, int open,
+            int textStart, StringBuilder out) {
+        boolean isImage = markdown.charAt(open) == '!';
+        int labelStart = open + (isImage ? 2 : 1);
+        int labelEnd = search.indexOf(DelimiterSearch.LABEL_END, labelStart);
+        if (labelEnd == -1) {
+            return -1;
+        }
+        int urlStart = labelEnd + 2;
+        int urlEnd = search.indexOf(DelimiterSearch.URL_END, urlStart);
+        if (urlEnd == -1) {
+            return -1;
+        }
+
+        escape(markdown, textStart, open, out);
+        if (!isSafeUrl(markdown, urlStart, urlEnd)) {
+            // Links with other schemes, such as "javascript:", are rendered as their text.
+            if (isImage) {
+                escape(markdown, labelStart, labelEnd, out);
+            } else {
+                renderInline(markdown, labelStart, labelEnd, out);
+            }
+        } else if (isImage) {
+            out.append("<img src=\"");
+            escape(markdown, urlStart, urlEnd, out);
+            out.append("\" alt=\"");
+            escape(markdown, labelStart, labelEnd, out);
+            out.append("\">");
+        } else {
+            out.append("<a href=\"");
+            escape(markdown, urlStart, urlEnd, out);
+            out.append("\">");
+            renderInline(markdown, labelStart, labelEnd, out);
+            out.append("</a>");
+        }
+        return urlEnd + 1;
+    }
+
+    /**
+     * @return Whether the URL is a relative path or uses the http, https or mailto scheme.
+     */
+    private static boolean isSafeUrl(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ':') {
+                return regionMatches(text, start, i, "http") ||
+                        regionMatches(text, start, i, "https") ||
+                        regionMatches(text, start, i, "mailto");
+            }
+            if (c == '/' || c == '?' || c == '#') {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(CharSequence text, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void escape(CharSequence text, int start, int end, StringBuilder out) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                default:
+                    out.append(c);
+                    break;
+            }
+        }
+    }
+
+    private static int lineStart(CharSequence text, int offset) {
+        while (offset > 0 && text.charAt(offset - 1) != '\n') {
+            offset--;
+        }
+        return offset;
+    }
+
+    private static int lineEnd(CharSequence text, int offset) {
+        int length = text.length();
+        while (offset < length && text.charAt(offset) != '\n') {
+            offset++;
+        }
+        return offset;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a part of the text.
+     */
+    private static long hash(CharSequence text, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class CachedBlock {
+        final String source;
+        final String html;
+        int generation;
+
+        CachedBlock(String source, String html) {
+            this.source = source;
+            this.html = html;
+        }
+
+        boolean matches(CharSequence markdown, int start, int end) {
+            if (source.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < source.length(); i++) {
+                if (source.charAt(i) != markdown.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Finds closing delimiters of inline markup in a range of a line. The result of the last search
+     * of every delimiter is remembered, and answers later searches starting between the start of
+     * that search and its result, so that unclosed delimiters don't scan the rest of the line
+     * again and rendering a line stays linear.
+     */
+    private static final class DelimiterSearch {
+        static final int CODE = 0;
+        static final int UNDERSCORE = 1;
+        static final int ASTERISKS = 2;
+        static final int TILDES = 3;
+        static final int LABEL_END = 4;
+        static final int URL_END = 5;
+        static final String[] DELIMITERS = {"`", "_", "**", "~~", "](", ")"};
+
+        private final CharSequence text;
+        private final int end;
+        private final int[] searchStarts = {-1, -1, -1, -1, -1, -1};
+        private final int[] results = new int[DELIMITERS.length];
+
+        DelimiterSearch(CharSequence text, int end) {
+            this.text = text;
+            this.end = end;
+        }
+
+        /**
+         * @return The offset of the first delimiter at or after the start, or -1 if there is none.
+         */
+        int indexOf(int delimiter, int start) {
+            int searchStart = searchStarts[delimiter];
+            int result = results[delimiter];
+            if (searchStart != -1 && start >= searchStart && (result == -1 || start <= result)) {
+                return result;
+            }
+
+            String tag = DELIMITERS[delimiter];
+            result = -1;
+            for (int i = start; i <= end - tag.length(); i++) {
+                if (matches(tag, i) &&
+                        (delimiter != UNDERSCORE || !MarkdownLines.isInsideWord(text, i))) {
+                    result = i;
+                    break;
+                }
+            }
+            searchStarts[delimiter] = start;
+            results[delimiter] = result;
+            return result;
+        }
+
+        private boolean matches(String tag, int offset) {
+            for (int i = 0; i < tag.length(); i++) {
+                if (text.charAt(offset + i) != tag.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
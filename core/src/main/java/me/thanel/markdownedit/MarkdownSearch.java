@@ -0,0 +1,270 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Incremental search for a query in Markdown text, which can skip code and link URLs.
+ * <p>
+ * The text is searched with the Boyer-Moore-Horspool algorithm through {@link
+ * CharSequence#charAt(int)}, so most characters are skipped without being read and the text is
+ * never copied. Matches are returned one at a time by {@link #findNext()}, which allows showing
+ * the first matches before the whole text is searched.
+ * <p>
+ * Code and links are recognized only on the lines on which a candidate match is found. Fenced
+ * code is looked up from the text itself when it is a {@link MarkdownBuffer}, otherwise a {@link
+ * FenceIndex} is built on first use.
+ */
+public final class MarkdownSearch {
+    /**
+     * Skip matches located in fenced code blocks.
+     */
+    public static final int SKIP_FENCED_CODE = 1;
+    /**
+     * Skip matches overlapping inline code "`code`".
+     */
+    public static final int SKIP_INLINE_CODE = 1 << 1;
+    /**
+     * Skip matches overlapping URLs of links "[text](url)" and images "![text](url)".
+     */
+    public static final int SKIP_LINK_URLS = 1 << 2;
+
+    private static final int SKIP_TABLE_SIZE = 256;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final CharSequence text;
+    private final String query;
+    private final int flags;
+    private final int[] skipTable = new int[SKIP_TABLE_SIZE];
+    private FenceIndex fenceIndex;
+    private int position;
+
+    // Ranges skipped on the line which was examined last, as pairs of start and end.
+    private int lineStart = -1;
+    private int lineEnd = -1;
+    private int[] skippedRanges = new int[INITIAL_CAPACITY];
+    private int skippedRangeCount;
+
+    /**
+     * Creates a search for the query in the specified text, which must not change while the
+     * search is in use.
+     *
+     * @param text  The text to search.
+     * @param query The text to find. Can't be empty.
+     * @param flags Combination of {@link #SKIP_FENCED_CODE}, {@link #SKIP_INLINE_CODE} and {@link
+     *              #SKIP_LINK_URLS}, or 0 to search the whole text.
+     */
+    public MarkdownSearch(@NonNull CharSequence text, @NonNull String query, int flags) {
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("query: Can't be empty.");
+        }
+        this.text = text;
+        this.query = query;
+        this.flags = flags;
+
+        // Characters are hashed by their low byte. Sharing a slot only makes the shift shorter.
+        int last = query.length() - 1;
+        Arrays.fill(skipTable, query.length());
+        for (int i = 0; i < last; i++) {
+            skipTable[query.charAt(i) & 0xFF] = last - i;
+        }
+    }
+
+    /**
+     * Finds all matches of the query in the text.
+     *
+     * @param text  The text to search.
+     * @param query The text to find. Can't be empty.
+     * @param flags The search flags, as for {@link #MarkdownSearch(CharSequence, String, int)}.
+     * @return The start offsets of the matches.
+     */
+    @NonNull
+    public static int[] findAll(@NonNull CharSequence text, @NonNull String query, int flags) {
+        MarkdownSearch search = new MarkdownSearch(text, query, flags);
+        int[] matches = new int[INITIAL_CAPACITY];
+        int count = 0;
+        int match;
+        while ((match = search.findNext()) != -1) {
+            if (count == matches.length) {
+                matches = Arrays.copyOf(matches, count * 2);
+            }
+            matches[count++] = match;
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Replaces all matches of the query in the buffer, each with its own replacement made from the
+     * last match towards the first one, so that the text between the matches is left untouched.
+     * The selection is moved together with the text around it.
+     *
+     * @param buffer      The buffer in which to replace the matches.
+     * @param query       The text to find. Can't be empty.
+     * @param replacement The text with which to replace the matches.
+     * @param flags       The search flags, as for {@link #MarkdownSearch(CharSequence, String,
+     *                    int)}.
+     * @return The number of replaced matches.
+     */
+    public static int replaceAll(@NonNull MarkdownBuffer buffer, @NonNull String query,
+            @NonNull CharSequence replacement, int flags) {
+        int[] matches = findAll(buffer, query, flags);
+        if (matches.length == 0) {
+            return 0;
+        }
+
+        int queryLength = query.length();
+        int selectionStart = shiftOffset(buffer.getSelectionStart(), matches, queryLength,
+                replacement.length());
+        int selectionEnd = shiftOffset(buffer.getSelectionEnd(), matches, queryLength,
+                replacement.length());
+        for (int i = matches.length - 1; i >= 0; i--) {
+            buffer.replace(matches[i], matches[i] + queryLength, replacement);
+        }
+        buffer.setSelection(selectionStart, selectionEnd);
+        return matches.length;
+    }
+
+    /**
+     * Finds the next match of the query, following the previous match without overlapping it.
+     *
+     * @return The start offset of the match, or -1 if there are no more matches.
+     */
+    public int findNext() {
+        int last = query.length() - 1;
+        char lastChar = query.charAt(last);
+        int length = text.length();
+        while (position + last < length) {
+            char c = text.charAt(position + last);
+            if (c == lastChar && matchesAt(position) && !isSkipped(position)) {
+                int match = position;
+                position += query.length();
+                return match;
+            }
+            position += skipTable[c & 0xFF];
+        }
+        position = length;
+        return -1;
+    }
+
+    /**
+     * @return The offset from which the search continues. All matches before it were found.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    private boolean matchesAt(int offset) {
+        for (int i = query.length() - 2; i >= 0; i--) {
+            if (text.charAt(offset + i) != query.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isSkipped(int start) {
+        if ((flags & SKIP_FENCED_CODE) != 0 && isInsideFence(start)) {
+            return true;
+        }
+        if ((flags & (SKIP_INLINE_CODE | SKIP_LINK_URLS)) == 0) {
+            return false;
+        }
+
+        if (start < lineStart || start > lineEnd) {
+            findSkippedRanges(start);
+        }
+        int end = start + query.length();
+        for (int i = 0; i < skippedRangeCount; i += 2) {
+            if (start < skippedRanges[i + 1] && end > skippedRanges[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isInsideFence(int offset) {
+        if (text instanceof MarkdownBuffer) {
+            return ((MarkdownBuffer) text).isInsideFence(offset);
+        }
+        if (fenceIndex == null) {
+            fenceIndex = new FenceIndex(text);
+        }
+        return fenceIndex.isInsideFence(offset);
+    }
+
+    /**
+     * Finds the inline code and link URLs on the line containing the specified offset.
+     */
+    private void findSkippedRanges(int offset) {
+        int start = offset;
+        while (start > 0 && text.charAt(start - 1) != '\n') {
+            start--;
+        }
+        int end = offset;
+        while (end < text.length() && text.charAt(end) != '\n') {
+            end++;
+        }
+        lineStart = start;
+        lineEnd = end;
+        skippedRangeCount = 0;
+
+        int index = start;
+        while (index < end) {
+            char c = text.charAt(index);
+            int next = index + 1;
+            if (c == '`' && (flags & SKIP_INLINE_CODE) != 0) {
+                int close = indexOf(text, '`', index + 1, end);
+                if (close != -1) {
+                    addSkippedRange(index, close + 1);
+                    next = close + 1;
+                }
+            } else if (c == ']' && index + 1 < end && text.charAt(index + 1) == '(' &&
+                    (flags & SKIP_LINK_URLS) != 0) {
+                int close = indexOf(text, ')', index + 2, end);
+                if (close != -1) {
+                    addSkippedRange(index + 2, close);
+                    next = close + 1;
+                }
+            }
+            index = next;
+        }
+    }
+
+    private void addSkippedRange(int start, int end) {
+        if (skippedRangeCount + 2 > skippedRanges.length) {
+            skippedRanges = Arrays.copyOf(skippedRanges, skippedRanges.length * 2);
+        }
+        skippedRanges[skippedRangeCount++] = start;
+        skippedRanges[skippedRangeCount++] = end;
+    }
+
+    private static int indexOf(CharSequence text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the offset by the length difference of the matches preceding it. Offsets inside a
+     * match are moved to the end of its replacement.
+     */
+    private static int shiftOffset(int offset, int[] matches, int queryLength,
+            int replacementLength) {
+        int delta = replacementLength - queryLength;
+        int shifted = offset;
+        for (int match : matches) {
+            if (match >= offset) {
+                break;
+            }
+            if (offset < match + queryLength) {
+                return match + replacementLength + shifted - offset;
+            }
+            shifted += delta;
+        }
+        return shifted;
+    }
+}
@@ -0,0 +1,325 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Parsing and formatting of GitHub Flavored Markdown tables whose rows start with a pipe:
+ * <pre>
+ * | Name  | Value |
+ * | :---- | ----: |
+ * | One   | 1     |
+ * </pre>
+ * Formatted tables have every cell padded with spaces to the width of its column, so that the
+ * pipes of all rows line up. Cells are located in place without copying any part of the text.
+ */
+final class MarkdownTables {
+    static final int MIN_COLUMN_WIDTH = 3;
+
+    private MarkdownTables() { /* cannot be instantiated */ }
+
+    /**
+     * @param text  The text containing the line.
+     * @param start The start of the line.
+     * @param end   The end of the line, excluding the line feed.
+     * @return Whether the line is a row of a table.
+     */
+    static boolean isTableRow(@NonNull CharSequence text, int start, int end) {
+        return start < end && text.charAt(start) == '|';
+    }
+
+    /**
+     * Finds the cells of a table row.
+     *
+     * @param text  The text containing the row.
+     * @param start The start of the row, at its leading pipe.
+     * @param end   The end of the row, excluding the line feed.
+     * @return The contents of the cells without surrounding spaces, as pairs of start and end.
+     */
+    @NonNull
+    static int[] findCells(@NonNull CharSequence text, int start, int end) {
+        int[] cells = new int[8];
+        int count = 0;
+        int cellStart = start + 1;
+        for (int i = cellStart; i <= end; i++) {
+            boolean isCellEnd = i == end || (text.charAt(i) == '|' && text.charAt(i - 1) != '\\');
+            if (!isCellEnd) {
+                continue;
+            }
+
+            int contentStart = cellStart;
+            int contentEnd = i;
+            while (contentStart < contentEnd && text.charAt(contentStart) == ' ') {
+                contentStart++;
+            }
+            while (contentEnd > contentStart && text.charAt(contentEnd - 1) == ' ') {
+                contentEnd--;
+            }
+            // Text after the last pipe is a cell only if it's not blank.
+            if (i < end || contentStart < contentEnd) {
+                if (count + 2 > cells.length) {
+                    cells = Arrays.copyOf(cells, cells.length * 2);
+                }
+                cells[count++] = contentStart;
+                cells[count++] = contentEnd;
+            }
+            cellStart = i + 1;
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    /**
+     * @return Whether all cells of the row are delimiter cells such as "---", ":--" or "-:".
+     */
+    static boolean isDelimiterRow(@NonNull CharSequence text, @NonNull int[] cells) {
+        if (cells.length == 0) {
+            return false;
+        }
+        for (int i = 0; i < cells.length; i += 2) {
+            int start = cells[i];
+            int end = cells[i + 1];
+            if (start < end && text.charAt(start) == ':') {
+                start++;
+            }
+            if (end > start && text.charAt(end - 1) == ':') {
+                end--;
+            }
+            if (start == end) {
+                return false;
+            }
+            for (int j = start; j < end; j++) {
+                if (text.charAt(j) != '-') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of characters displayed for the cell content.
+     */
+    static int measure(@NonNull CharSequence text, int start, int end) {
+        int width = 0;
+        for (int i = start; i < end; i++) {
+            if (!Character.isLowSurrogate(text.charAt(i))) {
+                width++;
+            }
+        }
+        return width;
+    }
+
+    /**
+     * Appends the row with every cell padded to the width of its column. Missing cells are added
+     * as empty cells.
+     *
+     * @param out          The builder to which to append the row.
+     * @param text         The text containing the row.
+     * @param cells        The cells of the row, as returned by {@link #findCells}.
+     * @param columnWidths The widths of the columns.
+     * @param isDelimiter  Whether the row is the delimiter row.
+     */
+    static void appendRow(@NonNull StringBuilder out, @NonNull CharSequence text,
+            @NonNull int[] cells, @NonNull int[] columnWidths, boolean isDelimiter) {
+        out.append('|');
+        for (int column = 0; column < columnWidths.length; column++) {
+            int start = column * 2 < cells.length ? cells[column * 2] : 0;
+            int end = column * 2 < cells.length ? cells[column * 2 + 1] : 0;
+            out.append(' ');
+            if (isDelimiter) {
+                appendDelimiter(out, text, start, end, columnWidths[column]);
+            } else {
+                out.append(text, start, end);
+                appendRepeated(out, ' ', columnWidths[column] - measure(text, start, end));
+            }
+            out.append(" |");
+        }
+    }
+
+    /**
+     * Extends the content of the cell whose trailing spaces contain the specified offset up to
+     * the offset, so that spaces typed at the end of a cell are kept when the row is formatted.
+     *
+     * @param text   The text containing the row.
+     * @param cells  The cells of the row, as returned by {@link #findCells}.
+     * @param offset The offset of the cursor.
+     */
+    static void extendCellToOffset(@NonNull CharSequence text, @NonNull int[] cells, int offset) {
+        for (int i = 1; i < cells.length; i += 2) {
+            if (offset <= cells[i]) {
+                return;
+            }
+            int end = cells[i];
+            while (end < offset && text.charAt(end) == ' ') {
+                end++;
+            }
+            if (end == offset) {
+                cells[i] = offset;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Formats the table containing the specified offset, keeping the cursor in its cell.
+     *
+     * @param text        The text containing the table.
+     * @param offset      The offset located in the table.
+     * @param keepSpaces  Whether to keep the spaces preceding the cursor at the end of its cell.
+     * @return The widths of the cells of the formatted table by row and column, or null if there
+     * was no table to format. Cells of the delimiter row have a width of 0.
+     */
+    static int[][] formatTable(@NonNull MarkdownBuffer text, int offset, boolean keepSpaces) {
+        int tableStart = text.getLineStart(offset);
+        if (!isTableRow(text, tableStart, text.getLineEnd(offset))) {
+            return null;
+        }
+        while (tableStart > 0) {
+            int previousStart = text.getLineStart(tableStart - 1);
+            if (!isTableRow(text, previousStart, tableStart - 1)) {
+                break;
+            }
+            tableStart = previousStart;
+        }
+
+        int[][] rows = new int[8][];
+        int[] rowStarts = new int[8];
+        int rowCount = 0;
+        int tableEnd = tableStart;
+        int lineStart = tableStart;
+        while (lineStart <= text.length()) {
+            int lineEnd = text.getLineEnd(lineStart);
+            if (!isTableRow(text, lineStart, lineEnd)) {
+                break;
+            }
+            if (rowCount == rows.length) {
+                rows = Arrays.copyOf(rows, rowCount * 2);
+                rowStarts = Arrays.copyOf(rowStarts, rowCount * 2);
+            }
+            rowStarts[rowCount] = lineStart;
+            rows[rowCount++] = findCells(text, lineStart, lineEnd);
+            tableEnd = lineEnd;
+            lineStart = lineEnd + 1;
+        }
+        if (rowCount < 2 || !isDelimiterRow(text, rows[1])) {
+            return null;
+        }
+
+        int selectionStart = text.getSelectionStart();
+        int selectionEnd = text.getSelectionEnd();
+        int columnCount = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (keepSpaces && selectionStart == selectionEnd && row != 1 &&
+                    selectionStart >= rowStarts[row] && selectionStart <= tableEnd &&
+                    (row + 1 == rowCount || selectionStart < rowStarts[row + 1])) {
+                extendCellToOffset(text, rows[row], selectionStart);
+            }
+            columnCount = Math.max(columnCount, rows[row].length / 2);
+        }
+        int[][] cellWidths = new int[rowCount][columnCount];
+        for (int row = 0; row < rowCount; row++) {
+            int[] cells = rows[row];
+            for (int i = 0; row != 1 && i < cells.length; i += 2) {
+                cellWidths[row][i / 2] = measure(text, cells[i], cells[i + 1]);
+            }
+        }
+        int[] columnWidths = new int[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            columnWidths[column] = getColumnWidth(cellWidths, column);
+        }
+
+        StringBuilder formatted = new StringBuilder();
+        int newSelectionStart = -1;
+        int newSelectionEnd = -1;
+        for (int row = 0; row < rowCount; row++) {
+            if (row > 0) {
+                formatted.append('\n');
+            }
+            int rowStart = formatted.length();
+            appendRow(formatted, text, rows[row], columnWidths, row == 1);
+            int rowEnd = row + 1 < rowCount ? rowStarts[row + 1] - 1 : tableEnd;
+            if (selectionStart >= rowStarts[row] && selectionStart <= rowEnd) {
+                newSelectionStart = tableStart + rowStart +
+                        mapOffset(selectionStart, text, rows[row], columnWidths);
+            }
+            if (selectionEnd >= rowStarts[row] && selectionEnd <= rowEnd) {
+                newSelectionEnd = tableStart + rowStart +
+                        mapOffset(selectionEnd, text, rows[row], columnWidths);
+            }
+        }
+
+        // Selection outside of the table is moved together with the text after it.
+        int delta = formatted.length() - (tableEnd - tableStart);
+        if (newSelectionStart == -1) {
+            newSelectionStart = selectionStart > tableEnd ? selectionStart + delta : selectionStart;
+        }
+        if (newSelectionEnd == -1) {
+            newSelectionEnd = selectionEnd > tableEnd ? selectionEnd + delta : selectionEnd;
+        }
+        text.replace(tableStart, tableEnd, formatted);
+        text.setSelection(newSelectionStart, newSelectionEnd);
+        return cellWidths;
+    }
+
+    /**
+     * @param cellWidths The widths of the cells by row and column.
+     * @param column     The column to measure.
+     * @return The width of the widest cell of the column, but at least {@link
+     * #MIN_COLUMN_WIDTH}.
+     */
+    static int getColumnWidth(@NonNull int[][] cellWidths, int column) {
+        int width = MIN_COLUMN_WIDTH;
+        for (int[] rowWidths : cellWidths) {
+            width = Math.max(width, rowWidths[column]);
+        }
+        return width;
+    }
+
+    /**
+     * Maps an offset in a row to the offset in the formatted row, keeping it at the same
+     * position in the content of its cell.
+     *
+     * @param offset       The offset in the row.
+     * @param text         The text containing the row.
+     * @param cells        The cells of the row, as returned by {@link #findCells}.
+     * @param columnWidths The widths of the columns of the formatted row.
+     * @return The offset relative to the start of the formatted row.
+     */
+    static int mapOffset(int offset, @NonNull CharSequence text, @NonNull int[] cells,
+            @NonNull int[] columnWidths) {
+        int cellOffset = 2;
+        for (int i = 0; i < cells.length; i += 2) {
+            int column = i / 2;
+            // Widths are counted in code points, while the content is measured in characters.
+            int length = cells[i + 1] - cells[i];
+            int cellLength = length + columnWidths[column] - measure(text, cells[i], cells[i + 1]);
+            boolean isLastCell = i + 2 >= cells.length;
+            if (isLastCell || offset < cells[i + 2]) {
+                int position = Math.max(0, Math.min(offset, cells[i + 1]) - cells[i]);
+                return cellOffset + Math.min(position, cellLength);
+            }
+            cellOffset += cellLength + 3;
+        }
+        return cellOffset;
+    }
+
+    private static void appendDelimiter(StringBuilder out, CharSequence text, int start,
+            int end, int width) {
+        boolean leftColon = start < end && text.charAt(start) == ':';
+        boolean rightColon = end - start > 1 && text.charAt(end - 1) == ':';
+        if (leftColon) {
+            out.append(':');
+        }
+        appendRepeated(out, '-', width - (leftColon ? 1 : 0) - (rightColon ? 1 : 0));
+        if (rightColon) {
+            out.append(':');
+        }
+    }
+
+    private static void appendRepeated(StringBuilder out, char c, int count) {
+        for (int i = 0; i < count; i++) {
+            out.append(c);
+        }
+    }
+}
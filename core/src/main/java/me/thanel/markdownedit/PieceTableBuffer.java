@@ -0,0 +1,311 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * {@link MarkdownBuffer} storing the text as a piece table over an unchanged original text, for
+ * editing very large documents.
+ * <p>
+ * The text is a sequence of pieces, each referring to a range of either the original text or of
+ * a buffer to which inserted text is appended. Edits only split and replace pieces, so the
+ * original text is never copied. When the original text is opened with {@link #open(File)} it is
+ * a memory-mapped file decoded lazily in chunks, and the heap holds only the pieces, the inserted
+ * text and a few decoded chunks, regardless of the size of the file.
+ * <p>
+ * The fence index needed by {@link #isInsideFence(int)} is built when it is first used.
+ */
+public class PieceTableBuffer implements MarkdownBuffer {
+    private static final int WRITE_CHUNK_LENGTH = 8192;
+
+    private static final class Piece {
+        final boolean isAdded;
+        final int sourceStart;
+        int length;
+        // Offset of the piece in the text.
+        int start;
+
+        Piece(boolean isAdded, int sourceStart, int length) {
+            this.isAdded = isAdded;
+            this.sourceStart = sourceStart;
+            this.length = length;
+        }
+    }
+
+    private final CharSequence original;
+    private final StringBuilder added = new StringBuilder();
+    private final ArrayList<Piece> pieces = new ArrayList<>();
+    private int length;
+    private FenceIndex fenceIndex;
+    private int selectionStart;
+    private int selectionEnd;
+
+    // The last piece found by an offset lookup, as reads are usually sequential.
+    private int lastPieceIndex;
+
+    /**
+     * Creates a buffer editing the specified text, which must not change while the buffer is in
+     * use.
+     *
+     * @param original The original text.
+     */
+    public PieceTableBuffer(@NonNull CharSequence original) {
+        this.original = original;
+        length = original.length();
+        if (length > 0) {
+            pieces.add(new Piece(false, 0, length));
+        }
+    }
+
+    /**
+     * Opens a buffer editing the specified UTF-8 file, which is mapped to memory and read lazily.
+     * The file must not be modified while the buffer is in use. Use {@link #writeTo(Writer)} to
+     * save the edited text.
+     *
+     * @param file The file to edit.
+     * @return The buffer with the text of the file.
+     * @throws IOException If the file can't be read or is larger than 2 GiB.
+     */
+    @NonNull
+    public static PieceTableBuffer open(@NonNull File file) throws IOException {
+        return new PieceTableBuffer(MappedText.open(file));
+    }
+
+    /**
+     * @return The number of pieces which the text consists of.
+     */
+    public int getPieceCount() {
+        return pieces.size();
+    }
+
+    /**
+     * Writes the text to the specified writer, without creating a copy of the whole text.
+     *
+     * @param writer The writer to which to write the text.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(@NonNull Writer writer) throws IOException {
+        char[] chunk = new char[WRITE_CHUNK_LENGTH];
+        for (int start = 0; start < length; start += chunk.length) {
+            int end = Math.min(start + chunk.length, length);
+            getChars(start, end, chunk, 0);
+            writer.write(chunk, 0, end - start);
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void replace(int start, int end, @NonNull CharSequence replacement) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "replace (" + start + " ... " + end + ") has invalid range.");
+        }
+
+        int index = splitAt(start);
+        int endIndex = splitAt(end);
+        pieces.subList(index, endIndex).clear();
+
+        int replacementLength = replacement.length();
+        if (replacementLength > 0) {
+            int addedStart = added.length();
+            added.append(replacement);
+            Piece previous = index > 0 ? pieces.get(index - 1) : null;
+            if (previous != null && previous.isAdded &&
+                    previous.sourceStart + previous.length == addedStart) {
+                // Typed text continues the previous insertion.
+                previous.length += replacementLength;
+            } else {
+                pieces.add(index, new Piece(true, addedStart, replacementLength));
+                index++;
+            }
+        }
+
+        length += replacementLength - (end - start);
+        updatePieceStarts(Math.max(0, index - 1));
+        lastPieceIndex = Math.min(lastPieceIndex, Math.max(0, pieces.size() - 1));
+
+        if (fenceIndex != null) {
+            fenceIndex.onReplace(this, start, end, start + replacementLength);
+        }
+
+        int delta = replacementLength - (end - start);
+        selectionStart = shiftOffset(selectionStart, start, end, delta);
+        selectionEnd = shiftOffset(selectionEnd, start, end, delta);
+    }
+
+    @Override
+    public int getSelectionStart() {
+        return selectionStart;
+    }
+
+    @Override
+    public int getSelectionEnd() {
+        return selectionEnd;
+    }
+
+    @Override
+    public void setSelection(int position) {
+        setSelection(position, position);
+    }
+
+    @Override
+    public void setSelection(int start, int end) {
+        selectionStart = start;
+        selectionEnd = end;
+    }
+
+    @Override
+    public int getLineStart(int offset) {
+        while (offset > 0 && charAt(offset - 1) != '\n') {
+            offset--;
+        }
+        return offset;
+    }
+
+    @Override
+    public int getLineEnd(int offset) {
+        while (offset < length && charAt(offset) != '\n') {
+            offset++;
+        }
+        return offset;
+    }
+
+    @Override
+    public boolean isInsideFence(int offset) {
+        if (fenceIndex == null) {
+            fenceIndex = new FenceIndex(this);
+        }
+        return fenceIndex.isInsideFence(offset);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("charAt: " + index + " is out of bounds.");
+        }
+        Piece piece = pieces.get(findPiece(index));
+        int sourceIndex = piece.sourceStart + index - piece.start;
+        return piece.isAdded ? added.charAt(sourceIndex) : original.charAt(sourceIndex);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "subSequence (" + start + " ... " + end + ") has invalid range.");
+        }
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    private void getChars(int start, int end, char[] dest, int destOffset) {
+        int index = start < end ? findPiece(start) : 0;
+        while (start < end) {
+            Piece piece = pieces.get(index++);
+            int sourceStart = piece.sourceStart + start - piece.start;
+            int count = Math.min(end, piece.start + piece.length) - start;
+            if (piece.isAdded) {
+                added.getChars(sourceStart, sourceStart + count, dest, destOffset);
+            } else if (original instanceof MappedText) {
+                ((MappedText) original).getChars(sourceStart, sourceStart + count, dest,
+                        destOffset);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    dest[destOffset + i] = original.charAt(sourceStart + i);
+                }
+            }
+            start += count;
+            destOffset += count;
+        }
+    }
+
+    /**
+     * Splits the piece containing the specified offset so that a piece starts at it.
+     *
+     * @return The index of the piece starting at the offset, or the piece count if the offset is
+     * the end of the text.
+     */
+    private int splitAt(int offset) {
+        if (offset == length) {
+            return pieces.size();
+        }
+        int index = findPiece(offset);
+        Piece piece = pieces.get(index);
+        if (piece.start == offset) {
+            return index;
+        }
+
+        int headLength = offset - piece.start;
+        Piece tail = new Piece(piece.isAdded, piece.sourceStart + headLength,
+                piece.length - headLength);
+        tail.start = offset;
+        piece.length = headLength;
+        pieces.add(index + 1, tail);
+        return index + 1;
+    }
+
+    /**
+     * @return The index of the piece containing the specified offset.
+     */
+    private int findPiece(int offset) {
+        Piece last = pieces.get(lastPieceIndex);
+        if (offset >= last.start && offset < last.start + last.length) {
+            return lastPieceIndex;
+        }
+        if (lastPieceIndex + 1 < pieces.size()) {
+            Piece next = pieces.get(lastPieceIndex + 1);
+            if (offset >= next.start && offset < next.start + next.length) {
+                return ++lastPieceIndex;
+            }
+        }
+
+        int low = 0;
+        int high = pieces.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (pieces.get(middle).start <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        lastPieceIndex = low;
+        return low;
+    }
+
+    private void updatePieceStarts(int fromIndex) {
+        int start = fromIndex > 0 ?
+                pieces.get(fromIndex - 1).start + pieces.get(fromIndex - 1).length : 0;
+        for (int i = fromIndex; i < pieces.size(); i++) {
+            Piece piece = pieces.get(i);
+            piece.start = start;
+            start += piece.length;
+        }
+    }
+
+    private static int shiftOffset(int offset, int start, int end, int delta) {
+        if (offset >= end) {
+            return offset + delta;
+        }
+        if (offset > start) {
+            return Math.min(offset, end + delta);
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,115 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * {@link MarkdownBuffer} which formats several ranges of a text one after another and then applies
+ * all of the changes to the text as a single replacement.
+ * <p>
+ * Every range is formatted against the unchanged text, with its changes collected in a window
+ * overlaying it, so a command sees the text as if its range was the only one. The windows of the
+ * ranges must follow each other, and once all ranges are formatted the changed region is rebuilt
+ * in one pass from the windows and the unchanged text between them.
+ */
+final class RangeBatch extends WindowedBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final MarkdownBuffer text;
+
+    // Changes of the formatted ranges, in coordinates of the unchanged text.
+    private int[] editStarts = new int[INITIAL_CAPACITY];
+    private int[] editEnds = new int[INITIAL_CAPACITY];
+    private String[] replacements = new String[INITIAL_CAPACITY];
+    private int editCount;
+    private int totalDelta;
+
+    // Resulting selections of the formatted ranges, in coordinates of the changed text.
+    private int[] selections = new int[INITIAL_CAPACITY * 2];
+    private int rangeCount;
+
+    RangeBatch(@NonNull MarkdownBuffer text) {
+        super(text);
+        this.text = text;
+    }
+
+    /**
+     * Starts formatting of the next range, which becomes the selection.
+     */
+    void beginRange(int start, int end) {
+        clearWindow();
+        setSelection(start, end);
+    }
+
+    /**
+     * Finishes formatting of the current range, recording its changes and resulting selection.
+     *
+     * @throws IllegalArgumentException If the changes overlap the changes of a previous range.
+     */
+    void endRange() {
+        if (rangeCount * 2 == selections.length) {
+            selections = Arrays.copyOf(selections, selections.length * 2);
+        }
+        selections[rangeCount * 2] = getSelectionStart() + totalDelta;
+        selections[rangeCount * 2 + 1] = getSelectionEnd() + totalDelta;
+
+        if (hasWindow()) {
+            int windowStart = getWindowStart();
+            if (editCount > 0 && windowStart < editEnds[editCount - 1]) {
+                throw new IllegalArgumentException("ranges: Formatting of range " + rangeCount +
+                        " overlaps formatting of a previous range.");
+            }
+            if (editCount == editStarts.length) {
+                int newCapacity = editCount * 2;
+                editStarts = Arrays.copyOf(editStarts, newCapacity);
+                editEnds = Arrays.copyOf(editEnds, newCapacity);
+                replacements = Arrays.copyOf(replacements, newCapacity);
+            }
+            editStarts[editCount] = windowStart;
+            editEnds[editCount] = getWindowEnd();
+            replacements[editCount] = getWindow().toString();
+            editCount++;
+            totalDelta += getDelta();
+            clearWindow();
+        }
+        rangeCount++;
+    }
+
+    /**
+     * Applies the changes of all formatted ranges to the text as a single replacement and stores
+     * the resulting selection of each range in the specified array, as pairs of start and end.
+     */
+    void apply(@NonNull int[] ranges) {
+        System.arraycopy(selections, 0, ranges, 0, rangeCount * 2);
+        if (editCount == 0) {
+            return;
+        }
+
+        int start = editStarts[0];
+        int end = editEnds[editCount - 1];
+        StringBuilder builder = new StringBuilder(end - start + totalDelta);
+        for (int i = 0; i < editCount; i++) {
+            if (i > 0) {
+                builder.append(text, editEnds[i - 1], editStarts[i]);
+            }
+            builder.append(replacements[i]);
+        }
+        text.replace(start, end, builder);
+    }
+
+    @Override
+    int getOriginalLineStart(int offset) {
+        return text.getLineStart(offset);
+    }
+
+    @Override
+    int getOriginalLineEnd(int offset) {
+        return text.getLineEnd(offset);
+    }
+
+    @Override
+    boolean isOriginalInsideFence(int offset) {
+        return text.isInsideFence(offset);
+    }
+}
@@ -0,0 +1,115 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link MarkdownBuffer} backed by a {@link StringBuilder}, for formatting text outside of Android
+ * views.
+ */
+public class StringMarkdownBuffer implements MarkdownBuffer {
+    private final StringBuilder text;
+    private final FenceIndex fenceIndex;
+    private int selectionStart;
+    private int selectionEnd;
+
+    public StringMarkdownBuffer() {
+        this("");
+    }
+
+    public StringMarkdownBuffer(@NonNull CharSequence text) {
+        this.text = new StringBuilder(text);
+        fenceIndex = new FenceIndex(text);
+    }
+
+    @Override
+    public void replace(int start, int end, @NonNull CharSequence replacement) {
+        if (start < 0 || end > text.length() || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "replace (" + start + " ... " + end + ") has invalid range.");
+        }
+        if (end == start) {
+            text.insert(start, replacement);
+        } else {
+            text.replace(start, end, replacement.toString());
+        }
+        fenceIndex.onReplace(text, start, end, start + replacement.length());
+
+        int delta = replacement.length() - (end - start);
+        selectionStart = shiftOffset(selectionStart, start, end, delta);
+        selectionEnd = shiftOffset(selectionEnd, start, end, delta);
+    }
+
+    @Override
+    public int getSelectionStart() {
+        return selectionStart;
+    }
+
+    @Override
+    public int getSelectionEnd() {
+        return selectionEnd;
+    }
+
+    @Override
+    public void setSelection(int position) {
+        setSelection(position, position);
+    }
+
+    @Override
+    public void setSelection(int start, int end) {
+        selectionStart = start;
+        selectionEnd = end;
+    }
+
+    @Override
+    public int getLineStart(int offset) {
+        while (offset > 0 && text.charAt(offset - 1) != '\n') {
+            offset--;
+        }
+        return offset;
+    }
+
+    @Override
+    public int getLineEnd(int offset) {
+        int length = text.length();
+        while (offset < length && text.charAt(offset) != '\n') {
+            offset++;
+        }
+        return offset;
+    }
+
+    @Override
+    public boolean isInsideFence(int offset) {
+        return fenceIndex.isInsideFence(offset);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.substring(start, end);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    private static int shiftOffset(int offset, int start, int end, int delta) {
+        if (offset >= end) {
+            return offset + delta;
+        }
+        if (offset > start) {
+            return Math.min(offset, end + delta);
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,356 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * {@link MarkdownBuffer} which collects changes of an unchanged text in a window overlaying it,
+ * leaving it to subclasses to apply the window to the text.
+ * <p>
+ * All changes are kept in a single window spanning from the first to the last changed offset.
+ * Reads before and after the window go to the unchanged text, shifted by the length difference of
+ * the window, so that line and fence lookups can use the indexes of the unchanged text.
+ * <p>
+ * Changes made from the end of the text towards its start without overlapping each other, such as
+ * replacements of all matches of a search, are kept as separate hunks until the buffer is read, so
+ * that subclasses can apply them without rewriting the unchanged text between them.
+ */
+abstract class WindowedBuffer implements MarkdownBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final CharSequence text;
+
+    // Changes which are not merged into the window yet, from the last to the first one in the
+    // text. As every hunk precedes the previous one, their offsets are the same in the original
+    // and the current text.
+    private int[] hunkStarts = new int[INITIAL_CAPACITY];
+    private int[] hunkEnds = new int[INITIAL_CAPACITY];
+    private String[] hunkReplacements = new String[INITIAL_CAPACITY];
+    private int hunkCount;
+    private int hunkDelta;
+
+    // Changed region of the text. Window start is the same in original and current text, window
+    // end is expressed in coordinates of the original text.
+    private StringBuilder window;
+    private int windowStart;
+    private int windowEnd;
+
+    private int selectionStart;
+    private int selectionEnd;
+
+    WindowedBuffer(@NonNull CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * @return The start of the line containing the offset of the unchanged text.
+     */
+    abstract int getOriginalLineStart(int offset);
+
+    /**
+     * @return The end of the line containing the offset of the unchanged text.
+     */
+    abstract int getOriginalLineEnd(int offset);
+
+    /**
+     * @return Whether the offset of the unchanged text is located inside of a fenced code block.
+     */
+    abstract boolean isOriginalInsideFence(int offset);
+
+    /**
+     * @return Whether any change was made since the window was last cleared.
+     */
+    boolean hasWindow() {
+        return window != null || hunkCount > 0;
+    }
+
+    /**
+     * Discards the collected changes.
+     */
+    void clearWindow() {
+        window = null;
+        Arrays.fill(hunkReplacements, 0, hunkCount, null);
+        hunkCount = 0;
+        hunkDelta = 0;
+    }
+
+    /**
+     * @return The number of changes kept as separate hunks, or 0 if the changes were merged into
+     * the window.
+     */
+    int getHunkCount() {
+        return hunkCount;
+    }
+
+    /**
+     * @return The start of the hunk, in coordinates of both the original and the current text.
+     * Hunks are ordered from the last to the first one in the text.
+     */
+    int getHunkStart(int hunk) {
+        return hunkStarts[hunk];
+    }
+
+    /**
+     * @return The end of the hunk in coordinates of the original text.
+     */
+    int getHunkEnd(int hunk) {
+        return hunkEnds[hunk];
+    }
+
+    /**
+     * @return The replacement of the hunk.
+     */
+    String getHunkReplacement(int hunk) {
+        return hunkReplacements[hunk];
+    }
+
+    /**
+     * @return The replacement of the changed region, or null if nothing was changed.
+     */
+    CharSequence getWindow() {
+        mergeHunks();
+        return window;
+    }
+
+    /**
+     * @return The start of the changed region, in coordinates of both the original and the
+     * current text.
+     */
+    int getWindowStart() {
+        mergeHunks();
+        return windowStart;
+    }
+
+    /**
+     * @return The end of the changed region in coordinates of the original text.
+     */
+    int getWindowEnd() {
+        mergeHunks();
+        return windowEnd;
+    }
+
+    /**
+     * @return The difference between the lengths of the current and the original text.
+     */
+    int getDelta() {
+        return window == null ? hunkDelta : window.length() - (windowEnd - windowStart);
+    }
+
+    @Override
+    public void replace(int start, int end, @NonNull CharSequence replacement) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "replace (" + start + " ... " + end + ") has invalid range.");
+        }
+
+        if (window == null && (hunkCount == 0 || end <= hunkStarts[hunkCount - 1])) {
+            addHunk(start, end, replacement.toString());
+        } else {
+            mergeHunks();
+            int currentWindowEnd = windowStart + window.length();
+            if (start < windowStart) {
+                window.insert(0, text, start, windowStart);
+                windowStart = start;
+            }
+            if (end > currentWindowEnd) {
+                int extension = end - currentWindowEnd;
+                window.append(text, windowEnd, windowEnd + extension);
+                windowEnd += extension;
+            }
+            window.replace(start - windowStart, end - windowStart, replacement.toString());
+        }
+
+        selectionStart = shiftOffset(selectionStart, start, end, replacement.length());
+        selectionEnd = shiftOffset(selectionEnd, start, end, replacement.length());
+    }
+
+    @Override
+    public int getSelectionStart() {
+        return selectionStart;
+    }
+
+    @Override
+    public int getSelectionEnd() {
+        return selectionEnd;
+    }
+
+    @Override
+    public void setSelection(int position) {
+        setSelection(position, position);
+    }
+
+    @Override
+    public void setSelection(int start, int end) {
+        selectionStart = start;
+        selectionEnd = end;
+    }
+
+    @Override
+    public int getLineStart(int offset) {
+        mergeHunks();
+        if (window == null || offset <= windowStart) {
+            return getOriginalLineStart(offset);
+        }
+
+        int delta = getDelta();
+        int currentWindowEnd = windowStart + window.length();
+        if (offset > currentWindowEnd) {
+            int lineStart = getOriginalLineStart(offset - delta);
+            // A line starting at the window end follows a line feed replaced by the window.
+            if (lineStart > windowEnd) {
+                return lineStart + delta;
+            }
+            offset = currentWindowEnd;
+        }
+
+        for (int i = offset - windowStart - 1; i >= 0; i--) {
+            if (window.charAt(i) == '\n') {
+                return windowStart + i + 1;
+            }
+        }
+        return getOriginalLineStart(windowStart);
+    }
+
+    @Override
+    public int getLineEnd(int offset) {
+        mergeHunks();
+        if (window == null) {
+            return getOriginalLineEnd(offset);
+        }
+
+        int delta = getDelta();
+        int currentWindowEnd = windowStart + window.length();
+        if (offset >= currentWindowEnd) {
+            return getOriginalLineEnd(offset - delta) + delta;
+        }
+        if (offset < windowStart) {
+            int lineEnd = getOriginalLineEnd(offset);
+            if (lineEnd < windowStart) {
+                return lineEnd;
+            }
+            offset = windowStart;
+        }
+
+        for (int i = offset - windowStart; i < window.length(); i++) {
+            if (window.charAt(i) == '\n') {
+                return windowStart + i;
+            }
+        }
+        return getOriginalLineEnd(windowEnd) + delta;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The fence state is read from the unchanged text, so offsets located in the changed region
+     * are resolved at the start of that region.
+     */
+    @Override
+    public boolean isInsideFence(int offset) {
+        mergeHunks();
+        if (window != null && offset > windowStart) {
+            int currentWindowEnd = windowStart + window.length();
+            offset = offset >= currentWindowEnd ? offset - getDelta() : windowStart;
+        }
+        return isOriginalInsideFence(offset);
+    }
+
+    @Override
+    public int length() {
+        return text.length() + getDelta();
+    }
+
+    @Override
+    public char charAt(int index) {
+        mergeHunks();
+        if (window == null || index < windowStart) {
+            return text.charAt(index);
+        }
+        int windowIndex = index - windowStart;
+        if (windowIndex < window.length()) {
+            return window.charAt(windowIndex);
+        }
+        return text.charAt(index - getDelta());
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "subSequence (" + start + " ... " + end + ") has invalid range.");
+        }
+        mergeHunks();
+
+        StringBuilder builder = new StringBuilder(end - start);
+        if (window == null) {
+            return builder.append(text, start, end).toString();
+        }
+
+        int currentWindowEnd = windowStart + window.length();
+        if (start < windowStart) {
+            builder.append(text, start, Math.min(end, windowStart));
+        }
+        if (start < currentWindowEnd && end > windowStart) {
+            builder.append(window, Math.max(start, windowStart) - windowStart,
+                    Math.min(end, currentWindowEnd) - windowStart);
+        }
+        if (end > currentWindowEnd) {
+            int delta = getDelta();
+            builder.append(text, Math.max(start, currentWindowEnd) - delta, end - delta);
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    private void addHunk(int start, int end, String replacement) {
+        if (hunkCount == hunkStarts.length) {
+            int newCapacity = hunkCount * 2;
+            hunkStarts = Arrays.copyOf(hunkStarts, newCapacity);
+            hunkEnds = Arrays.copyOf(hunkEnds, newCapacity);
+            hunkReplacements = Arrays.copyOf(hunkReplacements, newCapacity);
+        }
+        hunkStarts[hunkCount] = start;
+        hunkEnds[hunkCount] = end;
+        hunkReplacements[hunkCount] = replacement;
+        hunkCount++;
+        hunkDelta += replacement.length() - (end - start);
+    }
+
+    /**
+     * Merges the hunks into a single window spanning from the first to the last one, which is
+     * needed before the text can be read.
+     */
+    private void mergeHunks() {
+        if (hunkCount == 0) {
+            return;
+        }
+
+        windowStart = hunkStarts[hunkCount - 1];
+        windowEnd = hunkEnds[0];
+        window = new StringBuilder(windowEnd - windowStart + hunkDelta);
+        int copied = windowStart;
+        for (int i = hunkCount - 1; i >= 0; i--) {
+            window.append(text, copied, hunkStarts[i]).append(hunkReplacements[i]);
+            copied = hunkEnds[i];
+        }
+        Arrays.fill(hunkReplacements, 0, hunkCount, null);
+        hunkCount = 0;
+        hunkDelta = 0;
+    }
+
+    private static int shiftOffset(int offset, int start, int end, int replacementLength) {
+        if (offset >= end) {
+            return offset + replacementLength - (end - start);
+        }
+        if (offset > start) {
+            return Math.min(offset, start + replacementLength);
+        }
+        return offset;
+    }
+}
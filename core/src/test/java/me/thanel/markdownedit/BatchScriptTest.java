@@ -0,0 +1,63 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BatchScriptTest {
+    @Test
+    public void apply_runsCommandsOnSelectedLines() {
+        BatchScript script = BatchScript.parse(
+                "# Migration\nselect line 1\nheader 2\n\nselect lines 2 3\nlist bullets\n");
+        StringMarkdownBuffer text = new StringMarkdownBuffer("Title\nOne\nTwo");
+
+        script.apply(text);
+
+        assertEquals(4, script.getStepCount());
+        assertEquals("## Title\n\n- One\n- Two", text.toString());
+    }
+
+    @Test
+    public void apply_skipsCommandsAfterMissingLine() {
+        BatchScript script = BatchScript.parse("select line 3\nheader 1\nselect all\nquote");
+        StringMarkdownBuffer text = new StringMarkdownBuffer("One\nTwo");
+
+        script.apply(text);
+
+        assertEquals("> One\n> Two", text.toString());
+    }
+
+    @Test
+    public void apply_replacesQuotedArguments() {
+        BatchScript script = BatchScript.parse("replace \"[ ]\" \"\\\"x\\\"\"");
+        StringMarkdownBuffer text = new StringMarkdownBuffer("- [ ] One\n- [ ] Two");
+
+        script.apply(text);
+
+        assertEquals("- \"x\" One\n- \"x\" Two", text.toString());
+    }
+
+    @Test
+    public void apply_leavesTextUnchangedWhenRunAgain() {
+        BatchScript script = BatchScript.parse("select line 1\nheader 2\nselect line 3\nbold\n" +
+                "italic\nselect lines 5 6\nlist bullets\nselect line 8\nquote");
+        StringMarkdownBuffer text = new StringMarkdownBuffer("Title\n\nWords\n\nOne\nTwo\n\nEnd");
+
+        script.apply(text);
+        String formatted = text.toString();
+        script.apply(text);
+
+        assertEquals("## Title\n\n_**Words**_\n\n- One\n- Two\n\n> End", formatted);
+        assertEquals(formatted, text.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_throwsExceptionOnUnknownCommand() {
+        BatchScript.parse("select all\nunderline");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_throwsExceptionOnInvalidHeaderLevel() {
+        BatchScript.parse("header 7");
+    }
+}
@@ -0,0 +1,175 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+public class EditJournalTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replay_appliesChangesRecordedBeforeReopening() throws IOException {
+        File file = createSnapshot("Hello World");
+        EditJournal journal = new EditJournal(file);
+        journal.record(5, 5, ",");
+        journal.record(7, 12, "Wörld 😀");
+        journal.close();
+
+        StringMarkdownBuffer buffer = new StringMarkdownBuffer("Hello World");
+        EditJournal reopened = new EditJournal(file);
+        assertEquals(2, reopened.replay(buffer));
+        reopened.close();
+
+        assertEquals("Hello, Wörld 😀", buffer.toString());
+    }
+
+    @Test
+    public void replay_discardsPartiallyWrittenRecord() throws IOException {
+        File file = createSnapshot("Text");
+        EditJournal journal = new EditJournal(file);
+        journal.record(4, 4, " one");
+        journal.record(8, 8, " two");
+        journal.close();
+        File journalFile = EditJournal.getJournalFile(file);
+        RandomAccessFile output = new RandomAccessFile(journalFile, "rw");
+        output.setLength(journalFile.length() - 3);
+        output.close();
+
+        StringMarkdownBuffer buffer = new StringMarkdownBuffer("Text");
+        EditJournal reopened = new EditJournal(file);
+        assertEquals(1, reopened.replay(buffer));
+        reopened.record(8, 8, " three");
+        reopened.close();
+
+        buffer = new StringMarkdownBuffer("Text");
+        new EditJournal(file).replay(buffer);
+        assertEquals("Text one three", buffer.toString());
+    }
+
+    @Test
+    public void compact_writesSnapshotAndEmptiesJournal() throws IOException {
+        File file = createSnapshot("Text");
+        EditJournal journal = new EditJournal(file);
+        journal.record(0, 4, "Zażółć");
+        journal.compact("Zażółć");
+        journal.record(6, 6, "!");
+        journal.close();
+
+        StringMarkdownBuffer buffer = new StringMarkdownBuffer(readSnapshot(file));
+        EditJournal reopened = new EditJournal(file);
+        assertEquals(1, reopened.replay(buffer));
+        assertFalse(reopened.needsCompaction());
+        reopened.close();
+
+        assertEquals("Zażółć!", buffer.toString());
+    }
+
+    @Test
+    public void record_writesChangeWithoutSync() throws IOException {
+        File file = createSnapshot("Text");
+        EditJournal journal = new EditJournal(file);
+        journal.record(4, 4, "!");
+
+        StringMarkdownBuffer buffer = new StringMarkdownBuffer("Text");
+        EditJournal reopened = new EditJournal(file);
+        assertEquals(1, reopened.replay(buffer));
+        reopened.close();
+        journal.close();
+
+        assertEquals("Text!", buffer.toString());
+    }
+
+    @Test
+    public void compact_keepsChangesRecordedAfterCopy() throws IOException {
+        File file = createSnapshot("Text");
+        EditJournal journal = new EditJournal(file);
+        journal.record(4, 4, "!");
+        long length = journal.getLength();
+        journal.record(5, 5, "?");
+        journal.compact("Text!", length);
+        journal.close();
+
+        StringMarkdownBuffer buffer = new StringMarkdownBuffer(readSnapshot(file));
+        EditJournal reopened = new EditJournal(file);
+        assertEquals(1, reopened.replay(buffer));
+        reopened.close();
+
+        assertEquals("Text!?", buffer.toString());
+        assertFalse(new File(file.getPath() + ".journal.tmp").exists());
+    }
+
+    @Test
+    public void open_restoresChangesOfInterruptedCompaction() throws IOException {
+        File file = createSnapshot("Text");
+        EditJournal journal = new EditJournal(file);
+        long length = journal.getLength();
+        journal.record(4, 4, "!");
+        journal.compact("Text", length);
+        journal.close();
+        // Compaction interrupted after replacing the snapshot leaves the carried changes in the
+        // temporary journal.
+        File journalFile = EditJournal.getJournalFile(file);
+        Files.copy(journalFile.toPath(), new File(file.getPath() + ".journal.tmp").toPath());
+        RandomAccessFile output = new RandomAccessFile(journalFile, "rw");
+        output.setLength(0);
+        output.close();
+
+        StringMarkdownBuffer buffer = new StringMarkdownBuffer("Text");
+        EditJournal reopened = new EditJournal(file);
+        assertEquals(1, reopened.replay(buffer));
+        reopened.close();
+
+        assertEquals("Text!", buffer.toString());
+        assertFalse(new File(file.getPath() + ".journal.tmp").exists());
+    }
+
+    @Test
+    public void open_ignoresJournalOfDifferentSnapshot() throws IOException {
+        File file = createSnapshot("Text");
+        EditJournal journal = new EditJournal(file);
+        journal.record(4, 4, "!");
+        journal.close();
+        createSnapshot("Other");
+
+        EditJournal reopened = new EditJournal(file);
+        assertEquals(0, reopened.replay(new StringMarkdownBuffer("Other")));
+        reopened.close();
+        assertTrue(EditJournal.getJournalFile(file).exists());
+    }
+
+    private File createSnapshot(String text) throws IOException {
+        File file = new File(folder.getRoot(), "document.md");
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(text.getBytes(UTF_8));
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private static String readSnapshot(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+            return new String(bytes, UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FenceIndexTest {
+    @Test
+    public void isInsideFence_includesFenceLines() {
+        FenceIndex index = new FenceIndex("Text\n```\ncode\n```\nText");
+
+        assertFalse(index.isInsideFence(4));
+        assertTrue(index.isInsideFence(5));
+        assertTrue(index.isInsideFence(10));
+        assertTrue(index.isInsideFence(17));
+        assertFalse(index.isInsideFence(18));
+    }
+
+    @Test
+    public void isInsideFence_continuesUnclosedFenceToEnd() {
+        FenceIndex index = new FenceIndex("```\ncode\n```\nText\n```\nmore");
+
+        assertFalse(index.isInsideFence(14));
+        assertTrue(index.isInsideFence(25));
+    }
+
+    @Test
+    public void onReplace_followsOpenedAndClosedFences() {
+        StringBuilder text = new StringBuilder("One\nTwo\n```\nThree");
+        FenceIndex index = new FenceIndex(text);
+
+        text.insert(0, "```\n");
+        index.onReplace(text, 0, 0, 4);
+        assertTrue(index.isInsideFence(6));
+        assertFalse(index.isInsideFence(20));
+
+        text.delete(12, 16);
+        index.onReplace(text, 12, 16, 12);
+        assertTrue(index.isInsideFence(6));
+        assertTrue(index.isInsideFence(14));
+    }
+}
@@ -0,0 +1,52 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LineDiffTest {
+    @Test
+    public void compute_findsChangedLineRanges() {
+        LineDiff diff = LineDiff.compute("One\nTwo\nThree\nFour\n", "One\n2\nThree\nFour\nFive\n");
+
+        assertEquals(2, diff.getHunkCount());
+        assertEquals(1, diff.getOldLine(0));
+        assertEquals(1, diff.getOldLineCount(0));
+        assertEquals(1, diff.getNewLine(0));
+        assertEquals(1, diff.getNewLineCount(0));
+        assertEquals(4, diff.getOldStart(0));
+        assertEquals(8, diff.getOldEnd(0));
+        assertEquals(4, diff.getNewStart(0));
+        assertEquals(6, diff.getNewEnd(0));
+        assertEquals(4, diff.getOldLine(1));
+        assertEquals(0, diff.getOldLineCount(1));
+        assertEquals(1, diff.getNewLineCount(1));
+    }
+
+    @Test
+    public void compute_findsNoHunksForEqualTexts() {
+        assertEquals(0, LineDiff.compute("One\nTwo", new StringBuilder("One\nTwo"))
+                .getHunkCount());
+    }
+
+    @Test
+    public void applyTo_turnsOldTextIntoNewText() {
+        String oldText = "# Title\nA\nB\nC\n\n- one\n- two";
+        String newText = "# Title!\nA\nC\nD\n\n- one\n- two\n";
+        StringMarkdownBuffer buffer = new StringMarkdownBuffer(oldText);
+
+        LineDiff.compute(oldText, newText).applyTo(buffer);
+
+        assertEquals(newText, buffer.toString());
+    }
+
+    @Test
+    public void applyTo_handlesEmptyTexts() {
+        StringMarkdownBuffer buffer = new StringMarkdownBuffer("");
+        LineDiff.compute("", "One\nTwo").applyTo(buffer);
+        assertEquals("One\nTwo", buffer.toString());
+
+        LineDiff.compute("One\nTwo", "").applyTo(buffer);
+        assertEquals("", buffer.toString());
+    }
+}
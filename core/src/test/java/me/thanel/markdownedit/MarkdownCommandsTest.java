@@ -0,0 +1,284 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static me.thanel.markdownedit.util.BufferTestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.BufferTestUtils.createBuffer;
+
+import org.junit.Test;
+
+public class MarkdownCommandsTest {
+    @Test
+    public void addBold_surroundsWordAtCursor() {
+        MarkdownBuffer text = createBuffer("Hello Wo|rld");
+
+        MarkdownCommands.addBold(text);
+
+        assertEqualsWithCursorPosition("Hello **World**|", text);
+    }
+
+    @Test
+    public void addItalic_insertsEmptyTag() {
+        MarkdownBuffer text = createBuffer("Hello |");
+
+        MarkdownCommands.addItalic(text);
+
+        assertEqualsWithCursorPosition("Hello _|_", text);
+    }
+
+    @Test
+    public void addLink_selectsUrlMarker() {
+        MarkdownBuffer text = createBuffer("|Title|");
+
+        MarkdownCommands.addLink(text);
+
+        assertEqualsWithCursorPosition("[Title](|url|)", text);
+    }
+
+    @Test
+    public void addDivider_insertsDividerOnNewLine() {
+        MarkdownBuffer text = createBuffer("Text|");
+
+        MarkdownCommands.addDivider(text);
+
+        assertEqualsWithCursorPosition("Text\n___\n|", text);
+    }
+
+    @Test
+    public void addHeader_turnsWholeLineToHeader() {
+        MarkdownBuffer text = createBuffer("Text\nHel|lo\ntest");
+
+        MarkdownCommands.addHeader(text, 2);
+
+        assertEqualsWithCursorPosition("Text\n## Hello\n|test", text);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addHeader_doesNotAllowMoreThanSixHeadingLevels() {
+        MarkdownBuffer text = createBuffer("");
+
+        //noinspection Range
+        MarkdownCommands.addHeader(text, 7);
+    }
+
+    @Test
+    public void addList_createsOrderedListWithIncreasingNumbers() {
+        MarkdownBuffer text = createBuffer("|One\nTwo\nThree|");
+
+        MarkdownCommands.addList(text, MarkdownCommands.LIST_TYPE_NUMBERS);
+
+        assertEqualsWithCursorPosition("1. One\n2. Two\n3. Three|", text);
+    }
+
+    @Test
+    public void addList_keepsExistingTagsAndEmptyLines() {
+        MarkdownBuffer text = createBuffer("|One\n- Two\n\nThree\n\n|");
+
+        MarkdownCommands.addList(text, MarkdownCommands.LIST_TYPE_BULLETS);
+
+        assertEqualsWithCursorPosition("- One\n- Two\n\n- Three|", text);
+    }
+
+    @Test
+    public void addList_keepsExistingMultiDigitNumbers() {
+        MarkdownBuffer text = createBuffer("|1\n2\n3\n4\n5\n6\n7\n8\n9\n10. Ten\n11|");
+
+        MarkdownCommands.addList(text, MarkdownCommands.LIST_TYPE_NUMBERS);
+
+        assertEqualsWithCursorPosition("1. 1\n2. 2\n3. 3\n4. 4\n5. 5\n6. 6\n7. 7\n8. 8\n9. 9\n"
+                + "10. Ten\n11. 11|", text);
+    }
+
+    @Test
+    public void addCode_createsCodeBlockFromMultipleLines() {
+        MarkdownBuffer text = createBuffer("|One\nTwo|");
+
+        MarkdownCommands.addCode(text);
+
+        assertEqualsWithCursorPosition("```\nOne\nTwo\n```|", text);
+    }
+
+    @Test
+    public void addQuote_turnsWholeLineToQuote() {
+        MarkdownBuffer text = createBuffer("Text\nQu|ote\ntest");
+
+        MarkdownCommands.addQuote(text);
+
+        assertEqualsWithCursorPosition("Text\n\n> Quote\n|\ntest", text);
+    }
+
+    @Test
+    public void addBold_doesNothingInsideFencedCode() {
+        MarkdownBuffer text = createBuffer("```\nint wo|rd;\n```");
+
+        MarkdownCommands.addBold(text);
+
+        assertEqualsWithCursorPosition("```\nint wo|rd;\n```", text);
+    }
+
+    @Test
+    public void addItalic_keepsUnderscoresInsideWords() {
+        MarkdownBuffer text = createBuffer("call snake_|case|_name now");
+
+        MarkdownCommands.addItalic(text);
+
+        assertEqualsWithCursorPosition("call snake__case_|_name now", text);
+    }
+
+    @Test
+    public void addCode_removesFenceOfSelectedContent() {
+        MarkdownBuffer text = createBuffer("```\n|code123|\n```");
+
+        MarkdownCommands.addCode(text);
+
+        assertEqualsWithCursorPosition("|code123|", text);
+    }
+
+    @Test
+    public void addCode_removesFenceOfSelectedBlock() {
+        MarkdownBuffer text = createBuffer("Text\n\n|```\ncode123\n```|");
+
+        MarkdownCommands.addCode(text);
+
+        assertEqualsWithCursorPosition("Text\n\n|code123|", text);
+    }
+
+    @Test
+    public void addCode_removesFenceOfBlockAtCursor() {
+        MarkdownBuffer text = createBuffer("```\na\n```\n```\nb|\nc\n```");
+
+        MarkdownCommands.addCode(text);
+
+        assertEqualsWithCursorPosition("```\na\n```\nb|\nc", text);
+    }
+
+    @Test
+    public void addHeader_doesNothingOnFenceLine() {
+        MarkdownBuffer text = createBuffer("Text\n\n```|\ncode\n```");
+
+        MarkdownCommands.addHeader(text, 1);
+
+        assertEqualsWithCursorPosition("Text\n\n```|\ncode\n```", text);
+    }
+
+    @Test
+    public void addList_addsListAfterClosedFence() {
+        MarkdownBuffer text = createBuffer("```\ncode\n```\nIt|em");
+
+        MarkdownCommands.addList(text, MarkdownCommands.LIST_TYPE_BULLETS);
+
+        assertEqualsWithCursorPosition("```\ncode\n```\n\n- Item|", text);
+    }
+
+    @Test
+    public void addQuote_insertsPlainTextInsideFencedCode() {
+        MarkdownBuffer text = createBuffer("```\n|\n```");
+
+        MarkdownCommands.addQuote(text, "Quote");
+
+        assertEqualsWithCursorPosition("```\nQuote|\n```", text);
+    }
+
+    @Test
+    public void commands_followFenceChanges() {
+        MarkdownBuffer text = createBuffer("Te|xt");
+
+        text.replace(0, 0, "```\n");
+        MarkdownCommands.addItalic(text);
+        text.replace(0, 4, "");
+        MarkdownCommands.addItalic(text);
+
+        assertEqualsWithCursorPosition("_Text_|", text);
+    }
+
+    @Test
+    public void addBold_formatsAllRanges() {
+        MarkdownBuffer text = createBuffer("One two three|");
+        int[] ranges = {0, 3, 8, 13};
+
+        MarkdownCommands.addBold(text, ranges);
+
+        assertEquals("**One** two **three**", text.toString());
+        assertArrayEquals(new int[]{7, 7, 21, 21}, ranges);
+    }
+
+    @Test
+    public void addCode_formatsWordsAtEmptyRanges() {
+        MarkdownBuffer text = createBuffer("|one two");
+        int[] ranges = {1, 1, 5, 5};
+
+        MarkdownCommands.addCode(text, ranges);
+
+        assertEquals("`one` `two`", text.toString());
+        assertArrayEquals(new int[]{5, 5, 11, 11}, ranges);
+    }
+
+    @Test
+    public void addTable_insertsEmptyTableOnNewLines() {
+        MarkdownBuffer text = createBuffer("Text|");
+
+        MarkdownCommands.addTable(text, 2, 2);
+
+        // The cursor marker can't be used as tables contain pipes.
+        assertEquals("Text\n\n|     |     |\n| --- | --- |\n|     |     |", text.toString());
+        assertEquals(8, text.getSelectionStart());
+        assertEquals(8, text.getSelectionEnd());
+    }
+
+    @Test
+    public void formatTable_alignsCellsAndKeepsCursorInCell() {
+        MarkdownBuffer text =
+                new StringMarkdownBuffer("| Name | Value |\n|:-|-:|\n| Longer name | 1 |");
+        text.setSelection(37);
+
+        assertTrue(MarkdownCommands.formatTable(text));
+
+        assertEquals("| Name        | Value |\n| :---------- | ----: |\n| Longer name | 1     |",
+                text.toString());
+        assertEquals(60, text.getSelectionStart());
+    }
+
+    @Test
+    public void formatTable_addsMissingCells() {
+        MarkdownBuffer text = new StringMarkdownBuffer("| a | b |\n| --- | --- |\n| c");
+
+        assertTrue(MarkdownCommands.formatTable(text));
+
+        assertEquals("| a   | b   |\n| --- | --- |\n| c   |     |", text.toString());
+    }
+
+    @Test
+    public void formatTable_keepsEscapedPipesInCells() {
+        MarkdownBuffer text = new StringMarkdownBuffer("| a \\| b |\n| - |");
+
+        assertTrue(MarkdownCommands.formatTable(text));
+
+        assertEquals("| a \\| b |\n| ------ |", text.toString());
+    }
+
+    @Test
+    public void formatTable_ignoresRowsWithoutDelimiterRow() {
+        MarkdownBuffer text = new StringMarkdownBuffer("| a | b |\n| c | d |");
+
+        assertFalse(MarkdownCommands.formatTable(text));
+
+        assertEquals("| a | b |\n| c | d |", text.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void surroundSelectionWith_throwsExceptionOnUnsortedRanges() {
+        MarkdownBuffer text = createBuffer("One two|");
+
+        MarkdownCommands.surroundSelectionWith(text, new int[]{4, 7, 0, 3}, "_");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void surroundSelectionWith_throwsExceptionOnOverlappingChanges() {
+        MarkdownBuffer text = createBuffer("Word|");
+
+        MarkdownCommands.surroundSelectionWith(text, new int[]{1, 1, 2, 2}, "_");
+    }
+}
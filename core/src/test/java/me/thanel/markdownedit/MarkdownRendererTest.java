@@ -0,0 +1,103 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MarkdownRendererTest {
+    @Test
+    public void render_rendersBlocksProducedByCommands() {
+        MarkdownRenderer renderer = new MarkdownRenderer();
+
+        String html = renderer.render("## Title\n\nSome **bold** and _italic_ text\n\n___\n" +
+                "> Quote\n\n- [ ] Task\n- [x] Done\n\n3. Three\n4. Four");
+
+        assertEquals("<h2>Title</h2>\n" +
+                "<p>Some <strong>bold</strong> and <em>italic</em> text</p>\n" +
+                "<hr>\n" +
+                "<blockquote>\n<p>Quote</p>\n</blockquote>\n" +
+                "<ul>\n<li><input type=\"checkbox\" disabled> Task</li>\n" +
+                "<li><input type=\"checkbox\" disabled checked> Done</li>\n</ul>\n" +
+                "<ol start=\"3\">\n<li>Three</li>\n<li>Four</li>\n</ol>\n", html);
+    }
+
+    @Test
+    public void render_rendersLinksAndImages() {
+        MarkdownRenderer renderer = new MarkdownRenderer();
+
+        String html = renderer.render("[Title](http://a.b/?c&d) ![Alt](img.png) ~~old~~ `a < b`");
+
+        assertEquals("<p><a href=\"http://a.b/?c&amp;d\">Title</a> " +
+                "<img src=\"img.png\" alt=\"Alt\"> <del>old</del> <code>a &lt; b</code></p>\n",
+                html);
+    }
+
+    @Test
+    public void render_ignoresUnderscoresInsideWords() {
+        MarkdownRenderer renderer = new MarkdownRenderer();
+
+        String html = renderer.render("use snake_case_name here and _my_var_");
+
+        assertEquals("<p>use snake_case_name here and <em>my_var</em></p>\n", html);
+    }
+
+    @Test
+    public void render_rendersLongLineOfUnclosedDelimiters() {
+        StringBuilder markdown = new StringBuilder("` ** ~~ _a ");
+        for (int i = 0; i < 30000; i++) {
+            markdown.append("[a ](");
+        }
+        MarkdownRenderer renderer = new MarkdownRenderer();
+
+        long startTime = System.nanoTime();
+        String html = renderer.render(markdown);
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+        assertEquals(markdown.length() + 8, html.length());
+        assertTrue("Rendering took " + elapsedMillis + " ms", elapsedMillis < 1000);
+    }
+
+    @Test
+    public void render_rendersLinksWithUnsafeSchemesAsText() {
+        MarkdownRenderer renderer = new MarkdownRenderer();
+
+        String html = renderer.render("[x](javascript:alert(1)) ![y](JavaScript:alert) " +
+                "[a](mailto:a@b.c) [b](docs/a:b.md)");
+
+        assertEquals("<p>x) y <a href=\"mailto:a@b.c\">a</a> " +
+                "<a href=\"docs/a:b.md\">b</a></p>\n", html);
+    }
+
+    @Test
+    public void render_escapesFencedCode() {
+        MarkdownRenderer renderer = new MarkdownRenderer();
+
+        String html = renderer.render("```java\nif (a < b) {\n\n**not bold**\n```\nText");
+
+        assertEquals("<pre><code class=\"language-java\">if (a &lt; b) {\n\n**not bold**\n" +
+                "</code></pre>\n<p>Text</p>\n", html);
+    }
+
+    @Test
+    public void render_rendersOnlyChangedBlocks() {
+        MarkdownRenderer renderer = new MarkdownRenderer();
+        renderer.render("# One\n\nFirst paragraph\n\n# Two\n\nSecond paragraph");
+
+        String html = renderer.render("# One\n\nFirst paragraph\n\n# Two\n\nChanged paragraph");
+
+        assertEquals(1, renderer.lastRenderedBlockCount);
+        assertEquals("<h1>One</h1>\n<p>First paragraph</p>\n<h1>Two</h1>\n" +
+                "<p>Changed paragraph</p>\n", html);
+    }
+
+    @Test
+    public void render_writesToAppendable() throws Exception {
+        MarkdownRenderer renderer = new MarkdownRenderer();
+        StringBuilder out = new StringBuilder("<body>\n");
+
+        renderer.render("Text", out);
+
+        assertEquals("<body>\n<p>Text</p>\n", out.toString());
+    }
+}
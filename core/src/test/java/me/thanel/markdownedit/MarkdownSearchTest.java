@@ -0,0 +1,58 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import static me.thanel.markdownedit.util.BufferTestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.BufferTestUtils.createBuffer;
+
+import org.junit.Test;
+
+public class MarkdownSearchTest {
+    private static final String TEXT = "cat `cat` [cat](cat.md)\n```\ncat\n```\ncatcat";
+
+    @Test
+    public void findNext_returnsMatchesIncrementally() {
+        MarkdownSearch search = new MarkdownSearch(TEXT, "cat", 0);
+
+        assertEquals(0, search.findNext());
+        assertEquals(3, search.getPosition());
+        assertEquals(5, search.findNext());
+    }
+
+    @Test
+    public void findAll_findsNonOverlappingMatches() {
+        assertArrayEquals(new int[]{0, 2, 5}, MarkdownSearch.findAll("aaaaxaaa", "aa", 0));
+        assertArrayEquals(new int[]{}, MarkdownSearch.findAll("short", "longer query", 0));
+    }
+
+    @Test
+    public void findAll_skipsCodeAndLinkUrls() {
+        assertArrayEquals(new int[]{0, 5, 11, 16, 28, 36, 39},
+                MarkdownSearch.findAll(TEXT, "cat", 0));
+        assertArrayEquals(new int[]{0, 5, 11, 16, 36, 39},
+                MarkdownSearch.findAll(TEXT, "cat", MarkdownSearch.SKIP_FENCED_CODE));
+        assertArrayEquals(new int[]{0, 11, 36, 39}, MarkdownSearch.findAll(TEXT, "cat",
+                MarkdownSearch.SKIP_FENCED_CODE | MarkdownSearch.SKIP_INLINE_CODE |
+                        MarkdownSearch.SKIP_LINK_URLS));
+    }
+
+    @Test
+    public void replaceAll_replacesMatchesAndShiftsSelection() {
+        MarkdownBuffer buffer = createBuffer("a-b-c|-d");
+
+        int count = MarkdownSearch.replaceAll(buffer, "-", " + ", 0);
+
+        assertEquals(3, count);
+        assertEqualsWithCursorPosition("a + b + c| + d", buffer);
+    }
+
+    @Test
+    public void replaceAll_movesSelectionInsideMatchToReplacementEnd() {
+        MarkdownBuffer buffer = createBuffer("one tw|o three two");
+
+        MarkdownSearch.replaceAll(buffer, "two", "2", 0);
+
+        assertEqualsWithCursorPosition("one 2| three 2", buffer);
+    }
+}
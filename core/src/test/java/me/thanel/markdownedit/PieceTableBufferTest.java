@@ -0,0 +1,92 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static me.thanel.markdownedit.util.BufferTestUtils.assertEqualsWithCursorPosition;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+public class PieceTableBufferTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void mappedText_decodesCharactersAcrossChunks() {
+        String text = "Zażółć gęślą 😀 jaźń\n```\nkod\n```";
+        MappedText mappedText = new MappedText(ByteBuffer.wrap(text.getBytes(UTF_8)), 4);
+
+        assertEquals(text.length(), mappedText.length());
+        assertEquals(text, mappedText.toString());
+        assertEquals(text.charAt(14), mappedText.charAt(14));
+    }
+
+    @Test
+    public void replace_editsPiecesWithoutChangingOriginal() {
+        PieceTableBuffer buffer = new PieceTableBuffer("Hello World");
+
+        buffer.replace(5, 5, ",");
+        buffer.replace(6, 6, " dear");
+        buffer.replace(0, 1, "J");
+
+        assertEquals("Jello, dear World", buffer.toString());
+        assertEquals("dear", buffer.subSequence(7, 11).toString());
+        assertEquals(4, buffer.getPieceCount());
+    }
+
+    @Test
+    public void replace_extendsPieceOfTypedText() {
+        PieceTableBuffer buffer = new PieceTableBuffer("Hello");
+
+        buffer.replace(5, 5, " ");
+        buffer.replace(6, 6, "W");
+        buffer.replace(7, 7, "o");
+
+        assertEquals("Hello Wo", buffer.toString());
+        assertEquals(2, buffer.getPieceCount());
+    }
+
+    @Test
+    public void replace_removesWholeText() {
+        PieceTableBuffer buffer = new PieceTableBuffer("Hello");
+
+        buffer.replace(0, 5, "");
+        buffer.replace(0, 0, "Bye");
+
+        assertEquals("Bye", buffer.toString());
+    }
+
+    @Test
+    public void commands_editMappedFile() throws IOException {
+        File file = File.createTempFile("document", ".md");
+        try {
+            FileOutputStream output = new FileOutputStream(file);
+            try {
+                output.write("Zażółć 😀 World\n```\ncode\n```\n".getBytes(UTF_8));
+            } finally {
+                output.close();
+            }
+
+            PieceTableBuffer buffer = PieceTableBuffer.open(file);
+            buffer.setSelection(12);
+            MarkdownCommands.addBold(buffer);
+
+            assertEqualsWithCursorPosition("Zażółć 😀 **World**|\n```\ncode\n```\n", buffer);
+            assertTrue(buffer.isInsideFence(22));
+            assertFalse(buffer.isInsideFence(3));
+
+            StringWriter writer = new StringWriter();
+            buffer.writeTo(writer);
+            assertEquals(buffer.toString(), writer.toString());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RangeBatchTest {
+    @Test
+    public void getLineStart_joinsLinesWhenLineFeedIsReplaced() {
+        RangeBatch batch = new RangeBatch(new StringMarkdownBuffer("ab\ncd"));
+
+        batch.beginRange(0, 0);
+        batch.replace(2, 3, "X");
+
+        assertEquals(0, batch.getLineStart(4));
+        assertEquals(5, batch.getLineEnd(0));
+    }
+
+    @Test
+    public void replace_readsChangesMadeBackToFront() {
+        StringMarkdownBuffer text = new StringMarkdownBuffer("ab\ncd");
+        RangeBatch batch = new RangeBatch(text);
+
+        batch.beginRange(0, 0);
+        batch.replace(3, 4, "X");
+        batch.replace(0, 1, "Yy");
+        assertEquals("Yyb\nXd", batch.toString());
+        batch.replace(5, 6, "Z");
+        batch.endRange();
+        batch.apply(new int[2]);
+
+        assertEquals("Yyb\nXZ", text.toString());
+    }
+
+    @Test
+    public void apply_combinesChangesOfAllRanges() {
+        StringMarkdownBuffer text = new StringMarkdownBuffer("One\nTwo\nThree");
+        RangeBatch batch = new RangeBatch(text);
+        int[] ranges = new int[4];
+
+        batch.beginRange(0, 3);
+        batch.replace(0, 0, "- ");
+        batch.endRange();
+        batch.beginRange(8, 13);
+        batch.replace(8, 8, "- ");
+        batch.endRange();
+        batch.apply(ranges);
+
+        assertEquals("- One\nTwo\n- Three", text.toString());
+        assertArrayEquals(new int[]{2, 5, 12, 17}, ranges);
+    }
+}
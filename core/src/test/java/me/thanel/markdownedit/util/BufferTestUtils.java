@@ -0,0 +1,36 @@
+package me.thanel.markdownedit.util;
+
+import static org.junit.Assert.assertEquals;
+
+import me.thanel.markdownedit.MarkdownBuffer;
+import me.thanel.markdownedit.StringMarkdownBuffer;
+
+public class BufferTestUtils {
+    private BufferTestUtils() { /* cannot be instantiated */ }
+
+    public static MarkdownBuffer createBuffer(String text) {
+        String textWithoutSelection = text.replace("|", "");
+        if (textWithoutSelection.length() < text.length() - 2) {
+            throw new IllegalArgumentException(
+                    "text: Can't specify more than 2 selections points (| character).");
+        }
+
+        int selectionStart = Math.max(0, text.indexOf("|"));
+        int selectionEnd = Math.max(selectionStart, text.lastIndexOf("|") - 1);
+
+        MarkdownBuffer buffer = new StringMarkdownBuffer(textWithoutSelection);
+        buffer.setSelection(selectionStart, selectionEnd);
+        return buffer;
+    }
+
+    public static void assertEqualsWithCursorPosition(String expected, MarkdownBuffer buffer) {
+        int startPosition = expected.indexOf('|');
+        int endPosition = Math.max(startPosition, expected.lastIndexOf('|') - 1);
+
+        expected = expected.replace("|", "");
+        assertEquals("Incorrect text", expected, buffer.toString());
+
+        assertEquals("Incorrect start position", startPosition, buffer.getSelectionStart());
+        assertEquals("Incorrect end position", endPosition, buffer.getSelectionEnd());
+    }
+}
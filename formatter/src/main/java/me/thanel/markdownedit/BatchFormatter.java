@@ -0,0 +1,510 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies a {@link BatchScript} to all Markdown files of a directory tree in parallel, without
+ * any Android dependencies.
+ * <p>
+ * The tree is walked by a {@link ForkJoinPool}: every directory is listed by its own task, which
+ * splits the files into small batches processed by other tasks, so idle workers steal work from
+ * large directories. Files are read and written through {@link FileChannel}s. Every worker reuses
+ * its own byte and character buffers, and files larger than the maximum file size are skipped, so
+ * the memory used by a worker is bounded by a few times that size regardless of the number of
+ * files. Changed files are written to a temporary file with the permissions of the original, which
+ * then atomically replaces it, and unchanged files are not written at all.
+ * <p>
+ * The formatter can also be run from the command line:
+ * <pre>
+ * java me.thanel.markdownedit.BatchFormatter script.txt notes/ [threads]
+ * </pre>
+ */
+public final class BatchFormatter {
+    /**
+     * The default maximum size of formatted files in bytes.
+     */
+    public static final int DEFAULT_MAX_FILE_SIZE = 16 * 1024 * 1024;
+
+    private static final int FILES_PER_TASK = 32;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String[] EXTENSIONS = {".md", ".markdown"};
+
+    private final BatchScript script;
+    private final int parallelism;
+    private final int maxFileSize;
+
+    /**
+     * Creates a formatter using all available processors.
+     *
+     * @param script The script to apply to every file.
+     */
+    public BatchFormatter(@NonNull BatchScript script) {
+        this(script, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_FILE_SIZE);
+    }
+
+    /**
+     * @param script      The script to apply to every file.
+     * @param parallelism The number of files formatted at the same time. Must be at least 1.
+     * @param maxFileSize The size in bytes above which files are skipped. Must be at least 1.
+     */
+    public BatchFormatter(@NonNull BatchScript script, int parallelism, int maxFileSize) {
+        if (parallelism < 1 || maxFileSize < 1) {
+            throw new IllegalArgumentException("parallelism: " + parallelism + ", maxFileSize: " +
+                    maxFileSize + ": Must be at least 1.");
+        }
+        this.script = script;
+        this.parallelism = parallelism;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Formats the Markdown files with the extension ".md" or ".markdown" found in the directory
+     * tree. Symbolic links to directories are not followed.
+     *
+     * @param root The directory to format, or a single file.
+     * @return The report of the formatting.
+     */
+    @NonNull
+    public Report run(@NonNull Path root) {
+        final Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+        ThreadLocal<Worker> worker = new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                Worker worker = new Worker();
+                workers.add(worker);
+                return worker;
+            }
+        };
+
+        long startTime = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            if (Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+                pool.invoke(new DirectoryTask(worker, root));
+            } else {
+                pool.invoke(new FilesTask(worker, Collections.singletonList(root)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return new Report(workers, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Formats the files given on the command line and prints the report.
+     *
+     * @param args The path of the script file, the directory to format and optionally the number
+     *             of threads.
+     * @throws IOException If the script can't be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BatchFormatter <script> <directory> [threads]");
+            System.exit(2);
+        }
+        BatchScript script = BatchScript.parse(
+                new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8));
+        int threads = args.length == 3 ? Integer.parseInt(args[2]) :
+                Runtime.getRuntime().availableProcessors();
+
+        Report report = new BatchFormatter(script, threads, DEFAULT_MAX_FILE_SIZE)
+                .run(Paths.get(args[1]));
+        for (String error : report.getErrors()) {
+            System.err.println(error);
+        }
+        System.out.println(report);
+        if (report.getFailedFileCount() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean isMarkdownFile(Path file) {
+        String name = file.getFileName().toString();
+        for (String extension : EXTENSIONS) {
+            if (name.regionMatches(true, name.length() - extension.length(), extension, 0,
+                    extension.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists a directory, forking a task for every subdirectory and batch of files.
+     */
+    private final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ThreadLocal<Worker> worker;
+        private final Path directory;
+
+        DirectoryTask(ThreadLocal<Worker> worker, Path directory) {
+            this.worker = worker;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> files = new ArrayList<>(FILES_PER_TASK);
+            try {
+                DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+                try {
+                    for (Path entry : stream) {
+                        BasicFileAttributes attributes;
+                        try {
+                            attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                                    LinkOption.NOFOLLOW_LINKS);
+                        } catch (IOException e) {
+                            worker.get().fail(entry, e);
+                            continue;
+                        }
+                        RecursiveAction task = null;
+                        if (attributes.isDirectory()) {
+                            task = new DirectoryTask(worker, entry);
+                        } else if (attributes.isRegularFile() && isMarkdownFile(entry)) {
+                            files.add(entry);
+                            if (files.size() == FILES_PER_TASK) {
+                                task = new FilesTask(worker, files);
+                                files = new ArrayList<>(FILES_PER_TASK);
+                            }
+                        }
+                        if (task != null) {
+                            task.fork();
+                            tasks.add(task);
+                        }
+                    }
+                } finally {
+                    stream.close();
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                worker.get().fail(directory, e);
+            }
+
+            // The last batch is formatted by this task while the forked ones run.
+            if (!files.isEmpty()) {
+                new FilesTask(worker, files).invoke();
+            }
+            for (RecursiveAction task : tasks) {
+                task.join();
+            }
+        }
+    }
+
+    /**
+     * Formats a batch of files with the buffers of the current worker.
+     */
+    private final class FilesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ThreadLocal<Worker> worker;
+        private final List<Path> files;
+
+        FilesTask(ThreadLocal<Worker> worker, List<Path> files) {
+            this.worker = worker;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            Worker currentWorker = worker.get();
+            for (Path file : files) {
+                try {
+                    currentWorker.format(file);
+                } catch (IOException | RuntimeException e) {
+                    currentWorker.fail(file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffers and statistics of a single thread of the pool, which are never shared.
+     */
+    private final class Worker {
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private ByteBuffer bytes = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private CharBuffer chars = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        private long fileCount;
+        private long changedFileCount;
+        private long skippedFileCount;
+        private long failedFileCount;
+        private long bytesRead;
+        private long bytesWritten;
+        private final List<String> errors = new ArrayList<>();
+
+        void format(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size > maxFileSize) {
+                    skippedFileCount++;
+                    return;
+                }
+                bytes = ensureCapacity(bytes, (int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) != -1) {
+                    // Read until the buffer is full or the end of the file.
+                }
+            } finally {
+                channel.close();
+            }
+            bytes.flip();
+            bytesRead += bytes.remaining();
+
+            // UTF-8 never decodes to more characters than it has bytes.
+            if (chars.capacity() < bytes.remaining()) {
+                chars = CharBuffer.allocate(Math.max(bytes.remaining(), chars.capacity() * 2));
+            }
+            chars.clear();
+            decoder.reset();
+            CoderResult result = decoder.decode(bytes, chars, true);
+            if (!result.isUnderflow() || !(result = decoder.flush(chars)).isUnderflow()) {
+                result.throwException();
+            }
+            chars.flip();
+
+            StringMarkdownBuffer text = new StringMarkdownBuffer(chars);
+            script.apply(text);
+            fileCount++;
+            if (!contentEquals(text, chars)) {
+                write(file, text);
+                changedFileCount++;
+            }
+        }
+
+        private void write(Path file, CharSequence text) throws IOException {
+            encode(text);
+            Path temporaryFile = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+            FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                while (bytes.hasRemaining()) {
+                    bytesWritten += channel.write(bytes);
+                }
+            } finally {
+                channel.close();
+            }
+            try {
+                copyPermissions(file, temporaryFile);
+                Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(temporaryFile);
+                throw e;
+            }
+        }
+
+        private void encode(CharSequence text) throws CharacterCodingException {
+            CharBuffer input = CharBuffer.wrap(text);
+            bytes = ensureCapacity(bytes, text.length());
+            encoder.reset();
+            CoderResult result;
+            while ((result = encoder.encode(input, bytes, true)).isOverflow()) {
+                bytes = grow(bytes);
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            while (encoder.flush(bytes).isOverflow()) {
+                bytes = grow(bytes);
+            }
+            bytes.flip();
+        }
+
+        void fail(Path path, Exception e) {
+            failedFileCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(path + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Copies the POSIX permissions of the file, which are lost when a new file replaces it. File
+     * systems without POSIX permissions are left to their defaults.
+     */
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        PosixFileAttributeView view =
+                Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        if (view != null) {
+            Files.setPosixFilePermissions(target, view.readAttributes().permissions());
+        }
+    }
+
+    /**
+     * @return A cleared buffer which can hold at least the specified number of bytes.
+     */
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity) {
+        if (buffer.capacity() < capacity) {
+            return ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * @return A buffer twice as large containing the written bytes of the buffer.
+     */
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        buffer.flip();
+        return ByteBuffer.allocate(buffer.capacity() * 2).put(buffer);
+    }
+
+    private static boolean contentEquals(CharSequence text, CharSequence other) {
+        if (text.length() != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Statistics of a run of the {@link BatchFormatter}.
+     */
+    public static final class Report {
+        private static final double NANOS_PER_SECOND = 1e9;
+        private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+        private final long elapsedNanos;
+        private long fileCount;
+        private long changedFileCount;
+        private long skippedFileCount;
+        private long failedFileCount;
+        private long bytesRead;
+        private long bytesWritten;
+        private final List<String> errors = new ArrayList<>();
+
+        Report(Iterable<Worker> workers, long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+            for (Worker worker : workers) {
+                fileCount += worker.fileCount;
+                changedFileCount += worker.changedFileCount;
+                skippedFileCount += worker.skippedFileCount;
+                failedFileCount += worker.failedFileCount;
+                bytesRead += worker.bytesRead;
+                bytesWritten += worker.bytesWritten;
+                errors.addAll(worker.errors.subList(0,
+                        Math.min(worker.errors.size(), MAX_REPORTED_ERRORS - errors.size())));
+            }
+        }
+
+        /**
+         * @return The number of formatted files, including the ones which didn't change.
+         */
+        public long getFileCount() {
+            return fileCount;
+        }
+
+        /**
+         * @return The number of files which were changed by the script and written.
+         */
+        public long getChangedFileCount() {
+            return changedFileCount;
+        }
+
+        /**
+         * @return The number of files skipped for being larger than the maximum file size.
+         */
+        public long getSkippedFileCount() {
+            return skippedFileCount;
+        }
+
+        /**
+         * @return The number of files and directories which couldn't be read or written.
+         */
+        public long getFailedFileCount() {
+            return failedFileCount;
+        }
+
+        /**
+         * @return The descriptions of the first failures, including the failed paths.
+         */
+        @NonNull
+        public List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * @return The number of bytes read from the formatted files.
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * @return The number of bytes written to the changed files.
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * @return The time the run took in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return The number of formatted files per second.
+         */
+        public double getFilesPerSecond() {
+            return fileCount * NANOS_PER_SECOND / Math.max(1, elapsedNanos);
+        }
+
+        /**
+         * @return The number of megabytes read from the formatted files per second.
+         */
+        public double getMegabytesPerSecond() {
+            return bytesRead / BYTES_PER_MEGABYTE * NANOS_PER_SECOND / Math.max(1, elapsedNanos);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Formatted %d files (%d changed, %d skipped, " +
+                            "%d failed) in %.2f s: %.1f files/s, %.2f MB/s", fileCount,
+                    changedFileCount, skippedFileCount, failedFileCount,
+                    elapsedNanos / NANOS_PER_SECOND, getFilesPerSecond(),
+                    getMegabytesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNotNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+public class BatchFormatterTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void run_formatsMarkdownFilesInDirectoryTree() throws IOException {
+        Path root = folder.getRoot().toPath();
+        Path first = write(root.resolve("first.md"), "First\nText");
+        Path second = write(root.resolve("notes/second.markdown"), "Second 😀");
+        Path other = write(root.resolve("notes/other.txt"), "Other");
+        BatchFormatter formatter =
+                new BatchFormatter(BatchScript.parse("select line 1\nheader 1"), 2, 1024);
+
+        BatchFormatter.Report report = formatter.run(root);
+
+        assertEquals("# First\nText", read(first));
+        assertEquals("# Second 😀", read(second));
+        assertEquals("Other", read(other));
+        assertEquals(2, report.getFileCount());
+        assertEquals(2, report.getChangedFileCount());
+        assertEquals(0, report.getFailedFileCount());
+        assertEquals(21, report.getBytesRead());
+        assertEquals(25, report.getBytesWritten());
+    }
+
+    @Test
+    public void run_doesNotWriteUnchangedFiles() throws IOException {
+        Path file = write(folder.getRoot().toPath().resolve("file.md"), "Text");
+        BatchFormatter formatter = new BatchFormatter(BatchScript.parse("replace foo bar"));
+
+        BatchFormatter.Report report = formatter.run(file);
+
+        assertEquals(1, report.getFileCount());
+        assertEquals(0, report.getChangedFileCount());
+        assertEquals(0, report.getBytesWritten());
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void run_keepsPermissionsOfChangedFiles() throws IOException {
+        Path file = write(folder.getRoot().toPath().resolve("script.md"), "Text");
+        assumeNotNull(Files.getFileAttributeView(file, PosixFileAttributeView.class));
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rwxr-x---"));
+        BatchFormatter formatter = new BatchFormatter(BatchScript.parse("quote"));
+
+        formatter.run(file);
+
+        assertEquals("> Text", read(file));
+        assertEquals("rwxr-x---",
+                PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+    }
+
+    @Test
+    public void run_skipsFilesLargerThanMaximumSize() throws IOException {
+        Path file = write(folder.getRoot().toPath().resolve("large.md"), "Large text");
+        BatchFormatter formatter = new BatchFormatter(BatchScript.parse("quote"), 1, 4);
+
+        BatchFormatter.Report report = formatter.run(folder.getRoot().toPath());
+
+        assertEquals("Large text", read(file));
+        assertEquals(0, report.getFileCount());
+        assertEquals(1, report.getSkippedFileCount());
+    }
+
+    @Test
+    public void run_reportsFilesWhichAreNotUtf8() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("invalid.md");
+        Files.write(file, new byte[]{'a', (byte) 0xC3, '(', 'b'});
+        BatchFormatter formatter = new BatchFormatter(BatchScript.parse("quote"));
+
+        BatchFormatter.Report report = formatter.run(folder.getRoot().toPath());
+
+        assertEquals(1, report.getFailedFileCount());
+        assertEquals(1, report.getErrors().size());
+        assertEquals(0, report.getFileCount());
+        assertEquals(4, new File(file.toString()).length());
+    }
+
+    private static Path write(Path file, String text) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, text.getBytes(UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), UTF_8);
+    }
+}
@@ -0,0 +1,276 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import android.text.Editable;
+import android.text.NoCopySpan;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+
+import java.util.Arrays;
+
+/**
+ * Classifies lines of a {@link Spannable} text as the Markdown blocks produced by {@link
+ * MarkdownEdit}.
+ * <p>
+ * The tokenizer is stored as a span on the text next to its {@link LineIndex}. On every change
+ * only the changed lines are classified again, continuing past them only while the fenced code
+ * state differs from the previous result, so the cost of a change is proportional to the edit and
+ * not to the size of the text. Use {@link #obtain(Spannable)} to get the tokenizer attached to the
+ * text.
+ */
+public final class BlockTokenizer implements TextWatcher, NoCopySpan {
+    public static final int BLOCK_EMPTY = MarkdownLines.BLOCK_EMPTY;
+    public static final int BLOCK_PARAGRAPH = MarkdownLines.BLOCK_PARAGRAPH;
+    public static final int BLOCK_HEADER = MarkdownLines.BLOCK_HEADER;
+    public static final int BLOCK_BULLET_ITEM = MarkdownLines.BLOCK_BULLET_ITEM;
+    public static final int BLOCK_NUMBERED_ITEM = MarkdownLines.BLOCK_NUMBERED_ITEM;
+    public static final int BLOCK_TASK_ITEM = MarkdownLines.BLOCK_TASK_ITEM;
+    public static final int BLOCK_QUOTE = MarkdownLines.BLOCK_QUOTE;
+    public static final int BLOCK_DIVIDER = MarkdownLines.BLOCK_DIVIDER;
+    public static final int BLOCK_FENCE = MarkdownLines.BLOCK_FENCE;
+    public static final int BLOCK_CODE = MarkdownLines.BLOCK_CODE;
+
+    // Set on fence lines which close a code block.
+    private static final int FLAG_CLOSING_FENCE = 0x40;
+    private static final int TYPE_MASK = 0x3f;
+
+    private final Spannable text;
+    private final LineIndex lineIndex;
+    private byte[] lineTypes = new byte[16];
+    private int lineCount;
+    private HeadingOutline headingOutline;
+    private DocumentStats documentStats;
+    private TaskIndex taskIndex;
+
+    private int changeFirstLine;
+    private int changeLastLine;
+
+    @VisibleForTesting
+    int lastTokenizedLineCount;
+
+    private BlockTokenizer(@NonNull Spannable text, @NonNull LineIndex lineIndex) {
+        this.text = text;
+        this.lineIndex = lineIndex;
+        lineCount = lineIndex.getLineCount();
+        ensureCapacity(lineCount);
+        tokenize(0, lineCount - 1);
+    }
+
+    /**
+     * Returns the tokenizer attached to the specified text, attaching a new one if the text
+     * doesn't have it yet.
+     *
+     * @param text The {@link Spannable} text for which to obtain the tokenizer.
+     * @return The tokenizer which is kept in sync with the text.
+     */
+    @NonNull
+    public static BlockTokenizer obtain(@NonNull Spannable text) {
+        BlockTokenizer[] tokenizers = text.getSpans(0, text.length(), BlockTokenizer.class);
+        if (tokenizers.length > 0) {
+            return tokenizers[0];
+        }
+
+        BlockTokenizer tokenizer = new BlockTokenizer(text, LineIndex.obtain(text));
+        text.setSpan(tokenizer, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        return tokenizer;
+    }
+
+    /**
+     * Removes the tokenizer from the specified text, if there is one attached.
+     *
+     * @param text The {@link Spannable} text from which to remove the tokenizer.
+     */
+    public static void detach(@NonNull Spannable text) {
+        for (BlockTokenizer tokenizer : text.getSpans(0, text.length(), BlockTokenizer.class)) {
+            text.removeSpan(tokenizer);
+        }
+    }
+
+    /**
+     * @return The line index used by this tokenizer.
+     */
+    @NonNull
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     * @return The outline of headers which is kept in sync with the text by this tokenizer.
+     */
+    @NonNull
+    public HeadingOutline getHeadingOutline() {
+        if (headingOutline == null) {
+            headingOutline = new HeadingOutline(text, this);
+        }
+        return headingOutline;
+    }
+
+    /**
+     * @return The statistics of the text which are kept in sync with the text by this tokenizer.
+     */
+    @NonNull
+    public DocumentStats getDocumentStats() {
+        if (documentStats == null) {
+            documentStats = new DocumentStats(text, this);
+        }
+        return documentStats;
+    }
+
+    /**
+     * @return The index of task list items which is kept in sync with the text by this
+     * tokenizer.
+     */
+    @NonNull
+    public TaskIndex getTaskIndex() {
+        if (taskIndex == null) {
+            taskIndex = new TaskIndex(text, this);
+        }
+        return taskIndex;
+    }
+
+    /**
+     * @param line The line number, counted from 0.
+     * @return The type of the block to which the line belongs.
+     */
+    @BlockType
+    public int getBlockType(int line) {
+        return lineTypes[line] & TYPE_MASK;
+    }
+
+    /**
+     * Returns whether the specified line is located inside of a fenced code block. Fences
+     * themselves are not considered to be inside of the block.
+     *
+     * @param line The line number, counted from 0.
+     * @return {@code true} if the line is part of fenced code.
+     */
+    public boolean isInsideFence(int line) {
+        return getBlockType(line) == BLOCK_CODE;
+    }
+
+    /**
+     * Returns the heading level of the specified line.
+     *
+     * @param line The line number, counted from 0.
+     * @return The heading level from 1 to 6, or 0 if the line is not a header.
+     */
+    public int getHeaderLevel(int line) {
+        if (getBlockType(line) != BLOCK_HEADER) {
+            return 0;
+        }
+        int start = lineIndex.getLineStart(line);
+        int end = lineIndex.getLineEnd(line);
+        int level = 0;
+        while (start + level < end && text.charAt(start + level) == '#') {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Returns the offset at which the content of the specified line begins, just after block
+     * markup such as "# ", "> " or "- [ ] ".
+     *
+     * @param line The line number, counted from 0.
+     * @return The offset of the line content.
+     */
+    public int getContentStart(int line) {
+        int start = lineIndex.getLineStart(line);
+        int end = lineIndex.getLineEnd(line);
+        return start + MarkdownLines.getMarkupLength(text, start, end, getBlockType(line));
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        changeFirstLine = lineIndex.getLineForOffset(start);
+        changeLastLine = lineIndex.getLineForOffset(start + count);
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        // Line index has higher priority so it's already updated at this point.
+        int newLastLine = lineIndex.getLineForOffset(start + count);
+        int removedLines = changeLastLine - changeFirstLine;
+        int addedLines = newLastLine - changeFirstLine;
+        int newLineCount = lineCount - removedLines + addedLines;
+
+        ensureCapacity(newLineCount);
+        System.arraycopy(lineTypes, changeLastLine + 1, lineTypes, newLastLine + 1,
+                lineCount - changeLastLine - 1);
+        lineCount = newLineCount;
+        if (headingOutline != null) {
+            headingOutline.replaceLines(changeFirstLine, changeLastLine, newLastLine);
+        }
+        if (documentStats != null) {
+            documentStats.replaceLines(changeFirstLine, changeLastLine, newLastLine);
+        }
+        if (taskIndex != null) {
+            taskIndex.replaceLines(changeFirstLine, changeLastLine, newLastLine);
+        }
+
+        tokenize(changeFirstLine, newLastLine);
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+    }
+
+    /**
+     * Classifies lines from first to last, inclusive, and continues with the following lines for
+     * as long as their fenced code state is different from the one computed previously.
+     */
+    private void tokenize(int firstLine, int lastLine) {
+        boolean insideFence = firstLine > 0 && isFenceOpenAfter(firstLine - 1);
+        int line = firstLine;
+        for (; line < lineCount; line++) {
+            int type = classify(line, insideFence);
+            if (line > lastLine && type == lineTypes[line]) {
+                break;
+            }
+            lineTypes[line] = (byte) type;
+            if (headingOutline != null) {
+                headingOutline.setHeader(line, (type & TYPE_MASK) == BLOCK_HEADER);
+            }
+            if (documentStats != null) {
+                documentStats.updateLine(line);
+            }
+            if (taskIndex != null) {
+                taskIndex.setTask(line, (type & TYPE_MASK) == BLOCK_TASK_ITEM);
+            }
+            insideFence = isFenceOpenAfter(line);
+        }
+        lastTokenizedLineCount = line - firstLine;
+    }
+
+    private boolean isFenceOpenAfter(int line) {
+        int type = lineTypes[line];
+        return type == BLOCK_CODE || type == BLOCK_FENCE;
+    }
+
+    private int classify(int line, boolean insideFence) {
+        int start = lineIndex.getLineStart(line);
+        int end = lineIndex.getLineEnd(line);
+
+        if (MarkdownLines.isFence(text, start, end)) {
+            return insideFence ? BLOCK_FENCE | FLAG_CLOSING_FENCE : BLOCK_FENCE;
+        }
+        if (insideFence) {
+            return BLOCK_CODE;
+        }
+        return MarkdownLines.classifyLine(text, start, end);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > lineTypes.length) {
+            lineTypes = Arrays.copyOf(lineTypes, Math.max(capacity, lineTypes.length * 2));
+        }
+    }
+
+    @IntDef({BLOCK_EMPTY, BLOCK_PARAGRAPH, BLOCK_HEADER, BLOCK_BULLET_ITEM, BLOCK_NUMBERED_ITEM,
+            BLOCK_TASK_ITEM, BLOCK_QUOTE, BLOCK_DIVIDER, BLOCK_FENCE, BLOCK_CODE})
+    public @interface BlockType {
+    }
+}
@@ -0,0 +1,204 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import android.text.Spannable;
+
+import java.util.Arrays;
+
+/**
+ * Word, character and task counts of a {@link Spannable} text, excluding Markdown markup such as
+ * the one inserted by {@link MarkdownEdit}.
+ * <p>
+ * The statistics are maintained by the {@link BlockTokenizer} of the text: counts are stored for
+ * every line and only the lines which were classified again after a change are counted again,
+ * while the totals are kept up to date, so all queries take constant time. Block markup such as
+ * "# ", "> " or "- [ ] " is excluded, as are fences, dividers and runs of the inline markup
+ * characters "*", "_", "~" and "`" which start or end a word. Use {@link #obtain(Spannable)} to
+ * get the statistics of the text.
+ */
+public final class DocumentStats {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int WORDS_PER_MINUTE = 200;
+
+    private static final byte TASK_NONE = 0;
+    private static final byte TASK_OPEN = 1;
+    private static final byte TASK_DONE = 2;
+
+    private final Spannable text;
+    private final BlockTokenizer tokenizer;
+    private int[] lineWords = new int[INITIAL_CAPACITY];
+    private int[] lineCharacters = new int[INITIAL_CAPACITY];
+    private byte[] lineTasks = new byte[INITIAL_CAPACITY];
+    private int lineCount;
+
+    private int wordCount;
+    private int characterCount;
+    private int taskCount;
+    private int completedTaskCount;
+
+    DocumentStats(@NonNull Spannable text, @NonNull BlockTokenizer tokenizer) {
+        this.text = text;
+        this.tokenizer = tokenizer;
+        lineCount = tokenizer.getLineIndex().getLineCount();
+        ensureCapacity(lineCount);
+        for (int line = 0; line < lineCount; line++) {
+            updateLine(line);
+        }
+    }
+
+    /**
+     * Returns the statistics of the specified text, which are kept in sync with the text by its
+     * {@link BlockTokenizer}.
+     *
+     * @param text The {@link Spannable} text for which to obtain the statistics.
+     * @return The statistics of the text.
+     */
+    @NonNull
+    public static DocumentStats obtain(@NonNull Spannable text) {
+        return BlockTokenizer.obtain(text).getDocumentStats();
+    }
+
+    /**
+     * @return The number of words in the text, excluding markup.
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * @return The number of characters in the text, excluding markup and line feeds.
+     */
+    public int getCharacterCount() {
+        return characterCount;
+    }
+
+    /**
+     * @return The estimated reading time of the text in minutes, rounded up.
+     */
+    public int getReadingTimeMinutes() {
+        return (wordCount + WORDS_PER_MINUTE - 1) / WORDS_PER_MINUTE;
+    }
+
+    /**
+     * @return The number of task list items "- [ ] " and "- [x] ".
+     */
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    /**
+     * @return The number of checked task list items "- [x] ".
+     */
+    public int getCompletedTaskCount() {
+        return completedTaskCount;
+    }
+
+    /**
+     * Replaces the counts of the lines from first to old last line, inclusive, with empty counts
+     * of the lines from first to new last line. The new lines are counted once they are
+     * classified.
+     */
+    void replaceLines(int firstLine, int oldLastLine, int newLastLine) {
+        for (int line = firstLine; line <= oldLastLine; line++) {
+            addLine(line, -1);
+        }
+        int newLineCount = lineCount + newLastLine - oldLastLine;
+        ensureCapacity(newLineCount);
+        int tailCount = lineCount - oldLastLine - 1;
+        System.arraycopy(lineWords, oldLastLine + 1, lineWords, newLastLine + 1, tailCount);
+        System.arraycopy(lineCharacters, oldLastLine + 1, lineCharacters, newLastLine + 1,
+                tailCount);
+        System.arraycopy(lineTasks, oldLastLine + 1, lineTasks, newLastLine + 1, tailCount);
+        Arrays.fill(lineWords, firstLine, newLastLine + 1, 0);
+        Arrays.fill(lineCharacters, firstLine, newLastLine + 1, 0);
+        Arrays.fill(lineTasks, firstLine, newLastLine + 1, TASK_NONE);
+        lineCount = newLineCount;
+    }
+
+    /**
+     * Counts the specified line again.
+     */
+    void updateLine(int line) {
+        addLine(line, -1);
+
+        LineIndex lineIndex = tokenizer.getLineIndex();
+        int end = lineIndex.getLineEnd(line);
+        int type = tokenizer.getBlockType(line);
+        lineWords[line] = 0;
+        lineCharacters[line] = 0;
+        lineTasks[line] = TASK_NONE;
+        if (type == BlockTokenizer.BLOCK_TASK_ITEM) {
+            char mark = text.charAt(lineIndex.getLineStart(line) + 3);
+            lineTasks[line] = mark == ' ' ? TASK_OPEN : TASK_DONE;
+        }
+        if (type != BlockTokenizer.BLOCK_FENCE && type != BlockTokenizer.BLOCK_DIVIDER) {
+            countLine(line, tokenizer.getContentStart(line), end,
+                    type != BlockTokenizer.BLOCK_CODE);
+        }
+
+        addLine(line, 1);
+    }
+
+    private void countLine(int line, int start, int end, boolean skipMarkup) {
+        int words = 0;
+        int characters = 0;
+        boolean inWord = false;
+        int position = start;
+        while (position < end) {
+            char c = text.charAt(position);
+            if (skipMarkup && isInlineMarkup(c)) {
+                int runEnd = position + 1;
+                while (runEnd < end && text.charAt(runEnd) == c) {
+                    runEnd++;
+                }
+                // Characters inside a word, such as in "snake_case", are not markup. Markup
+                // doesn't separate words, so "**bold**," is a single word.
+                if (isWordCharacter(position - 1, start, end) &&
+                        isWordCharacter(runEnd, start, end)) {
+                    characters += runEnd - position;
+                }
+                position = runEnd;
+                continue;
+            }
+
+            if (Character.isWhitespace(c)) {
+                inWord = false;
+            } else if (!inWord) {
+                inWord = true;
+                words++;
+            }
+            characters++;
+            position++;
+        }
+        lineWords[line] = words;
+        lineCharacters[line] = characters;
+    }
+
+    private boolean isWordCharacter(int offset, int start, int end) {
+        return offset >= start && offset < end && Character.isLetterOrDigit(text.charAt(offset));
+    }
+
+    private static boolean isInlineMarkup(char c) {
+        return c == '*' || c == '_' || c == '~' || c == '`';
+    }
+
+    private void addLine(int line, int sign) {
+        wordCount += sign * lineWords[line];
+        characterCount += sign * lineCharacters[line];
+        if (lineTasks[line] != TASK_NONE) {
+            taskCount += sign;
+            if (lineTasks[line] == TASK_DONE) {
+                completedTaskCount += sign;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > lineWords.length) {
+            int newCapacity = Math.max(capacity, lineWords.length * 2);
+            lineWords = Arrays.copyOf(lineWords, newCapacity);
+            lineCharacters = Arrays.copyOf(lineCharacters, newCapacity);
+            lineTasks = Arrays.copyOf(lineTasks, newCapacity);
+        }
+    }
+}
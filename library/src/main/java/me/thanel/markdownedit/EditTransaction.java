@@ -0,0 +1,276 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.text.Editable;
+import android.text.NoCopySpan;
+import android.text.Selection;
+import android.text.Spanned;
+
+/**
+ * Collects text and selection changes made to an {@link Editable} and applies them as a single
+ * {@link Editable#replace(int, int, CharSequence, int, int)} call followed by a single selection
+ * change, so that attached watchers, filters and layouts are notified only once.
+ * <p>
+ * The replacements of {@link MarkdownEdit#replaceAll(Editable, String, CharSequence, int)} are
+ * applied one by one instead, so that the text between the matches is left untouched.
+ * <p>
+ * While the transaction is open all reads and writes should go through it, as the underlying text
+ * isn't modified until {@link #commit()} is called. Transactions can be nested: {@link
+ * #begin(Editable)} returns the transaction already open for the same text on the current thread,
+ * and only the outermost {@link #commit()} applies the changes. This allows batching several
+ * {@link MarkdownEdit} commands into one edit:
+ * <pre>
+ * EditTransaction transaction = EditTransaction.begin(text);
+ * try {
+ *     MarkdownEdit.addHeader(text, 1);
+ *     MarkdownEdit.addList(text, MarkdownEdit.LIST_TYPE_BULLETS);
+ *     transaction.commit();
+ * } catch (Throwable e) {
+ *     transaction.abort();
+ *     throw e;
+ * }
+ * </pre>
+ * When the changes can't be completed the transaction is closed with {@link #abort()} instead, so
+ * that a partially applied edit is never published to the text.
+ */
+public final class EditTransaction extends WindowedBuffer {
+    private static final ThreadLocal<EditTransaction> openTransaction =
+            new ThreadLocal<EditTransaction>();
+    private static final ThreadLocal<EditTransaction> committingTransaction =
+            new ThreadLocal<EditTransaction>();
+
+    private final Editable text;
+    private final EditTransaction previous;
+    private final int initialSelectionStart;
+    private final int initialSelectionEnd;
+    private int depth = 1;
+    private boolean aborted;
+    private boolean separateHunks;
+    // Number of replacements of the text started by the commit.
+    private int appliedChanges;
+
+    private EditTransaction(@NonNull Editable text, EditTransaction previous) {
+        super(text);
+        this.text = text;
+        this.previous = previous;
+        initialSelectionStart = SelectionUtils.getSelectionStart(text);
+        initialSelectionEnd = SelectionUtils.getSelectionEnd(text);
+        setSelection(initialSelectionStart, initialSelectionEnd);
+    }
+
+    /**
+     * Opens a transaction for the specified text, or joins the transaction that is already open
+     * for it on the current thread. Every call must be paired with a call to {@link #commit()}.
+     *
+     * @param text The {@link Editable} text to edit.
+     * @return The open transaction.
+     */
+    @NonNull
+    public static EditTransaction begin(@NonNull Editable text) {
+        EditTransaction current = openTransaction.get();
+        for (EditTransaction transaction = current; transaction != null;
+                transaction = transaction.previous) {
+            if (transaction.text == text) {
+                transaction.depth++;
+                return transaction;
+            }
+        }
+
+        EditTransaction transaction = new EditTransaction(text, current);
+        openTransaction.set(transaction);
+        return transaction;
+    }
+
+    /**
+     * Closes the transaction. If this was the outermost {@link #begin(Editable)} the collected
+     * changes are applied to the text as a single replacement of the smallest changed range,
+     * followed by a single selection change.
+     */
+    public void commit() {
+        if (depth <= 0) {
+            throw new IllegalStateException("Transaction has already been committed.");
+        }
+        if (depth == 1 && openTransaction.get() != this) {
+            throw new IllegalStateException(
+                    "Transactions must be committed in reverse order of opening.");
+        }
+        if (--depth > 0) {
+            return;
+        }
+
+        openTransaction.set(previous);
+        if (aborted) {
+            return;
+        }
+        boolean changed = hasWindow();
+        int selectionStart = getSelectionStart();
+        int selectionEnd = getSelectionEnd();
+        int hunkCount = getHunkCount();
+        if (separateHunks && hunkCount > 1) {
+            applyHunks(hunkCount);
+        } else if (changed) {
+            applyChange(getWindowStart(), getWindowEnd(), getWindow());
+        }
+        if (changed || selectionStart != initialSelectionStart ||
+                selectionEnd != initialSelectionEnd) {
+            Selection.setSelection(text, selectionStart, selectionEnd);
+        }
+    }
+
+    /**
+     * Closes the transaction discarding all of the collected changes, including the ones made
+     * before a joined transaction was opened, as they can't be told apart. The text and its
+     * selection are left unchanged, and the outermost {@link #commit()} of an aborted transaction
+     * applies nothing.
+     * <p>
+     * Does nothing if the transaction has already been closed, so that it can be called when
+     * {@link #commit()} fails after applying the changes.
+     */
+    public void abort() {
+        if (depth <= 0) {
+            return;
+        }
+        if (depth == 1 && openTransaction.get() != this) {
+            throw new IllegalStateException(
+                    "Transactions must be closed in reverse order of opening.");
+        }
+        aborted = true;
+        clearWindow();
+        if (--depth == 0) {
+            openTransaction.set(previous);
+        }
+    }
+
+    /**
+     * Makes the outermost {@link #commit()} apply each of the changes as a separate replacement,
+     * as long as they were made from the end of the text towards its start without overlapping
+     * each other. Otherwise the changes are still applied as a single replacement.
+     */
+    void keepHunksSeparate() {
+        separateHunks = true;
+    }
+
+    /**
+     * Checks whether the current change of the specified text is being applied by a transaction,
+     * as opposed to being typed or made directly. Meant to be called from text watchers.
+     *
+     * @param text The {@link Editable} text to check.
+     * @return Whether a transaction is currently replacing the text.
+     */
+    static boolean isCommitting(@NonNull Editable text) {
+        return getCommitting(text) != null;
+    }
+
+    /**
+     * @return The transaction which is currently replacing the specified text, or null if there is
+     * none.
+     */
+    @Nullable
+    static EditTransaction getCommitting(@NonNull Editable text) {
+        EditTransaction transaction = committingTransaction.get();
+        return transaction != null && transaction.text == text ? transaction : null;
+    }
+
+    /**
+     * @return The number of replacements of the text started so far by the commit, including the
+     * one currently being applied.
+     */
+    int getAppliedChanges() {
+        return appliedChanges;
+    }
+
+    /**
+     * @return The text which this transaction is editing.
+     */
+    @NonNull
+    public Editable getText() {
+        return text;
+    }
+
+    @Override
+    int getOriginalLineStart(int offset) {
+        LineIndex lineIndex = LineIndex.obtain(text);
+        return lineIndex.getLineStart(lineIndex.getLineForOffset(offset));
+    }
+
+    @Override
+    int getOriginalLineEnd(int offset) {
+        LineIndex lineIndex = LineIndex.obtain(text);
+        return lineIndex.getLineEnd(lineIndex.getLineForOffset(offset));
+    }
+
+    @Override
+    boolean isOriginalInsideFence(int offset) {
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(text);
+        int line = tokenizer.getLineIndex().getLineForOffset(offset);
+        return tokenizer.isInsideFence(line) ||
+                tokenizer.getBlockType(line) == BlockTokenizer.BLOCK_FENCE;
+    }
+
+    private void applyHunks(int hunkCount) {
+        // Watchers may change the text in response to each replacement, so the hunks are tracked
+        // with spans instead of their original offsets.
+        HunkMark[] marks = new HunkMark[hunkCount];
+        for (int i = 0; i < hunkCount; i++) {
+            int start = getHunkStart(i);
+            int end = getHunkEnd(i);
+            marks[i] = new HunkMark();
+            text.setSpan(marks[i], start, end, start == end ?
+                    Spanned.SPAN_POINT_POINT : Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        try {
+            for (int i = 0; i < hunkCount; i++) {
+                int start = text.getSpanStart(marks[i]);
+                int end = text.getSpanEnd(marks[i]);
+                text.removeSpan(marks[i]);
+                if (start != -1) {
+                    applyChange(start, end, getHunkReplacement(i));
+                }
+            }
+        } finally {
+            for (HunkMark mark : marks) {
+                text.removeSpan(mark);
+            }
+        }
+    }
+
+    /**
+     * Replaces the range of the text, leaving out the characters at its start and end which the
+     * replacement doesn't change.
+     */
+    private void applyChange(int start, int end, @NonNull CharSequence replacement) {
+        int replacementLength = replacement.length();
+        int originalLength = end - start;
+        int prefix = 0;
+        while (prefix < replacementLength && prefix < originalLength &&
+                replacement.charAt(prefix) == text.charAt(start + prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < replacementLength - prefix && suffix < originalLength - prefix &&
+                replacement.charAt(replacementLength - suffix - 1) ==
+                        text.charAt(end - suffix - 1)) {
+            suffix++;
+        }
+        if (prefix == replacementLength - suffix && prefix == originalLength - suffix) {
+            return;
+        }
+
+        EditTransaction previousCommitting = committingTransaction.get();
+        committingTransaction.set(this);
+        appliedChanges++;
+        try {
+            text.replace(start + prefix, end - suffix, replacement, prefix,
+                    replacementLength - suffix);
+        } finally {
+            committingTransaction.set(previousCommitting);
+        }
+    }
+
+    /**
+     * Marks the range of a hunk in the text while the hunks are being applied.
+     */
+    private static final class HunkMark implements NoCopySpan {
+    }
+}
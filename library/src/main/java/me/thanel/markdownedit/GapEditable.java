@@ -0,0 +1,631 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import android.text.Editable;
+import android.text.GetChars;
+import android.text.InputFilter;
+import android.text.NoCopySpan;
+import android.text.Selection;
+import android.text.SpanWatcher;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Editable} text backed by a gap buffer, with its spans held in an interval tree.
+ * <p>
+ * Edits close to the previous edit, such as typing, only move the few characters between the two
+ * positions, and shifting the spans located after an edit is a single update of the tree, so the
+ * cost of an edit doesn't grow with the number of spans. Subsequences copy the spans, but share
+ * the characters with the text until either of them is changed, so taking a subsequence only to
+ * read it doesn't copy any characters. Characters can be read in bulk with {@link
+ * #getChars(int, int, char[], int)}.
+ * <p>
+ * Text and span watchers are notified in the same way as by {@link
+ * android.text.SpannableStringBuilder}, except that paragraph spans are not checked to start and
+ * end at paragraph boundaries. Use {@link Factory} to make an {@code EditText} use this text:
+ * <pre>
+ * editText.setEditableFactory(GapEditable.Factory.getInstance());
+ * </pre>
+ */
+public class GapEditable implements Editable {
+    private static final InputFilter[] NO_FILTERS = new InputFilter[0];
+    private static final int MIN_GAP_LENGTH = 16;
+    private static final int MAX_SHARED_VIEWS = 64;
+
+    /**
+     * Factory creating {@link GapEditable} text, for use with {@link
+     * android.widget.TextView#setEditableFactory(Editable.Factory)}.
+     */
+    public static class Factory extends Editable.Factory {
+        private static final Factory instance = new Factory();
+
+        /**
+         * @return The shared factory instance.
+         */
+        @NonNull
+        public static Factory getInstance() {
+            return instance;
+        }
+
+        @Override
+        public Editable newEditable(CharSequence source) {
+            return new GapEditable(source);
+        }
+    }
+
+    private final SpanTree spans = new SpanTree();
+    // Changes of the replacements in progress, by nesting depth, as watchers may change the text.
+    private final ArrayList<SpanTree.Changes> changesByDepth = new ArrayList<>();
+    private int replaceDepth;
+    private final ArrayList<CharView> sharedViews = new ArrayList<>();
+    // Characters of a subsequence which haven't been copied yet.
+    private CharView sharedChars;
+    private char[] chars;
+    private int gapStart;
+    private int gapLength;
+    private int spanWatcherCount;
+    private InputFilter[] filters = NO_FILTERS;
+
+    public GapEditable() {
+        this("");
+    }
+
+    /**
+     * Creates text with the characters of the specified text and copies of its spans, except
+     * {@link NoCopySpan} spans.
+     *
+     * @param text The text to copy.
+     */
+    public GapEditable(@NonNull CharSequence text) {
+        this(text, 0, text.length());
+    }
+
+    /**
+     * Creates text with the characters of the specified range of the text and copies of its spans
+     * clipped to the range, except {@link NoCopySpan} spans.
+     *
+     * @param text  The text to copy.
+     * @param start The start of the range to copy.
+     * @param end   The end of the range to copy.
+     */
+    public GapEditable(@NonNull CharSequence text, int start, int end) {
+        int length = end - start;
+        chars = new char[length + MIN_GAP_LENGTH];
+        TextUtils.getChars(text, start, end, chars, 0);
+        gapStart = length;
+        gapLength = MIN_GAP_LENGTH;
+        copySpans(text, start, end);
+    }
+
+    private GapEditable(@NonNull CharView sharedChars, @NonNull Spanned text, int start,
+            int end) {
+        this.sharedChars = sharedChars;
+        copySpans(text, start, end);
+    }
+
+    @Override
+    public int length() {
+        if (sharedChars != null) {
+            return sharedChars.length();
+        }
+        return chars.length - gapLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (sharedChars != null) {
+            return sharedChars.charAt(index);
+        }
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("charAt: " + index + " is out of bounds.");
+        }
+        return index < gapStart ? chars[index] : chars[index + gapLength];
+    }
+
+    /**
+     * Copies the specified range of the characters to the destination array, without checking
+     * for the gap for every character.
+     */
+    @Override
+    public void getChars(int start, int end, char[] dest, int destOffset) {
+        if (sharedChars != null) {
+            sharedChars.getChars(start, end, dest, destOffset);
+            return;
+        }
+        checkRange("getChars", start, end);
+        if (end <= gapStart) {
+            System.arraycopy(chars, start, dest, destOffset, end - start);
+        } else if (start >= gapStart) {
+            System.arraycopy(chars, start + gapLength, dest, destOffset, end - start);
+        } else {
+            System.arraycopy(chars, start, dest, destOffset, gapStart - start);
+            System.arraycopy(chars, gapStart + gapLength, dest, destOffset + gapStart - start,
+                    end - gapStart);
+        }
+    }
+
+    /**
+     * Returns a {@link GapEditable} with the specified range of the text, which shares the
+     * characters with this text until either of them is changed.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        checkRange("subSequence", start, end);
+        return new GapEditable(shareChars(start, end), this, start, end);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        int length = length();
+        char[] result = new char[length];
+        getChars(0, length, result, 0);
+        return new String(result);
+    }
+
+    @Override
+    public GapEditable replace(int start, int end, CharSequence source, int sourceStart,
+            int sourceEnd) {
+        checkRange("replace", start, end);
+        if (source == this) {
+            source = subSequence(sourceStart, sourceEnd);
+            sourceEnd -= sourceStart;
+            sourceStart = 0;
+        }
+
+        for (InputFilter filter : filters) {
+            CharSequence filtered = filter.filter(source, sourceStart, sourceEnd, this, start,
+                    end);
+            if (filtered != null) {
+                source = filtered;
+                sourceStart = 0;
+                sourceEnd = filtered.length();
+            }
+        }
+
+        int oldLength = end - start;
+        int newLength = sourceEnd - sourceStart;
+        if (oldLength == 0 && newLength == 0) {
+            return this;
+        }
+
+        TextWatcher[] textWatchers = getSpans(start, start + oldLength, TextWatcher.class);
+        for (TextWatcher watcher : textWatchers) {
+            watcher.beforeTextChanged(this, start, oldLength, newLength);
+        }
+
+        // Keep the selection at the same relative position in the replaced text.
+        boolean adjustSelection = oldLength != 0 && newLength != 0;
+        int selectionStart = 0;
+        int selectionEnd = 0;
+        if (adjustSelection) {
+            selectionStart = Selection.getSelectionStart(this);
+            selectionEnd = Selection.getSelectionEnd(this);
+        }
+
+        if (replaceDepth == changesByDepth.size()) {
+            changesByDepth.add(new SpanTree.Changes());
+        }
+        SpanTree.Changes changes = changesByDepth.get(replaceDepth++);
+        try {
+            changes.recordMoved = spanWatcherCount > 0;
+            change(start, end, source, sourceStart, sourceEnd, changes);
+
+            if (adjustSelection) {
+                if (selectionStart > start && selectionStart < end) {
+                    selectionStart = start + (int) ((long) (selectionStart - start) * newLength /
+                            oldLength);
+                    setSpan(false, Selection.SELECTION_START, selectionStart, selectionStart,
+                            Spanned.SPAN_POINT_POINT);
+                }
+                if (selectionEnd > start && selectionEnd < end) {
+                    selectionEnd = start + (int) ((long) (selectionEnd - start) * newLength /
+                            oldLength);
+                    setSpan(false, Selection.SELECTION_END, selectionEnd, selectionEnd,
+                            Spanned.SPAN_POINT_POINT);
+                }
+            }
+
+            for (TextWatcher watcher : textWatchers) {
+                watcher.onTextChanged(this, start, oldLength, newLength);
+            }
+            for (TextWatcher watcher : textWatchers) {
+                watcher.afterTextChanged(this);
+            }
+
+            // Span watchers are notified after text watchers, which may update the layout. Only
+            // spans moved or removed by the change are visited.
+            if (changes.recordMoved) {
+                for (SpanTree.Node node : changes.removed) {
+                    sendSpanRemoved(node.span, node.start, node.end);
+                }
+                int[] oldBounds = changes.oldBounds;
+                for (int i = 0; i < changes.moved.size(); i++) {
+                    Object span = changes.moved.get(i).span;
+                    int oldStart = oldBounds[i * 2];
+                    int oldEnd = oldBounds[i * 2 + 1];
+                    int newStart = spans.getStart(span);
+                    int newEnd = spans.getEnd(span);
+                    if (newStart >= 0 && (newStart != oldStart || newEnd != oldEnd)) {
+                        sendSpanChanged(span, oldStart, oldEnd, newStart, newEnd);
+                    }
+                }
+            }
+            for (Object span : changes.added) {
+                sendSpanAdded(span, spans.getStart(span), spans.getEnd(span));
+            }
+        } finally {
+            changes.clear();
+            replaceDepth--;
+        }
+        return this;
+    }
+
+    @Override
+    public GapEditable replace(int start, int end, CharSequence text) {
+        return replace(start, end, text, 0, text.length());
+    }
+
+    @Override
+    public GapEditable insert(int where, CharSequence text, int start, int end) {
+        return replace(where, where, text, start, end);
+    }
+
+    @Override
+    public GapEditable insert(int where, CharSequence text) {
+        return replace(where, where, text, 0, text.length());
+    }
+
+    @Override
+    public GapEditable delete(int start, int end) {
+        return replace(start, end, "", 0, 0);
+    }
+
+    @Override
+    public GapEditable append(CharSequence text) {
+        int length = length();
+        return replace(length, length, text, 0, text.length());
+    }
+
+    @Override
+    public GapEditable append(CharSequence text, int start, int end) {
+        int length = length();
+        return replace(length, length, text, start, end);
+    }
+
+    @Override
+    public GapEditable append(char text) {
+        return append(String.valueOf(text));
+    }
+
+    @Override
+    public void clear() {
+        replace(0, length(), "", 0, 0);
+    }
+
+    @Override
+    public void clearSpans() {
+        List<SpanTree.Node> removed = spans.clear();
+        spanWatcherCount = 0;
+        for (SpanTree.Node node : removed) {
+            sendSpanRemoved(node.span, node.start, node.end);
+        }
+    }
+
+    @Override
+    public void setFilters(InputFilter[] filters) {
+        if (filters == null) {
+            throw new IllegalArgumentException("filters: Filters can't be null.");
+        }
+        this.filters = filters;
+    }
+
+    @Override
+    public InputFilter[] getFilters() {
+        return filters;
+    }
+
+    @Override
+    public void setSpan(Object what, int start, int end, int flags) {
+        setSpan(true, what, start, end, flags);
+    }
+
+    @Override
+    public void removeSpan(Object what) {
+        int start = spans.getStart(what);
+        if (start < 0) {
+            return;
+        }
+        int end = spans.getEnd(what);
+        spans.remove(what);
+        if (what instanceof SpanWatcher) {
+            spanWatcherCount--;
+        }
+        sendSpanRemoved(what, start, end);
+    }
+
+    @Override
+    public <T> T[] getSpans(int start, int end, Class<T> type) {
+        return spans.getSpans(start, end, type);
+    }
+
+    @Override
+    public int getSpanStart(Object tag) {
+        return spans.getStart(tag);
+    }
+
+    @Override
+    public int getSpanEnd(Object tag) {
+        return spans.getEnd(tag);
+    }
+
+    @Override
+    public int getSpanFlags(Object tag) {
+        return spans.getFlags(tag);
+    }
+
+    @Override
+    public int nextSpanTransition(int start, int limit, Class type) {
+        return spans.nextTransition(start, limit, type);
+    }
+
+    private CharView shareChars(int start, int end) {
+        if (sharedChars != null) {
+            return sharedChars.subSequence(start, end);
+        }
+        if (sharedViews.size() == MAX_SHARED_VIEWS) {
+            unshareViews();
+        }
+        CharView view = new CharView(this, chars, gapStart, gapLength, start, end - start);
+        sharedViews.add(view);
+        return view;
+    }
+
+    private void copySpans(CharSequence text, int start, int end) {
+        if (!(text instanceof Spanned)) {
+            return;
+        }
+        Spanned spanned = (Spanned) text;
+        int length = end - start;
+        for (Object span : spanned.getSpans(start, end, Object.class)) {
+            if (span instanceof NoCopySpan) {
+                continue;
+            }
+            int spanStart = Math.min(Math.max(spanned.getSpanStart(span) - start, 0), length);
+            int spanEnd = Math.min(Math.max(spanned.getSpanEnd(span) - start, 0), length);
+            setSpan(false, span, spanStart, spanEnd, spanned.getSpanFlags(span));
+        }
+    }
+
+    private void setSpan(boolean send, Object what, int start, int end, int flags) {
+        checkRange("setSpan", start, end);
+        int oldStart = spans.getStart(what);
+        int oldEnd = spans.getEnd(what);
+        if (oldStart < 0 && what instanceof SpanWatcher) {
+            spanWatcherCount++;
+        }
+        spans.put(what, start, end, flags);
+
+        if (send) {
+            if (oldStart < 0) {
+                sendSpanAdded(what, start, end);
+            } else {
+                sendSpanChanged(what, oldStart, oldEnd, start, end);
+            }
+        }
+    }
+
+    /**
+     * Replaces the characters and updates the spans, copying spans of the source which aren't
+     * yet attached to this text. The removed, moved and copied spans are added to the changes.
+     */
+    private void change(int start, int end, CharSequence source, int sourceStart,
+            int sourceEnd, SpanTree.Changes changes) {
+        if (sharedChars != null) {
+            int length = sharedChars.length();
+            chars = new char[length + MIN_GAP_LENGTH];
+            sharedChars.getChars(0, length, chars, 0);
+            gapStart = length;
+            gapLength = MIN_GAP_LENGTH;
+            sharedChars = null;
+        }
+        unshareViews();
+        int oldLength = end - start;
+        int newLength = sourceEnd - sourceStart;
+        boolean atTextEnd = end == length();
+
+        moveGapTo(end);
+        gapStart = start;
+        gapLength += oldLength;
+        if (gapLength < newLength + 1) {
+            resizeGap(newLength);
+        }
+        TextUtils.getChars(source, sourceStart, sourceEnd, chars, start);
+        gapStart += newLength;
+        gapLength -= newLength;
+
+        spans.replace(start, end, newLength, atTextEnd, changes);
+        for (SpanTree.Node node : changes.removed) {
+            if (node.span instanceof SpanWatcher) {
+                spanWatcherCount--;
+            }
+        }
+
+        if (source instanceof Spanned) {
+            Spanned spanned = (Spanned) source;
+            for (Object span : spanned.getSpans(sourceStart, sourceEnd, Object.class)) {
+                if (spans.contains(span)) {
+                    continue;
+                }
+                int spanStart = Math.max(spanned.getSpanStart(span), sourceStart);
+                int spanEnd = Math.min(spanned.getSpanEnd(span), sourceEnd);
+                setSpan(false, span, spanStart - sourceStart + start,
+                        spanEnd - sourceStart + start, spanned.getSpanFlags(span));
+                changes.added.add(span);
+            }
+        }
+    }
+
+    private void moveGapTo(int where) {
+        if (where < gapStart) {
+            System.arraycopy(chars, where, chars, where + gapLength, gapStart - where);
+        } else if (where > gapStart) {
+            System.arraycopy(chars, gapStart + gapLength, chars, gapStart, where - gapStart);
+        }
+        gapStart = where;
+    }
+
+    /**
+     * Grows the array so that the gap fits the specified number of characters. The gap stays at
+     * its current position, with the text following it moved to the end of the new array.
+     */
+    private void resizeGap(int minGapLength) {
+        int length = length();
+        int newGapLength = Math.max(minGapLength + 1, Math.max(MIN_GAP_LENGTH, length / 2));
+        char[] newChars = new char[length + newGapLength];
+        System.arraycopy(chars, 0, newChars, 0, gapStart);
+        int tailLength = chars.length - gapStart - gapLength;
+        System.arraycopy(chars, gapStart + gapLength, newChars, newChars.length - tailLength,
+                tailLength);
+        chars = newChars;
+        gapLength = newGapLength;
+    }
+
+    /**
+     * Gives views which share the characters their own copy, before the characters are changed.
+     */
+    private void unshareViews() {
+        for (int i = 0; i < sharedViews.size(); i++) {
+            sharedViews.get(i).unshare();
+        }
+        sharedViews.clear();
+    }
+
+    private void sendSpanAdded(Object what, int start, int end) {
+        if (spanWatcherCount == 0) {
+            return;
+        }
+        for (SpanWatcher watcher : getSpans(start, end, SpanWatcher.class)) {
+            watcher.onSpanAdded(this, what, start, end);
+        }
+    }
+
+    private void sendSpanRemoved(Object what, int start, int end) {
+        if (spanWatcherCount == 0) {
+            return;
+        }
+        for (SpanWatcher watcher : getSpans(start, end, SpanWatcher.class)) {
+            watcher.onSpanRemoved(this, what, start, end);
+        }
+    }
+
+    private void sendSpanChanged(Object what, int oldStart, int oldEnd, int start, int end) {
+        if (spanWatcherCount == 0) {
+            return;
+        }
+        int queryEnd = Math.min(Math.max(oldEnd, end), length());
+        for (SpanWatcher watcher : getSpans(Math.min(oldStart, start), queryEnd,
+                SpanWatcher.class)) {
+            watcher.onSpanChanged(this, what, oldStart, oldEnd, start, end);
+        }
+    }
+
+    private void checkRange(String operation, int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException(
+                    operation + " (" + start + " ... " + end + ") has invalid range.");
+        }
+    }
+
+    /**
+     * Immutable view of a range of the characters of a {@link GapEditable}, which reads them from
+     * the array of the text until the text is about to change.
+     */
+    private static final class CharView implements CharSequence, GetChars {
+        private final int length;
+        private GapEditable owner;
+        private char[] chars;
+        private int gapStart;
+        private int gapLength;
+        private int start;
+
+        CharView(GapEditable owner, char[] chars, int gapStart, int gapLength, int start,
+                int length) {
+            this.owner = owner;
+            this.chars = chars;
+            this.gapStart = gapStart;
+            this.gapLength = gapLength;
+            this.start = start;
+            this.length = length;
+        }
+
+        void unshare() {
+            char[] copy = new char[length];
+            getChars(0, length, copy, 0);
+            owner = null;
+            chars = copy;
+            gapStart = length;
+            gapLength = 0;
+            start = 0;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("charAt: " + index + " is out of bounds.");
+            }
+            int position = start + index;
+            return position < gapStart ? chars[position] : chars[position + gapLength];
+        }
+
+        @Override
+        public void getChars(int start, int end, char[] dest, int destOffset) {
+            checkRange("getChars", start, end);
+            start += this.start;
+            end += this.start;
+            if (end <= gapStart) {
+                System.arraycopy(chars, start, dest, destOffset, end - start);
+            } else if (start >= gapStart) {
+                System.arraycopy(chars, start + gapLength, dest, destOffset, end - start);
+            } else {
+                System.arraycopy(chars, start, dest, destOffset, gapStart - start);
+                System.arraycopy(chars, gapStart + gapLength, dest,
+                        destOffset + gapStart - start, end - gapStart);
+            }
+        }
+
+        @Override
+        public CharView subSequence(int start, int end) {
+            checkRange("subSequence", start, end);
+            if (owner != null) {
+                return owner.shareChars(this.start + start, this.start + end);
+            }
+            return new CharView(null, chars, gapStart, gapLength, this.start + start,
+                    end - start);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            char[] result = new char[length];
+            getChars(0, length, result, 0);
+            return new String(result);
+        }
+
+        private void checkRange(String operation, int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException(
+                        operation + " (" + start + " ... " + end + ") has invalid range.");
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import android.text.Spannable;
+
+import java.util.Arrays;
+
+/**
+ * Outline of the headers of a {@link Spannable} text, such as the ones created by {@link
+ * MarkdownEdit#addHeader(android.text.Editable, int)}.
+ * <p>
+ * The outline is maintained by the {@link BlockTokenizer} of the text, so after every change only
+ * the lines which were classified again are examined. Headers are stored as a sorted array of
+ * line numbers with their levels, and offsets are resolved through the {@link LineIndex}, which
+ * makes all queries binary searches. Use {@link #obtain(Spannable)} to get the outline of the
+ * text.
+ */
+public final class HeadingOutline {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Spannable text;
+    private final BlockTokenizer tokenizer;
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private byte[] levels = new byte[INITIAL_CAPACITY];
+    private int count;
+
+    HeadingOutline(@NonNull Spannable text, @NonNull BlockTokenizer tokenizer) {
+        this.text = text;
+        this.tokenizer = tokenizer;
+        LineIndex lineIndex = tokenizer.getLineIndex();
+        int lineCount = lineIndex.getLineCount();
+        for (int line = 0; line < lineCount; line++) {
+            setHeader(line, tokenizer.getBlockType(line) == BlockTokenizer.BLOCK_HEADER);
+        }
+    }
+
+    /**
+     * Returns the outline of the specified text, which is kept in sync with the text by its {@link
+     * BlockTokenizer}.
+     *
+     * @param text The {@link Spannable} text for which to obtain the outline.
+     * @return The outline of the text.
+     */
+    @NonNull
+    public static HeadingOutline obtain(@NonNull Spannable text) {
+        return BlockTokenizer.obtain(text).getHeadingOutline();
+    }
+
+    /**
+     * @return The number of headers in the text.
+     */
+    public int getHeadingCount() {
+        return count;
+    }
+
+    /**
+     * @param index The index of the header, counted from 0.
+     * @return The line on which the header is located.
+     */
+    public int getHeadingLine(int index) {
+        checkIndex(index);
+        return lines[index];
+    }
+
+    /**
+     * @param index The index of the header, counted from 0.
+     * @return The heading level from 1 to 6.
+     */
+    public int getHeadingLevel(int index) {
+        checkIndex(index);
+        return levels[index];
+    }
+
+    /**
+     * @param index The index of the header, counted from 0.
+     * @return The offset at which the header line starts.
+     */
+    public int getHeadingStart(int index) {
+        checkIndex(index);
+        return tokenizer.getLineIndex().getLineStart(lines[index]);
+    }
+
+    /**
+     * Returns the title of the specified header, without its "#" markup.
+     *
+     * @param index The index of the header, counted from 0.
+     * @return The title of the header.
+     */
+    @NonNull
+    public CharSequence getHeadingText(int index) {
+        checkIndex(index);
+        int line = lines[index];
+        return text.subSequence(tokenizer.getContentStart(line),
+                tokenizer.getLineIndex().getLineEnd(line));
+    }
+
+    /**
+     * Returns the header of the section in which the specified offset is located, which is the
+     * last header starting at or before the offset.
+     *
+     * @param offset The character offset.
+     * @return The index of the header, or -1 if the offset is located before the first header.
+     */
+    public int getHeadingForOffset(int offset) {
+        return findLastAtOrBefore(tokenizer.getLineIndex().getLineForOffset(offset));
+    }
+
+    /**
+     * Returns the first header which starts after the line containing the specified offset.
+     *
+     * @param offset The character offset.
+     * @return The index of the header, or -1 if there are no more headers.
+     */
+    public int getNextHeading(int offset) {
+        int index = findLastAtOrBefore(tokenizer.getLineIndex().getLineForOffset(offset)) + 1;
+        return index < count ? index : -1;
+    }
+
+    /**
+     * Returns the last header which starts before the line containing the specified offset.
+     *
+     * @param offset The character offset.
+     * @return The index of the header, or -1 if there are no previous headers.
+     */
+    public int getPreviousHeading(int offset) {
+        return findLastAtOrBefore(tokenizer.getLineIndex().getLineForOffset(offset) - 1);
+    }
+
+    /**
+     * Updates the outline after lines from first to old last, inclusive, were replaced with lines
+     * up to new last. Headers located on the replaced lines are removed and the following ones are
+     * moved to their new lines.
+     */
+    void replaceLines(int firstLine, int oldLastLine, int newLastLine) {
+        int removeStart = findLastAtOrBefore(firstLine - 1) + 1;
+        int removeEnd = findLastAtOrBefore(oldLastLine) + 1;
+        int delta = newLastLine - oldLastLine;
+        System.arraycopy(lines, removeEnd, lines, removeStart, count - removeEnd);
+        System.arraycopy(levels, removeEnd, levels, removeStart, count - removeEnd);
+        count -= removeEnd - removeStart;
+        if (delta != 0) {
+            for (int i = removeStart; i < count; i++) {
+                lines[i] += delta;
+            }
+        }
+    }
+
+    /**
+     * Adds or removes the header located on the specified line.
+     */
+    void setHeader(int line, boolean isHeader) {
+        int index = findLastAtOrBefore(line);
+        boolean exists = index >= 0 && lines[index] == line;
+        if (isHeader) {
+            if (!exists) {
+                index++;
+                ensureCapacity(count + 1);
+                System.arraycopy(lines, index, lines, index + 1, count - index);
+                System.arraycopy(levels, index, levels, index + 1, count - index);
+                lines[index] = line;
+                count++;
+            }
+            levels[index] = (byte) tokenizer.getHeaderLevel(line);
+        } else if (exists) {
+            System.arraycopy(lines, index + 1, lines, index, count - index - 1);
+            System.arraycopy(levels, index + 1, levels, index, count - index - 1);
+            count--;
+        }
+    }
+
+    /**
+     * @return The index of the last header located on or before the specified line, or -1.
+     */
+    private int findLastAtOrBefore(int line) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (lines[middle] <= line) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(
+                    "index: " + index + " is out of bounds, heading count is " + count + ".");
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > lines.length) {
+            int newCapacity = Math.max(capacity, lines.length * 2);
+            lines = Arrays.copyOf(lines, newCapacity);
+            levels = Arrays.copyOf(levels, newCapacity);
+        }
+    }
+}
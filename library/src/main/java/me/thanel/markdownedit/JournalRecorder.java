@@ -0,0 +1,174 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.text.Editable;
+import android.text.NoCopySpan;
+import android.text.Spanned;
+import android.text.TextWatcher;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * Records every change of an {@link Editable} text to an {@link EditJournal}, including the
+ * changes made by {@link MarkdownEdit} commands, and compacts the journal into a new snapshot
+ * when it grows too large.
+ * <p>
+ * Changes are written to the journal as they happen, and synced to the disk at most once per sync
+ * interval. Syncing and compaction run on the executor passed to {@link #attach(Editable,
+ * EditJournal, Executor)}, so that typing isn't blocked by waiting for the disk. The latest
+ * changes are synced only by {@link EditJournal#sync()}, which the host should call when it's
+ * paused.
+ * <p>
+ * A document is restored by setting the text of its snapshot, applying the journal with {@link
+ * #restore(Editable, EditJournal)} and then attaching the recorder:
+ * <pre>
+ * EditJournal journal = new EditJournal(file);
+ * JournalRecorder.restore(text, journal);
+ * JournalRecorder.attach(text, journal, executor);
+ * </pre>
+ * If writing to the journal fails, the recorder stops recording, as the following changes
+ * couldn't be applied without the lost one. The failure is available from {@link #getError()}.
+ */
+public final class JournalRecorder implements TextWatcher, NoCopySpan {
+    private static final long SYNC_INTERVAL_NANOS = 2000000000L;
+
+    private final EditJournal journal;
+    private final Executor executor;
+    private final Runnable sync = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                syncing = false;
+            }
+        }
+    };
+
+    // Set from the executor when syncing or compaction fails.
+    private volatile IOException error;
+    private volatile boolean syncing;
+    private volatile boolean compacting;
+    private int dispatchDepth;
+    private long lastSyncTime = System.nanoTime();
+
+    private JournalRecorder(@NonNull EditJournal journal, @NonNull Executor executor) {
+        this.journal = journal;
+        this.executor = executor;
+    }
+
+    /**
+     * Applies the changes recorded in the journal to the specified text as a single edit.
+     *
+     * @param text The {@link Editable} text containing the snapshot of the journal.
+     * @param journal The journal to replay.
+     * @return The number of applied changes.
+     * @throws IOException If the journal can't be read.
+     */
+    public static int restore(@NonNull Editable text, @NonNull EditJournal journal)
+            throws IOException {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            int count = journal.replay(transaction);
+            transaction.commit();
+            return count;
+        } catch (Throwable e) {
+            // A partially replayed journal is never applied to the text.
+            transaction.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts recording the changes of the specified text to the journal.
+     *
+     * @param text The {@link Editable} text to record.
+     * @param journal The journal to which to record the changes.
+     * @param executor The background {@link Executor} on which to sync and compact the journal.
+     * @return The attached recorder.
+     */
+    @NonNull
+    public static JournalRecorder attach(@NonNull Editable text, @NonNull EditJournal journal,
+            @NonNull Executor executor) {
+        JournalRecorder recorder = new JournalRecorder(journal, executor);
+        text.setSpan(recorder, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        return recorder;
+    }
+
+    /**
+     * Stops recording the changes of the specified text. The journal should be closed afterwards
+     * to sync the latest changes.
+     *
+     * @param text The {@link Editable} text from which to remove the recorders.
+     */
+    public static void detach(@NonNull Editable text) {
+        for (JournalRecorder recorder : text.getSpans(0, text.length(), JournalRecorder.class)) {
+            text.removeSpan(recorder);
+        }
+    }
+
+    /**
+     * @return The error which stopped the recording, or {@code null} if all changes were recorded.
+     */
+    @Nullable
+    public IOException getError() {
+        return error;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        dispatchDepth++;
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        if (error != null) {
+            return;
+        }
+
+        try {
+            journal.record(start, start + before, s, start, start + count);
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        // Compaction is done only once the changes made by other watchers in response to the
+        // change were recorded too.
+        if (--dispatchDepth > 0 || error != null) {
+            return;
+        }
+        long time = System.nanoTime();
+        if (!syncing && time - lastSyncTime >= SYNC_INTERVAL_NANOS) {
+            syncing = true;
+            lastSyncTime = time;
+            executor.execute(sync);
+        }
+        if (compacting || !journal.needsCompaction()) {
+            return;
+        }
+
+        // Changes recorded while the copy is written are carried over to the new journal.
+        compacting = true;
+        final String snapshot = s.toString();
+        final long length = journal.getLength();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    journal.compact(snapshot, length);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    compacting = false;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,182 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import android.text.Editable;
+import android.text.NoCopySpan;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+
+import java.util.Arrays;
+
+/**
+ * Index of line start offsets attached to a {@link Spannable} text.
+ * <p>
+ * The index is stored as a span on the text and keeps itself up to date by listening for text
+ * changes, so line lookups are binary searches that don't allocate or copy any part of the text.
+ * Use {@link #obtain(Spannable)} to get the index attached to the text.
+ */
+public final class LineIndex implements TextWatcher, NoCopySpan {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int SCAN_CHUNK_LENGTH = 4096;
+
+    private int[] lineStarts = new int[INITIAL_CAPACITY];
+    private int lineCount;
+    private int length;
+
+    private LineIndex(@NonNull CharSequence text) {
+        rebuild(text);
+    }
+
+    /**
+     * Returns the line index attached to the specified text, attaching a new one if the text
+     * doesn't have it yet.
+     *
+     * @param text The {@link Spannable} text for which to obtain the line index.
+     * @return The line index which is kept in sync with the text.
+     */
+    @NonNull
+    public static LineIndex obtain(@NonNull Spannable text) {
+        LineIndex[] indexes = text.getSpans(0, text.length(), LineIndex.class);
+        if (indexes.length > 0) {
+            return indexes[0];
+        }
+
+        LineIndex index = new LineIndex(text);
+        text.setSpan(index, 0, text.length(),
+                Spanned.SPAN_INCLUSIVE_INCLUSIVE | Spanned.SPAN_PRIORITY);
+        return index;
+    }
+
+    /**
+     * Removes the line index from the specified text, if there is one attached.
+     *
+     * @param text The {@link Spannable} text from which to remove the line index.
+     */
+    public static void detach(@NonNull Spannable text) {
+        for (LineIndex index : text.getSpans(0, text.length(), LineIndex.class)) {
+            text.removeSpan(index);
+        }
+    }
+
+    /**
+     * @return The number of lines in the text. Empty text has a single line.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the line at which the specified offset is located. Offset of a line feed character
+     * belongs to the line which it terminates.
+     *
+     * @param offset The character offset, from 0, inclusive, to text length, inclusive.
+     * @return The line number, counted from 0.
+     */
+    public int getLineForOffset(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineStarts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param line The line number, counted from 0.
+     * @return The offset of the first character of the line.
+     */
+    public int getLineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /**
+     * @param line The line number, counted from 0.
+     * @return The offset just after the last character of the line, excluding the line feed.
+     */
+    public int getLineEnd(int line) {
+        if (line + 1 < lineCount) {
+            return lineStarts[line + 1] - 1;
+        }
+        return length;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        int removedEnd = start + before;
+        int delta = count - before;
+
+        // Line starts which were located in the replaced range, exclusive of its start, were
+        // created by line feeds which no longer exist.
+        int firstRemoved = getLineForOffset(start) + 1;
+        int firstKept = firstRemoved;
+        while (firstKept < lineCount && lineStarts[firstKept] <= removedEnd) {
+            firstKept++;
+        }
+
+        int inserted = 0;
+        for (int i = start; i < start + count; i++) {
+            if (s.charAt(i) == '\n') {
+                inserted++;
+            }
+        }
+
+        int tailCount = lineCount - firstKept;
+        int newLineCount = firstRemoved + inserted + tailCount;
+        ensureCapacity(newLineCount);
+        System.arraycopy(lineStarts, firstKept, lineStarts, firstRemoved + inserted, tailCount);
+        for (int i = firstRemoved + inserted; i < newLineCount; i++) {
+            lineStarts[i] += delta;
+        }
+
+        int line = firstRemoved;
+        for (int i = start; i < start + count; i++) {
+            if (s.charAt(i) == '\n') {
+                lineStarts[line++] = i + 1;
+            }
+        }
+
+        lineCount = newLineCount;
+        length += delta;
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+    }
+
+    private void rebuild(@NonNull CharSequence text) {
+        lineStarts[0] = 0;
+        lineCount = 1;
+        length = text.length();
+
+        // The text is read in chunks, which avoids the per character overhead of charAt for text
+        // implementing GetChars, such as GapEditable.
+        char[] chunk = new char[Math.min(length, SCAN_CHUNK_LENGTH)];
+        for (int chunkStart = 0; chunkStart < length; chunkStart += chunk.length) {
+            int chunkEnd = Math.min(chunkStart + chunk.length, length);
+            TextUtils.getChars(text, chunkStart, chunkEnd, chunk, 0);
+            for (int i = 0; i < chunkEnd - chunkStart; i++) {
+                if (chunk[i] == '\n') {
+                    ensureCapacity(lineCount + 1);
+                    lineStarts[lineCount++] = chunkStart + i + 1;
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, Math.max(capacity, lineStarts.length * 2));
+        }
+    }
+}
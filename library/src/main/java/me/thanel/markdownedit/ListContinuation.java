@@ -0,0 +1,100 @@
+package me.thanel.markdownedit;
+
+import android.text.Editable;
+import android.text.Selection;
+import android.text.TextWatcher;
+
+/**
+ * Continues Markdown lists when a new line is typed at the end of a list item.
+ * <p>
+ * When the line above the typed line break is a bullet ("- "), numbered ("1. ") or task ("- [ ] ")
+ * item, the same kind of item is started on the new line, with the next number for numbered items
+ * and an unchecked box for task items. Typing a line break after an item without any content ends
+ * the list instead by removing the empty item.
+ * <p>
+ * Lines inside of fenced code blocks are left as they are. Only the line above the line break is
+ * inspected, using the {@link BlockTokenizer} of the text, so the cost of each line break doesn't
+ * depend on the length of the text. To enable list continuation add it as a text watcher:
+ * <pre>
+ * editText.addTextChangedListener(new ListContinuation());
+ * </pre>
+ */
+public class ListContinuation implements TextWatcher {
+    // Numbers with more digits are not continued to avoid overflow.
+    private static final int MAX_DIGITS = 9;
+
+    // Reused for every inserted tag to avoid allocations while typing.
+    private final StringBuilder tag = new StringBuilder();
+    private int lineBreakPosition = -1;
+    private boolean editing;
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        lineBreakPosition = !editing && count == 1 && s.charAt(start) == '\n' ? start : -1;
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        int lineBreak = lineBreakPosition;
+        lineBreakPosition = -1;
+        // Only react to line breaks typed at the cursor, not to ones inserted by commands.
+        if (lineBreak == -1 || Selection.getSelectionStart(s) != lineBreak + 1 ||
+                Selection.getSelectionEnd(s) != lineBreak + 1) {
+            return;
+        }
+
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(s);
+        int line = tokenizer.getLineIndex().getLineForOffset(lineBreak);
+        int lineStart = tokenizer.getLineIndex().getLineStart(line);
+        // Lines inside of fenced code are classified as code, so lists are not continued there.
+        int type = tokenizer.getBlockType(line);
+        if (type != BlockTokenizer.BLOCK_BULLET_ITEM &&
+                type != BlockTokenizer.BLOCK_NUMBERED_ITEM &&
+                type != BlockTokenizer.BLOCK_TASK_ITEM) {
+            return;
+        }
+
+        int contentStart =
+                lineStart + MarkdownLines.getMarkupLength(s, lineStart, lineBreak, type);
+        boolean nextLineEmpty = lineBreak + 1 == s.length() || s.charAt(lineBreak + 1) == '\n';
+        editing = true;
+        try {
+            if (contentStart == lineBreak && nextLineEmpty) {
+                s.delete(lineStart, lineBreak + 1);
+                Selection.setSelection(s, lineStart);
+            } else if (buildTag(s, lineStart, type)) {
+                s.insert(lineBreak + 1, tag);
+                Selection.setSelection(s, lineBreak + 1 + tag.length());
+            }
+        } finally {
+            editing = false;
+        }
+    }
+
+    private boolean buildTag(CharSequence text, int lineStart, int type) {
+        tag.setLength(0);
+        if (type == BlockTokenizer.BLOCK_NUMBERED_ITEM) {
+            int number = 0;
+            int position = lineStart;
+            char c;
+            while ((c = text.charAt(position)) != '.') {
+                if (position - lineStart == MAX_DIGITS) {
+                    return false;
+                }
+                number = number * 10 + c - '0';
+                position++;
+            }
+            tag.append(number + 1).append(". ");
+        } else {
+            tag.append(text.charAt(lineStart)).append(' ');
+            if (type == BlockTokenizer.BLOCK_TASK_ITEM) {
+                tag.append("[ ] ");
+            }
+        }
+        return true;
+    }
+}
@@ -5,14 +5,22 @@ import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 import android.text.Editable;
-import android.text.Selection;
-import android.text.Spannable;
 import android.widget.EditText;
 
+/**
+ * Markdown formatting commands for {@link Editable} text and {@link EditText} views.
+ * <p>
+ * Each command is applied to the text through an {@link EditTransaction}, so that watchers of the
+ * text are notified only once. The formatting itself is performed by {@link MarkdownCommands}.
+ */
 public class MarkdownEdit {
-    public static final int LIST_TYPE_BULLETS = 0;
-    public static final int LIST_TYPE_NUMBERS = 1;
-    public static final int LIST_TYPE_TASKS = 2;
+    public static final int LIST_TYPE_BULLETS = MarkdownCommands.LIST_TYPE_BULLETS;
+    public static final int LIST_TYPE_NUMBERS = MarkdownCommands.LIST_TYPE_NUMBERS;
+    public static final int LIST_TYPE_TASKS = MarkdownCommands.LIST_TYPE_TASKS;
+
+    public static final int SEARCH_SKIP_FENCED_CODE = MarkdownSearch.SKIP_FENCED_CODE;
+    public static final int SEARCH_SKIP_INLINE_CODE = MarkdownSearch.SKIP_INLINE_CODE;
+    public static final int SEARCH_SKIP_LINK_URLS = MarkdownSearch.SKIP_LINK_URLS;
 
     private MarkdownEdit() { /* cannot be instantiated */ }
 
@@ -23,7 +31,14 @@ public class MarkdownEdit {
      * @param text The {@link Editable} text to which to add Markdown bold tag.
      */
     public static void addBold(@NonNull Editable text) {
-        surroundSelectionWith(text, "**");
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addBold(transaction);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
     }
 
     /**
@@ -43,7 +58,14 @@ public class MarkdownEdit {
      * @param text The {@link Editable} text to which to add Markdown italic tag.
      */
     public static void addItalic(@NonNull Editable text) {
-        surroundSelectionWith(text, "_");
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addItalic(transaction);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
     }
 
     /**
@@ -63,7 +85,14 @@ public class MarkdownEdit {
      * @param text The {@link Editable} text to which to add Markdown strike-through tag.
      */
     public static void addStrikeThrough(@NonNull Editable text) {
-        surroundSelectionWith(text, "~~");
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addStrikeThrough(transaction);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
     }
 
     /**
@@ -85,7 +114,14 @@ public class MarkdownEdit {
      * @param text The {@link Editable} text to which to add Markdown image tag.
      */
     public static void addImage(@NonNull Editable text) {
-        addLink(text, true);
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addImage(transaction);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
     }
 
     /**
@@ -109,7 +145,14 @@ public class MarkdownEdit {
      * @param text The {@link Editable} text to which to add Markdown link tag.
      */
     public static void addLink(@NonNull Editable text) {
-        addLink(text, false);
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addLink(transaction);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
     }
 
     /**
@@ -132,16 +175,14 @@ public class MarkdownEdit {
      * @param text The {@link Editable} text to which to add Markdown divider.
      */
     public static void addDivider(@NonNull Editable text) {
-        int selectionStart = SelectionUtils.getSelectionStart(text);
-
-        StringBuilder stringBuilder = new StringBuilder();
-        if (selectionStart > 0) {
-            stringBuilder.append("\n");
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addDivider(transaction);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
-        stringBuilder.append("___\n");
-
-        SelectionUtils.replaceSelectedText(text, stringBuilder);
-        updateCursorPosition(text, true);
     }
 
     /**
@@ -165,37 +206,13 @@ public class MarkdownEdit {
      * @param level The heading level. Must be in range from 1, inclusive, to 6, inclusive.
      */
     public static void addHeader(@NonNull Editable text, @IntRange(from = 1, to = 6) int level) {
-        if (level < 1 || level > 6) {
-            throw new IllegalArgumentException(
-                    "level: Heading level must be in range from 1, inclusive, to 6, inclusive.");
-        }
-
-        if (!SelectionUtils.hasSelection(text)) {
-            moveSelectionStartToStartOfLine(text);
-            moveSelectionEndToEndOfLine(text);
-        }
-
-        CharSequence selectedText = SelectionUtils.getSelectedText(text);
-
-        StringBuilder result = new StringBuilder();
-        int selectionStart = SelectionUtils.getSelectionStart(text);
-        if (selectionStart > 0 && text.charAt(selectionStart - 1) != '\n') {
-            result.append("\n");
-        }
-        for (int i = 0; i < level; i++) {
-            result.append("#");
-        }
-        result.append(" ").append(selectedText);
-        int selectionEnd = SelectionUtils.getSelectionEnd(text);
-        if (selectionEnd < text.length() && text.charAt(selectionEnd) != '\n') {
-            result.append("\n");
-        }
-
-        SelectionUtils.replaceSelectedText(text, result);
-
-        selectionEnd = SelectionUtils.getSelectionEnd(text);
-        if (selectionEnd < text.length() && text.charAt(selectionEnd - 1) != '\n') {
-            Selection.setSelection(text, selectionEnd + 1);
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addHeader(transaction, level);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
     }
 
@@ -220,67 +237,14 @@ public class MarkdownEdit {
      * @param listType The type of the list.
      */
     public static void addList(@NonNull Editable text, @ListType int listType) {
-        int tagCount = 1;
-        String tag;
-        switch (listType) {
-            case LIST_TYPE_NUMBERS:
-                tag = "1. ";
-                break;
-            case LIST_TYPE_TASKS:
-                tag = "- [ ] ";
-                break;
-            case LIST_TYPE_BULLETS:
-                tag = "- ";
-                break;
-            default:
-                throw new IllegalArgumentException("listType: Unknown list type.");
-        }
-
-        if (!SelectionUtils.hasSelection(text)) {
-            moveSelectionStartToStartOfLine(text);
-            moveSelectionEndToEndOfLine(text);
-        }
-
-        CharSequence selectedText = SelectionUtils.getSelectedText(text);
-        int selectionStart = SelectionUtils.getSelectionStart(text);
-
-        StringBuilder stringBuilder = new StringBuilder();
-
-        String[] lines = selectedText.toString().split("\n");
-        if (lines.length > 0) {
-            for (String line : lines) {
-                if (line.length() == 0 && stringBuilder.length() != 0) {
-                    stringBuilder.append("\n");
-                    continue;
-                }
-
-                if (stringBuilder.length() > 0) {
-                    stringBuilder.append("\n");
-                }
-                if (!line.trim().startsWith(tag)) {
-                    stringBuilder.append(tag).append(line);
-                } else {
-                    stringBuilder.append(line);
-                }
-
-                if (listType == LIST_TYPE_NUMBERS) {
-                    tagCount += 1;
-                    tag = tagCount + ". ";
-                }
-            }
-        }
-
-        if (stringBuilder.length() == 0) {
-            stringBuilder.append(tag);
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addList(transaction, listType);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
-
-        int selectionEnd = SelectionUtils.getSelectionEnd(text);
-        requireEmptyLineAbove(text, stringBuilder, selectionStart);
-        requireEmptyLineBelow(text, stringBuilder, selectionEnd);
-
-        text.replace(selectionStart, selectionEnd, stringBuilder);
-        Selection.setSelection(text, selectionStart + stringBuilder.length());
-        updateCursorPosition(text, selectedText.length() > 0);
     }
 
     /**
@@ -299,34 +263,13 @@ public class MarkdownEdit {
      * @param text The {@link Editable} view to which to add markdown code block.
      */
     public static void addCode(@NonNull Editable text) {
-        if (!SelectionUtils.hasSelection(text)) {
-            SelectionUtils.selectWordAroundCursor(text);
-        }
-
-        CharSequence selectedText = SelectionUtils.getSelectedText(text);
-        int selectionStart = SelectionUtils.getSelectionStart(text);
-        String string = selectedText.toString();
-        boolean isCodeBlock = string.contains("\n");
-
-        StringBuilder stringBuilder = new StringBuilder();
-        if (isCodeBlock) {
-            requireEmptyLineAbove(text, stringBuilder, selectionStart);
-            stringBuilder.append("```\n").append(selectedText).append("\n```");
-            requireEmptyLineBelow(text, stringBuilder, SelectionUtils.getSelectionEnd(text));
-        } else {
-            stringBuilder.append("`").append(string.trim()).append("`");
-        }
-
-        SelectionUtils.replaceSelectedText(text, stringBuilder);
-        if (isCodeBlock) {
-            updateCursorPosition(text, true);
-        } else {
-            int charactersToGoBack = 0;
-            if (selectedText.length() == 0) {
-                charactersToGoBack = 1;
-            }
-
-            Selection.setSelection(text, SelectionUtils.getSelectionEnd(text) - charactersToGoBack);
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addCode(transaction);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
     }
 
@@ -364,11 +307,14 @@ public class MarkdownEdit {
      * @param text The {@link Editable} text to which to add quote block.
      */
     public static void addQuote(@NonNull Editable text) {
-        if (!SelectionUtils.hasSelection(text)) {
-            moveSelectionStartToStartOfLine(text);
-            moveSelectionEndToEndOfLine(text);
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addQuote(transaction);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
-        addQuote(text, SelectionUtils.getSelectedText(text).toString().trim());
     }
 
     /**
@@ -378,127 +324,462 @@ public class MarkdownEdit {
      * @param quote The text to insert as a quote.
      */
     public static void addQuote(@NonNull Editable text, @NonNull CharSequence quote) {
-        int selectionStart = SelectionUtils.getSelectionStart(text);
-
-        StringBuilder stringBuilder = new StringBuilder();
-        requireEmptyLineAbove(text, stringBuilder, selectionStart);
-
-        stringBuilder.append("> ");
-        if (quote.length() > 0) {
-            stringBuilder.append(quote.toString().replace("\n", "\n> "));
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addQuote(transaction, quote);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
+    }
 
-        requireEmptyLineBelow(text, stringBuilder, SelectionUtils.getSelectionEnd(text));
+    /**
+     * Surrounds each of the specified ranges with Markdown bold tag "**text**". Empty ranges
+     * surround the word at their position.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param text   The {@link Editable} text to which to add Markdown bold tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     */
+    public static void addBold(@NonNull Editable text, @NonNull int[] ranges) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addBold(transaction, ranges);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
+    }
 
-        SelectionUtils.replaceSelectedText(text, stringBuilder);
-        updateCursorPosition(text, quote.length() > 0);
+    /**
+     * Surrounds each of the specified ranges with Markdown bold tag "**text**". Empty ranges
+     * surround the word at their position.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param editText The {@link EditText} view to which to add Markdown bold tags.
+     * @param ranges   The ranges to format, as pairs of start and end sorted by their position.
+     *                 The ranges are replaced with the resulting selection of each range.
+     */
+    public static void addBold(@NonNull EditText editText, @NonNull int[] ranges) {
+        addBold(editText.getText(), ranges);
     }
 
-    @VisibleForTesting
-    static void surroundSelectionWith(@NonNull Editable text, @NonNull String surroundText) {
-        if (!SelectionUtils.hasSelection(text)) {
-            SelectionUtils.selectWordAroundCursor(text);
+    /**
+     * Surrounds each of the specified ranges with Markdown italic tag "_text_". Empty ranges
+     * surround the word at their position.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param text   The {@link Editable} text to which to add Markdown italic tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     */
+    public static void addItalic(@NonNull Editable text, @NonNull int[] ranges) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addItalic(transaction, ranges);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
-        CharSequence selectedText = SelectionUtils.getSelectedText(text);
-        int selectionStart = SelectionUtils.getSelectionStart(text);
+    }
 
-        selectedText = selectedText.toString().trim();
+    /**
+     * Surrounds each of the specified ranges with Markdown italic tag "_text_". Empty ranges
+     * surround the word at their position.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param editText The {@link EditText} view to which to add Markdown italic tags.
+     * @param ranges   The ranges to format, as pairs of start and end sorted by their position.
+     *                 The ranges are replaced with the resulting selection of each range.
+     */
+    public static void addItalic(@NonNull EditText editText, @NonNull int[] ranges) {
+        addItalic(editText.getText(), ranges);
+    }
 
-        int charactersToGoBack = 0;
-        if (selectedText.length() == 0) {
-            charactersToGoBack = surroundText.length();
+    /**
+     * Surrounds each of the specified ranges with Markdown strike-through tag "~~text~~". Empty
+     * ranges surround the word at their position.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param text   The {@link Editable} text to which to add Markdown strike-through tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     */
+    public static void addStrikeThrough(@NonNull Editable text, @NonNull int[] ranges) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addStrikeThrough(transaction, ranges);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
+    }
 
-        StringBuilder result = new StringBuilder();
-        result.append(surroundText).append(selectedText).append(surroundText);
-
-        SelectionUtils.replaceSelectedText(text, result);
-        Selection.setSelection(text, selectionStart + result.length() - charactersToGoBack);
+    /**
+     * Surrounds each of the specified ranges with Markdown strike-through tag "~~text~~". Empty
+     * ranges surround the word at their position.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param editText The {@link EditText} view to which to add Markdown strike-through tags.
+     * @param ranges   The ranges to format, as pairs of start and end sorted by their position.
+     *                 The ranges are replaced with the resulting selection of each range.
+     */
+    public static void addStrikeThrough(@NonNull EditText editText, @NonNull int[] ranges) {
+        addStrikeThrough(editText.getText(), ranges);
     }
 
-    private static void addLink(@NonNull Editable text, boolean isImageLink) {
-        if (!SelectionUtils.hasSelection(text)) {
-            SelectionUtils.selectWordAroundCursor(text);
+    /**
+     * Turns each of the specified ranges to Markdown image tag "![title](url)" treating the range
+     * as a title.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param text   The {@link Editable} text to which to add Markdown image tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     */
+    public static void addImage(@NonNull Editable text, @NonNull int[] ranges) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addImage(transaction, ranges);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
-        String selectedText = SelectionUtils.getSelectedText(text).toString().trim();
+    }
 
-        int selectionStart = SelectionUtils.getSelectionStart(text);
+    /**
+     * Turns each of the specified ranges to Markdown image tag "![title](url)" treating the range
+     * as a title.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param editText The {@link EditText} view to which to add Markdown image tags.
+     * @param ranges   The ranges to format, as pairs of start and end sorted by their position.
+     *                 The ranges are replaced with the resulting selection of each range.
+     */
+    public static void addImage(@NonNull EditText editText, @NonNull int[] ranges) {
+        addImage(editText.getText(), ranges);
+    }
+
+    /**
+     * Turns each of the specified ranges to Markdown link tag "[title](url)" treating the range
+     * as a title.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param text   The {@link Editable} text to which to add Markdown link tags.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     */
+    public static void addLink(@NonNull Editable text, @NonNull int[] ranges) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addLink(transaction, ranges);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
+    }
 
-        String imageMarker = isImageLink ? "!" : "";
-        String result = imageMarker + "[" + selectedText + "](url)";
-        SelectionUtils.replaceSelectedText(text, result);
+    /**
+     * Turns each of the specified ranges to Markdown link tag "[title](url)" treating the range
+     * as a title.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param editText The {@link EditText} view to which to add Markdown link tags.
+     * @param ranges   The ranges to format, as pairs of start and end sorted by their position.
+     *                 The ranges are replaced with the resulting selection of each range.
+     */
+    public static void addLink(@NonNull EditText editText, @NonNull int[] ranges) {
+        addLink(editText.getText(), ranges);
+    }
 
-        if (selectedText.length() == 0) {
-            Selection.setSelection(text, selectionStart + (isImageLink ? 2 : 1));
-        } else {
-            selectionStart = selectionStart + result.length() - 4;
-            Selection.setSelection(text, selectionStart, selectionStart + 3);
+    /**
+     * Formats each of the specified ranges as Markdown code, in the same way as {@link
+     * #addCode(Editable)} formats the selection.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param text   The {@link Editable} text to which to add markdown code.
+     * @param ranges The ranges to format, as pairs of start and end sorted by their position. The
+     *               ranges are replaced with the resulting selection of each range.
+     */
+    public static void addCode(@NonNull Editable text, @NonNull int[] ranges) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addCode(transaction, ranges);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
     }
 
-    private static void requireEmptyLineAbove(@NonNull Spannable text, StringBuilder stringBuilder,
-            int position) {
-        if (position <= 0) {
-            return;
+    /**
+     * Formats each of the specified ranges as Markdown code, in the same way as {@link
+     * #addCode(Editable)} formats the selection.
+     * <p>
+     * All ranges are formatted in a single edit of the text.
+     *
+     * @param editText The {@link EditText} view to which to add markdown code.
+     * @param ranges   The ranges to format, as pairs of start and end sorted by their position.
+     *                 The ranges are replaced with the resulting selection of each range.
+     */
+    public static void addCode(@NonNull EditText editText, @NonNull int[] ranges) {
+        addCode(editText.getText(), ranges);
+    }
+
+    /**
+     * Replaces all occurrences of the query in the text. Matches are found with {@link
+     * MarkdownSearch} and each of them is replaced on its own, so that the text between them keeps
+     * its spans, with the selection updated once all of them are replaced.
+     *
+     * @param text        The {@link Editable} text in which to replace the query.
+     * @param query       The text to find. Can't be empty.
+     * @param replacement The text with which to replace the matches.
+     * @param flags       Combination of {@link #SEARCH_SKIP_FENCED_CODE}, {@link
+     *                    #SEARCH_SKIP_INLINE_CODE} and {@link #SEARCH_SKIP_LINK_URLS}.
+     * @return The number of replaced matches.
+     */
+    public static int replaceAll(@NonNull Editable text, @NonNull String query,
+            @NonNull CharSequence replacement, @SearchFlags int flags) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        transaction.keepHunksSeparate();
+        try {
+            int count = MarkdownSearch.replaceAll(transaction, query, replacement, flags);
+            transaction.commit();
+            return count;
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
+    }
 
-        if (text.charAt(position - 1) != '\n') {
-            stringBuilder.insert(0, "\n\n");
-        } else if (position > 1 && text.charAt(position - 2) != '\n') {
-            stringBuilder.insert(0, "\n");
+    /**
+     * Replaces all occurrences of the query in the text. Matches are found with {@link
+     * MarkdownSearch} and each of them is replaced on its own, inside of a single batch edit of
+     * the view.
+     *
+     * @param editText    The {@link EditText} view in which to replace the query.
+     * @param query       The text to find. Can't be empty.
+     * @param replacement The text with which to replace the matches.
+     * @param flags       Combination of {@link #SEARCH_SKIP_FENCED_CODE}, {@link
+     *                    #SEARCH_SKIP_INLINE_CODE} and {@link #SEARCH_SKIP_LINK_URLS}.
+     * @return The number of replaced matches.
+     */
+    public static int replaceAll(@NonNull EditText editText, @NonNull String query,
+            @NonNull CharSequence replacement, @SearchFlags int flags) {
+        editText.beginBatchEdit();
+        try {
+            return replaceAll(editText.getText(), query, replacement, flags);
+        } finally {
+            editText.endBatchEdit();
         }
     }
 
-    private static void requireEmptyLineBelow(@NonNull Spannable text, StringBuilder stringBuilder,
-            int position) {
-        if (position > text.length() - 1) {
-            return;
+    /**
+     * Checks or unchecks the specified task of the text by replacing only its check mark.
+     *
+     * @param text The {@link Editable} text containing the task.
+     * @param task The index of the task in the {@link TaskIndex} of the text.
+     */
+    public static void toggleTask(@NonNull Editable text, int task) {
+        TaskIndex taskIndex = TaskIndex.obtain(text);
+        int markOffset = taskIndex.getTaskMarkOffset(task);
+        String mark = taskIndex.isTaskChecked(task) ? " " : "x";
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            transaction.replace(markOffset, markOffset + 1, mark);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
+    }
 
-        if (text.charAt(position) != '\n') {
-            stringBuilder.append("\n\n");
-        } else if (position < text.length() - 2 && text.charAt(position + 1) != '\n') {
-            stringBuilder.append("\n");
+    /**
+     * Checks or unchecks the task located on the line at which the cursor is positioned.
+     *
+     * @param text The {@link Editable} text containing the task.
+     * @return Whether there was a task to toggle.
+     */
+    public static boolean toggleTask(@NonNull Editable text) {
+        int task = TaskIndex.obtain(text).getTaskForOffset(SelectionUtils.getSelectionStart(text));
+        if (task == -1) {
+            return false;
         }
+        toggleTask(text, task);
+        return true;
     }
 
-    private static void moveSelectionStartToStartOfLine(@NonNull Spannable text) {
-        int position = SelectionUtils.getSelectionStart(text);
-        String substring = text.subSequence(0, position).toString();
+    /**
+     * Checks or unchecks the task located on the line at which the cursor is positioned.
+     *
+     * @param editText The {@link EditText} view containing the task.
+     * @return Whether there was a task to toggle.
+     */
+    public static boolean toggleTask(@NonNull EditText editText) {
+        return toggleTask(editText.getText());
+    }
 
-        int selectionStart = substring.lastIndexOf('\n') + 1;
-        Selection.setSelection(text, selectionStart, SelectionUtils.getSelectionEnd(text));
+    /**
+     * Checks or unchecks all tasks located on the selected lines in a single edit of the text.
+     *
+     * @param text    The {@link Editable} text containing the tasks.
+     * @param checked Whether to check or uncheck the tasks.
+     * @return The number of tasks which changed their state.
+     */
+    public static int setTasksChecked(@NonNull Editable text, boolean checked) {
+        TaskIndex taskIndex = TaskIndex.obtain(text);
+        LineIndex lineIndex = LineIndex.obtain(text);
+        int selectionStart = SelectionUtils.getSelectionStart(text);
+        int selectionEnd = SelectionUtils.getSelectionEnd(text);
+        int lastLine = lineIndex.getLineForOffset(Math.max(selectionStart, selectionEnd));
+        String mark = checked ? "x" : " ";
+        int changed = 0;
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            int taskCount = taskIndex.getTaskCount();
+            for (int task = taskIndex.getFirstTaskFrom(Math.min(selectionStart, selectionEnd));
+                    task < taskCount && taskIndex.getTaskLine(task) <= lastLine; task++) {
+                if (taskIndex.isTaskChecked(task) != checked) {
+                    int markOffset = taskIndex.getTaskMarkOffset(task);
+                    transaction.replace(markOffset, markOffset + 1, mark);
+                    changed++;
+                }
+            }
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
+        return changed;
     }
 
-    private static void moveSelectionEndToEndOfLine(@NonNull Spannable text) {
-        int position = SelectionUtils.getSelectionEnd(text);
-        String substring = text.subSequence(position, text.length()).toString();
+    /**
+     * Checks or unchecks all tasks located on the selected lines in a single edit of the text.
+     *
+     * @param editText The {@link EditText} view containing the tasks.
+     * @param checked  Whether to check or uncheck the tasks.
+     * @return The number of tasks which changed their state.
+     */
+    public static int setTasksChecked(@NonNull EditText editText, boolean checked) {
+        return setTasksChecked(editText.getText(), checked);
+    }
 
-        int selectionEnd = substring.indexOf('\n');
-        if (selectionEnd == -1) {
-            selectionEnd = text.length();
-        } else {
-            selectionEnd += position;
+    /**
+     * Inserts an empty markdown table at the cursor position and moves the cursor to its first
+     * header cell.
+     * <p>
+     * If text is selected it'll be removed and the table will be added at its position instead.
+     *
+     * @param text    The {@link Editable} text to which to add markdown table.
+     * @param rows    The number of rows, including the header row. Must be at least 1.
+     * @param columns The number of columns. Must be at least 1.
+     */
+    public static void addTable(@NonNull Editable text, int rows, int columns) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.addTable(transaction, rows, columns);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
-        Selection.setSelection(text, SelectionUtils.getSelectionStart(text), selectionEnd);
     }
 
-    private static void updateCursorPosition(@NonNull Spannable text, boolean goToNewLine) {
-        int selectionEnd = SelectionUtils.getSelectionEnd(text);
-        if (selectionEnd > text.length()) {
-            return;
+    /**
+     * Inserts an empty markdown table at the cursor position and moves the cursor to its first
+     * header cell.
+     * <p>
+     * If text is selected it'll be removed and the table will be added at its position instead.
+     *
+     * @param editText The {@link EditText} view to which to add markdown table.
+     * @param rows     The number of rows, including the header row. Must be at least 1.
+     * @param columns  The number of columns. Must be at least 1.
+     */
+    public static void addTable(@NonNull EditText editText, int rows, int columns) {
+        addTable(editText.getText(), rows, columns);
+    }
+
+    /**
+     * Aligns the cells of the markdown table at the cursor position in a single edit of the text.
+     * <p>
+     * To keep tables aligned while typing use {@link TableFormatter} instead.
+     *
+     * @param text The {@link Editable} text containing the table.
+     * @return Whether there was a table to format.
+     */
+    public static boolean formatTable(@NonNull Editable text) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            boolean formatted = MarkdownCommands.formatTable(transaction);
+            transaction.commit();
+            return formatted;
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
+    }
+
+    /**
+     * Aligns the cells of the markdown table at the cursor position in a single edit of the text.
+     * <p>
+     * To keep tables aligned while typing use {@link TableFormatter} instead.
+     *
+     * @param editText The {@link EditText} view containing the table.
+     * @return Whether there was a table to format.
+     */
+    public static boolean formatTable(@NonNull EditText editText) {
+        return formatTable(editText.getText());
+    }
 
-        while (selectionEnd > 0 && text.charAt(selectionEnd - 1) == '\n') {
-            selectionEnd -= 1;
+    @VisibleForTesting
+    static void surroundSelectionWith(@NonNull Editable text, @NonNull int[] ranges,
+            @NonNull String surroundText) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.surroundSelectionWith(transaction, ranges, surroundText);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
-        if (goToNewLine && selectionEnd < text.length()) {
-            selectionEnd += 1;
+    }
+
+    @VisibleForTesting
+    static void surroundSelectionWith(@NonNull Editable text, @NonNull String surroundText) {
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            MarkdownCommands.surroundSelectionWith(transaction, surroundText);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
         }
-        Selection.setSelection(text, selectionEnd);
     }
 
     @IntDef({LIST_TYPE_BULLETS, LIST_TYPE_NUMBERS, LIST_TYPE_TASKS})
     public @interface ListType {
     }
+
+    @IntDef(flag = true,
+            value = {SEARCH_SKIP_FENCED_CODE, SEARCH_SKIP_INLINE_CODE, SEARCH_SKIP_LINK_URLS})
+    public @interface SearchFlags {
+    }
 }
@@ -0,0 +1,420 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import android.graphics.Typeface;
+import android.text.Editable;
+import android.text.Layout;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.EditText;
+
+import java.util.ArrayList;
+
+/**
+ * Live syntax highlighting of the Markdown produced by {@link MarkdownEdit}.
+ * <p>
+ * Only the lines which are currently visible in the {@link EditText}, extended by a scroll margin
+ * above and below, are styled. Highlighting is performed once per frame after the text changes or
+ * the view is scrolled, and the span objects removed from lines which are no longer styled are
+ * recycled instead of allocating new ones.
+ */
+public final class MarkdownHighlighter implements TextWatcher,
+        ViewTreeObserver.OnScrollChangedListener, View.OnLayoutChangeListener, Runnable {
+    private static final float[] HEADER_SIZES = {2f, 1.5f, 1.25f, 1f, 0.875f, 0.85f};
+    private static final int DEFAULT_MARKUP_COLOR = 0xff9e9e9e;
+
+    private final EditText editText;
+    private final SpanPool boldSpans = new SpanPool() {
+        @Override
+        Object create() {
+            return new StyleSpan(Typeface.BOLD);
+        }
+    };
+    private final SpanPool italicSpans = new SpanPool() {
+        @Override
+        Object create() {
+            return new StyleSpan(Typeface.ITALIC);
+        }
+    };
+    private final SpanPool strikeThroughSpans = new SpanPool() {
+        @Override
+        Object create() {
+            return new StrikethroughSpan();
+        }
+    };
+    private final SpanPool codeSpans = new SpanPool() {
+        @Override
+        Object create() {
+            return new TypefaceSpan("monospace");
+        }
+    };
+    private final SpanPool markupSpans = new SpanPool() {
+        @Override
+        Object create() {
+            return new ForegroundColorSpan(markupColor);
+        }
+    };
+    private final SpanPool[] headerSpans = new SpanPool[HEADER_SIZES.length];
+
+    @ColorInt
+    private int markupColor = DEFAULT_MARKUP_COLOR;
+    private int scrollMargin = -1;
+
+    private Spannable highlightedText;
+    private int highlightedStart = -1;
+    private int highlightedEnd = -1;
+    private boolean textChanged;
+    private boolean scheduled;
+
+    @VisibleForTesting
+    MarkdownHighlighter(EditText editText) {
+        this.editText = editText;
+        for (int i = 0; i < HEADER_SIZES.length; i++) {
+            final float size = HEADER_SIZES[i];
+            headerSpans[i] = new SpanPool() {
+                @Override
+                Object create() {
+                    return new RelativeSizeSpan(size);
+                }
+            };
+        }
+    }
+
+    /**
+     * Starts highlighting Markdown in the specified view.
+     *
+     * @param editText The {@link EditText} view in which to highlight Markdown.
+     * @return The highlighter which can be later detached with {@link #detach()}.
+     */
+    @NonNull
+    public static MarkdownHighlighter attach(@NonNull EditText editText) {
+        MarkdownHighlighter highlighter = new MarkdownHighlighter(editText);
+        editText.addTextChangedListener(highlighter);
+        editText.addOnLayoutChangeListener(highlighter);
+        editText.getViewTreeObserver().addOnScrollChangedListener(highlighter);
+        highlighter.textChanged = true;
+        highlighter.schedule();
+        return highlighter;
+    }
+
+    /**
+     * Stops highlighting and removes all styling applied by this highlighter.
+     */
+    public void detach() {
+        editText.removeTextChangedListener(this);
+        editText.removeOnLayoutChangeListener(this);
+        editText.getViewTreeObserver().removeOnScrollChangedListener(this);
+        editText.removeCallbacks(this);
+        scheduled = false;
+        releaseSpans();
+    }
+
+    /**
+     * Sets the color used for Markdown markup characters such as "**" or "> ".
+     *
+     * @param color The color of markup characters.
+     */
+    public void setMarkupColor(@ColorInt int color) {
+        if (markupColor == color) {
+            return;
+        }
+        markupColor = color;
+        releaseSpans();
+        markupSpans.clear();
+        textChanged = true;
+        schedule();
+    }
+
+    /**
+     * Sets the distance above and below the visible area in which lines will be highlighted ahead
+     * of time. By default the margin is equal to the height of the view.
+     *
+     * @param pixels The scroll margin in pixels, or -1 to use the default margin.
+     */
+    public void setScrollMargin(int pixels) {
+        scrollMargin = pixels;
+        schedule();
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        textChanged = true;
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        schedule();
+    }
+
+    @Override
+    public void onScrollChanged() {
+        schedule();
+    }
+
+    @Override
+    public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft,
+            int oldTop, int oldRight, int oldBottom) {
+        schedule();
+    }
+
+    @Override
+    public void run() {
+        scheduled = false;
+        highlight();
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            editText.post(this);
+        }
+    }
+
+    private void highlight() {
+        Layout layout = editText.getLayout();
+        Editable text = editText.getText();
+        if (layout == null || text == null) {
+            return;
+        }
+
+        int margin = scrollMargin >= 0 ? scrollMargin : editText.getHeight();
+        int top = editText.getScrollY() - editText.getTotalPaddingTop();
+        int firstVisibleLine = layout.getLineForVertical(Math.max(0, top - margin));
+        int lastVisibleLine = layout.getLineForVertical(top + editText.getHeight() + margin);
+        highlight(text, layout.getLineStart(firstVisibleLine),
+                layout.getLineEnd(lastVisibleLine));
+    }
+
+    /**
+     * Highlights the lines of the text touched by the specified range. The lines are styled again
+     * only if the text changed since the last highlighting or they weren't all highlighted.
+     *
+     * @param text  The {@link Editable} text to highlight.
+     * @param start The start of the range to highlight.
+     * @param end   The end of the range to highlight.
+     */
+    @VisibleForTesting
+    void highlight(@NonNull Editable text, int start, int end) {
+        if (text != highlightedText) {
+            // Spans applied to the previous text are left with it.
+            clearActiveSpans();
+            highlightedText = text;
+            textChanged = true;
+        }
+
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(text);
+        LineIndex lineIndex = tokenizer.getLineIndex();
+        int firstLine = lineIndex.getLineForOffset(start);
+        int lastLine = lineIndex.getLineForOffset(end);
+        start = lineIndex.getLineStart(firstLine);
+        end = lineIndex.getLineEnd(lastLine);
+        if (!textChanged && start >= highlightedStart && end <= highlightedEnd) {
+            return;
+        }
+
+        releaseSpans();
+        for (int line = firstLine; line <= lastLine; line++) {
+            highlightLine(text, tokenizer, line);
+        }
+        highlightedStart = start;
+        highlightedEnd = end;
+        textChanged = false;
+    }
+
+    private void highlightLine(Spannable text, BlockTokenizer tokenizer, int line) {
+        LineIndex lineIndex = tokenizer.getLineIndex();
+        int start = lineIndex.getLineStart(line);
+        int end = lineIndex.getLineEnd(line);
+        if (start == end) {
+            return;
+        }
+
+        int contentStart = tokenizer.getContentStart(line);
+        switch (tokenizer.getBlockType(line)) {
+            case BlockTokenizer.BLOCK_FENCE:
+                apply(text, markupSpans, start, end);
+                apply(text, codeSpans, start, end);
+                return;
+            case BlockTokenizer.BLOCK_CODE:
+                apply(text, codeSpans, start, end);
+                return;
+            case BlockTokenizer.BLOCK_DIVIDER:
+                apply(text, markupSpans, start, end);
+                return;
+            case BlockTokenizer.BLOCK_HEADER:
+                apply(text, headerSpans[tokenizer.getHeaderLevel(line) - 1], start, end);
+                apply(text, boldSpans, start, end);
+                apply(text, markupSpans, start, contentStart);
+                break;
+            case BlockTokenizer.BLOCK_QUOTE:
+                apply(text, italicSpans, contentStart, end);
+                apply(text, markupSpans, start, contentStart);
+                break;
+            case BlockTokenizer.BLOCK_BULLET_ITEM:
+            case BlockTokenizer.BLOCK_NUMBERED_ITEM:
+            case BlockTokenizer.BLOCK_TASK_ITEM:
+                apply(text, markupSpans, start, contentStart);
+                break;
+        }
+        highlightInline(text, contentStart, end);
+    }
+
+    private void highlightInline(Spannable text, int start, int end) {
+        int position = start;
+        while (position < end) {
+            char c = text.charAt(position);
+            if (c == '`') {
+                int close = indexOf(text, '`', position + 1, end);
+                if (close != -1) {
+                    apply(text, codeSpans, position, close + 1);
+                    apply(text, markupSpans, position, position + 1);
+                    apply(text, markupSpans, close, close + 1);
+                    position = close + 1;
+                    continue;
+                }
+            } else if (c == '_' && !isInsideWord(text, position)) {
+                int close = indexOfUnderscore(text, position + 1, end);
+                if (close != -1) {
+                    highlightPair(text, italicSpans, position, close, 1);
+                    position = close + 1;
+                    continue;
+                }
+            } else if ((c == '*' || c == '~') && position + 1 < end &&
+                    text.charAt(position + 1) == c) {
+                int close = indexOfPair(text, c, position + 2, end);
+                if (close != -1) {
+                    highlightPair(text, c == '*' ? boldSpans : strikeThroughSpans, position,
+                            close, 2);
+                    position = close + 2;
+                    continue;
+                }
+            }
+            position++;
+        }
+    }
+
+    private void highlightPair(Spannable text, SpanPool pool, int open, int close,
+            int markerLength) {
+        apply(text, pool, open, close + markerLength);
+        apply(text, markupSpans, open, open + markerLength);
+        apply(text, markupSpans, close, close + markerLength);
+        highlightInline(text, open + markerLength, close);
+    }
+
+    private void apply(Spannable text, SpanPool pool, int start, int end) {
+        if (start < end) {
+            text.setSpan(pool.obtain(), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+    }
+
+    private void releaseSpans() {
+        if (highlightedText != null) {
+            boldSpans.release(highlightedText);
+            italicSpans.release(highlightedText);
+            strikeThroughSpans.release(highlightedText);
+            codeSpans.release(highlightedText);
+            markupSpans.release(highlightedText);
+            for (SpanPool pool : headerSpans) {
+                pool.release(highlightedText);
+            }
+        }
+        highlightedStart = -1;
+        highlightedEnd = -1;
+    }
+
+    private void clearActiveSpans() {
+        boldSpans.active.clear();
+        italicSpans.active.clear();
+        strikeThroughSpans.active.clear();
+        codeSpans.active.clear();
+        markupSpans.active.clear();
+        for (SpanPool pool : headerSpans) {
+            pool.active.clear();
+        }
+    }
+
+    private static int indexOf(CharSequence text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index of the first underscore in the range which is not inside of a word, or -1
+     * if there is none.
+     */
+    private static int indexOfUnderscore(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '_' && !isInsideWord(text, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Whether the character at the offset is surrounded by letters or digits, as
+     * underscores in "snake_case", in which case it is not markup.
+     */
+    private static boolean isInsideWord(CharSequence text, int offset) {
+        return offset > 0 && offset + 1 < text.length() &&
+                Character.isLetterOrDigit(text.charAt(offset - 1)) &&
+                Character.isLetterOrDigit(text.charAt(offset + 1));
+    }
+
+    private static int indexOfPair(CharSequence text, char c, int start, int end) {
+        for (int i = start; i < end - 1; i++) {
+            if (text.charAt(i) == c && text.charAt(i + 1) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Pool of span objects of a single kind. Spans which are currently applied to the text are
+     * kept in the active list until they are released back to the pool.
+     */
+    private abstract static class SpanPool {
+        final ArrayList<Object> active = new ArrayList<>();
+        private final ArrayList<Object> free = new ArrayList<>();
+
+        abstract Object create();
+
+        Object obtain() {
+            Object span = free.isEmpty() ? create() : free.remove(free.size() - 1);
+            active.add(span);
+            return span;
+        }
+
+        void release(Spannable text) {
+            for (int i = active.size() - 1; i >= 0; i--) {
+                Object span = active.get(i);
+                text.removeSpan(span);
+                free.add(span);
+            }
+            active.clear();
+        }
+
+        void clear() {
+            free.clear();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import android.text.Editable;
+import android.text.TextWatcher;
+
+/**
+ * Keeps the numbers of ordered Markdown lists sequential as items are inserted, removed or moved.
+ * <p>
+ * After each change only the lists touching the changed lines are examined. Each list keeps the
+ * number of its first item, and the numbers of the following items which no longer match their
+ * position are rewritten in a single {@link EditTransaction}. As in lists created by {@link
+ * MarkdownEdit#addList(Editable, int)}, empty lines between items don't break the list.
+ * <p>
+ * To enable renumbering add the renumberer as a text watcher:
+ * <pre>
+ * editText.addTextChangedListener(new OrderedListRenumberer());
+ * </pre>
+ */
+public class OrderedListRenumberer implements TextWatcher {
+    // Numbers with more digits are left untouched to avoid overflow.
+    private static final int MAX_DIGITS = 9;
+
+    private int changeStart;
+    private int changeEnd;
+    private boolean renumbering;
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        changeStart = start;
+        changeEnd = start + count;
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        if (renumbering) {
+            return;
+        }
+
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(s);
+        LineIndex lineIndex = tokenizer.getLineIndex();
+        int firstLine = Math.max(0, lineIndex.getLineForOffset(changeStart) - 1);
+        int lastLine = Math.min(lineIndex.getLineCount() - 1,
+                lineIndex.getLineForOffset(changeEnd) + 1);
+
+        // Move to the first item of the list containing the first changed line.
+        while (firstLine > 0 && isListLine(tokenizer, firstLine - 1)) {
+            firstLine--;
+        }
+
+        renumbering = true;
+        EditTransaction transaction = EditTransaction.begin(s);
+        try {
+            renumber(s, tokenizer, transaction, firstLine, lastLine);
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        } finally {
+            renumbering = false;
+        }
+    }
+
+    private void renumber(@NonNull Editable text, @NonNull BlockTokenizer tokenizer,
+            @NonNull EditTransaction transaction, int firstLine, int lastLine) {
+        LineIndex lineIndex = tokenizer.getLineIndex();
+        int lineCount = lineIndex.getLineCount();
+        // Offsets are read from the unchanged text, and shifted by the length difference of
+        // numbers which were already rewritten in the transaction.
+        int delta = 0;
+        int expectedNumber = -1;
+        for (int line = firstLine; line < lineCount; line++) {
+            int type = tokenizer.getBlockType(line);
+            if (type == BlockTokenizer.BLOCK_EMPTY && expectedNumber != -1) {
+                continue;
+            }
+            if (type != BlockTokenizer.BLOCK_NUMBERED_ITEM) {
+                expectedNumber = -1;
+                if (line > lastLine) {
+                    break;
+                }
+                continue;
+            }
+
+            int start = lineIndex.getLineStart(line);
+            int end = start;
+            while (text.charAt(end) != '.') {
+                end++;
+            }
+            if (end - start > MAX_DIGITS) {
+                expectedNumber = -1;
+                continue;
+            }
+
+            int number = parseNumber(text, start, end);
+            if (expectedNumber == -1) {
+                expectedNumber = number;
+            } else if (number != expectedNumber) {
+                String replacement = String.valueOf(expectedNumber);
+                transaction.replace(start + delta, end + delta, replacement);
+                delta += replacement.length() - (end - start);
+            }
+            expectedNumber++;
+        }
+    }
+
+    private static boolean isListLine(BlockTokenizer tokenizer, int line) {
+        int type = tokenizer.getBlockType(line);
+        return type == BlockTokenizer.BLOCK_NUMBERED_ITEM || type == BlockTokenizer.BLOCK_EMPTY;
+    }
+
+    private static int parseNumber(CharSequence text, int start, int end) {
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            number = number * 10 + text.charAt(i) - '0';
+        }
+        return number;
+    }
+}
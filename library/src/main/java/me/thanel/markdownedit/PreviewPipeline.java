@@ -0,0 +1,177 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Processes the text of an {@link EditText} on a background thread, for example to render its
+ * preview.
+ * <p>
+ * After the text stops changing for the debounce delay a {@link TextSnapshot} of it is taken on
+ * the main thread and handed to the {@link Processor} on the executor. Every change of the text
+ * cancels the snapshot which is currently processed, and results computed for outdated snapshots
+ * are dropped, so the {@link Listener} is called on the main thread only with the result for the
+ * latest version of the text.
+ * <pre>
+ * PreviewPipeline.attach(editText, executor, processor, listener);
+ * </pre>
+ *
+ * @param <T> The type of the processing result.
+ */
+public final class PreviewPipeline<T> implements TextWatcher {
+    private static final long DEFAULT_DEBOUNCE_DELAY = 300;
+
+    /**
+     * Processes snapshots of the text on a background thread.
+     *
+     * @param <T> The type of the processing result.
+     */
+    public interface Processor<T> {
+        /**
+         * Processes the specified snapshot. Long running processing should periodically check
+         * {@link TextSnapshot#isCancelled()} and return early once the snapshot is cancelled.
+         *
+         * @param snapshot The snapshot of the text.
+         * @return The result, or {@code null} if there is nothing to deliver.
+         */
+        @Nullable
+        T process(@NonNull TextSnapshot snapshot);
+    }
+
+    /**
+     * Receives processing results on the main thread.
+     *
+     * @param <T> The type of the processing result.
+     */
+    public interface Listener<T> {
+        /**
+         * Called with the result of processing the latest version of the text.
+         *
+         * @param result  The processing result.
+         * @param version The version of the text from which the result was computed.
+         */
+        void onResult(@NonNull T result, int version);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final EditText editText;
+    private final Executor executor;
+    private final Processor<T> processor;
+    private final Listener<T> listener;
+    private final Runnable takeSnapshot = new Runnable() {
+        @Override
+        public void run() {
+            submit();
+        }
+    };
+
+    private long debounceDelay = DEFAULT_DEBOUNCE_DELAY;
+    // Accessed only from the main thread.
+    private int version;
+    private TextSnapshot currentSnapshot;
+
+    private PreviewPipeline(@NonNull EditText editText, @NonNull Executor executor,
+            @NonNull Processor<T> processor, @NonNull Listener<T> listener) {
+        this.editText = editText;
+        this.executor = executor;
+        this.processor = processor;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts processing the text of the specified view. The current text is processed right away.
+     *
+     * @param editText  The {@link EditText} view whose text to process.
+     * @param executor  The {@link Executor} on which to process snapshots of the text.
+     * @param processor The {@link Processor} which processes the snapshots.
+     * @param listener  The {@link Listener} which receives the results on the main thread.
+     * @param <T>       The type of the processing result.
+     * @return The pipeline which can be later detached with {@link #detach()}.
+     */
+    @NonNull
+    public static <T> PreviewPipeline<T> attach(@NonNull EditText editText,
+            @NonNull Executor executor, @NonNull Processor<T> processor,
+            @NonNull Listener<T> listener) {
+        PreviewPipeline<T> pipeline = new PreviewPipeline<>(editText, executor, processor,
+                listener);
+        editText.addTextChangedListener(pipeline);
+        pipeline.submit();
+        return pipeline;
+    }
+
+    /**
+     * Stops processing the text. Results of snapshots which are still being processed won't be
+     * delivered.
+     */
+    public void detach() {
+        editText.removeTextChangedListener(this);
+        mainHandler.removeCallbacks(takeSnapshot);
+        cancelCurrentSnapshot();
+    }
+
+    /**
+     * Sets the time for which the text must stay unchanged before it is processed.
+     *
+     * @param millis The debounce delay in milliseconds.
+     */
+    public void setDebounceDelay(long millis) {
+        debounceDelay = millis;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        version++;
+        cancelCurrentSnapshot();
+        mainHandler.removeCallbacks(takeSnapshot);
+        mainHandler.postDelayed(takeSnapshot, debounceDelay);
+    }
+
+    private void submit() {
+        cancelCurrentSnapshot();
+        final TextSnapshot snapshot = TextSnapshot.of(editText.getText(), version);
+        currentSnapshot = snapshot;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (snapshot.isCancelled()) {
+                    return;
+                }
+                final T result = processor.process(snapshot);
+                if (result == null || snapshot.isCancelled()) {
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (snapshot == currentSnapshot && !snapshot.isCancelled()) {
+                            currentSnapshot = null;
+                            listener.onResult(result, snapshot.getVersion());
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void cancelCurrentSnapshot() {
+        if (currentSnapshot != null) {
+            currentSnapshot.cancel();
+            currentSnapshot = null;
+        }
+    }
+}
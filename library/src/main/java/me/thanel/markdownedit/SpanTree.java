@@ -0,0 +1,521 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.text.Spanned;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Interval tree holding the spans of a {@link GapEditable}.
+ * <p>
+ * Spans are stored in a treap ordered by their start, in which every node also keeps the largest
+ * end in its subtree, so span queries skip subtrees which end before the queried range. Shifting
+ * all spans located after a change is a single lazy update of a subtree, which makes a text change
+ * cost proportional to the number of spans touching the changed range rather than to the number
+ * of all spans.
+ */
+final class SpanTree {
+    private static final int POINT = 2;
+    private static final int PARAGRAPH = 3;
+
+    private static final Comparator<Node> PRIORITY_ORDER = new Comparator<Node>() {
+        @Override
+        public int compare(Node first, Node second) {
+            int firstPriority = first.flags & Spanned.SPAN_PRIORITY;
+            int secondPriority = second.flags & Spanned.SPAN_PRIORITY;
+            if (firstPriority != secondPriority) {
+                return firstPriority > secondPriority ? -1 : 1;
+            }
+            return first.order < second.order ? -1 : first.order == second.order ? 0 : 1;
+        }
+    };
+
+    private static final Comparator<Node> POSITION_ORDER = new Comparator<Node>() {
+        @Override
+        public int compare(Node first, Node second) {
+            if (first.start != second.start) {
+                return first.start < second.start ? -1 : 1;
+            }
+            return first.order < second.order ? -1 : first.order == second.order ? 0 : 1;
+        }
+    };
+
+    static final class Node {
+        final Object span;
+        final long order;
+        final int heapPriority;
+        int start;
+        int end;
+        int flags;
+
+        // Largest end in the subtree and shift pending for all descendants of this node.
+        int maxEnd;
+        int shift;
+        Node left;
+        Node right;
+        Node parent;
+
+        Node(Object span, long order, int heapPriority) {
+            this.span = span;
+            this.order = order;
+            this.heapPriority = heapPriority;
+        }
+    }
+
+    /**
+     * Spans moved or removed by {@link #replace}.
+     */
+    static final class Changes {
+        final ArrayList<Node> removed = new ArrayList<>();
+        final ArrayList<Node> moved = new ArrayList<>();
+        // Spans added to the text together with the replacement.
+        final ArrayList<Object> added = new ArrayList<>();
+        // Bounds of the moved spans before the replacement, as pairs of start and end.
+        int[] oldBounds = new int[32];
+        // Whether moved spans are recorded, which costs a visit of every span after the change.
+        boolean recordMoved;
+
+        void clear() {
+            removed.clear();
+            moved.clear();
+            added.clear();
+        }
+
+        private void addMoved(Node node, int oldStart, int oldEnd) {
+            int index = moved.size() * 2;
+            if (index == oldBounds.length) {
+                oldBounds = Arrays.copyOf(oldBounds, index * 2);
+            }
+            oldBounds[index] = oldStart;
+            oldBounds[index + 1] = oldEnd;
+            moved.add(node);
+        }
+    }
+
+    private final IdentityHashMap<Object, Node> nodes = new IdentityHashMap<>();
+    // Nodes of the replaced range, reused by every replacement.
+    private final ArrayList<Node> replaced = new ArrayList<>();
+    private Node root;
+    private long nextOrder;
+    private int seed = 0x2545F491;
+
+    // Results of the last split.
+    private Node splitLeft;
+    private Node splitRight;
+    private int transition;
+
+    int size() {
+        return nodes.size();
+    }
+
+    boolean contains(@NonNull Object span) {
+        return nodes.containsKey(span);
+    }
+
+    /**
+     * @return The start of the span, or -1 if it isn't in the tree.
+     */
+    int getStart(@NonNull Object span) {
+        Node node = nodes.get(span);
+        if (node == null) {
+            return -1;
+        }
+        int start = node.start;
+        for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+            start += ancestor.shift;
+        }
+        return start;
+    }
+
+    /**
+     * @return The end of the span, or -1 if it isn't in the tree.
+     */
+    int getEnd(@NonNull Object span) {
+        Node node = nodes.get(span);
+        if (node == null) {
+            return -1;
+        }
+        int end = node.end;
+        for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+            end += ancestor.shift;
+        }
+        return end;
+    }
+
+    /**
+     * @return The flags of the span, or 0 if it isn't in the tree.
+     */
+    int getFlags(@NonNull Object span) {
+        Node node = nodes.get(span);
+        return node != null ? node.flags : 0;
+    }
+
+    /**
+     * Adds the span to the tree, or moves it if it is already there. Moved spans keep their
+     * insertion order.
+     */
+    void put(@NonNull Object span, int start, int end, int flags) {
+        Node node = nodes.get(span);
+        if (node != null) {
+            unlink(node);
+        } else {
+            node = new Node(span, nextOrder++, nextPriority());
+            nodes.put(span, node);
+        }
+        node.start = start;
+        node.end = end;
+        node.flags = flags;
+        node.maxEnd = end;
+        node.shift = 0;
+
+        split(root, start, node.order);
+        Node right = splitRight;
+        root = merge(merge(splitLeft, node), right);
+        root.parent = null;
+    }
+
+    /**
+     * Removes the span from the tree.
+     *
+     * @return Whether the span was in the tree.
+     */
+    boolean remove(@NonNull Object span) {
+        Node node = nodes.remove(span);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Removes all spans, returning their nodes ordered by their start.
+     */
+    @NonNull
+    List<Node> clear() {
+        List<Node> all = getNodes();
+        nodes.clear();
+        root = null;
+        return all;
+    }
+
+    /**
+     * Returns the spans intersecting the specified range, ordered by their priority and then by
+     * their insertion order. Spans which only touch the range are included only if either the
+     * span or the range is empty.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    <T> T[] getSpans(int queryStart, int queryEnd, @Nullable Class<T> kind) {
+        ArrayList<Node> result = new ArrayList<>();
+        collect(root, queryStart, queryEnd, kind, result);
+        Collections.sort(result, PRIORITY_ORDER);
+        T[] spans = (T[]) Array.newInstance(kind != null ? kind : Object.class, result.size());
+        for (int i = 0; i < spans.length; i++) {
+            spans[i] = (T) result.get(i).span;
+        }
+        return spans;
+    }
+
+    /**
+     * Returns all nodes with their positions brought up to date, ordered by their start.
+     */
+    @NonNull
+    List<Node> getNodes() {
+        ArrayList<Node> result = new ArrayList<>(nodes.size());
+        collectAll(root, result);
+        return result;
+    }
+
+    /**
+     * @return The first span start or end of the specified kind after start and before limit, or
+     * limit if there is none.
+     */
+    int nextTransition(int start, int limit, @Nullable Class<?> kind) {
+        transition = limit;
+        findTransition(root, start, kind);
+        return transition;
+    }
+
+    /**
+     * Updates the spans after the range from start to end was replaced with text of the specified
+     * length, following the rules of {@link android.text.SpannableStringBuilder}: marks located in
+     * the replaced range move to its start and points to the end of the replacement, and
+     * exclusive spans which would become empty are removed.
+     *
+     * @param atTextEnd Whether the replaced range was located at the end of the text.
+     * @param changes   The changes to which to add the removed spans, and the moved spans if
+     *                  they are recorded.
+     */
+    void replace(int start, int end, int newLength, boolean atTextEnd,
+            @NonNull Changes changes) {
+        int delta = newLength - (end - start);
+
+        split(root, start, Long.MIN_VALUE);
+        Node before = splitLeft;
+        split(splitRight, end, Long.MAX_VALUE);
+        Node inside = splitLeft;
+        Node after = splitRight;
+
+        shift(after, delta);
+        if (changes.recordMoved && delta != 0) {
+            collectShifted(after, delta, changes);
+        }
+        updateEnds(before, start, end, newLength, atTextEnd, changes);
+
+        collectAll(inside, replaced);
+        int keptCount = 0;
+        for (int i = 0; i < replaced.size(); i++) {
+            Node node = replaced.get(i);
+            if (end > start && (node.flags & Spanned.SPAN_POINT_MARK_MASK) ==
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE && node.start < end && node.end <= end &&
+                    (newLength == 0 || node.start > start || node.end < end)) {
+                nodes.remove(node.span);
+                changes.removed.add(node);
+                continue;
+            }
+            if (changes.recordMoved) {
+                changes.addMoved(node, node.start, node.end);
+            }
+            node.start = updateOffset(node.start, (node.flags & Spanned.SPAN_POINT_MARK_MASK) >> 4,
+                    start, end, newLength, atTextEnd);
+            node.end = updateOffset(node.end, node.flags & 0x03, start, end, newLength,
+                    atTextEnd);
+            node.left = null;
+            node.right = null;
+            node.shift = 0;
+            node.maxEnd = node.end;
+            replaced.set(keptCount++, node);
+        }
+        for (int i = replaced.size() - 1; i >= keptCount; i--) {
+            replaced.remove(i);
+        }
+        Collections.sort(replaced, POSITION_ORDER);
+
+        inside = null;
+        for (int i = 0; i < replaced.size(); i++) {
+            inside = merge(inside, replaced.get(i));
+        }
+        replaced.clear();
+        root = merge(merge(before, inside), after);
+        if (root != null) {
+            root.parent = null;
+        }
+    }
+
+    /**
+     * @return The new position of a span boundary with the specified flag after a replacement.
+     */
+    static int updateOffset(int offset, int flag, int start, int end, int newLength,
+            boolean atTextEnd) {
+        if (offset < start) {
+            return offset;
+        }
+        if (offset > end) {
+            return offset + newLength - (end - start);
+        }
+        boolean isPoint = flag == POINT || flag == PARAGRAPH && atTextEnd;
+        if (start == end) {
+            return isPoint ? start + newLength : start;
+        }
+        if (isPoint) {
+            return offset == start && newLength > 0 ? start : start + newLength;
+        }
+        return newLength == 0 || offset < end ? start : start + newLength;
+    }
+
+    private void updateEnds(Node node, int start, int end, int newLength, boolean atTextEnd,
+            Changes changes) {
+        if (node == null || node.maxEnd < start) {
+            return;
+        }
+        push(node);
+        updateEnds(node.left, start, end, newLength, atTextEnd, changes);
+        updateEnds(node.right, start, end, newLength, atTextEnd, changes);
+        int oldEnd = node.end;
+        node.end = updateOffset(oldEnd, node.flags & 0x03, start, end, newLength, atTextEnd);
+        if (changes.recordMoved && node.end != oldEnd) {
+            changes.addMoved(node, node.start, oldEnd);
+        }
+        update(node);
+    }
+
+    /**
+     * Records all nodes of the subtree, which was just shifted by the delta, as moved.
+     */
+    private void collectShifted(Node node, int delta, Changes changes) {
+        if (node == null) {
+            return;
+        }
+        push(node);
+        collectShifted(node.left, delta, changes);
+        changes.addMoved(node, node.start - delta, node.end - delta);
+        collectShifted(node.right, delta, changes);
+    }
+
+    private void collect(Node node, int queryStart, int queryEnd, Class<?> kind,
+            List<Node> result) {
+        if (node == null || node.maxEnd < queryStart) {
+            return;
+        }
+        push(node);
+        collect(node.left, queryStart, queryEnd, kind, result);
+        if (node.start > queryEnd) {
+            return;
+        }
+        int start = node.start;
+        int end = node.end;
+        if (end >= queryStart && (start == end || queryStart == queryEnd ||
+                start != queryEnd && end != queryStart) &&
+                (kind == null || kind == Object.class || kind.isInstance(node.span))) {
+            result.add(node);
+        }
+        collect(node.right, queryStart, queryEnd, kind, result);
+    }
+
+    private void collectAll(Node node, List<Node> result) {
+        if (node == null) {
+            return;
+        }
+        push(node);
+        collectAll(node.left, result);
+        result.add(node);
+        collectAll(node.right, result);
+    }
+
+    private void findTransition(Node node, int start, Class<?> kind) {
+        if (node == null || node.maxEnd <= start) {
+            return;
+        }
+        push(node);
+        findTransition(node.left, start, kind);
+        if (node.start >= transition) {
+            return;
+        }
+        if (kind == null || kind.isInstance(node.span)) {
+            if (node.start > start) {
+                transition = node.start;
+            } else if (node.end > start && node.end < transition) {
+                transition = node.end;
+            }
+        }
+        findTransition(node.right, start, kind);
+    }
+
+    /**
+     * Splits the subtree to nodes ordered before the specified start and order, and the rest.
+     */
+    private void split(Node node, int start, long order) {
+        if (node == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        push(node);
+        if (node.start < start || node.start == start && node.order < order) {
+            split(node.right, start, order);
+            node.right = splitLeft;
+            update(node);
+            node.parent = null;
+            splitLeft = node;
+        } else {
+            split(node.left, start, order);
+            node.left = splitRight;
+            update(node);
+            node.parent = null;
+            splitRight = node;
+        }
+    }
+
+    private Node merge(Node first, Node second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.heapPriority > second.heapPriority) {
+            push(first);
+            first.right = merge(first.right, second);
+            update(first);
+            return first;
+        }
+        push(second);
+        second.left = merge(first, second.left);
+        update(second);
+        return second;
+    }
+
+    private void unlink(Node node) {
+        pushPath(node);
+        Node replacement = merge(node.left, node.right);
+        Node parent = node.parent;
+        if (replacement != null) {
+            replacement.parent = parent;
+        }
+        if (parent == null) {
+            root = replacement;
+        } else if (parent.left == node) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+        for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            update(ancestor);
+        }
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+    }
+
+    private void pushPath(Node node) {
+        if (node.parent != null) {
+            pushPath(node.parent);
+        }
+        push(node);
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static void push(Node node) {
+        if (node.shift != 0) {
+            shift(node.left, node.shift);
+            shift(node.right, node.shift);
+            node.shift = 0;
+        }
+    }
+
+    private static void shift(Node node, int delta) {
+        if (node != null && delta != 0) {
+            node.start += delta;
+            node.end += delta;
+            node.maxEnd += delta;
+            node.shift += delta;
+        }
+    }
+
+    private static void update(Node node) {
+        int maxEnd = node.end;
+        if (node.left != null) {
+            node.left.parent = node;
+            maxEnd = Math.max(maxEnd, node.left.maxEnd);
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+            maxEnd = Math.max(maxEnd, node.right.maxEnd);
+        }
+        node.maxEnd = maxEnd;
+    }
+}
@@ -0,0 +1,291 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import android.text.Editable;
+import android.text.TextWatcher;
+
+/**
+ * Keeps Markdown tables aligned while typing, padding the cells of every column to the same width
+ * as in tables created by {@link MarkdownEdit#addTable(Editable, int, int)}.
+ * <p>
+ * The widths of the cells of the edited table are cached. When a single row is edited only that
+ * row is measured again, and the width of a column is recomputed from the cached widths only when
+ * a cell of that column changed. The edited row is rewritten and the padding of the other rows is
+ * adjusted only in the columns whose width changed, all in a single {@link EditTransaction}.
+ * Changes adding or removing lines clear the cache, after which the whole table is formatted
+ * again as by {@link MarkdownEdit#formatTable(Editable)}.
+ * <p>
+ * To enable formatting add the formatter as a text watcher:
+ * <pre>
+ * editText.addTextChangedListener(new TableFormatter());
+ * </pre>
+ */
+public class TableFormatter implements TextWatcher {
+    // Reused for every formatted row to avoid allocations while typing.
+    private final StringBuilder row = new StringBuilder();
+    private int changeStart;
+    private int changeEnd;
+    private int pendingChanges;
+    private boolean linesChanged;
+    private boolean formatting;
+
+    // Cached table, which is valid while the text has the same lines.
+    private Editable text;
+    private int lineCount;
+    private int firstLine = -1;
+    private int[][] cellWidths;
+    private int[] columnWidths;
+    private int[] newColumnWidths;
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        if (!formatting) {
+            linesChanged |= containsLineBreak(s, start, start + count);
+        }
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        if (!formatting) {
+            linesChanged |= containsLineBreak(s, start, start + count);
+            changeStart = start;
+            changeEnd = start + count;
+            pendingChanges++;
+        }
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        if (formatting || pendingChanges == 0) {
+            return;
+        }
+        // Changes made by other watchers while handling a change can't be told apart.
+        boolean isSingleLineChange = pendingChanges == 1 && !linesChanged;
+        pendingChanges = 0;
+        linesChanged = false;
+
+        LineIndex lineIndex = LineIndex.obtain(s);
+        if (s != text || !isSingleLineChange || lineIndex.getLineCount() != lineCount) {
+            firstLine = -1;
+        }
+        int line = findTableRow(s, lineIndex, changeStart, changeEnd);
+        if (line == -1) {
+            // A row of the cached table which is no longer a row splits the table.
+            int changedLine = lineIndex.getLineForOffset(changeStart);
+            if (firstLine != -1 && changedLine >= firstLine &&
+                    changedLine < firstLine + cellWidths.length) {
+                firstLine = -1;
+            }
+            return;
+        }
+
+        formatting = true;
+        EditTransaction transaction = EditTransaction.begin(s);
+        try {
+            if (transaction.isInsideFence(lineIndex.getLineStart(line))) {
+                firstLine = -1;
+            } else if (firstLine == -1 || line < firstLine ||
+                    line >= firstLine + cellWidths.length ||
+                    !updateRow(s, lineIndex, transaction, line)) {
+                formatTable(s, lineIndex, transaction, line);
+            }
+            transaction.commit();
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        } finally {
+            formatting = false;
+        }
+    }
+
+    /**
+     * Formats the whole table located on the specified line and caches the widths of its cells.
+     */
+    private void formatTable(@NonNull Editable s, @NonNull LineIndex lineIndex,
+            @NonNull EditTransaction transaction, int line) {
+        int[][] widths = MarkdownTables.formatTable(transaction, lineIndex.getLineStart(line),
+                true);
+        if (widths == null) {
+            firstLine = -1;
+            return;
+        }
+
+        // Formatting doesn't add or remove lines, so the table starts on the same line.
+        int tableLine = line;
+        while (tableLine > 0 && MarkdownTables.isTableRow(s, lineIndex.getLineStart(tableLine - 1),
+                lineIndex.getLineEnd(tableLine - 1))) {
+            tableLine--;
+        }
+        int columnCount = widths[0].length;
+        text = s;
+        lineCount = lineIndex.getLineCount();
+        firstLine = tableLine;
+        cellWidths = widths;
+        columnWidths = new int[columnCount];
+        newColumnWidths = new int[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            columnWidths[column] = MarkdownTables.getColumnWidth(widths, column);
+        }
+    }
+
+    /**
+     * Formats the edited row of the cached table and adjusts the padding of the other rows in the
+     * columns whose width changed.
+     *
+     * @return Whether the row was handled, or false if the whole table has to be formatted.
+     */
+    private boolean updateRow(@NonNull Editable s, @NonNull LineIndex lineIndex,
+            @NonNull EditTransaction transaction, int line) {
+        int editedRow = line - firstLine;
+        int editedRowStart = lineIndex.getLineStart(line);
+        int editedRowEnd = lineIndex.getLineEnd(line);
+        int[] cells = MarkdownTables.findCells(s, editedRowStart, editedRowEnd);
+        if (cells.length != columnWidths.length * 2) {
+            return false;
+        }
+        boolean isDelimiter = editedRow == 1;
+        if (isDelimiter && !MarkdownTables.isDelimiterRow(s, cells)) {
+            // The rows are no longer a table.
+            firstLine = -1;
+            return true;
+        }
+
+        int selectionStart = transaction.getSelectionStart();
+        int selectionEnd = transaction.getSelectionEnd();
+        System.arraycopy(columnWidths, 0, newColumnWidths, 0, columnWidths.length);
+        boolean widthsChanged = false;
+        if (!isDelimiter) {
+            if (selectionStart == selectionEnd) {
+                MarkdownTables.extendCellToOffset(s, cells, selectionStart);
+            }
+            widthsChanged = measureRow(s, cells, editedRow);
+        }
+
+        // Rows are edited from the top, so that the transaction only appends to its window.
+        // Offsets are read from the unchanged text and shifted by the preceding changes.
+        int delta = 0;
+        int rowCount = widthsChanged ? cellWidths.length : editedRow + 1;
+        for (int rowIndex = widthsChanged ? 0 : editedRow; rowIndex < rowCount; rowIndex++) {
+            if (rowIndex == editedRow) {
+                row.setLength(0);
+                MarkdownTables.appendRow(row, s, cells, newColumnWidths, isDelimiter);
+                if (selectionStart >= editedRowStart && selectionStart <= editedRowEnd) {
+                    selectionStart = editedRowStart + delta +
+                            MarkdownTables.mapOffset(selectionStart, s, cells, newColumnWidths);
+                } else {
+                    selectionStart = -1;
+                }
+                if (selectionEnd >= editedRowStart && selectionEnd <= editedRowEnd) {
+                    selectionEnd = editedRowStart + delta +
+                            MarkdownTables.mapOffset(selectionEnd, s, cells, newColumnWidths);
+                } else {
+                    selectionEnd = -1;
+                }
+                transaction.replace(editedRowStart + delta, editedRowEnd + delta, row);
+                delta += row.length() - (editedRowEnd - editedRowStart);
+            } else {
+                int rowLine = firstLine + rowIndex;
+                delta = padRow(transaction, s, lineIndex.getLineStart(rowLine),
+                        lineIndex.getLineEnd(rowLine), rowIndex == 1, delta);
+            }
+        }
+
+        transaction.setSelection(selectionStart != -1 ? selectionStart :
+                transaction.getSelectionStart(), selectionEnd != -1 ? selectionEnd :
+                transaction.getSelectionEnd());
+        int[] widths = columnWidths;
+        columnWidths = newColumnWidths;
+        newColumnWidths = widths;
+        return true;
+    }
+
+    /**
+     * Updates the cached widths of the cells of the row and the widths of the columns to which
+     * they belong. Other cells are not measured.
+     *
+     * @return Whether the width of any column changed.
+     */
+    private boolean measureRow(@NonNull CharSequence s, @NonNull int[] cells, int rowIndex) {
+        int[] rowWidths = cellWidths[rowIndex];
+        boolean widthsChanged = false;
+        for (int column = 0; column < rowWidths.length; column++) {
+            int width = MarkdownTables.measure(s, cells[column * 2], cells[column * 2 + 1]);
+            int oldWidth = rowWidths[column];
+            if (width == oldWidth) {
+                continue;
+            }
+            rowWidths[column] = width;
+            int columnWidth = columnWidths[column];
+            if (width > columnWidth) {
+                newColumnWidths[column] = width;
+            } else if (oldWidth == columnWidth) {
+                // The widest cell got narrower, so the column is measured from the cached widths.
+                newColumnWidths[column] = MarkdownTables.getColumnWidth(cellWidths, column);
+            }
+            widthsChanged |= newColumnWidths[column] != columnWidth;
+        }
+        return widthsChanged;
+    }
+
+    /**
+     * Inserts or removes padding of the formatted row in the columns whose width changed. The
+     * padding is located from the cells of the row, as widths are counted in code points and
+     * don't match the number of characters of cells containing surrogate pairs.
+     *
+     * @param s           The text containing the row, unchanged by the transaction.
+     * @param rowStart    The start of the row in the text.
+     * @param rowEnd      The end of the row in the text.
+     * @param isDelimiter Whether the row is the delimiter row, which is padded with dashes.
+     * @param delta       The length difference of the preceding changes.
+     * @return The length difference including the changes of this row.
+     */
+    private int padRow(@NonNull EditTransaction transaction, @NonNull CharSequence s,
+            int rowStart, int rowEnd, boolean isDelimiter, int delta) {
+        int[] cells = MarkdownTables.findCells(s, rowStart, rowEnd);
+        int columnCount = Math.min(columnWidths.length, cells.length / 2);
+        for (int column = 0; column < columnCount; column++) {
+            int change = newColumnWidths[column] - columnWidths[column];
+            if (change == 0) {
+                continue;
+            }
+            // Spaces are added after the cell content, dashes after a possible colon.
+            int position = (isDelimiter ? cells[column * 2] + 1 : cells[column * 2 + 1]) + delta;
+            if (change > 0) {
+                row.setLength(0);
+                for (int i = 0; i < change; i++) {
+                    row.append(isDelimiter ? '-' : ' ');
+                }
+                transaction.replace(position, position, row);
+            } else {
+                transaction.replace(position, position - change, "");
+            }
+            delta += change;
+        }
+        return delta;
+    }
+
+    /**
+     * @return The line of the changed range which is a table row, or -1 if there is none.
+     */
+    private static int findTableRow(@NonNull Editable s, @NonNull LineIndex lineIndex, int start,
+            int end) {
+        int firstLine = lineIndex.getLineForOffset(start);
+        int lastLine = lineIndex.getLineForOffset(end);
+        for (int line = firstLine; line <= lastLine; line++) {
+            if (MarkdownTables.isTableRow(s, lineIndex.getLineStart(line),
+                    lineIndex.getLineEnd(line))) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean containsLineBreak(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,201 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import android.text.Spannable;
+
+import java.util.Arrays;
+
+/**
+ * Index of the task list items "- [ ] " and "- [x] " of a {@link Spannable} text, such as the ones
+ * created by {@link MarkdownEdit#addList(android.text.Editable, int)} with {@link
+ * MarkdownEdit#LIST_TYPE_TASKS}.
+ * <p>
+ * The index is maintained by the {@link BlockTokenizer} of the text, so after every change only
+ * the lines which were classified again are examined. Tasks are stored as a sorted array of line
+ * numbers with their checked state, together with the number of checked tasks, so progress
+ * queries and lookups by index take constant time. Use {@link #obtain(Spannable)} to get the
+ * index of the text and {@link MarkdownEdit#toggleTask(android.text.Editable, int)} to check or
+ * uncheck a task.
+ */
+public final class TaskIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    // Offset of the check mark from the start of the task line "- [ ] ".
+    private static final int MARK_OFFSET = 3;
+
+    private final Spannable text;
+    private final BlockTokenizer tokenizer;
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private boolean[] checked = new boolean[INITIAL_CAPACITY];
+    private int count;
+    private int checkedCount;
+
+    TaskIndex(@NonNull Spannable text, @NonNull BlockTokenizer tokenizer) {
+        this.text = text;
+        this.tokenizer = tokenizer;
+        int lineCount = tokenizer.getLineIndex().getLineCount();
+        for (int line = 0; line < lineCount; line++) {
+            setTask(line, tokenizer.getBlockType(line) == BlockTokenizer.BLOCK_TASK_ITEM);
+        }
+    }
+
+    /**
+     * Returns the task index of the specified text, which is kept in sync with the text by its
+     * {@link BlockTokenizer}.
+     *
+     * @param text The {@link Spannable} text for which to obtain the task index.
+     * @return The task index of the text.
+     */
+    @NonNull
+    public static TaskIndex obtain(@NonNull Spannable text) {
+        return BlockTokenizer.obtain(text).getTaskIndex();
+    }
+
+    /**
+     * @return The number of tasks in the text.
+     */
+    public int getTaskCount() {
+        return count;
+    }
+
+    /**
+     * @return The number of checked tasks in the text.
+     */
+    public int getCheckedTaskCount() {
+        return checkedCount;
+    }
+
+    /**
+     * @param index The index of the task, counted from 0.
+     * @return The line on which the task is located.
+     */
+    public int getTaskLine(int index) {
+        checkIndex(index);
+        return lines[index];
+    }
+
+    /**
+     * @param index The index of the task, counted from 0.
+     * @return The offset of the check mark of the task, the character between "[" and "]".
+     */
+    public int getTaskMarkOffset(int index) {
+        checkIndex(index);
+        return tokenizer.getLineIndex().getLineStart(lines[index]) + MARK_OFFSET;
+    }
+
+    /**
+     * @param index The index of the task, counted from 0.
+     * @return Whether the task is checked.
+     */
+    public boolean isTaskChecked(int index) {
+        checkIndex(index);
+        return checked[index];
+    }
+
+    /**
+     * Returns the task located on the line containing the specified offset.
+     *
+     * @param offset The character offset.
+     * @return The index of the task, or -1 if the line is not a task.
+     */
+    public int getTaskForOffset(int offset) {
+        int line = tokenizer.getLineIndex().getLineForOffset(offset);
+        int index = findLastAtOrBefore(line);
+        return index >= 0 && lines[index] == line ? index : -1;
+    }
+
+    /**
+     * Returns the first task located on or after the line containing the specified offset.
+     *
+     * @param offset The character offset.
+     * @return The index of the task, or the task count if there are no more tasks.
+     */
+    public int getFirstTaskFrom(int offset) {
+        return findLastAtOrBefore(tokenizer.getLineIndex().getLineForOffset(offset) - 1) + 1;
+    }
+
+    /**
+     * Updates the index after lines from first to old last, inclusive, were replaced with lines
+     * up to new last. Tasks located on the replaced lines are removed and the following ones are
+     * moved to their new lines.
+     */
+    void replaceLines(int firstLine, int oldLastLine, int newLastLine) {
+        int removeStart = findLastAtOrBefore(firstLine - 1) + 1;
+        int removeEnd = findLastAtOrBefore(oldLastLine) + 1;
+        int delta = newLastLine - oldLastLine;
+        for (int i = removeStart; i < removeEnd; i++) {
+            if (checked[i]) {
+                checkedCount--;
+            }
+        }
+        System.arraycopy(lines, removeEnd, lines, removeStart, count - removeEnd);
+        System.arraycopy(checked, removeEnd, checked, removeStart, count - removeEnd);
+        count -= removeEnd - removeStart;
+        if (delta != 0) {
+            for (int i = removeStart; i < count; i++) {
+                lines[i] += delta;
+            }
+        }
+    }
+
+    /**
+     * Adds, updates or removes the task located on the specified line.
+     */
+    void setTask(int line, boolean isTask) {
+        int index = findLastAtOrBefore(line);
+        boolean exists = index >= 0 && lines[index] == line;
+        if (exists && checked[index]) {
+            checkedCount--;
+        }
+        if (isTask) {
+            if (!exists) {
+                index++;
+                ensureCapacity(count + 1);
+                System.arraycopy(lines, index, lines, index + 1, count - index);
+                System.arraycopy(checked, index, checked, index + 1, count - index);
+                lines[index] = line;
+                count++;
+            }
+            int markOffset = tokenizer.getLineIndex().getLineStart(line) + MARK_OFFSET;
+            checked[index] = text.charAt(markOffset) != ' ';
+            if (checked[index]) {
+                checkedCount++;
+            }
+        } else if (exists) {
+            System.arraycopy(lines, index + 1, lines, index, count - index - 1);
+            System.arraycopy(checked, index + 1, checked, index, count - index - 1);
+            count--;
+        }
+    }
+
+    /**
+     * @return The index of the last task located on or before the specified line, or -1.
+     */
+    private int findLastAtOrBefore(int line) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (lines[middle] <= line) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(
+                    "index: " + index + " is out of bounds, task count is " + count + ".");
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > lines.length) {
+            int newCapacity = Math.max(capacity, lines.length * 2);
+            lines = Arrays.copyOf(lines, newCapacity);
+            checked = Arrays.copyOf(checked, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import android.text.TextUtils;
+
+/**
+ * Immutable copy of the characters of a text, taken by {@link PreviewPipeline} for processing on
+ * a background thread.
+ * <p>
+ * The snapshot is a single array copy without any spans, and its subsequences share that array
+ * instead of copying it again. Every snapshot is tagged with the version of the text from which it
+ * was taken, and is cancelled once a newer version of the text exists.
+ */
+public final class TextSnapshot implements CharSequence {
+    private final char[] chars;
+    private final int offset;
+    private final int length;
+    private final int version;
+    private volatile boolean cancelled;
+
+    private TextSnapshot(@NonNull char[] chars, int offset, int length, int version) {
+        this.chars = chars;
+        this.offset = offset;
+        this.length = length;
+        this.version = version;
+    }
+
+    /**
+     * Copies the characters of the specified text.
+     *
+     * @param text    The text to copy.
+     * @param version The version of the text.
+     * @return The snapshot of the text.
+     */
+    @NonNull
+    static TextSnapshot of(@NonNull CharSequence text, int version) {
+        char[] chars = new char[text.length()];
+        TextUtils.getChars(text, 0, chars.length, chars, 0);
+        return new TextSnapshot(chars, 0, chars.length, version);
+    }
+
+    /**
+     * @return The version of the text from which this snapshot was taken.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns whether the text changed since this snapshot was taken, in which case any work on the
+     * snapshot should be abandoned as its result won't be delivered.
+     *
+     * @return {@code true} if this snapshot is outdated.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("charAt: " + index + " is out of bounds.");
+        }
+        return chars[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "subSequence (" + start + " ... " + end + ") has invalid range.");
+        }
+        TextSnapshot snapshot = new TextSnapshot(chars, offset + start, end - start, version);
+        snapshot.cancelled = cancelled;
+        return snapshot;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return new String(chars, offset, length);
+    }
+}
@@ -0,0 +1,417 @@
+package me.thanel.markdownedit;
+
+import androidx.annotation.NonNull;
+import android.text.Editable;
+import android.text.NoCopySpan;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Undo and redo history of an {@link Editable} text.
+ * <p>
+ * Every change of the text is recorded as a delta: its offset together with the removed and the
+ * inserted text. The deltas are stored in parallel arrays and their text is packed into a single
+ * shared character array, so the history never keeps copies of the whole document. Changes are
+ * grouped into undo steps:
+ * <ul>
+ * <li>each {@link MarkdownEdit} command is a single step, as commands are applied through an
+ * {@link EditTransaction},</li>
+ * <li>changes made by other text watchers in response to a change, such as the ones made by
+ * {@link OrderedListRenumberer} or {@link ListContinuation}, belong to the step of that
+ * change,</li>
+ * <li>consecutive characters typed or deleted one after another are merged into a single step,
+ * until a line break is typed. Deleting the last typed characters is merged with the typing,
+ * and replacements of a word composed by a keyboard are reduced to the characters which actually
+ * changed, so typing through a keyboard is merged as well.</li>
+ * </ul>
+ * Changes made by other text watchers in response to an undo or redo belong to the step preceding
+ * the undone step, or to the redone step, and discard the steps which could be redone, as they
+ * were recorded for the text without these changes.
+ * <p>
+ * When the history grows above its byte budget the oldest steps are evicted, and the memory of
+ * larger changes is released. Use {@link #obtain(Editable)} to get the history attached to the
+ * text.
+ */
+public final class UndoHistory implements TextWatcher, NoCopySpan {
+    private static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 16;
+    // Memory used by the offsets and lengths stored for each change.
+    private static final int CHANGE_BYTES = 4 * 4 + 1;
+
+    private static final int COALESCE_NONE = 0;
+    private static final int COALESCE_INSERT = 1;
+    private static final int COALESCE_DELETE = 2;
+
+    private final Editable text;
+    private int maxBytes = DEFAULT_MAX_BYTES;
+
+    // Text removed by change i followed by the text inserted by it is stored in chars, starting at
+    // textStarts[i].
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] removedLengths = new int[INITIAL_CAPACITY];
+    private int[] insertedLengths = new int[INITIAL_CAPACITY];
+    private int[] textStarts = new int[INITIAL_CAPACITY];
+    private boolean[] stepStarts = new boolean[INITIAL_CAPACITY];
+    private char[] chars = new char[INITIAL_CAPACITY];
+    private int charCount;
+    private int changeCount;
+    // Changes before this index are applied to the text, the following ones can be redone.
+    private int appliedCount;
+
+    private int dispatchDepth;
+    private boolean applying;
+    // Whether the change of the transaction undoing or redoing a step is yet to be skipped.
+    private boolean skipChange;
+    private int coalesce = COALESCE_NONE;
+    private int removedLength;
+
+    private UndoHistory(@NonNull Editable text) {
+        this.text = text;
+    }
+
+    /**
+     * Returns the undo history attached to the specified text, attaching a new one if the text
+     * doesn't have it yet. Only changes made after the history was attached can be undone.
+     *
+     * @param text The {@link Editable} text for which to obtain the undo history.
+     * @return The undo history which records changes of the text.
+     */
+    @NonNull
+    public static UndoHistory obtain(@NonNull Editable text) {
+        UndoHistory[] histories = text.getSpans(0, text.length(), UndoHistory.class);
+        if (histories.length > 0) {
+            return histories[0];
+        }
+
+        UndoHistory history = new UndoHistory(text);
+        text.setSpan(history, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        return history;
+    }
+
+    /**
+     * Removes the undo history from the specified text, if there is one attached.
+     *
+     * @param text The {@link Editable} text from which to remove the undo history.
+     */
+    public static void detach(@NonNull Editable text) {
+        for (UndoHistory history : text.getSpans(0, text.length(), UndoHistory.class)) {
+            text.removeSpan(history);
+        }
+    }
+
+    /**
+     * Sets the maximum amount of memory used by the history. When it is exceeded the oldest undo
+     * steps are removed. By default the history is limited to 1 MiB.
+     *
+     * @param maxBytes The maximum number of bytes used by the recorded changes.
+     */
+    public void setMaxBytes(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes: Can't be negative.");
+        }
+        this.maxBytes = maxBytes;
+        trimToMaxBytes();
+    }
+
+    /**
+     * @return The number of bytes used by the recorded changes.
+     */
+    public int getSizeInBytes() {
+        return charCount * 2 + changeCount * CHANGE_BYTES;
+    }
+
+    /**
+     * @return Whether there is a step which can be undone.
+     */
+    public boolean canUndo() {
+        return appliedCount > 0;
+    }
+
+    /**
+     * @return Whether there is a step which can be redone.
+     */
+    public boolean canRedo() {
+        return appliedCount < changeCount;
+    }
+
+    /**
+     * Reverts the most recent undo step as a single change of the text and places the cursor at
+     * its location.
+     *
+     * @return Whether a step was undone.
+     */
+    public boolean undo() {
+        if (!canUndo()) {
+            return false;
+        }
+
+        int first = appliedCount - 1;
+        while (!stepStarts[first]) {
+            first--;
+        }
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            for (int i = appliedCount - 1; i >= first; i--) {
+                transaction.replace(offsets[i], offsets[i] + insertedLengths[i],
+                        CharBuffer.wrap(chars, textStarts[i], removedLengths[i]));
+            }
+            transaction.setSelection(offsets[first] + removedLengths[first]);
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
+        appliedCount = first;
+        apply(transaction);
+        return true;
+    }
+
+    /**
+     * Applies again the most recently undone step as a single change of the text and places the
+     * cursor at its end.
+     *
+     * @return Whether a step was redone.
+     */
+    public boolean redo() {
+        if (!canRedo()) {
+            return false;
+        }
+
+        int end = appliedCount + 1;
+        while (end < changeCount && !stepStarts[end]) {
+            end++;
+        }
+        EditTransaction transaction = EditTransaction.begin(text);
+        try {
+            for (int i = appliedCount; i < end; i++) {
+                transaction.replace(offsets[i], offsets[i] + removedLengths[i],
+                        CharBuffer.wrap(chars, textStarts[i] + removedLengths[i],
+                                insertedLengths[i]));
+            }
+            transaction.setSelection(offsets[end - 1] + insertedLengths[end - 1]);
+        } catch (Throwable e) {
+            transaction.abort();
+            throw e;
+        }
+        appliedCount = end;
+        apply(transaction);
+        return true;
+    }
+
+    /**
+     * Commits the transaction undoing or redoing a step. Only the change of the transaction itself
+     * is not recorded, changes made by other watchers in response to it are.
+     */
+    private void apply(@NonNull EditTransaction transaction) {
+        applying = true;
+        skipChange = true;
+        try {
+            transaction.commit();
+        } finally {
+            applying = false;
+            skipChange = false;
+        }
+        coalesce = COALESCE_NONE;
+    }
+
+    /**
+     * Removes all recorded changes.
+     */
+    public void clear() {
+        changeCount = 0;
+        appliedCount = 0;
+        charCount = 0;
+        coalesce = COALESCE_NONE;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        if (++dispatchDepth == 1 && skipChange) {
+            return;
+        }
+
+        // The removed text is stored after the recorded text, and becomes part of the history
+        // only once the change is recorded.
+        ensureCharCapacity(charCount + count + after);
+        TextUtils.getChars(s, start, start + count, chars, charCount);
+        removedLength = count;
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        if (dispatchDepth == 1 && skipChange) {
+            skipChange = false;
+            return;
+        }
+
+        // Keyboards replace the whole composed word, of which only the changed characters are
+        // recorded.
+        int prefix = 0;
+        int maxPrefix = Math.min(removedLength, count);
+        while (prefix < maxPrefix && chars[charCount + prefix] == s.charAt(start + prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix && chars[charCount + removedLength - suffix - 1] ==
+                s.charAt(start + count - suffix - 1)) {
+            suffix++;
+        }
+        if (prefix + suffix == removedLength && prefix + suffix == count) {
+            return;
+        }
+        if (prefix > 0) {
+            System.arraycopy(chars, charCount + prefix, chars, charCount, removedLength - prefix);
+            start += prefix;
+        }
+        removedLength -= prefix + suffix;
+        count -= prefix + suffix;
+
+        boolean nested = dispatchDepth > 1 || applying;
+        if (!nested && !EditTransaction.isCommitting(text) && coalesceChange(s, start, count)) {
+            return;
+        }
+
+        // Changes which can't be redone anymore are dropped together with their text.
+        if (appliedCount < changeCount) {
+            int textEnd = textStarts[appliedCount];
+            System.arraycopy(chars, charCount, chars, textEnd, removedLength);
+            charCount = textEnd;
+            changeCount = appliedCount;
+        }
+
+        ensureChangeCapacity(changeCount + 1);
+        int change = changeCount++;
+        offsets[change] = start;
+        removedLengths[change] = removedLength;
+        insertedLengths[change] = count;
+        textStarts[change] = charCount;
+        // Every change of a transaction applied as several replacements belongs to its first one.
+        EditTransaction committing = EditTransaction.getCommitting(text);
+        boolean followingChange = committing != null && committing.getAppliedChanges() > 1;
+        stepStarts[change] = !nested && !followingChange || change == 0;
+        charCount += removedLength;
+        TextUtils.getChars(s, start, start + count, chars, charCount);
+        charCount += count;
+        appliedCount = changeCount;
+
+        coalesce = COALESCE_NONE;
+        if (!nested && !EditTransaction.isCommitting(text)) {
+            if (removedLength == 0 && count == 1 && s.charAt(start) != '\n') {
+                coalesce = COALESCE_INSERT;
+            } else if (removedLength == 1 && count == 0 && chars[charCount - 1] != '\n') {
+                coalesce = COALESCE_DELETE;
+            }
+        }
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        if (--dispatchDepth == 0) {
+            trimToMaxBytes();
+        }
+    }
+
+    private boolean coalesceChange(CharSequence s, int start, int count) {
+        int last = changeCount - 1;
+        if (last < 0 || appliedCount != changeCount || !stepStarts[last]) {
+            return false;
+        }
+
+        if (coalesce == COALESCE_INSERT && removedLength == 0 && count == 1 &&
+                start == offsets[last] + insertedLengths[last]) {
+            char c = s.charAt(start);
+            if (c == '\n') {
+                return false;
+            }
+            chars[charCount++] = c;
+            insertedLengths[last]++;
+            return true;
+        }
+        if (coalesce == COALESCE_INSERT && removedLength == 1 && count == 0 &&
+                insertedLengths[last] > 1 &&
+                start == offsets[last] + insertedLengths[last] - 1) {
+            // Deleting the last typed character, as keyboards do while correcting a word.
+            insertedLengths[last]--;
+            charCount--;
+            return true;
+        }
+
+        if (coalesce == COALESCE_DELETE && removedLength == 1 && count == 0 &&
+                chars[charCount] != '\n') {
+            if (start == offsets[last]) {
+                // Forward deletion, the removed character follows the already removed text.
+                removedLengths[last]++;
+                charCount++;
+                return true;
+            }
+            if (start == offsets[last] - 1) {
+                // Backward deletion, the removed character precedes the already removed text.
+                char c = chars[charCount];
+                int textStart = textStarts[last];
+                System.arraycopy(chars, textStart, chars, textStart + 1, removedLengths[last]);
+                chars[textStart] = c;
+                offsets[last] = start;
+                removedLengths[last]++;
+                charCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void trimToMaxBytes() {
+        while (changeCount > 0 && getSizeInBytes() > maxBytes) {
+            int end = 1;
+            while (end < changeCount && !stepStarts[end]) {
+                end++;
+            }
+            if (end > appliedCount) {
+                // Changes which can be redone can't be kept without the ones preceding them.
+                clear();
+                return;
+            }
+
+            int textEnd = end < changeCount ? textStarts[end] : charCount;
+            int remaining = changeCount - end;
+            System.arraycopy(offsets, end, offsets, 0, remaining);
+            System.arraycopy(removedLengths, end, removedLengths, 0, remaining);
+            System.arraycopy(insertedLengths, end, insertedLengths, 0, remaining);
+            System.arraycopy(textStarts, end, textStarts, 0, remaining);
+            System.arraycopy(stepStarts, end, stepStarts, 0, remaining);
+            for (int i = 0; i < remaining; i++) {
+                textStarts[i] -= textEnd;
+            }
+            System.arraycopy(chars, textEnd, chars, 0, charCount - textEnd);
+            charCount -= textEnd;
+            changeCount = remaining;
+            appliedCount -= end;
+        }
+
+        // Text of a single large change is kept only while it fits the budget.
+        int capacity = Math.max(INITIAL_CAPACITY, maxBytes / 2);
+        if (chars.length > capacity && charCount <= capacity) {
+            chars = Arrays.copyOf(chars, capacity);
+        }
+    }
+
+    private void ensureChangeCapacity(int capacity) {
+        if (capacity > offsets.length) {
+            int newCapacity = Math.max(capacity, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, newCapacity);
+            removedLengths = Arrays.copyOf(removedLengths, newCapacity);
+            insertedLengths = Arrays.copyOf(insertedLengths, newCapacity);
+            textStarts = Arrays.copyOf(textStarts, newCapacity);
+            stepStarts = Arrays.copyOf(stepStarts, newCapacity);
+        }
+    }
+
+    private void ensureCharCapacity(int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class BlockTokenizerTest {
+    @Test
+    public void obtain_classifiesBlocksProducedByMarkdownEdit() {
+        Editable text = createEditableText(
+                "## Title\n\nText\n- One\n1. Two\n- [ ] Three\n> Quote\n___\n```\ncode\n```");
+
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(text);
+
+        assertEquals(BlockTokenizer.BLOCK_HEADER, tokenizer.getBlockType(0));
+        assertEquals(BlockTokenizer.BLOCK_EMPTY, tokenizer.getBlockType(1));
+        assertEquals(BlockTokenizer.BLOCK_PARAGRAPH, tokenizer.getBlockType(2));
+        assertEquals(BlockTokenizer.BLOCK_BULLET_ITEM, tokenizer.getBlockType(3));
+        assertEquals(BlockTokenizer.BLOCK_NUMBERED_ITEM, tokenizer.getBlockType(4));
+        assertEquals(BlockTokenizer.BLOCK_TASK_ITEM, tokenizer.getBlockType(5));
+        assertEquals(BlockTokenizer.BLOCK_QUOTE, tokenizer.getBlockType(6));
+        assertEquals(BlockTokenizer.BLOCK_DIVIDER, tokenizer.getBlockType(7));
+        assertEquals(BlockTokenizer.BLOCK_FENCE, tokenizer.getBlockType(8));
+        assertEquals(BlockTokenizer.BLOCK_CODE, tokenizer.getBlockType(9));
+        assertEquals(BlockTokenizer.BLOCK_FENCE, tokenizer.getBlockType(10));
+    }
+
+    @Test
+    public void getHeaderLevel_returnsNumberOfHashes() {
+        Editable text = createEditableText("### Title\nText\n####### Not a title");
+
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(text);
+
+        assertEquals(3, tokenizer.getHeaderLevel(0));
+        assertEquals(0, tokenizer.getHeaderLevel(1));
+        assertEquals(0, tokenizer.getHeaderLevel(2));
+    }
+
+    @Test
+    public void getContentStart_skipsBlockMarkup() {
+        Editable text = createEditableText("## Title\n- [x] Done\n12. Item\nText");
+
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(text);
+
+        assertEquals(3, tokenizer.getContentStart(0));
+        assertEquals(15, tokenizer.getContentStart(1));
+        assertEquals(24, tokenizer.getContentStart(2));
+        assertEquals(29, tokenizer.getContentStart(3));
+    }
+
+    @Test
+    public void tokenizer_followsChangedLines() {
+        Editable text = createEditableText("One\nTwo\nThree");
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(text);
+
+        text.insert(4, "# ");
+
+        assertEquals(BlockTokenizer.BLOCK_HEADER, tokenizer.getBlockType(1));
+        assertEquals(BlockTokenizer.BLOCK_PARAGRAPH, tokenizer.getBlockType(2));
+        assertEquals(1, tokenizer.lastTokenizedLineCount);
+    }
+
+    @Test
+    public void tokenizer_rescansUntilFenceStateMatches() {
+        Editable text = createEditableText("Text\n# One\n- Two\n```\nThree\n```\nFour");
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(text);
+
+        text.insert(0, "```\n");
+
+        assertTrue(tokenizer.isInsideFence(1));
+        assertTrue(tokenizer.isInsideFence(2));
+        assertTrue(tokenizer.isInsideFence(3));
+        assertEquals(BlockTokenizer.BLOCK_FENCE, tokenizer.getBlockType(4));
+        assertFalse(tokenizer.isInsideFence(5));
+        assertEquals(BlockTokenizer.BLOCK_FENCE, tokenizer.getBlockType(6));
+        assertTrue(tokenizer.isInsideFence(7));
+    }
+
+    @Test
+    public void tokenizer_followsRemovedLines() {
+        Editable text = createEditableText("```\ncode\n```\n> Quote\nText");
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(text);
+
+        text.delete(0, 4);
+
+        assertEquals(BlockTokenizer.BLOCK_PARAGRAPH, tokenizer.getBlockType(0));
+        assertEquals(BlockTokenizer.BLOCK_FENCE, tokenizer.getBlockType(1));
+        assertTrue(tokenizer.isInsideFence(2));
+        assertTrue(tokenizer.isInsideFence(3));
+    }
+
+    @Test
+    public void tokenizer_followsMarkdownEditCommands() {
+        Editable text = createEditableText("Text\nIt|em");
+        BlockTokenizer tokenizer = BlockTokenizer.obtain(text);
+
+        MarkdownEdit.addList(text, MarkdownEdit.LIST_TYPE_TASKS);
+
+        assertEquals("Text\n\n- [ ] Item", text.toString());
+        assertEquals(BlockTokenizer.BLOCK_EMPTY, tokenizer.getBlockType(1));
+        assertEquals(BlockTokenizer.BLOCK_TASK_ITEM, tokenizer.getBlockType(2));
+    }
+}
@@ -76,4 +76,13 @@ public class CodeTagTest {
 
         assertEqualsWithCursorPosition("```\nOne\nTwo\n```|", text);
     }
+
+    @Test
+    public void addCode_removesInlineCodeTag() {
+        Editable text = createEditableText("Some `co|de` here");
+
+        MarkdownEdit.addCode(text);
+
+        assertEqualsWithCursorPosition("Some code| here", text);
+    }
 }
@@ -0,0 +1,56 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class DocumentStatsTest {
+    @Test
+    public void obtain_excludesMarkupFromCounts() {
+        DocumentStats stats = DocumentStats.obtain(createEditableText(
+                "# Title\n> **Bold** and _italic_,\n---\n```\nsnake_case **\n```\n~~gone~~"));
+
+        assertEquals(7, stats.getWordCount());
+        assertEquals(38, stats.getCharacterCount());
+        assertEquals(1, stats.getReadingTimeMinutes());
+    }
+
+    @Test
+    public void obtain_countsTasks() {
+        DocumentStats stats = DocumentStats.obtain(
+                createEditableText("- [ ] One\n- [x] Two\n- [X] Three\n- Four"));
+
+        assertEquals(3, stats.getTaskCount());
+        assertEquals(2, stats.getCompletedTaskCount());
+        assertEquals(4, stats.getWordCount());
+    }
+
+    @Test
+    public void replace_updatesCountsOfChangedLines() {
+        Editable text = createEditableText("One|\nTwo");
+        DocumentStats stats = DocumentStats.obtain(text);
+
+        MarkdownEdit.addList(text, MarkdownEdit.LIST_TYPE_TASKS);
+        text.insert(text.length(), "\nThree four\n```\nfive");
+        text.replace(3, 4, "x");
+
+        assertEquals("- [x] One\n\nTwo\nThree four\n```\nfive", text.toString());
+        assertEquals(1, stats.getTaskCount());
+        assertEquals(1, stats.getCompletedTaskCount());
+        assertEquals(5, stats.getWordCount());
+        assertEquals(20, stats.getCharacterCount());
+
+        text.delete(0, text.length());
+        assertEquals(0, stats.getWordCount());
+        assertEquals(0, stats.getTaskCount());
+    }
+}
@@ -0,0 +1,225 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import static me.thanel.markdownedit.util.TestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.TestUtils.attachCountingWatcher;
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import me.thanel.markdownedit.util.CountingTextWatcher;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class EditTransactionTest {
+    @Test
+    public void commit_appliesChangesAsSingleReplace() {
+        Editable text = createEditableText("One\nTw|o\nThree");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        MarkdownEdit.addList(text, MarkdownEdit.LIST_TYPE_BULLETS);
+
+        assertEqualsWithCursorPosition("One\n\n- Two\n|\nThree", text);
+        assertEquals(1, watcher.changes);
+    }
+
+    @Test
+    public void commit_appliesLineDiffAsSingleReplace() {
+        Editable text = createEditableText("One\nTwo\nThree\nFour");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+        LineDiff diff = LineDiff.compute(text, "Zero\nOne\nThree\nFour!");
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        diff.applyTo(transaction);
+        transaction.commit();
+
+        assertEquals("Zero\nOne\nThree\nFour!", text.toString());
+        assertEquals(1, watcher.changes);
+    }
+
+    @Test
+    public void commit_replacesOnlyChangedRange() {
+        Editable text = createEditableText("Hello World");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        transaction.replace(0, 11, "Hello there World");
+        transaction.commit();
+
+        assertEquals("Hello there World", text.toString());
+        assertEquals(1, watcher.changes);
+        assertEquals(6, watcher.lastStart);
+        assertEquals(0, watcher.lastBefore);
+        assertEquals(6, watcher.lastCount);
+    }
+
+    @Test
+    public void commit_doesNotReplaceUnchangedText() {
+        Editable text = createEditableText("Hello");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        transaction.replace(1, 3, "el");
+        transaction.commit();
+
+        assertEquals(0, watcher.changes);
+    }
+
+    @Test
+    public void begin_joinsTransactionOpenForSameText() {
+        Editable text = createEditableText("Hel|lo");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        assertSame(transaction, EditTransaction.begin(text));
+        transaction.commit();
+        MarkdownEdit.addHeader(text, 1);
+        MarkdownEdit.addBold(text);
+        assertEquals("Hello", text.toString());
+        transaction.commit();
+
+        assertEqualsWithCursorPosition("# **Hello**|", text);
+        assertEquals(1, watcher.changes);
+    }
+
+    @Test
+    public void transaction_readsPendingChanges() {
+        Editable text = createEditableText("One\nTwo\nThree");
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        transaction.replace(5, 7, "wo\nTwo and a half");
+
+        assertEquals("One\nTwo\nTwo and a half\nThree", transaction.toString());
+        assertEquals("Two and a half", transaction.subSequence(8, 22).toString());
+        assertEquals(8, transaction.getLineStart(10));
+        assertEquals(22, transaction.getLineEnd(10));
+        assertEquals(23, transaction.getLineStart(25));
+        assertEquals(28, transaction.getLineEnd(25));
+        assertEquals(4, transaction.getLineStart(6));
+        assertEquals(3, transaction.getLineEnd(1));
+        transaction.commit();
+
+        assertEquals("One\nTwo\nTwo and a half\nThree", text.toString());
+    }
+
+    @Test
+    public void getLineStart_joinsLinesWhenLineFeedIsReplaced() {
+        Editable text = createEditableText("ab\ncd");
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        transaction.replace(2, 3, "X");
+
+        assertEquals(0, transaction.getLineStart(4));
+        assertEquals(5, transaction.getLineEnd(0));
+        transaction.commit();
+    }
+
+    @Test
+    public void replace_shiftsSelection() {
+        Editable text = createEditableText("One |Two|");
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        transaction.replace(0, 3, "Three");
+        transaction.commit();
+
+        assertEqualsWithCursorPosition("Three |Two|", text);
+    }
+
+    @Test
+    public void commit_appliesHunksWhenWatcherChangesText() {
+        final Editable text = createEditableText("a b c|");
+        text.setSpan(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (s.charAt(0) != '>') {
+                    s.insert(0, "> ");
+                }
+            }
+        }, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        transaction.keepHunksSeparate();
+        transaction.replace(4, 5, "C");
+        transaction.replace(2, 3, "B");
+        transaction.replace(0, 1, "A");
+        transaction.commit();
+
+        assertEquals("> A B C", text.toString());
+    }
+
+    @Test
+    public void abort_discardsChanges() {
+        Editable text = createEditableText("Hel|lo");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        transaction.replace(0, 5, "Bye");
+        transaction.setSelection(0);
+        transaction.abort();
+        transaction.abort();
+
+        assertEqualsWithCursorPosition("Hel|lo", text);
+        assertEquals(0, watcher.changes);
+    }
+
+    @Test
+    public void abort_discardsChangesOfOutermostTransaction() {
+        Editable text = createEditableText("Hel|lo");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        MarkdownEdit.addHeader(text, 1);
+        EditTransaction.begin(text).abort();
+        transaction.commit();
+        assertEqualsWithCursorPosition("Hel|lo", text);
+        assertEquals(0, watcher.changes);
+        MarkdownEdit.addBold(text);
+
+        assertEqualsWithCursorPosition("**Hello**|", text);
+        assertEquals(1, watcher.changes);
+    }
+
+    @Test
+    public void command_closesTransactionWhenItFails() {
+        Editable text = createEditableText("Hel|lo");
+        EditTransaction transaction = EditTransaction.begin(text);
+        MarkdownEdit.addBold(text);
+
+        try {
+            MarkdownEdit.addHeader(text, 7);
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            transaction.abort();
+        }
+        MarkdownEdit.addHeader(text, 1);
+
+        assertEqualsWithCursorPosition("# Hello|", text);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commit_throwsExceptionWhenAlreadyCommitted() {
+        Editable text = createEditableText("");
+
+        EditTransaction transaction = EditTransaction.begin(text);
+        transaction.commit();
+        transaction.commit();
+    }
+}
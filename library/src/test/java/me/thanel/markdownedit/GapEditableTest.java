@@ -0,0 +1,133 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static me.thanel.markdownedit.util.TestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.TestUtils.attachCountingWatcher;
+
+import android.text.Editable;
+import android.text.Selection;
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.Spanned;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.thanel.markdownedit.util.CountingTextWatcher;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class GapEditableTest {
+    @Test
+    public void replace_movesSpanBoundariesLikeSpannableStringBuilder() {
+        Editable text = new GapEditable("One Two Three");
+        Object exclusive = new Object();
+        Object inclusive = new Object();
+        text.setSpan(exclusive, 4, 7, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(inclusive, 4, 7, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+
+        text.insert(4, "__");
+        text.insert(9, "__");
+
+        assertEquals(6, text.getSpanStart(exclusive));
+        assertEquals(9, text.getSpanEnd(exclusive));
+        assertEquals(4, text.getSpanStart(inclusive));
+        assertEquals(11, text.getSpanEnd(inclusive));
+    }
+
+    @Test
+    public void replace_removesExclusiveSpansWhichBecomeEmpty() {
+        Editable text = new GapEditable("One Two Three");
+        Object span = new Object();
+        text.setSpan(span, 4, 7, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+        text.delete(3, 8);
+
+        assertEquals(-1, text.getSpanStart(span));
+        assertEquals("OneThree", text.toString());
+    }
+
+    @Test
+    public void getSpans_ordersSpansByPriority() {
+        Editable text = new GapEditable("One Two");
+        Object first = new Object();
+        Object second = new Object();
+        text.setSpan(first, 0, 7, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        text.setSpan(second, 4, 7, Spanned.SPAN_INCLUSIVE_INCLUSIVE | Spanned.SPAN_PRIORITY);
+
+        assertArrayEquals(new Object[]{second, first}, text.getSpans(4, 5, Object.class));
+        assertArrayEquals(new Object[]{first}, text.getSpans(0, 3, Object.class));
+    }
+
+    @Test
+    public void subSequence_keepsCharactersAfterTextChanges() {
+        Editable text = new GapEditable("One Two Three");
+
+        CharSequence subSequence = text.subSequence(4, 7);
+        text.replace(0, text.length(), "Changed");
+
+        assertEquals("Two", subSequence.toString());
+    }
+
+    @Test
+    public void replace_notifiesSpanWatchersOnlyAboutMovedSpans() {
+        Editable text = new GapEditable("One Two Three");
+        Object before = new Object();
+        Object touched = new Object();
+        Object removed = new Object();
+        Object after = new Object();
+        text.setSpan(before, 0, 3, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(touched, 0, 5, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(removed, 4, 6, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(after, 8, 13, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        final List<Object> changed = new ArrayList<>();
+        final List<Object> removedSpans = new ArrayList<>();
+        text.setSpan(new SpanWatcher() {
+            @Override
+            public void onSpanAdded(Spannable text, Object what, int start, int end) {
+            }
+
+            @Override
+            public void onSpanRemoved(Spannable text, Object what, int start, int end) {
+                removedSpans.add(what);
+            }
+
+            @Override
+            public void onSpanChanged(Spannable text, Object what, int ostart, int oend,
+                    int nstart, int nend) {
+                changed.add(what);
+            }
+        }, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+
+        text.delete(4, 7);
+
+        // The watcher itself ends after the change, so it's moved too.
+        assertEquals(3, changed.size());
+        assertTrue(changed.contains(touched));
+        assertTrue(changed.contains(after));
+        assertFalse(changed.contains(before));
+        assertEquals(1, removedSpans.size());
+        assertEquals(removed, removedSpans.get(0));
+    }
+
+    @Test
+    public void commands_notifyWatchersOnce() {
+        Editable text = new GapEditable("Hello World");
+        Selection.setSelection(text, 8);
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        MarkdownEdit.addBold(text);
+
+        assertEqualsWithCursorPosition("Hello **World**|", text);
+        assertEquals(1, watcher.changes);
+    }
+}
@@ -101,4 +101,22 @@ public class HeaderTagText {
 
         assertEqualsWithCursorPosition("Text\nH\n# el\n|lo\ntest", text);
     }
+
+    @Test
+    public void addHeader_replacesLevelOfExistingHeader() {
+        Editable text = createEditableText("Text\n# Ti|tle\ntest");
+
+        MarkdownEdit.addHeader(text, 2);
+
+        assertEqualsWithCursorPosition("Text\n## Ti|tle\ntest", text);
+    }
+
+    @Test
+    public void addHeader_removesHeaderOfSameLevel() {
+        Editable text = createEditableText("Text\n## Ti|tle\ntest");
+
+        MarkdownEdit.addHeader(text, 2);
+
+        assertEqualsWithCursorPosition("Text\nTi|tle\ntest", text);
+    }
 }
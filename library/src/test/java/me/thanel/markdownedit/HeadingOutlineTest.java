@@ -0,0 +1,82 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class HeadingOutlineTest {
+    @Test
+    public void obtain_listsHeaders() {
+        Editable text = createEditableText("# One\nText\n### Two\n```\n# Code\n```\n## Three");
+
+        HeadingOutline outline = HeadingOutline.obtain(text);
+
+        assertEquals(3, outline.getHeadingCount());
+        assertEquals(1, outline.getHeadingLevel(0));
+        assertEquals("One", outline.getHeadingText(0).toString());
+        assertEquals(11, outline.getHeadingStart(1));
+        assertEquals(3, outline.getHeadingLevel(1));
+        assertEquals("Three", outline.getHeadingText(2).toString());
+        assertEquals(6, outline.getHeadingLine(2));
+    }
+
+    @Test
+    public void getHeadingForOffset_returnsHeaderOfSection() {
+        HeadingOutline outline = HeadingOutline.obtain(
+                createEditableText("Intro\n# One\nText\n# Two\nText"));
+
+        assertEquals(-1, outline.getHeadingForOffset(2));
+        assertEquals(0, outline.getHeadingForOffset(6));
+        assertEquals(0, outline.getHeadingForOffset(14));
+        assertEquals(1, outline.getHeadingForOffset(25));
+    }
+
+    @Test
+    public void getNextAndPreviousHeading_skipHeaderAtOffset() {
+        HeadingOutline outline = HeadingOutline.obtain(
+                createEditableText("# One\nText\n# Two\nText\n# Three"));
+
+        assertEquals(1, outline.getNextHeading(8));
+        assertEquals(0, outline.getPreviousHeading(8));
+        assertEquals(2, outline.getNextHeading(12));
+        assertEquals(0, outline.getPreviousHeading(12));
+        assertEquals(-1, outline.getNextHeading(24));
+        assertEquals(-1, outline.getPreviousHeading(2));
+    }
+
+    @Test
+    public void outline_followsChangedLines() {
+        Editable text = createEditableText("# One\nText\n# Two\nText");
+        HeadingOutline outline = HeadingOutline.obtain(text);
+
+        text.insert(6, "## New\nMore\n");
+        text.delete(0, 2);
+
+        assertEquals(2, outline.getHeadingCount());
+        assertEquals("New", outline.getHeadingText(0).toString());
+        assertEquals(2, outline.getHeadingLevel(0));
+        assertEquals(4, outline.getHeadingLine(1));
+        assertEquals("Two", outline.getHeadingText(1).toString());
+    }
+
+    @Test
+    public void outline_followsFenceChanges() {
+        Editable text = createEditableText("Text\n# One\n# Two");
+        HeadingOutline outline = HeadingOutline.obtain(text);
+
+        text.insert(0, "```\n");
+        assertEquals(0, outline.getHeadingCount());
+
+        text.delete(0, 4);
+        assertEquals(2, outline.getHeadingCount());
+    }
+}
@@ -0,0 +1,93 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import static me.thanel.markdownedit.util.TestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class JournalRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restore_appliesTypedTextAndCommands() throws IOException {
+        File file = new File(folder.getRoot(), "document.md");
+        Editable text = createEditableText("Hello|");
+        EditJournal journal = new EditJournal(file);
+        journal.compact(text);
+        JournalRecorder recorder = JournalRecorder.attach(text, journal, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        text.insert(5, " World");
+        MarkdownEdit.addBold(text);
+        MarkdownEdit.addHeader(text, 1);
+        journal.close();
+
+        assertNull(recorder.getError());
+        assertEqualsWithCursorPosition("# Hello **World**|", text);
+
+        Editable restored = new SpannableStringBuilder("Hello");
+        EditJournal reopened = new EditJournal(file);
+        assertEquals(3, JournalRecorder.restore(restored, reopened));
+        reopened.close();
+        assertEquals(text.toString(), restored.toString());
+    }
+
+    @Test
+    public void attach_compactsOnExecutorWhileRecording() throws IOException {
+        File file = new File(folder.getRoot(), "document.md");
+        Editable text = createEditableText("");
+        EditJournal journal = new EditJournal(file);
+        final List<Runnable> tasks = new ArrayList<>();
+        JournalRecorder recorder = JournalRecorder.attach(text, journal, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 600 * 1024; i++) {
+            large.append('a');
+        }
+        text.append(large);
+        text.append("b");
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        text.append("c");
+        journal.close();
+
+        // The snapshot was copied before "b" was typed, which was carried over to the journal.
+        assertNull(recorder.getError());
+        assertEquals(large.length(), file.length());
+        Editable restored = new SpannableStringBuilder(large);
+        EditJournal reopened = new EditJournal(file);
+        assertEquals(2, JournalRecorder.restore(restored, reopened));
+        reopened.close();
+        assertEquals(text.toString(), restored.toString());
+    }
+}
@@ -0,0 +1,115 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class LineIndexTest {
+    @Test
+    public void obtain_returnsAttachedIndex() {
+        Editable text = createEditableText("One\nTwo");
+
+        LineIndex lineIndex = LineIndex.obtain(text);
+
+        assertSame(lineIndex, LineIndex.obtain(text));
+    }
+
+    @Test
+    public void obtain_indexesEmptyTextAsSingleLine() {
+        Editable text = createEditableText("");
+
+        LineIndex lineIndex = LineIndex.obtain(text);
+
+        assertEquals(1, lineIndex.getLineCount());
+        assertEquals(0, lineIndex.getLineStart(0));
+        assertEquals(0, lineIndex.getLineEnd(0));
+    }
+
+    @Test
+    public void getLineForOffset_returnsLineContainingOffset() {
+        Editable text = createEditableText("One\nTwo\n\nFour");
+
+        LineIndex lineIndex = LineIndex.obtain(text);
+
+        assertEquals(4, lineIndex.getLineCount());
+        assertEquals(0, lineIndex.getLineForOffset(0));
+        assertEquals(0, lineIndex.getLineForOffset(3));
+        assertEquals(1, lineIndex.getLineForOffset(4));
+        assertEquals(2, lineIndex.getLineForOffset(8));
+        assertEquals(3, lineIndex.getLineForOffset(13));
+    }
+
+    @Test
+    public void getLineEnd_excludesLineFeed() {
+        Editable text = createEditableText("One\nTwo\n");
+
+        LineIndex lineIndex = LineIndex.obtain(text);
+
+        assertEquals(3, lineIndex.getLineEnd(0));
+        assertEquals(7, lineIndex.getLineEnd(1));
+        assertEquals(8, lineIndex.getLineStart(2));
+        assertEquals(8, lineIndex.getLineEnd(2));
+    }
+
+    @Test
+    public void index_followsInsertedLines() {
+        Editable text = createEditableText("One\nFour");
+        LineIndex lineIndex = LineIndex.obtain(text);
+
+        text.insert(4, "Two\nThree\n");
+
+        assertEquals(4, lineIndex.getLineCount());
+        assertEquals(4, lineIndex.getLineStart(1));
+        assertEquals(8, lineIndex.getLineStart(2));
+        assertEquals(14, lineIndex.getLineStart(3));
+        assertEquals(18, lineIndex.getLineEnd(3));
+    }
+
+    @Test
+    public void index_followsRemovedLines() {
+        Editable text = createEditableText("One\nTwo\nThree\nFour");
+        LineIndex lineIndex = LineIndex.obtain(text);
+
+        text.delete(2, 10);
+
+        assertEquals("Onree\nFour", text.toString());
+        assertEquals(2, lineIndex.getLineCount());
+        assertEquals(5, lineIndex.getLineEnd(0));
+        assertEquals(6, lineIndex.getLineStart(1));
+    }
+
+    @Test
+    public void index_followsReplacedLines() {
+        Editable text = createEditableText("One\nTwo\nThree");
+        LineIndex lineIndex = LineIndex.obtain(text);
+
+        text.replace(3, 8, "\n\n2\n");
+
+        assertEquals("One\n\n2\nThree", text.toString());
+        assertEquals(4, lineIndex.getLineCount());
+        assertEquals(4, lineIndex.getLineStart(1));
+        assertEquals(5, lineIndex.getLineStart(2));
+        assertEquals(7, lineIndex.getLineStart(3));
+        assertEquals(12, lineIndex.getLineEnd(3));
+    }
+
+    @Test
+    public void index_isNotCopiedToSubSequence() {
+        Editable text = createEditableText("One\nTwo");
+        LineIndex.obtain(text);
+
+        Editable copy = (Editable) text.subSequence(0, text.length());
+
+        assertEquals(0, copy.getSpans(0, copy.length(), LineIndex.class).length);
+    }
+}
@@ -0,0 +1,111 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+
+import static me.thanel.markdownedit.util.TestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+import android.text.Spanned;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class ListContinuationTest {
+    @Test
+    public void lineBreak_continuesBulletList() {
+        Editable text = createContinuedText("- One|");
+
+        typeLineBreak(text);
+
+        assertEqualsWithCursorPosition("- One\n- |", text);
+    }
+
+    @Test
+    public void lineBreak_continuesNumberedListWithNextNumber() {
+        Editable text = createContinuedText("8. One\n9. Two|");
+
+        typeLineBreak(text);
+
+        assertEqualsWithCursorPosition("8. One\n9. Two\n10. |", text);
+    }
+
+    @Test
+    public void lineBreak_continuesTaskListWithUncheckedItem() {
+        Editable text = createContinuedText("- [x] Done|");
+
+        typeLineBreak(text);
+
+        assertEqualsWithCursorPosition("- [x] Done\n- [ ] |", text);
+    }
+
+    @Test
+    public void lineBreak_movesTextAfterCursorToNewItem() {
+        Editable text = createContinuedText("- One|Two\nText");
+
+        typeLineBreak(text);
+
+        assertEqualsWithCursorPosition("- One\n- |Two\nText", text);
+    }
+
+    @Test
+    public void lineBreak_endsListOnEmptyItem() {
+        Editable text = createContinuedText("- One\n- |\nText");
+
+        typeLineBreak(text);
+
+        assertEqualsWithCursorPosition("- One\n|\nText", text);
+    }
+
+    @Test
+    public void lineBreak_doesNotContinueOtherBlocks() {
+        Editable text = createContinuedText("# Title|");
+
+        typeLineBreak(text);
+
+        assertEqualsWithCursorPosition("# Title\n|", text);
+    }
+
+    @Test
+    public void lineBreak_doesNotContinueListInsideFence() {
+        Editable text = createContinuedText("```\n- a|\n```");
+
+        typeLineBreak(text);
+
+        assertEqualsWithCursorPosition("```\n- a\n|\n```", text);
+    }
+
+    @Test
+    public void lineBreak_keepsEmptyItemInsideFence() {
+        Editable text = createContinuedText("```\n- |\n\n```");
+
+        typeLineBreak(text);
+
+        assertEqualsWithCursorPosition("```\n- \n|\n\n```", text);
+    }
+
+    @Test
+    public void insert_doesNotContinueListAwayFromCursor() {
+        Editable text = createContinuedText("- One\nTwo|");
+
+        text.insert(5, "\n");
+
+        assertEquals("- One\n\nTwo", text.toString());
+    }
+
+    private static Editable createContinuedText(String text) {
+        Editable editable = createEditableText(text);
+        editable.setSpan(new ListContinuation(), 0, editable.length(),
+                Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        return editable;
+    }
+
+    private static void typeLineBreak(Editable text) {
+        text.replace(SelectionUtils.getSelectionStart(text), SelectionUtils.getSelectionEnd(text),
+                "\n");
+    }
+}
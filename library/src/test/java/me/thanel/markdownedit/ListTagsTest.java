@@ -94,4 +94,22 @@ public class ListTagsTest {
 
         assertEqualsWithCursorPosition("1. One\n2. Two\n3. Three\n4. Four\n5. Five|", text);
     }
+
+    @Test
+    public void addList_removesTagsFromListItems() {
+        Editable text = createEditableText("|- One\n- Two|\nThree");
+
+        MarkdownEdit.addList(text, MarkdownEdit.LIST_TYPE_BULLETS);
+
+        assertEqualsWithCursorPosition("|One\nTwo|\nThree", text);
+    }
+
+    @Test
+    public void addList_removesNumbersFromOrderedListItem() {
+        Editable text = createEditableText("1. One\n12. Tw|o");
+
+        MarkdownEdit.addList(text, MarkdownEdit.LIST_TYPE_NUMBERS);
+
+        assertEqualsWithCursorPosition("1. One\nTw|o", text);
+    }
 }
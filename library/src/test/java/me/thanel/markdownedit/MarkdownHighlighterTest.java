@@ -0,0 +1,131 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import android.graphics.Typeface;
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.CharacterStyle;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+// The highlighter isn't attached to a view, so the ranges which the view would make visible are
+// highlighted directly.
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class MarkdownHighlighterTest {
+    @Test
+    public void highlight_stylesBlocks() {
+        Editable text = new SpannableStringBuilder(
+                "# Title\n> Quote\n- Item\n```\ncode\n```\n---");
+
+        new MarkdownHighlighter(null).highlight(text, 0, text.length());
+
+        assertEquals(2f, findSpan(text, RelativeSizeSpan.class, 0, 7).getSizeChange(), 0f);
+        assertStyle(Typeface.BOLD, text, 0, 7);
+        findSpan(text, ForegroundColorSpan.class, 0, 2);
+        assertStyle(Typeface.ITALIC, text, 10, 15);
+        findSpan(text, ForegroundColorSpan.class, 8, 10);
+        findSpan(text, ForegroundColorSpan.class, 16, 18);
+        findSpan(text, ForegroundColorSpan.class, 23, 26);
+        findSpan(text, TypefaceSpan.class, 23, 26);
+        findSpan(text, TypefaceSpan.class, 27, 31);
+        findSpan(text, TypefaceSpan.class, 32, 35);
+        findSpan(text, ForegroundColorSpan.class, 36, 39);
+        assertEquals(0, text.getSpans(27, 31, ForegroundColorSpan.class).length);
+    }
+
+    @Test
+    public void highlight_stylesInlineMarkup() {
+        Editable text = new SpannableStringBuilder("**bold** _italic_ ~~strike~~ `code`");
+
+        new MarkdownHighlighter(null).highlight(text, 0, text.length());
+
+        assertStyle(Typeface.BOLD, text, 0, 8);
+        findSpan(text, ForegroundColorSpan.class, 0, 2);
+        findSpan(text, ForegroundColorSpan.class, 6, 8);
+        assertStyle(Typeface.ITALIC, text, 9, 17);
+        findSpan(text, StrikethroughSpan.class, 18, 28);
+        findSpan(text, TypefaceSpan.class, 29, 35);
+        assertEquals(8, text.getSpans(0, text.length(), ForegroundColorSpan.class).length);
+    }
+
+    @Test
+    public void highlight_ignoresUnderscoresInsideWords() {
+        Editable text = new SpannableStringBuilder("snake_case_name and _my_var_");
+
+        new MarkdownHighlighter(null).highlight(text, 0, text.length());
+
+        assertEquals(1, text.getSpans(0, text.length(), StyleSpan.class).length);
+        assertStyle(Typeface.ITALIC, text, 20, 28);
+    }
+
+    @Test
+    public void highlight_recyclesSpansWhenRangeMoves() {
+        Editable text = new SpannableStringBuilder("**one**\n**two**");
+        MarkdownHighlighter highlighter = new MarkdownHighlighter(null);
+        highlighter.highlight(text, 0, 0);
+        StyleSpan span = findSpan(text, StyleSpan.class, 0, 7);
+
+        highlighter.highlight(text, 8, 8);
+
+        assertEquals(0, text.getSpans(0, 7, CharacterStyle.class).length);
+        assertSame(span, findSpan(text, StyleSpan.class, 8, 15));
+        assertEquals(3, text.getSpans(0, text.length(), CharacterStyle.class).length);
+    }
+
+    @Test
+    public void highlight_keepsSpansOfHighlightedRange() {
+        Editable text = new SpannableStringBuilder("**one**\n**two**");
+        MarkdownHighlighter highlighter = new MarkdownHighlighter(null);
+        highlighter.highlight(text, 0, text.length());
+
+        highlighter.highlight(text, 0, 0);
+
+        findSpan(text, StyleSpan.class, 8, 15);
+    }
+
+    @Test
+    public void highlight_restylesTextAfterEdit() {
+        Editable text = new SpannableStringBuilder("one two");
+        MarkdownHighlighter highlighter = new MarkdownHighlighter(null);
+        highlighter.highlight(text, 0, text.length());
+
+        text.replace(4, 7, "**two**");
+        highlighter.onTextChanged(text, 4, 3, 7);
+        highlighter.highlight(text, 0, text.length());
+
+        assertStyle(Typeface.BOLD, text, 4, 11);
+    }
+
+    private static void assertStyle(int style, Spanned text, int start, int end) {
+        assertEquals(style, findSpan(text, StyleSpan.class, start, end).getStyle());
+    }
+
+    private static <T> T findSpan(Spanned text, Class<T> type, int start, int end) {
+        T found = null;
+        for (T span : text.getSpans(start, end, type)) {
+            if (text.getSpanStart(span) == start && text.getSpanEnd(span) == end) {
+                if (found != null) {
+                    fail("Multiple " + type.getSimpleName() + " spans at " + start + "-" + end);
+                }
+                found = span;
+            }
+        }
+        if (found == null) {
+            fail("No " + type.getSimpleName() + " span at " + start + "-" + end);
+        }
+        return found;
+    }
+}
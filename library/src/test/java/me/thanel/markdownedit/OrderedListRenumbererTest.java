@@ -0,0 +1,96 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+
+import static me.thanel.markdownedit.util.TestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.TestUtils.attachCountingWatcher;
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+import android.text.Spanned;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import me.thanel.markdownedit.util.CountingTextWatcher;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class OrderedListRenumbererTest {
+    @Test
+    public void renumberer_renumbersItemsAfterInsertedItem() {
+        Editable text = createRenumberedText("1. One\n2. Two\n3. Three");
+
+        text.insert(7, "2. New\n");
+
+        assertEquals("1. One\n2. New\n3. Two\n4. Three", text.toString());
+    }
+
+    @Test
+    public void renumberer_renumbersItemsAfterRemovedItem() {
+        Editable text = createRenumberedText("Text\n\n1. One\n2. Two\n3. Three\n\nText");
+
+        text.delete(13, 20);
+
+        assertEquals("Text\n\n1. One\n2. Three\n\nText", text.toString());
+    }
+
+    @Test
+    public void renumberer_keepsNumberOfFirstItem() {
+        Editable text = createRenumberedText("5. One\n6. Two");
+
+        text.insert(0, "5. Zero\n");
+
+        assertEquals("5. Zero\n6. One\n7. Two", text.toString());
+    }
+
+    @Test
+    public void renumberer_continuesListAcrossEmptyLines() {
+        Editable text = createRenumberedText("1. One\n\n2. Two\n\n3. Three");
+
+        text.delete(8, 16);
+
+        assertEquals("1. One\n\n2. Three", text.toString());
+    }
+
+    @Test
+    public void renumberer_doesNotJoinSeparateLists() {
+        Editable text = createRenumberedText("1. One\n2. Two\nText\n1. Other");
+
+        text.insert(0, "1. Zero\n");
+
+        assertEquals("1. Zero\n2. One\n3. Two\nText\n1. Other", text.toString());
+    }
+
+    @Test
+    public void renumberer_changesNumberLength() {
+        Editable text = createRenumberedText(
+                "1. a\n2. b\n3. c\n4. d\n5. e\n6. f\n7. g\n8. h\n9. i\n10. |j");
+
+        text.delete(5, 10);
+
+        assertEqualsWithCursorPosition(
+                "1. a\n2. c\n3. d\n4. e\n5. f\n6. g\n7. h\n8. i\n9. |j", text);
+    }
+
+    @Test
+    public void renumberer_rewritesNumbersInSingleEdit() {
+        Editable text = createRenumberedText("1. a\n2. b\n3. c\n4. d");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        text.insert(0, "1. z\n");
+
+        // One change for the insertion and one for the renumbering.
+        assertEquals(2, watcher.changes);
+        assertEquals("1. z\n2. a\n3. b\n4. c\n5. d", text.toString());
+    }
+
+    private static Editable createRenumberedText(String text) {
+        Editable editable = createEditableText(text);
+        editable.setSpan(new OrderedListRenumberer(), 0, editable.length(),
+                Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        return editable;
+    }
+}
@@ -94,4 +94,22 @@ public class QuoteTagTest {
 
         assertEqualsWithCursorPosition("He\n\n> Quote\n|\no", text);
     }
+
+    @Test
+    public void addQuote_removesExistingQuote() {
+        Editable text = createEditableText("Hello\n> Quo|te");
+
+        MarkdownEdit.addQuote(text);
+
+        assertEqualsWithCursorPosition("Hello\nQuo|te", text);
+    }
+
+    @Test
+    public void addQuote_removesQuoteFromSelectedLines() {
+        Editable text = createEditableText("> Fi|rst\n>\n> Sec|ond");
+
+        MarkdownEdit.addQuote(text);
+
+        assertEqualsWithCursorPosition("|First\n\nSecond|", text);
+    }
 }
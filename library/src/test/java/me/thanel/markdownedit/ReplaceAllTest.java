@@ -0,0 +1,65 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import static me.thanel.markdownedit.util.TestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.TestUtils.attachCountingWatcher;
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+import android.text.Spanned;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import me.thanel.markdownedit.util.CountingTextWatcher;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class ReplaceAllTest {
+    @Test
+    public void replaceAll_replacesEachMatchSeparately() {
+        Editable text = createEditableText("one two| one\n```\none\n```\n`one` one");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+        Object span = new Object();
+        text.setSpan(span, 4, 7, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+        int count = MarkdownEdit.replaceAll(text, "one", "1",
+                MarkdownEdit.SEARCH_SKIP_FENCED_CODE | MarkdownEdit.SEARCH_SKIP_INLINE_CODE);
+
+        assertEquals(3, count);
+        assertEqualsWithCursorPosition("1 two| 1\n```\none\n```\n`one` 1", text);
+        assertEquals(3, watcher.changes);
+        assertEquals(2, text.getSpanStart(span));
+        assertEquals(5, text.getSpanEnd(span));
+    }
+
+    @Test
+    public void replaceAll_isUndoneAndRedoneAsSingleStep() {
+        Editable text = createEditableText("a-b|-c");
+        UndoHistory history = UndoHistory.obtain(text);
+
+        MarkdownEdit.replaceAll(text, "-", " + ", 0);
+        history.undo();
+        assertEqualsWithCursorPosition("a-b-|c", text);
+        assertFalse(history.canUndo());
+        history.redo();
+
+        assertEquals("a + b + c", text.toString());
+        assertFalse(history.canRedo());
+        history.undo();
+        assertEqualsWithCursorPosition("a-b-|c", text);
+    }
+
+    @Test
+    public void replaceAll_keepsTextWithoutMatches() {
+        Editable text = createEditableText("He|llo");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        assertEquals(0, MarkdownEdit.replaceAll(text, "World", "There", 0));
+        assertEquals(0, watcher.changes);
+    }
+}
@@ -1,6 +1,9 @@
 package me.thanel.markdownedit;
 
+import static org.junit.Assert.assertEquals;
+
 import static me.thanel.markdownedit.util.TestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.TestUtils.attachCountingWatcher;
 import static me.thanel.markdownedit.util.TestUtils.createEditableText;
 
 import android.text.Editable;
@@ -10,6 +13,8 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import me.thanel.markdownedit.util.CountingTextWatcher;
+
 @RunWith(RobolectricTestRunner.class)
 @Config(constants = BuildConfig.class)
 public class SurroundTagTest {
@@ -95,4 +100,52 @@ public class SurroundTagTest {
 
         assertEqualsWithCursorPosition("~~Hello~~|", text);
     }
+
+    @Test
+    public void surroundSelectionWith_doesNothingInsideFencedCode() {
+        Editable text = createEditableText("Text\n\n```\nx = a |* b|\n```");
+
+        MarkdownEdit.surroundSelectionWith(text, SURROUND_TEXT);
+
+        assertEqualsWithCursorPosition("Text\n\n```\nx = a |* b|\n```", text);
+    }
+
+    @Test
+    public void addBold_removesBoldFromSurroundedWord() {
+        Editable text = createEditableText("Some **bo|ld** text");
+
+        MarkdownEdit.addBold(text);
+
+        assertEqualsWithCursorPosition("Some bold| text", text);
+    }
+
+    @Test
+    public void addBold_removesBoldFromSelectionInsideTags() {
+        Editable text = createEditableText("Some **|bold|** text");
+
+        MarkdownEdit.addBold(text);
+
+        assertEqualsWithCursorPosition("Some |bold| text", text);
+    }
+
+    @Test
+    public void addBold_removesBoldIncludedInSelection() {
+        Editable text = createEditableText("Some |**bold**| text");
+
+        MarkdownEdit.addBold(text);
+
+        assertEqualsWithCursorPosition("Some |bold| text", text);
+    }
+
+    @Test
+    public void surroundSelectionWith_formatsAllRangesInSingleEdit() {
+        Editable text = createEditableText("One two three|");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+        int[] ranges = {0, 3, 4, 7, 8, 13};
+
+        MarkdownEdit.surroundSelectionWith(text, ranges, SURROUND_TEXT);
+
+        assertEqualsWithCursorPosition("**One** **two** **three**|", text);
+        assertEquals(1, watcher.changes);
+    }
 }
@@ -0,0 +1,171 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+
+import static me.thanel.markdownedit.util.TestUtils.attachCountingWatcher;
+
+import android.text.Editable;
+import android.text.Selection;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import me.thanel.markdownedit.util.CountingTextWatcher;
+
+// The cursor marker of the test utilities can't be used as tables contain pipes.
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TableFormatterTest {
+    private static final String TABLE =
+            "| a   | b   |\n" +
+            "| --- | --- |\n" +
+            "| c   | d   |";
+
+    @Test
+    public void formatter_widensColumnWhenCellGrows() {
+        Editable text = createFormattedText(TABLE);
+
+        type(text, 3, "bcd");
+
+        assertEquals("| abcd | b   |\n" +
+                "| ---- | --- |\n" +
+                "| c    | d   |", text.toString());
+        assertCursor(6, text);
+    }
+
+    @Test
+    public void formatter_narrowsColumnWhenWidestCellShrinks() {
+        Editable text = createFormattedText(TABLE);
+        type(text, 3, "bcd");
+
+        text.delete(3, 6);
+
+        assertEquals(TABLE, text.toString());
+        assertCursor(3, text);
+    }
+
+    @Test
+    public void formatter_keepsColumnWidthWhenOtherCellIsWider() {
+        Editable text = createFormattedText(TABLE);
+        type(text, 31, "efgh");
+
+        type(text, 2, "x");
+
+        assertEquals("| xa    | b   |\n" +
+                "| ----- | --- |\n" +
+                "| cefgh | d   |", text.toString());
+        assertCursor(3, text);
+    }
+
+    @Test
+    public void formatter_rewritesOnlyEditedRowWhenWidthsDontChange() {
+        Editable text = createFormattedText(TABLE);
+        type(text, 31, "e");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        type(text, 2, "x");
+
+        assertEquals("| xa  | b   |\n" +
+                "| --- | --- |\n" +
+                "| ce  | d   |", text.toString());
+        // One change for the typed character and one for the removed padding.
+        assertEquals(2, watcher.changes);
+        assertEquals(6, watcher.lastStart);
+        assertEquals(1, watcher.lastBefore);
+        assertCursor(3, text);
+    }
+
+    @Test
+    public void formatter_appliesRealignmentAsSingleChange() {
+        Editable text = createFormattedText(TABLE);
+        type(text, 2, "x");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        type(text, 37, "long");
+
+        assertEquals("| xa  | b     |\n" +
+                "| --- | ----- |\n" +
+                "| c   | dlong |", text.toString());
+        assertEquals(2, watcher.changes);
+        assertCursor(45, text);
+    }
+
+    @Test
+    public void formatter_keepsSpaceTypedAtEndOfCell() {
+        Editable text = createFormattedText(TABLE);
+
+        type(text, 3, " ");
+        type(text, 4, "b");
+
+        assertEquals("| a b | b   |\n" +
+                "| --- | --- |\n" +
+                "| c   | d   |", text.toString());
+        assertCursor(5, text);
+    }
+
+    @Test
+    public void formatter_formatsWholeTableAfterNewRow() {
+        Editable text = createFormattedText(TABLE);
+
+        type(text, text.length(), "\n|");
+
+        assertEquals(TABLE + "\n|     |     |", text.toString());
+        assertCursor(text.length() - 11, text);
+    }
+
+    @Test
+    public void formatter_ignoresTablesInFencedCode() {
+        Editable text = createFormattedText("```\n| a | b |\n| - | - |\n```");
+
+        type(text, 7, "x");
+
+        assertEquals("```\n| ax | b |\n| - | - |\n```", text.toString());
+    }
+
+    @Test
+    public void formatter_padsRowsWithSurrogatePairs() {
+        Editable text = createFormattedText("| abcd |\n| ---- |\n| \uD83D\uDE00ab |");
+        type(text, 6, "e");
+
+        Selection.setSelection(text, 7);
+        text.delete(6, 7);
+        text.delete(5, 6);
+
+        assertEquals("| abc |\n" +
+                "| --- |\n" +
+                "| \uD83D\uDE00ab |", text.toString());
+        assertCursor(5, text);
+    }
+
+    @Test
+    public void formatter_keepsCursorAfterCellWithSurrogatePair() {
+        Editable text = createFormattedText("| \uD83D\uDE00 | a   |\n| --- | --- |");
+
+        type(text, 8, "b");
+
+        assertEquals("| \uD83D\uDE00   | ab  |\n" +
+                "| --- | --- |", text.toString());
+        assertCursor(11, text);
+    }
+
+    private static void type(Editable text, int position, String typed) {
+        Selection.setSelection(text, position);
+        text.insert(position, typed);
+    }
+
+    private static void assertCursor(int expected, Editable text) {
+        assertEquals("Incorrect start position", expected, Selection.getSelectionStart(text));
+        assertEquals("Incorrect end position", expected, Selection.getSelectionEnd(text));
+    }
+
+    private static Editable createFormattedText(String text) {
+        Editable editable = new SpannableStringBuilder(text);
+        editable.setSpan(new TableFormatter(), 0, editable.length(),
+                Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        return editable;
+    }
+}
@@ -0,0 +1,85 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static me.thanel.markdownedit.util.TestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.TestUtils.attachCountingWatcher;
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import me.thanel.markdownedit.util.CountingTextWatcher;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TaskIndexTest {
+    @Test
+    public void obtain_listsTasks() {
+        TaskIndex index = TaskIndex.obtain(createEditableText(
+                "- [ ] One\nText\n- [x] Two\n```\n- [ ] Code\n```\n- [X] Three"));
+
+        assertEquals(3, index.getTaskCount());
+        assertEquals(2, index.getCheckedTaskCount());
+        assertEquals(2, index.getTaskLine(1));
+        assertEquals(18, index.getTaskMarkOffset(1));
+        assertFalse(index.isTaskChecked(0));
+        assertTrue(index.isTaskChecked(2));
+        assertEquals(-1, index.getTaskForOffset(12));
+        assertEquals(1, index.getTaskForOffset(22));
+    }
+
+    @Test
+    public void replace_updatesTasksOfChangedLines() {
+        Editable text = createEditableText("- [ ] One\n- [x] Two");
+        TaskIndex index = TaskIndex.obtain(text);
+
+        text.insert(0, "- [x] Zero\n");
+        text.delete(text.length() - 10, text.length() - 9);
+
+        assertEquals(2, index.getTaskCount());
+        assertEquals(1, index.getCheckedTaskCount());
+        assertEquals(1, index.getTaskLine(1));
+    }
+
+    @Test
+    public void toggleTask_replacesOnlyCheckMark() {
+        Editable text = createEditableText("- [ ] O|ne\n- [ ] Two");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        assertTrue(MarkdownEdit.toggleTask(text));
+
+        assertEqualsWithCursorPosition("- [x] O|ne\n- [ ] Two", text);
+        assertEquals(1, TaskIndex.obtain(text).getCheckedTaskCount());
+        assertEquals(1, watcher.changes);
+        assertEquals(3, watcher.lastStart);
+        assertEquals(1, watcher.lastBefore);
+    }
+
+    @Test
+    public void toggleTask_ignoresLinesWithoutTask() {
+        Editable text = createEditableText("Te|xt\n- [ ] Two");
+
+        assertFalse(MarkdownEdit.toggleTask(text));
+        assertEquals("Text\n- [ ] Two", text.toString());
+    }
+
+    @Test
+    public void setTasksChecked_changesSelectedTasksInSingleEdit() {
+        Editable text = createEditableText("- [ ] One\n- [ ] T|wo\nText\n- [x] Th|ree\n- [ ] Four");
+        CountingTextWatcher watcher = attachCountingWatcher(text);
+
+        assertEquals(1, MarkdownEdit.setTasksChecked(text, true));
+        assertEquals(2, MarkdownEdit.setTasksChecked(text, false));
+
+        assertEqualsWithCursorPosition(
+                "- [ ] One\n- [ ] T|wo\nText\n- [ ] Th|ree\n- [ ] Four", text);
+        assertEquals(2, watcher.changes);
+    }
+}
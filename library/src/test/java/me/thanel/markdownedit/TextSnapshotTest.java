@@ -0,0 +1,53 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TextSnapshotTest {
+    @Test
+    public void of_isNotAffectedByLaterChanges() {
+        Editable text = createEditableText("Hello");
+
+        TextSnapshot snapshot = TextSnapshot.of(text, 3);
+        text.append(" World");
+
+        assertEquals("Hello", snapshot.toString());
+        assertEquals(3, snapshot.getVersion());
+    }
+
+    @Test
+    public void subSequence_keepsVersionAndCancellation() {
+        TextSnapshot snapshot = TextSnapshot.of("One\nTwo\nThree", 7);
+        snapshot.cancel();
+
+        TextSnapshot line = (TextSnapshot) snapshot.subSequence(4, 13);
+
+        assertEquals("Two\nThree", line.toString());
+        assertEquals("Three", line.subSequence(4, 9).toString());
+        assertEquals('T', line.charAt(0));
+        assertEquals(7, line.getVersion());
+        assertTrue(line.isCancelled());
+    }
+
+    @Test
+    public void cancel_marksSnapshotAsCancelled() {
+        TextSnapshot snapshot = TextSnapshot.of("Text", 1);
+        assertFalse(snapshot.isCancelled());
+
+        snapshot.cancel();
+
+        assertTrue(snapshot.isCancelled());
+    }
+}
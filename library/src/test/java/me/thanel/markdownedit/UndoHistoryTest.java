@@ -0,0 +1,197 @@
+package me.thanel.markdownedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static me.thanel.markdownedit.util.TestUtils.assertEqualsWithCursorPosition;
+import static me.thanel.markdownedit.util.TestUtils.createEditableText;
+
+import android.text.Editable;
+import android.text.Spanned;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class UndoHistoryTest {
+    @Test
+    public void undo_revertsMarkdownEditCommandAsSingleStep() {
+        Editable text = createEditableText("One\nTw|o\nThree");
+        UndoHistory history = UndoHistory.obtain(text);
+
+        MarkdownEdit.addList(text, MarkdownEdit.LIST_TYPE_BULLETS);
+        history.undo();
+
+        assertEquals("One\nTwo\nThree", text.toString());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void undo_revertsConsecutiveTypingAsSingleStep() {
+        Editable text = createEditableText("Hello |");
+        UndoHistory history = UndoHistory.obtain(text);
+
+        type(text, "W");
+        type(text, "o");
+        type(text, "r");
+        history.undo();
+
+        assertEqualsWithCursorPosition("Hello |", text);
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void undo_revertsConsecutiveDeletionsAsSingleStep() {
+        Editable text = createEditableText("Hello|");
+        UndoHistory history = UndoHistory.obtain(text);
+
+        text.delete(4, 5);
+        text.delete(3, 4);
+        text.delete(2, 3);
+        history.undo();
+
+        assertEqualsWithCursorPosition("Hello|", text);
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void undo_splitsTypingAtLineBreaks() {
+        Editable text = createEditableText("|");
+        UndoHistory history = UndoHistory.obtain(text);
+
+        type(text, "a");
+        type(text, "b");
+        type(text, "\n");
+        type(text, "c");
+        type(text, "d");
+
+        history.undo();
+        assertEqualsWithCursorPosition("ab\n|", text);
+        history.undo();
+        assertEqualsWithCursorPosition("ab|", text);
+        history.undo();
+        assertEqualsWithCursorPosition("|", text);
+    }
+
+    @Test
+    public void undo_revertsChangesMadeByOtherWatchersWithChange() {
+        Editable text = createEditableText("1. a\n2. b");
+        text.setSpan(new OrderedListRenumberer(), 0, text.length(),
+                Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        UndoHistory history = UndoHistory.obtain(text);
+
+        text.insert(0, "1. z\n");
+        assertEquals("1. z\n2. a\n3. b", text.toString());
+        history.undo();
+
+        assertEquals("1. a\n2. b", text.toString());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void redo_appliesUndoneStepAgain() {
+        Editable text = createEditableText("He|llo");
+        UndoHistory history = UndoHistory.obtain(text);
+
+        MarkdownEdit.addHeader(text, 2);
+        history.undo();
+        history.redo();
+
+        assertEqualsWithCursorPosition("## |Hello", text);
+        assertTrue(history.canUndo());
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void redo_appliesChangesMadeByOtherWatchersAgain() {
+        Editable text = createEditableText("1. a\n2. b");
+        text.setSpan(new OrderedListRenumberer(), 0, text.length(),
+                Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        UndoHistory history = UndoHistory.obtain(text);
+
+        text.insert(0, "1. z\n");
+        history.undo();
+        history.redo();
+        assertEquals("1. z\n2. a\n3. b", text.toString());
+        history.undo();
+
+        assertEquals("1. a\n2. b", text.toString());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void undo_recordsChangesMadeByOtherWatchersInResponse() {
+        Editable text = createEditableText("9. a\n9. b|");
+        text.setSpan(new OrderedListRenumberer(), 0, text.length(),
+                Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        UndoHistory history = UndoHistory.obtain(text);
+
+        type(text, "x");
+        assertEquals("9. a\n10. bx", text.toString());
+        history.undo();
+
+        // The list is renumbered again, so the undone step can't be redone over it.
+        assertEquals("9. a\n10. b", text.toString());
+        assertFalse(history.canRedo());
+        text.append("y");
+        history.undo();
+        assertEquals("9. a\n10. b", text.toString());
+    }
+
+    @Test
+    public void undo_revertsKeyboardCompositionAsSingleStep() {
+        Editable text = createEditableText("Say |");
+        UndoHistory history = UndoHistory.obtain(text);
+
+        text.replace(4, 4, "h");
+        text.replace(4, 5, "he");
+        text.replace(4, 6, "hel");
+        text.replace(4, 7, "hell");
+        text.replace(4, 8, "hel");
+        text.replace(4, 7, "help");
+        history.undo();
+
+        assertEqualsWithCursorPosition("Say |", text);
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void change_discardsStepsWhichCouldBeRedone() {
+        Editable text = createEditableText("Hello");
+        UndoHistory history = UndoHistory.obtain(text);
+
+        text.insert(5, " World");
+        history.undo();
+        text.insert(0, "Say ");
+
+        assertFalse(history.canRedo());
+        history.undo();
+        assertEquals("Hello", text.toString());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void setMaxBytes_evictsOldestSteps() {
+        Editable text = createEditableText("Hello");
+        UndoHistory history = UndoHistory.obtain(text);
+
+        text.insert(5, " One");
+        text.insert(9, " Two");
+        int sizeOfSecondStep = history.getSizeInBytes() / 2;
+        history.setMaxBytes(sizeOfSecondStep);
+
+        assertEquals(sizeOfSecondStep, history.getSizeInBytes());
+        assertTrue(history.undo());
+        assertFalse(history.canUndo());
+        assertEquals("Hello One", text.toString());
+    }
+
+    private static void type(Editable text, String character) {
+        text.replace(SelectionUtils.getSelectionStart(text), SelectionUtils.getSelectionEnd(text),
+                character);
+    }
+}
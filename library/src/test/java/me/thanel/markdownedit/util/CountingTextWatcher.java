@@ -0,0 +1,27 @@
+package me.thanel.markdownedit.util;
+
+import android.text.Editable;
+import android.text.TextWatcher;
+
+public class CountingTextWatcher implements TextWatcher {
+    public int changes;
+    public int lastStart;
+    public int lastBefore;
+    public int lastCount;
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        changes++;
+        lastStart = start;
+        lastBefore = before;
+        lastCount = count;
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+    }
+}
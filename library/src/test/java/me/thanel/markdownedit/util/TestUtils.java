@@ -6,10 +6,19 @@ import android.text.Editable;
 import android.text.Selection;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
 
+import me.thanel.markdownedit.GapEditable;
 import me.thanel.markdownedit.SelectionUtils;
 
 public class TestUtils {
+    /**
+     * System property selecting the {@link Editable} implementation created by {@link
+     * #createEditableText(String)}: {@code gap} for {@link GapEditable}, otherwise {@link
+     * SpannableStringBuilder}.
+     */
+    public static final String EDITABLE_PROPERTY = "markdownedit.editable";
+
     private TestUtils() { /* cannot be instantiated */ }
 
     public static Editable createEditableText(String text) {
@@ -24,7 +33,8 @@ public class TestUtils {
 
         text = text.replace("|", "");
 
-        Editable editable = new SpannableStringBuilder(text);
+        Editable editable = "gap".equals(System.getProperty(EDITABLE_PROPERTY)) ?
+                new GapEditable(text) : new SpannableStringBuilder(text);
         if (selectionStart == -1) {
             Selection.removeSelection(editable);
         } else {
@@ -45,4 +55,10 @@ public class TestUtils {
         assertEquals("Incorrect end position", endPosition,
                 SelectionUtils.getSelectionEnd(editText));
     }
+
+    public static CountingTextWatcher attachCountingWatcher(Spannable text) {
+        CountingTextWatcher watcher = new CountingTextWatcher();
+        text.setSpan(watcher, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        return watcher;
+    }
 }
@@ -7,16 +7,29 @@ import androidx.annotation.StringRes;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.text.Html;
+import android.text.Spanned;
 import android.text.TextUtils;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.TextView;
 
 import me.thanel.markdownedit.MarkdownEdit;
+import me.thanel.markdownedit.MarkdownHighlighter;
+import me.thanel.markdownedit.MarkdownRenderer;
+import me.thanel.markdownedit.PreviewPipeline;
+import me.thanel.markdownedit.TextSnapshot;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
 
     private EditText inputField;
+    private TextView preview;
+    private MarkdownHighlighter highlighter;
+    private PreviewPipeline<Spanned> previewPipeline;
+    private ExecutorService previewExecutor;
 
     private interface DialogCallback {
         void onConfirm(CharSequence inputText);
@@ -28,6 +41,36 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         inputField = (EditText) findViewById(R.id.input_filed);
+        preview = (TextView) findViewById(R.id.preview);
+        highlighter = MarkdownHighlighter.attach(inputField);
+
+        // Both the Markdown and the resulting HTML are processed on the background thread, main
+        // thread only copies the text and displays the result.
+        final MarkdownRenderer renderer = new MarkdownRenderer();
+        previewExecutor = Executors.newSingleThreadExecutor();
+        previewPipeline = PreviewPipeline.attach(inputField, previewExecutor,
+                new PreviewPipeline.Processor<Spanned>() {
+                    @Override
+                    public Spanned process(@NonNull TextSnapshot snapshot) {
+                        String html = renderer.render(snapshot);
+                        return snapshot.isCancelled() ? null : Html.fromHtml(html);
+                    }
+                },
+                new PreviewPipeline.Listener<Spanned>() {
+                    @Override
+                    public void onResult(@NonNull Spanned result, int version) {
+                        preview.setText(result);
+                    }
+                });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Detached first so that no snapshot is submitted to the executor after it's shut down.
+        previewPipeline.detach();
+        highlighter.detach();
+        previewExecutor.shutdownNow();
     }
 
     public void makeBold(View view) {